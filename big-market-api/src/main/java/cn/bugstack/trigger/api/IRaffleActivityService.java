@@ -36,6 +36,15 @@ public interface IRaffleActivityService {
      */
     Response<List<ActivityDrawResponseDTO>> drawTen(ActivityDrawRequestDTO request);
 
+    /**
+     * 活动连抽接口
+     *
+     * @param request 请求对象
+     * @param count   抽奖次数，不超过配置的最大连抽次数
+     * @return 返回结果
+     */
+    Response<List<ActivityDrawResponseDTO>> drawBatch(ActivityDrawRequestDTO request, Integer count);
+
     /**
      * 日历签到返利接口
      *
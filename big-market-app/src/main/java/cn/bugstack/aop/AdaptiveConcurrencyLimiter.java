@@ -0,0 +1,100 @@
+package cn.bugstack.aop;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gzc
+ * @description 自适应并发限制「梯度算法」；按请求耗时调整并发限制，在 Redis、MySQL 饱和前拒绝多出的请求。
+ * 1. 长期耗时为指数移动平均，当前耗时超出长期耗时的容忍倍数时按比例收缩限制，耗时正常时逐步扩大
+ * 2. 超时的请求直接按比例收缩，不参与耗时统计
+ * 3. 并发未用到限制的一半时不调整，避免空闲时限制无限增长
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // 平滑系数；每次调整只向新限制靠近该比例
+    private static final double SMOOTHING = 0.2;
+    // 当前耗时在长期耗时的该倍数以内视为正常
+    private static final double RTT_TOLERANCE = 1.5;
+    // 超时收缩比例
+    private static final double BACKOFF_RATIO = 0.9;
+    // 长期耗时的样本窗口
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long timeoutNanos;
+    private final boolean adaptive;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile int limit;
+
+    // 以下字段在 update 中加锁访问
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    /**
+     * @param adaptive false = 固定为最大并发限制，只做信号量隔离
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long timeoutNanos, boolean adaptive) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.timeoutNanos = timeoutNanos;
+        this.adaptive = adaptive;
+        this.estimatedLimit = adaptive ? Math.max(minLimit, Math.min(maxLimit, initialLimit)) : maxLimit;
+        this.limit = (int) estimatedLimit;
+    }
+
+    public boolean tryAcquire() {
+        for (; ; ) {
+            int current = inflight.get();
+            if (current >= limit) return false;
+            if (inflight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * 释放并发；tryAcquire 成功后必须调用
+     *
+     * @param rttNanos 请求耗时
+     */
+    public void release(long rttNanos) {
+        int current = inflight.getAndDecrement();
+        if (adaptive) {
+            update(rttNanos, current);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inflight) {
+        if (rttNanos >= timeoutNanos) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+            limit = (int) estimatedLimit;
+            return;
+        }
+
+        if (0 == longRttNanos) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+            // 负载下降后长期耗时远高于当前耗时，加快衰减，让限制尽快恢复
+            if (longRttNanos > 2 * rttNanos) {
+                longRttNanos *= 0.95;
+            }
+        }
+
+        if (inflight < estimatedLimit / 2) return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRttNanos / Math.max(1L, rttNanos)));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+
+}
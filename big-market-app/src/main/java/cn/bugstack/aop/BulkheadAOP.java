@@ -0,0 +1,171 @@
+package cn.bugstack.aop;
+
+import cn.bugstack.types.annotations.BulkheadAccessInterceptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gzc
+ * @description 并发隔离切面；替代 Hystrix 线程池隔离，请求在 Tomcat 线程中执行，不再切换到 Hystrix 线程池。
+ * 1. 超出自适应并发限制时直接调用回调方法；执行异常时同样调用回调方法，与 Hystrix 的回调约定一致
+ * 2. 信号量隔离不能中断执行中的请求，超时的请求仍返回实际结果，只作为过载信号收缩并发限制
+ * 3. 每个隔离名称的并发限制、执行中的请求数、拒绝、超时、异常次数作为 bulkhead_* 指标，endpoint 标签区分
+ * 4. 异常比例熔断替代 Hystrix 熔断器，异常和超时计为失败；熔断期间直接调用回调方法，不占用并发限制
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(2)
+public class BulkheadAOP {
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // 自适应并发限制开关；false = 固定为注解的最大并发限制，只做信号量隔离
+    @Value("${bulkhead.adaptive:true}")
+    private boolean adaptive;
+
+    // 熔断开关
+    @Value("${bulkhead.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+
+    // 熔断统计的滚动窗口
+    @Value("${bulkhead.circuit-breaker.window-millis:10000}")
+    private long circuitBreakerWindowMillis;
+
+    // 窗口内请求数达到该值才判断异常比例
+    @Value("${bulkhead.circuit-breaker.request-volume-threshold:20}")
+    private int circuitBreakerRequestVolumeThreshold;
+
+    // 异常比例达到该值时熔断
+    @Value("${bulkhead.circuit-breaker.error-threshold-percentage:50}")
+    private int circuitBreakerErrorThresholdPercentage;
+
+    // 熔断后经过该时间放行一个试探请求
+    @Value("${bulkhead.circuit-breaker.sleep-window-millis:5000}")
+    private long circuitBreakerSleepWindowMillis;
+
+    // 注解方法 -> 隔离
+    private final Map<Method, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Pointcut("@annotation(cn.bugstack.types.annotations.BulkheadAccessInterceptor)")
+    public void aopPoint() {
+    }
+
+    @Around("aopPoint() && @annotation(bulkheadAccessInterceptor)")
+    public Object doRouter(ProceedingJoinPoint jp, BulkheadAccessInterceptor bulkheadAccessInterceptor) throws Throwable {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(method, key -> createBulkhead(ClassUtils.getUserClass(jp.getTarget().getClass()), key, bulkheadAccessInterceptor));
+
+        // 熔断中
+        CircuitBreaker circuitBreaker = bulkhead.circuitBreaker;
+        if (null != circuitBreaker && !circuitBreaker.allowRequest()) {
+            bulkhead.shortCircuitedCounter.increment();
+            log.debug("并发隔离-熔断中：{}", bulkhead.name);
+            return bulkhead.fallbackMethod.invoke(jp.getThis(), jp.getArgs());
+        }
+
+        // 超出并发限制
+        if (!bulkhead.limiter.tryAcquire()) {
+            if (null != circuitBreaker) circuitBreaker.onNotExecuted();
+            bulkhead.rejectedCounter.increment();
+            log.debug("并发隔离-超出并发限制：{} limit:{}", bulkhead.name, bulkhead.limiter.getLimit());
+            return bulkhead.fallbackMethod.invoke(jp.getThis(), jp.getArgs());
+        }
+
+        long startNanos = System.nanoTime();
+        boolean failed = false;
+        try {
+            return jp.proceed();
+        } catch (Throwable e) {
+            failed = true;
+            bulkhead.errorCounter.increment();
+            log.error("并发隔离-执行异常：{}", bulkhead.name, e);
+            return bulkhead.fallbackMethod.invoke(jp.getThis(), jp.getArgs());
+        } finally {
+            long rttNanos = System.nanoTime() - startNanos;
+            if (rttNanos >= bulkhead.timeoutNanos) {
+                failed = true;
+                bulkhead.timeoutCounter.increment();
+            }
+            bulkhead.limiter.release(rttNanos);
+            if (null != circuitBreaker) {
+                if (failed) {
+                    circuitBreaker.onError();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+            }
+        }
+    }
+
+    private Bulkhead createBulkhead(Class<?> targetClass, Method method, BulkheadAccessInterceptor bulkheadAccessInterceptor) {
+        String name = StringUtils.isBlank(bulkheadAccessInterceptor.name()) ? method.getName() : bulkheadAccessInterceptor.name();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(bulkheadAccessInterceptor.timeoutMillis());
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(bulkheadAccessInterceptor.initialLimit(), bulkheadAccessInterceptor.minLimit(),
+                bulkheadAccessInterceptor.maxLimit(), timeoutNanos, adaptive);
+
+        Gauge.builder("bulkhead_limit", limiter, AdaptiveConcurrencyLimiter::getLimit).tag("endpoint", name).description("并发限制").register(meterRegistry);
+        Gauge.builder("bulkhead_inflight", limiter, AdaptiveConcurrencyLimiter::getInflight).tag("endpoint", name).description("执行中的请求数").register(meterRegistry);
+        Counter rejectedCounter = Counter.builder("bulkhead_rejected").tag("endpoint", name).description("超出并发限制的请求数").register(meterRegistry);
+        Counter timeoutCounter = Counter.builder("bulkhead_timeout").tag("endpoint", name).description("超时的请求数").register(meterRegistry);
+        Counter errorCounter = Counter.builder("bulkhead_error").tag("endpoint", name).description("执行异常的请求数").register(meterRegistry);
+
+        CircuitBreaker circuitBreaker = null;
+        if (circuitBreakerEnabled) {
+            circuitBreaker = new CircuitBreaker(circuitBreakerWindowMillis, circuitBreakerRequestVolumeThreshold,
+                    circuitBreakerErrorThresholdPercentage, circuitBreakerSleepWindowMillis);
+            Gauge.builder("bulkhead_circuit_open", circuitBreaker, breaker -> CircuitBreaker.State.CLOSED == breaker.getState() ? 0 : 1)
+                    .tag("endpoint", name).description("熔断状态，1 = 熔断中").register(meterRegistry);
+        }
+        Counter shortCircuitedCounter = Counter.builder("bulkhead_short_circuited").tag("endpoint", name).description("熔断拒绝的请求数").register(meterRegistry);
+
+        return new Bulkhead(name, timeoutNanos, limiter, circuitBreaker, FallbackMethod.create(targetClass, method, bulkheadAccessInterceptor.fallbackMethod()),
+                rejectedCounter, timeoutCounter, errorCounter, shortCircuitedCounter);
+    }
+
+    private static class Bulkhead {
+        private final String name;
+        private final long timeoutNanos;
+        private final AdaptiveConcurrencyLimiter limiter;
+        // 未启用熔断时为 null
+        private final CircuitBreaker circuitBreaker;
+        private final FallbackMethod fallbackMethod;
+        private final Counter rejectedCounter;
+        private final Counter timeoutCounter;
+        private final Counter errorCounter;
+        private final Counter shortCircuitedCounter;
+
+        private Bulkhead(String name, long timeoutNanos, AdaptiveConcurrencyLimiter limiter, CircuitBreaker circuitBreaker, FallbackMethod fallbackMethod,
+                         Counter rejectedCounter, Counter timeoutCounter, Counter errorCounter, Counter shortCircuitedCounter) {
+            this.name = name;
+            this.timeoutNanos = timeoutNanos;
+            this.limiter = limiter;
+            this.circuitBreaker = circuitBreaker;
+            this.fallbackMethod = fallbackMethod;
+            this.rejectedCounter = rejectedCounter;
+            this.timeoutCounter = timeoutCounter;
+            this.errorCounter = errorCounter;
+            this.shortCircuitedCounter = shortCircuitedCounter;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package cn.bugstack.aop;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author gzc
+ * @description 调用计数切面；按 IRedisService 方法累加 redis_calls 指标，每个接口请求的 Redis 调用次数、数据库语句数记录为
+ * request_redis_calls、request_db_statements 分布，数据库语句由 SqlStatementMetricsInterceptor 计数
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(0)
+public class CallMetricsAOP {
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // IRedisService 方法名 -> 计数
+    private final Map<String, Counter> redisCounters = new ConcurrentHashMap<>();
+    // 接口方法名 -> [Redis 调用次数分布, 数据库语句数分布]
+    private final Map<String, DistributionSummary[]> requestSummaries = new ConcurrentHashMap<>();
+
+    @Pointcut("within(cn.bugstack.trigger.http..*) && @annotation(org.springframework.web.bind.annotation.RequestMapping)")
+    public void requestPoint() {
+    }
+
+    @Pointcut("execution(* cn.bugstack.infrastructure.redis.IRedisService.*(..))")
+    public void redisPoint() {
+    }
+
+    @Around("requestPoint()")
+    public Object doRequest(ProceedingJoinPoint jp) throws Throwable {
+        if (!RequestCallCounter.start()) return jp.proceed();
+        try {
+            return jp.proceed();
+        } finally {
+            long[] counts = RequestCallCounter.stop();
+            DistributionSummary[] summaries = requestSummaries.computeIfAbsent(jp.getSignature().getName(), this::createRequestSummaries);
+            summaries[RequestCallCounter.REDIS].record(counts[RequestCallCounter.REDIS]);
+            summaries[RequestCallCounter.DB].record(counts[RequestCallCounter.DB]);
+        }
+    }
+
+    @Before("redisPoint()")
+    public void doRedis(JoinPoint jp) {
+        redisCounters.computeIfAbsent(jp.getSignature().getName(), method -> Counter.builder("redis_calls")
+                .tag("method", method)
+                .description("Redis 调用次数")
+                .register(meterRegistry)).increment();
+        RequestCallCounter.increment(RequestCallCounter.REDIS);
+    }
+
+    private DistributionSummary[] createRequestSummaries(String endpoint) {
+        DistributionSummary[] summaries = new DistributionSummary[2];
+        summaries[RequestCallCounter.REDIS] = DistributionSummary.builder("request_redis_calls")
+                .tag("endpoint", endpoint)
+                .description("单次请求的 Redis 调用次数")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(200.0)
+                .register(meterRegistry);
+        summaries[RequestCallCounter.DB] = DistributionSummary.builder("request_db_statements")
+                .tag("endpoint", endpoint)
+                .description("单次请求的数据库语句数")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(200.0)
+                .register(meterRegistry);
+        return summaries;
+    }
+
+}
@@ -0,0 +1,139 @@
+package cn.bugstack.aop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * @author gzc
+ * @description 异常比例熔断；与 Hystrix 默认熔断规则一致，滚动窗口内请求数达到阈值且异常「含超时」比例超过阈值时熔断。
+ * 1. 熔断期间请求直接走回调方法，休眠窗口过后放行一个试探请求，成功则恢复，失败则继续熔断
+ * 2. 滚动窗口分 10 个桶统计，过期的桶在写入时清零
+ */
+public class CircuitBreaker {
+
+    private static final int BUCKETS = 10;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int requestVolumeThreshold;
+    private final int errorThresholdPercentage;
+    private final long bucketNanos;
+    private final long sleepWindowNanos;
+    private final LongSupplier clock;
+
+    // 以下字段加锁访问；桶编号 = 时间 / 桶时长
+    private final long[] bucketIds = new long[BUCKETS];
+    private final long[] requests = new long[BUCKETS];
+    private final long[] errors = new long[BUCKETS];
+    private volatile State state = State.CLOSED;
+    private long openedNanos;
+
+    public CircuitBreaker(long windowMillis, int requestVolumeThreshold, int errorThresholdPercentage, long sleepWindowMillis) {
+        this(windowMillis, requestVolumeThreshold, errorThresholdPercentage, sleepWindowMillis, System::nanoTime);
+    }
+
+    /**
+     * @param clock 纳秒时钟
+     */
+    public CircuitBreaker(long windowMillis, int requestVolumeThreshold, int errorThresholdPercentage, long sleepWindowMillis, LongSupplier clock) {
+        this.requestVolumeThreshold = requestVolumeThreshold;
+        this.errorThresholdPercentage = errorThresholdPercentage;
+        this.bucketNanos = Math.max(1L, TimeUnit.MILLISECONDS.toNanos(windowMillis) / BUCKETS);
+        this.sleepWindowNanos = TimeUnit.MILLISECONDS.toNanos(sleepWindowMillis);
+        this.clock = clock;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketIds[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 是否放行；熔断中且休眠窗口已过时，只放行一个试探请求
+     */
+    public boolean allowRequest() {
+        if (State.CLOSED == state) return true;
+        synchronized (this) {
+            if (State.CLOSED == state) return true;
+            if (State.OPEN == state && clock.getAsLong() - openedNanos >= sleepWindowNanos) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 放行后未执行「如超出并发限制」；试探请求未执行时恢复熔断，下一个请求重新试探
+     */
+    public synchronized void onNotExecuted() {
+        if (State.HALF_OPEN == state) {
+            state = State.OPEN;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (State.HALF_OPEN == state) {
+            state = State.CLOSED;
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * 执行异常或超时
+     */
+    public synchronized void onError() {
+        long now = clock.getAsLong();
+        if (State.HALF_OPEN == state) {
+            open(now);
+            return;
+        }
+        if (State.OPEN == state) return;
+        record(true);
+
+        long requestCount = 0;
+        long errorCount = 0;
+        long currentBucketId = Math.floorDiv(now, bucketNanos);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (currentBucketId - bucketIds[i] >= BUCKETS) continue;
+            requestCount += requests[i];
+            errorCount += errors[i];
+        }
+        if (requestCount >= requestVolumeThreshold && errorCount * 100 >= requestCount * errorThresholdPercentage) {
+            open(now);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    private void record(boolean error) {
+        long bucketId = Math.floorDiv(clock.getAsLong(), bucketNanos);
+        int idx = (int) Math.floorMod(bucketId, (long) BUCKETS);
+        if (bucketIds[idx] != bucketId) {
+            bucketIds[idx] = bucketId;
+            requests[idx] = 0;
+            errors[idx] = 0;
+        }
+        requests[idx]++;
+        if (error) errors[idx]++;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedNanos = now;
+        reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketIds[i] = Long.MIN_VALUE;
+            requests[i] = 0;
+            errors[i] = 0;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package cn.bugstack.aop;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * @author gzc
+ * @description 拦截后的回调方法；按注解方法解析一次，出入参与注解方法保持一样，调用时使用 MethodHandle，不再反射查找方法
+ */
+public class FallbackMethod {
+
+    // (Object 调用对象, Object[] 参数) -> Object，调用时无需装配参数类型
+    private final MethodHandle handle;
+
+    private FallbackMethod(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    public static FallbackMethod create(Class<?> targetClass, Method method, String fallbackMethod) {
+        Method fallback;
+        try {
+            fallback = targetClass.getMethod(fallbackMethod, method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException("annotation fallbackMethod not found: " + targetClass.getSimpleName() + "." + fallbackMethod, e);
+        }
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(fallback);
+            return new FallbackMethod(handle.asType(handle.type().generic()).asSpreader(Object[].class, fallback.getParameterCount()));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("annotation fallbackMethod is not accessible: " + targetClass.getSimpleName() + "." + fallbackMethod, e);
+        }
+    }
+
+    /**
+     * 调用回调方法；调用对象为代理对象，与直接调用方法一致
+     */
+    public Object invoke(Object target, Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(target, args);
+    }
+
+}
@@ -0,0 +1,185 @@
+package cn.bugstack.aop;
+
+import cn.bugstack.domain.activity.model.entity.UserRaffleOrderEntity;
+import cn.bugstack.domain.activity.model.entity.UserTenRaffleOrderEntity;
+import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gzc
+ * @description 抽奖分阶段耗时切面；参与活动、责任链、规则树节点、中奖记录、MQ发送的耗时记录为 raffle_stage 指标。
+ * 1. 标签 stage 为阶段，step 为阶段内的细分「责任链为最终命中的 LogicModel，规则树为节点 key，MQ 为 topic」
+ * 2. strategyId 按 metrics.strategy-buckets 取模分桶，避免每个策略一组时间序列
+ * 3. 发布直方图和 p50、p99、p999，多个节点的直方图可以汇总计算分位数
+ * 4. 异常的调用同样记录，标签 outcome 区分 success、error，失败路径的耗时不会缺失
+ */
+@Aspect
+@Component
+public class RaffleStageMetricsAOP {
+
+    private static final String NONE = "none";
+    private static final String SUCCESS = "success";
+    private static final String ERROR = "error";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${metrics.strategy-buckets:8}")
+    private int strategyBuckets;
+
+    // 责任链节点逐个调用下一个节点，只记录最外层一次
+    private final ThreadLocal<int[]> chainDepth = ThreadLocal.withInitial(() -> new int[1]);
+    // stage|step|bucket|outcome -> 计时器
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    // 规则树节点类 -> 节点 key
+    private final Map<Class<?>, String> treeNodeKeys = new ConcurrentHashMap<>();
+
+    @Pointcut("execution(* cn.bugstack.domain.activity.service.IRaffleActivityPartakeService.create*(..))")
+    public void partakePoint() {
+    }
+
+    @Pointcut("execution(* cn.bugstack.domain.strategy.service.rule.chain.ILogicChain.logic*(..))")
+    public void chainPoint() {
+    }
+
+    @Pointcut("execution(* cn.bugstack.domain.strategy.service.rule.tree.ILogicTreeNode.logic*(..))")
+    public void treePoint() {
+    }
+
+    @Pointcut("execution(* cn.bugstack.domain.award.service.IAwardService.saveUserAwardRecord*(..))")
+    public void awardPoint() {
+    }
+
+    @Pointcut("execution(* cn.bugstack.infrastructure.event.EventPublisher.publish(..))")
+    public void publishPoint() {
+    }
+
+    @Around("partakePoint()")
+    public Object doPartake(ProceedingJoinPoint jp) throws Throwable {
+        long startNanos = System.nanoTime();
+        Object result = null;
+        boolean success = false;
+        try {
+            result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            Long strategyId = null;
+            if (result instanceof UserRaffleOrderEntity) {
+                strategyId = ((UserRaffleOrderEntity) result).getStrategyId();
+            } else if (result instanceof UserTenRaffleOrderEntity) {
+                strategyId = ((UserTenRaffleOrderEntity) result).getStrategyId();
+            }
+            record("partake", jp.getSignature().getName(), strategyId, success, startNanos);
+        }
+    }
+
+    @Around("chainPoint()")
+    public Object doChain(ProceedingJoinPoint jp) throws Throwable {
+        int[] depth = chainDepth.get();
+        if (depth[0]++ > 0) {
+            try {
+                return jp.proceed();
+            } finally {
+                depth[0]--;
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        Object result = null;
+        boolean success = false;
+        try {
+            result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            depth[0]--;
+            String step = null;
+            if (result instanceof DefaultChainFactory.StrategyAwardVO) {
+                step = ((DefaultChainFactory.StrategyAwardVO) result).getLogicModel();
+            } else if (success) {
+                step = "batch";
+            }
+            record("chain", step, (Long) jp.getArgs()[1], success, startNanos);
+        }
+    }
+
+    @Around("treePoint()")
+    public Object doTree(ProceedingJoinPoint jp) throws Throwable {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            String nodeKey = treeNodeKeys.computeIfAbsent(ClassUtils.getUserClass(jp.getTarget().getClass()), this::treeNodeKey);
+            record("tree", nodeKey, (Long) jp.getArgs()[1], success, startNanos);
+        }
+    }
+
+    @Around("awardPoint()")
+    public Object doAward(ProceedingJoinPoint jp) throws Throwable {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            record("award", jp.getSignature().getName(), null, success, startNanos);
+        }
+    }
+
+    @Around("publishPoint()")
+    public Object doPublish(ProceedingJoinPoint jp) throws Throwable {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            record("mq_publish", String.valueOf(jp.getArgs()[0]), null, success, startNanos);
+        }
+    }
+
+    private void record(String stage, String step, Long strategyId, boolean success, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        String bucket = null == strategyId ? NONE : String.valueOf(Math.floorMod(strategyId, (long) strategyBuckets));
+        String stepTag = null == step ? NONE : step;
+        String outcome = success ? SUCCESS : ERROR;
+        timers.computeIfAbsent(stage + "|" + stepTag + "|" + bucket + "|" + outcome, key -> Timer.builder("raffle_stage")
+                .tag("stage", stage)
+                .tag("step", stepTag)
+                .tag("strategy_bucket", bucket)
+                .tag("outcome", outcome)
+                .description("抽奖分阶段耗时")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(meterRegistry)).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private String treeNodeKey(Class<?> nodeClass) {
+        Component component = AnnotationUtils.findAnnotation(nodeClass, Component.class);
+        return null == component || component.value().isEmpty() ? nodeClass.getSimpleName() : component.value();
+    }
+
+}
@@ -7,35 +7,44 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.RateLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import javax.annotation.Resource;
 import java.lang.reflect.Method;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Aspect
 @Component
+@Order(1)
 public class RateLimiterAOP {
 
     // 是DCC控制的限流开关 支持场景热插拔
     @DCCValue("rateLimiterSwitch:close")
     private String rateLimiterSwitch;
 
+    // 限流模式【local 单机 Guava 限流、redis 集群共享限流和黑名单，Redis 异常时降级为单机限流】
+    @Value("${rate-limiter.mode:local}")
+    private String rateLimiterMode;
+
+    @Resource
+    private RedisRateLimiter redisRateLimiter;
+    @Resource
+    private RateLimiterMetadataRegistry rateLimiterMetadataRegistry;
+
     // 个人限频记录1分钟
     private final Cache<String, RateLimiter> loginRecord = CacheBuilder.newBuilder()
             .expireAfterWrite(1, TimeUnit.MINUTES)
             .build();
 
-    // 多次限流进入黑名单 个人限频黑名单24h - 分布式业务场景，可以记录到 Redis 中
+    // 多次限流进入黑名单 个人限频黑名单24h - local 模式使用，redis 模式记录到 Redis 中
     private final Cache<String, Long> blacklist = CacheBuilder.newBuilder()
             .expireAfterWrite(24, TimeUnit.HOURS)
             .build();
@@ -52,38 +61,21 @@ public class RateLimiterAOP {
             return jp.proceed();
         }
 
-        String key = rateLimiterAccessInterceptor.key();
-        if (StringUtils.isBlank(key)) {
-            throw new RuntimeException("annotation RateLimiter uId is null！");
-        }
-        // 获取拦截字段
-        String keyAttr = getAttrValue(key, jp.getArgs());
-        log.info("aop attr {}", keyAttr);
-
-        // 黑名单拦截
-        if (!"all".equals(keyAttr) && rateLimiterAccessInterceptor.blacklistCount() != 0 && null != blacklist.getIfPresent(keyAttr) && blacklist.getIfPresent(keyAttr) > rateLimiterAccessInterceptor.blacklistCount()) {
-            log.info("限流-黑名单拦截(24h)：{}", keyAttr);
-            return fallbackMethodResult(jp, rateLimiterAccessInterceptor.fallbackMethod());
-        }
-
-        // 获取限流 -> Guava 缓存1分钟
-        RateLimiter rateLimiter = loginRecord.getIfPresent(keyAttr);
-        if (null == rateLimiter) {
-            rateLimiter = RateLimiter.create(rateLimiterAccessInterceptor.permitsPerSecond());
-            loginRecord.put(keyAttr, rateLimiter);
-        }
-
-        // 限流拦截
-        if (!rateLimiter.tryAcquire()) {
-            if (rateLimiterAccessInterceptor.blacklistCount() != 0) {
-                if (null == blacklist.getIfPresent(keyAttr)) {
-                    blacklist.put(keyAttr, 1L);
-                } else {
-                    blacklist.put(keyAttr, blacklist.getIfPresent(keyAttr) + 1L);
-                }
-            }
-            log.info("限流-超频次拦截：{}", keyAttr);
-            return fallbackMethodResult(jp, rateLimiterAccessInterceptor.fallbackMethod());
+        // 获取拦截字段；限流标识提取和回调方法在启动时已解析
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        RateLimiterMetadataRegistry.RateLimiterMetadata metadata = rateLimiterMetadataRegistry.get(method, jp.getTarget().getClass(), rateLimiterAccessInterceptor);
+        Object[] args = jp.getArgs();
+        String keyAttr = metadata.extractKey(args);
+
+        // 限流拦截；全局限流「all」不进入黑名单
+        boolean acquired = "local".equals(rateLimiterMode)
+                ? tryAcquireLocal(keyAttr, rateLimiterAccessInterceptor)
+                : redisRateLimiter.tryAcquire(metadata.getName(), keyAttr, rateLimiterAccessInterceptor.permitsPerSecond(),
+                RateLimiterKeyExtractor.ALL.equals(keyAttr) ? 0 : rateLimiterAccessInterceptor.blacklistCount(),
+                () -> tryAcquireLocal(keyAttr, rateLimiterAccessInterceptor));
+        if (!acquired) {
+            // 调用用户配置的回调方法，当拦截后，返回回调结果。
+            return metadata.invokeFallback(jp.getThis(), args);
         }
 
         // 返回结果
@@ -91,81 +83,32 @@ public class RateLimiterAOP {
     }
 
     /**
-     * 调用用户配置的回调方法，当拦截后，返回回调结果。
-     */
-    private Object fallbackMethodResult(JoinPoint jp, String fallbackMethod) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        Signature sig = jp.getSignature();
-        MethodSignature methodSignature = (MethodSignature) sig;
-        Method method = jp.getTarget().getClass().getMethod(fallbackMethod, methodSignature.getParameterTypes());
-        return method.invoke(jp.getThis(), jp.getArgs());
-    }
-
-    /**
-     * 实际根据自身业务调整，主要是为了获取通过某个值做拦截
+     * 单机限流；限流和黑名单只在当前节点生效
      */
-    public String getAttrValue(String attr, Object[] args) {
-        if (args[0] instanceof String) {
-            return args[0].toString();
-        }
-        String filedValue = null;
-        for (Object arg : args) {
-            try {
-                if (StringUtils.isNotBlank(filedValue)) {
-                    break;
-                }
-                // filedValue = BeanUtils.getProperty(arg, attr);
-                // fix: 使用lombok时，uId这种字段的get方法与idea生成的get方法不同，会导致获取不到属性值，改成反射获取解决
-                filedValue = String.valueOf(this.getValueByName(arg, attr));
-            } catch (Exception e) {
-                log.error("获取路由属性值失败 attr：{}", attr, e);
-            }
+    private boolean tryAcquireLocal(String keyAttr, RateLimiterAccessInterceptor rateLimiterAccessInterceptor) {
+        // 黑名单拦截
+        if (!RateLimiterKeyExtractor.ALL.equals(keyAttr) && rateLimiterAccessInterceptor.blacklistCount() != 0 && null != blacklist.getIfPresent(keyAttr) && blacklist.getIfPresent(keyAttr) > rateLimiterAccessInterceptor.blacklistCount()) {
+            log.debug("限流-黑名单拦截(24h)：{}", keyAttr);
+            return false;
         }
-        return filedValue;
-    }
 
-    /**
-     * 获取对象的特定属性值
-     *
-     * @param item 对象
-     * @param name 属性名
-     * @return 属性值
-     * @author tang
-     */
-    private Object getValueByName(Object item, String name) {
-        try {
-            Field field = getFieldByName(item, name);
-            if (field == null) {
-                return null;
-            }
-            field.setAccessible(true);
-            Object o = field.get(item);
-            field.setAccessible(false);
-            return o;
-        } catch (IllegalAccessException e) {
-            return null;
+        // 获取限流 -> Guava 缓存1分钟
+        RateLimiter rateLimiter = loginRecord.getIfPresent(keyAttr);
+        if (null == rateLimiter) {
+            rateLimiter = RateLimiter.create(rateLimiterAccessInterceptor.permitsPerSecond());
+            loginRecord.put(keyAttr, rateLimiter);
         }
-    }
 
-    /**
-     * 根据名称获取方法，该方法同时兼顾继承类获取父类的属性
-     *
-     * @param item 对象
-     * @param name 属性名
-     * @return 该属性对应方法
-     * @author tang
-     */
-    private Field getFieldByName(Object item, String name) {
-        try {
-            Field field;
-            try {
-                field = item.getClass().getDeclaredField(name);
-            } catch (NoSuchFieldException e) {
-                field = item.getClass().getSuperclass().getDeclaredField(name);
+        if (rateLimiter.tryAcquire()) return true;
+        if (rateLimiterAccessInterceptor.blacklistCount() != 0) {
+            if (null == blacklist.getIfPresent(keyAttr)) {
+                blacklist.put(keyAttr, 1L);
+            } else {
+                blacklist.put(keyAttr, blacklist.getIfPresent(keyAttr) + 1L);
             }
-            return field;
-        } catch (NoSuchFieldException e) {
-            return null;
         }
+        log.debug("限流-超频次拦截：{}", keyAttr);
+        return false;
     }
 
 }
@@ -0,0 +1,83 @@
+package cn.bugstack.aop;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * @author gzc
+ * @description 限流标识提取；按注解方法解析一次参数下标和字段，请求时只做 MethodHandle 调用，不再逐个参数反射查找字段
+ */
+public class RateLimiterKeyExtractor {
+
+    // 未配置拦截字段时，全部请求共用一个限流标识
+    public static final String ALL = "all";
+
+    private final String constant;
+    private final int argIndex;
+    private final MethodHandle getter;
+
+    private RateLimiterKeyExtractor(String constant, int argIndex, MethodHandle getter) {
+        this.constant = constant;
+        this.argIndex = argIndex;
+        this.getter = getter;
+    }
+
+    /**
+     * 解析拦截字段；第一个参数为 String 时直接使用该参数，否则取第一个声明了该字段的参数「含父类字段」
+     */
+    public static RateLimiterKeyExtractor create(Method method, String key) {
+        if (StringUtils.isBlank(key)) {
+            throw new RuntimeException("annotation RateLimiter uId is null！");
+        }
+        if (ALL.equals(key)) {
+            return new RateLimiterKeyExtractor(ALL, -1, null);
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length > 0 && String.class == parameterTypes[0]) {
+            return new RateLimiterKeyExtractor(null, 0, null);
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Field field = getFieldByName(parameterTypes[i], key);
+            if (null == field) continue;
+            try {
+                // 使用lombok时，uId这种字段的get方法与idea生成的get方法不同，直接读取字段
+                field.setAccessible(true);
+                MethodHandle getter = MethodHandles.lookup().unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                return new RateLimiterKeyExtractor(null, i, getter);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("annotation RateLimiter key field is not accessible: " + key, e);
+            }
+        }
+        throw new RuntimeException("annotation RateLimiter key field not found: " + method.getName() + "." + key);
+    }
+
+    public String extract(Object[] args) {
+        if (null != constant) return constant;
+        Object arg = args[argIndex];
+        if (null == getter || null == arg) return String.valueOf(arg);
+        try {
+            return String.valueOf((Object) getter.invokeExact(arg));
+        } catch (Throwable e) {
+            throw new RuntimeException("获取限流属性值失败", e);
+        }
+    }
+
+    private static Field getFieldByName(Class<?> type, String name) {
+        for (Class<?> clazz = type; null != clazz && Object.class != clazz; clazz = clazz.getSuperclass()) {
+            try {
+                return clazz.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+                // 继续查找父类
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,87 @@
+package cn.bugstack.aop;
+
+import cn.bugstack.types.annotations.RateLimiterAccessInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author gzc
+ * @description 限流注解元数据；启动时扫描 @RateLimiterAccessInterceptor 方法，预先解析限流标识提取和回调方法的 MethodHandle。
+ * RateLimiterAOP 每次请求只查一次 Map，不再反射查找字段和回调方法；回调方法不存在时启动失败，不等到第一次限流才暴露。
+ */
+@Slf4j
+@Component
+public class RateLimiterMetadataRegistry implements BeanPostProcessor {
+
+    // 注解方法 -> 元数据
+    private final Map<Method, RateLimiterMetadata> metadataMap = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        Class<?> targetClass = ClassUtils.getUserClass(AopUtils.getTargetClass(bean));
+        Map<Method, RateLimiterAccessInterceptor> annotatedMethods = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<RateLimiterAccessInterceptor>) method -> AnnotatedElementUtils.findMergedAnnotation(method, RateLimiterAccessInterceptor.class));
+        for (Map.Entry<Method, RateLimiterAccessInterceptor> entry : annotatedMethods.entrySet()) {
+            metadataMap.put(entry.getKey(), create(targetClass, entry.getKey(), entry.getValue()));
+            log.info("限流注解方法注册 {}.{}", targetClass.getSimpleName(), entry.getKey().getName());
+        }
+        return bean;
+    }
+
+    /**
+     * 获取元数据；未在启动时注册的方法「如容器外创建的对象」在首次调用时解析
+     */
+    public RateLimiterMetadata get(Method method, Class<?> targetClass, RateLimiterAccessInterceptor rateLimiterAccessInterceptor) {
+        RateLimiterMetadata metadata = metadataMap.get(method);
+        if (null != metadata) return metadata;
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        return metadataMap.computeIfAbsent(specificMethod, key -> create(ClassUtils.getUserClass(targetClass), key, rateLimiterAccessInterceptor));
+    }
+
+    private RateLimiterMetadata create(Class<?> targetClass, Method method, RateLimiterAccessInterceptor rateLimiterAccessInterceptor) {
+        return new RateLimiterMetadata(method.getName(),
+                RateLimiterKeyExtractor.create(method, rateLimiterAccessInterceptor.key()),
+                FallbackMethod.create(targetClass, method, rateLimiterAccessInterceptor.fallbackMethod()));
+    }
+
+    public static class RateLimiterMetadata {
+
+        // 限流名称，不同方法的限流互不影响
+        private final String name;
+        private final RateLimiterKeyExtractor keyExtractor;
+        private final FallbackMethod fallback;
+
+        private RateLimiterMetadata(String name, RateLimiterKeyExtractor keyExtractor, FallbackMethod fallback) {
+            this.name = name;
+            this.keyExtractor = keyExtractor;
+            this.fallback = fallback;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String extractKey(Object[] args) {
+            return keyExtractor.extract(args);
+        }
+
+        /**
+         * 调用回调方法；调用对象为代理对象，与直接调用方法一致
+         */
+        public Object invokeFallback(Object target, Object[] args) throws Throwable {
+            return fallback.invoke(target, args);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package cn.bugstack.aop;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.types.common.Constants;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author gzc
+ * @description 分布式限流；GCRA 限流状态和黑名单计数保存在 Redis，多个节点共享同一个限流速率，黑名单不随发布丢失。
+ * 1. 速率较高时一次预取一个窗口内的令牌在本地扣减，窗口到期后丢弃未使用的令牌，预取只会少放行不会多放行。
+ * 启用黑名单的限流不预取：其他节点持有未用完的令牌时本节点会拒绝，这类拒绝不是真正超频，不能计入黑名单
+ * 2. 进入黑名单的标识在本地缓存，缓存期内不再访问 Redis
+ * 3. Redis 异常时不因限流组件故障拒绝请求，改用调用方传入的降级限流「RateLimiterAOP 为单机 Guava 限流」；
+ * 异常后 redis-failure-backoff-millis 内不再访问 Redis，直接降级，避免每个请求都等待 Redis 超时
+ */
+@Slf4j
+@Component
+public class RedisRateLimiter {
+
+    @Resource
+    private IRedisService redisService;
+
+    // 令牌预取窗口；一次预取该时长内可放行的令牌
+    @Value("${rate-limiter.prefetch-millis:100}")
+    private long prefetchMillis;
+
+    // 一次预取的最大令牌数
+    @Value("${rate-limiter.max-prefetch:50}")
+    private long maxPrefetch;
+
+    @Value("${rate-limiter.blacklist-expire-hours:24}")
+    private long blacklistExpireHours;
+
+    // 黑名单本地缓存时长；Redis 中删除黑名单后，最晚在该时长后生效
+    @Value("${rate-limiter.blacklist-local-seconds:60}")
+    private long blacklistLocalSeconds;
+
+    // Redis 异常后直接降级的时长
+    @Value("${rate-limiter.redis-failure-backoff-millis:1000}")
+    private long redisFailureBackoffMillis;
+
+    // 降级截止时间；在此之前不访问 Redis
+    private volatile long redisRetryTime;
+
+    // {方法_标识} -> 本地预取的令牌
+    private final Cache<String, TokenBatch> tokenBatches = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    private Cache<String, Boolean> blacklist;
+
+    @PostConstruct
+    public void init() {
+        blacklist = CacheBuilder.newBuilder()
+                .expireAfterWrite(blacklistLocalSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取一个令牌；Redis 异常时放行
+     *
+     * @param name             限流名称，不同方法的限流互不影响
+     * @param key              拦截标识
+     * @param permitsPerSecond 每秒的访问频次限制
+     * @param blacklistCount   限流超过该次数后进入黑名单，0 为不启用
+     * @return true = 放行
+     */
+    public boolean tryAcquire(String name, String key, double permitsPerSecond, double blacklistCount) {
+        return tryAcquire(name, key, permitsPerSecond, blacklistCount, () -> true);
+    }
+
+    /**
+     * 获取一个令牌
+     *
+     * @param name             限流名称，不同方法的限流互不影响
+     * @param key              拦截标识
+     * @param permitsPerSecond 每秒的访问频次限制
+     * @param blacklistCount   限流超过该次数后进入黑名单，0 为不启用
+     * @param fallback         Redis 异常或降级期间使用的限流
+     * @return true = 放行
+     */
+    public boolean tryAcquire(String name, String key, double permitsPerSecond, double blacklistCount, BooleanSupplier fallback) {
+        String tag = "{" + name + Constants.UNDERLINE + key + "}";
+        if (blacklistCount > 0 && null != blacklist.getIfPresent(tag)) {
+            log.debug("限流-黑名单拦截：{}", tag);
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        TokenBatch tokenBatch = tokenBatches.getIfPresent(tag);
+        if (null != tokenBatch && tokenBatch.tryAcquire(now)) return true;
+        if (now < redisRetryTime) return fallback.getAsBoolean();
+
+        // 1 秒的突发，与 Guava RateLimiter 一致；速率低于 1 次/秒时只允许 1 次
+        long intervalMicros = Math.max(1L, Math.round(TimeUnit.SECONDS.toMicros(1) / permitsPerSecond));
+        long burstMicros = Math.max(intervalMicros, TimeUnit.SECONDS.toMicros(1));
+        long requestCount = blacklistCount > 0 ? 1L : Math.max(1L, Math.min(maxPrefetch, (long) (permitsPerSecond * prefetchMillis / 1000)));
+
+        long grantedCount;
+        try {
+            grantedCount = redisService.acquireRateLimit(Constants.RedisKey.RATE_LIMITER_KEY + tag, Constants.RedisKey.RATE_LIMITER_BLACKLIST_KEY + tag,
+                    intervalMicros, burstMicros, requestCount, blacklistCount, TimeUnit.HOURS.toMillis(blacklistExpireHours));
+        } catch (Exception e) {
+            redisRetryTime = System.currentTimeMillis() + redisFailureBackoffMillis;
+            log.error("限流-获取令牌失败，{}ms 内降级限流 {}", redisFailureBackoffMillis, tag, e);
+            return fallback.getAsBoolean();
+        }
+
+        if (grantedCount < 0) {
+            blacklist.put(tag, Boolean.TRUE);
+            log.debug("限流-黑名单拦截({}h)：{}", blacklistExpireHours, tag);
+            return false;
+        }
+        if (0 == grantedCount) {
+            log.debug("限流-超频次拦截：{}", tag);
+            return false;
+        }
+        if (grantedCount > 1) {
+            tokenBatches.put(tag, new TokenBatch(grantedCount - 1, now + prefetchMillis));
+        }
+        return true;
+    }
+
+    private static class TokenBatch {
+        private final AtomicLong remaining;
+        private final long expireTime;
+
+        private TokenBatch(long remaining, long expireTime) {
+            this.remaining = new AtomicLong(remaining);
+            this.expireTime = expireTime;
+        }
+
+        private boolean tryAcquire(long now) {
+            if (expireTime <= now) return false;
+            for (; ; ) {
+                long current = remaining.get();
+                if (current <= 0) return false;
+                if (remaining.compareAndSet(current, current - 1)) return true;
+            }
+        }
+    }
+
+}
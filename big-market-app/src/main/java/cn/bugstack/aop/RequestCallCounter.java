@@ -0,0 +1,43 @@
+package cn.bugstack.aop;
+
+/**
+ * @author gzc
+ * @description 单次请求的 Redis 调用、数据库语句计数；请求线程内累加，异步线程中的调用不计入发起请求
+ */
+public class RequestCallCounter {
+
+    public static final int REDIS = 0;
+    public static final int DB = 1;
+
+    private static final ThreadLocal<long[]> COUNTS = new ThreadLocal<>();
+
+    /**
+     * 开始计数
+     *
+     * @return false = 外层请求已在计数，由外层结束
+     */
+    public static boolean start() {
+        if (null != COUNTS.get()) return false;
+        COUNTS.set(new long[2]);
+        return true;
+    }
+
+    /**
+     * 结束计数
+     *
+     * @return [Redis 调用次数, 数据库语句数]
+     */
+    public static long[] stop() {
+        long[] counts = COUNTS.get();
+        COUNTS.remove();
+        return null == counts ? new long[2] : counts;
+    }
+
+    public static void increment(int type) {
+        long[] counts = COUNTS.get();
+        if (null != counts) {
+            counts[type]++;
+        }
+    }
+
+}
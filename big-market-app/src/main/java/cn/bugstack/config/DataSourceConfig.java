@@ -1,5 +1,6 @@
 package cn.bugstack.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.elasticsearch.xpack.sql.jdbc.EsDataSource;
@@ -41,10 +42,10 @@ public class DataSourceConfig {
     static class MysqlMyBatisConfig {
 
         @Bean("mysqlSqlSessionFactory")
-        public SqlSessionFactory mysqlSqlSessionFactory(DataSource mysqlDataSource, Interceptor dbRouterDynamicMybatisPlugin) throws Exception {
+        public SqlSessionFactory mysqlSqlSessionFactory(DataSource mysqlDataSource, Interceptor dbRouterDynamicMybatisPlugin, MeterRegistry meterRegistry) throws Exception {
             SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
             factoryBean.setDataSource(mysqlDataSource);
-            factoryBean.setPlugins(dbRouterDynamicMybatisPlugin);
+            factoryBean.setPlugins(dbRouterDynamicMybatisPlugin, new SqlStatementMetricsInterceptor(meterRegistry));
             factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath:/mybatis/mapper/mysql/*.xml"));
             return factoryBean.getObject();
         }
@@ -0,0 +1,24 @@
+package cn.bugstack.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author gzc
+ * @description 按业务拆分的线程池配置；thread.pool.executors.{名称}.*，配置项与 ThreadPoolConfigProperties 一致
+ */
+@Data
+@ConfigurationProperties(prefix = "thread.pool", ignoreInvalidFields = true)
+public class NamedThreadPoolConfigProperties {
+
+    /** 线程池名称 -> 配置 */
+    private Map<String, ThreadPoolConfigProperties> executors = new HashMap<>();
+
+    public ThreadPoolConfigProperties get(String name) {
+        return executors.getOrDefault(name, new ThreadPoolConfigProperties());
+    }
+
+}
@@ -0,0 +1,37 @@
+package cn.bugstack.config;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author gzc
+ * @description RabbitMQ 批量消费配置；监听方法以 List 接收一批消息，批内消息按分库合并入库
+ */
+@Configuration
+public class RabbitMQConfig {
+
+    /**
+     * 批量消费容器；prefetch 需不小于 batchSize，否则一批凑不满只能等待 receiveTimeout
+     */
+    @Bean("batchRabbitListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                    ConnectionFactory connectionFactory,
+                                                                                    @Value("${spring.rabbitmq.batch-listener.batch-size:50}") int batchSize,
+                                                                                    @Value("${spring.rabbitmq.batch-listener.prefetch:100}") int prefetch,
+                                                                                    @Value("${spring.rabbitmq.batch-listener.receive-timeout-millis:200}") long receiveTimeoutMillis) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        // 凑批等待时间，超时后按已收到的消息投递
+        factory.setReceiveTimeout(receiveTimeoutMillis);
+        return factory;
+    }
+
+}
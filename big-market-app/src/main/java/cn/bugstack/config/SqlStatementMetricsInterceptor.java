@@ -0,0 +1,52 @@
+package cn.bugstack.config;
+
+import cn.bugstack.aop.RequestCallCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @author gzc
+ * @description 数据库语句计数插件；按语句类型累加 db_statements 指标，同时计入当前请求的数据库语句数
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class SqlStatementMetricsInterceptor implements Interceptor {
+
+    // 语句类型 -> 计数
+    private final Map<SqlCommandType, Counter> counters = new EnumMap<>(SqlCommandType.class);
+
+    public SqlStatementMetricsInterceptor(MeterRegistry meterRegistry) {
+        for (SqlCommandType sqlCommandType : SqlCommandType.values()) {
+            counters.put(sqlCommandType, Counter.builder("db_statements")
+                    .tag("type", sqlCommandType.name().toLowerCase())
+                    .description("数据库语句数")
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+        counters.get(mappedStatement.getSqlCommandType()).increment();
+        RequestCallCounter.increment(RequestCallCounter.DB);
+        return invocation.proceed();
+    }
+
+}
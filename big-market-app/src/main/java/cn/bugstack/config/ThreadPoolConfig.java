@@ -1,50 +1,97 @@
 package cn.bugstack.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 线程池配置；按业务拆分线程池，库存同步的突发任务不占用其他业务的线程和队列。
+ * 每个线程池的线程名以线程池名称开头，队列深度、活跃线程数等通过 executor_* 指标上报，拒绝次数上报为 executor_rejected；
+ * mode = virtual 时工作线程为虚拟线程「JDK 21+，低版本回退为平台线程」
+ */
 @Slf4j
 @EnableAsync
 @Configuration
-@EnableConfigurationProperties(ThreadPoolConfigProperties.class)
+@EnableConfigurationProperties({ThreadPoolConfigProperties.class, NamedThreadPoolConfigProperties.class})
 public class ThreadPoolConfig {
 
     @Bean
-    @ConditionalOnMissingBean(ThreadPoolExecutor.class)
-    public ThreadPoolExecutor threadPoolExecutor(ThreadPoolConfigProperties properties) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-        // 实例化策略
-        RejectedExecutionHandler handler;
-        switch (properties.getPolicy()){
-            case "AbortPolicy":
-                handler = new ThreadPoolExecutor.AbortPolicy();
-                break;
-            case "DiscardPolicy":
-                handler = new ThreadPoolExecutor.DiscardPolicy();
-                break;
-            case "DiscardOldestPolicy":
-                handler = new ThreadPoolExecutor.DiscardOldestPolicy();
-                break;
-            case "CallerRunsPolicy":
-                handler = new ThreadPoolExecutor.CallerRunsPolicy();
-                break;
-            default:
-                handler = new ThreadPoolExecutor.AbortPolicy();
-                break;
-        }
+    @Primary
+    @ConditionalOnMissingBean(name = "threadPoolExecutor")
+    public ThreadPoolExecutor threadPoolExecutor(ThreadPoolConfigProperties properties, MeterRegistry meterRegistry) {
+        return createThreadPoolExecutor("default", properties, meterRegistry);
+    }
+
+    /**
+     * 库存同步线程池；UpdateAwardStockJob、UpdateActivitySkuStockJob 使用
+     */
+    @Bean("stockSyncExecutor")
+    public ThreadPoolExecutor stockSyncExecutor(NamedThreadPoolConfigProperties properties, MeterRegistry meterRegistry) {
+        return createThreadPoolExecutor("stock-sync", properties.get("stock-sync"), meterRegistry);
+    }
+
+    private ThreadPoolExecutor createThreadPoolExecutor(String name, ThreadPoolConfigProperties properties, MeterRegistry meterRegistry) {
+        // 实例化策略；拒绝时先计数
+        RejectedExecutionHandler handler = rejectedExecutionHandler(properties.getPolicy());
+        Counter rejectedCounter = Counter.builder("executor_rejected").tag("name", name).description("线程池拒绝的任务数").register(meterRegistry);
+        RejectedExecutionHandler countedHandler = (runnable, executor) -> {
+            rejectedCounter.increment();
+            handler.rejectedExecution(runnable, executor);
+        };
+
         // 创建线程池
-        return new ThreadPoolExecutor(properties.getCorePoolSize(),
+        ThreadFactory threadFactory = threadFactory(name, properties.getMode());
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(properties.getCorePoolSize(),
                 properties.getMaxPoolSize(),
                 properties.getKeepAliveTime(),
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(properties.getBlockQueueSize()),
-                Executors.defaultThreadFactory(),
-                handler);
+                threadFactory,
+                countedHandler);
+
+        // 队列深度、活跃线程数、完成任务数
+        new ExecutorServiceMetrics(threadPoolExecutor, name, Tags.empty()).bindTo(meterRegistry);
+        log.info("线程池创建 name:{} corePoolSize:{} maxPoolSize:{} blockQueueSize:{} policy:{} mode:{}", name, properties.getCorePoolSize(), properties.getMaxPoolSize(), properties.getBlockQueueSize(), properties.getPolicy(), properties.getMode());
+        return threadPoolExecutor;
+    }
+
+    /**
+     * 线程工厂；线程名为 {线程池名称}-{序号}
+     */
+    public static ThreadFactory threadFactory(String name, String mode) {
+        if ("virtual".equals(mode)) {
+            if (VirtualThreads.isSupported()) {
+                return VirtualThreads.threadFactory(name + "-");
+            }
+            log.warn("线程池 {} 配置为虚拟线程，当前 JDK {} 不支持「需要 JDK {}+」，回退为平台线程", name, VirtualThreads.javaVersion(), VirtualThreads.MIN_JAVA_VERSION);
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+    }
+
+    private RejectedExecutionHandler rejectedExecutionHandler(String policy) {
+        switch (policy) {
+            case "DiscardPolicy":
+                return new ThreadPoolExecutor.DiscardPolicy();
+            case "DiscardOldestPolicy":
+                return new ThreadPoolExecutor.DiscardOldestPolicy();
+            case "CallerRunsPolicy":
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case "AbortPolicy":
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
     }
 
 }
@@ -22,5 +22,11 @@ public class ThreadPoolConfigProperties {
      * CallerRunsPolicy：如果任务添加线程池失败，那么主线程自己执行该任务
      * */
     private String policy = "AbortPolicy";
+    /*
+     * platform：平台线程
+     * virtual：虚拟线程，仅 JDK 21 及以上生效，低版本回退为平台线程。线程池大小、队列、拒绝策略不变，仍用来限制并发和排队，
+     * 工作线程改为虚拟线程，阻塞在数据库、Redis 调用上时不占用平台线程
+     * */
+    private String mode = "platform";
 
 }
@@ -0,0 +1,79 @@
+package cn.bugstack.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author gzc
+ * @description 虚拟线程支持；工程按 Java 8 编译，JDK 21 及以上运行时通过反射调用 Thread.ofVirtual() 创建虚拟线程工厂，
+ * 低版本 JDK 或反射失败时判定为不支持，由调用方回退为平台线程
+ */
+public final class VirtualThreads {
+
+    public static final int MIN_JAVA_VERSION = 21;
+
+    // Thread.ofVirtual()、Thread.Builder.name(String, long)、Thread.Builder.factory()；不支持时为 null
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        if (javaVersion() >= MIN_JAVA_VERSION) {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                builderName = builderClass.getMethod("name", String.class, long.class);
+                builderFactory = builderClass.getMethod("factory");
+            } catch (ReflectiveOperationException e) {
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * 虚拟线程工厂；线程名为 namePrefix + 序号「从 1 开始」
+     *
+     * @throws IllegalStateException 当前 JDK 不支持虚拟线程
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("virtual threads require JDK " + MIN_JAVA_VERSION + "+, current: " + System.getProperty("java.specification.version"));
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create virtual thread factory failed", e);
+        }
+    }
+
+    /**
+     * 运行时 Java 主版本号；java.specification.version 在 Java 8 为 1.8，Java 9 起为 9、17、21
+     */
+    public static int javaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+}
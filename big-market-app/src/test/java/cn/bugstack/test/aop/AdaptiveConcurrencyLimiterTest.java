@@ -0,0 +1,114 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.AdaptiveConcurrencyLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gzc
+ * @description 自适应并发限制测试；耗时稳定时限制扩大，耗时上升或超时时收缩，并发未用到一半时不调整
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void test_release_stableRtt_grow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 10, 200, TIMEOUT_NANOS, true);
+        for (int i = 0; i < 20; i++) {
+            fullLoad(limiter, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        log.info("耗时稳定 limit:{}", limiter.getLimit());
+        Assert.assertTrue(limiter.getLimit() > 20);
+        Assert.assertTrue(limiter.getLimit() <= 200);
+    }
+
+    @Test
+    public void test_release_rttRise_shrink() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 100, TIMEOUT_NANOS, true);
+        fullLoad(limiter, TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(100, limiter.getLimit());
+
+        // 耗时上升到长期耗时的 10 倍
+        fullLoad(limiter, TimeUnit.MILLISECONDS.toNanos(100));
+        int shrunk = limiter.getLimit();
+        log.info("耗时上升 limit:{}", shrunk);
+        Assert.assertTrue(shrunk < 100);
+        Assert.assertTrue(shrunk >= 10);
+
+        // 耗时恢复后限制回升
+        for (int i = 0; i < 20; i++) {
+            fullLoad(limiter, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        log.info("耗时恢复 limit:{}", limiter.getLimit());
+        Assert.assertTrue(limiter.getLimit() > shrunk);
+    }
+
+    @Test
+    public void test_release_timeout_backoff() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 200, TIMEOUT_NANOS, true);
+
+        // 超时直接收缩到 0.9 倍，不要求并发用到限制的一半
+        Assert.assertTrue(limiter.tryAcquire());
+        limiter.release(TIMEOUT_NANOS);
+        Assert.assertEquals(90, limiter.getLimit());
+
+        // 连续超时收缩到最小并发限制为止
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(TIMEOUT_NANOS * 2);
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void test_release_idle_unchanged() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 200, TIMEOUT_NANOS, true);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(i % 2 == 0 ? 10 : 100));
+        }
+        Assert.assertEquals(100, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    public void test_release_notAdaptive_fixed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 10, 50, TIMEOUT_NANOS, false);
+        Assert.assertEquals(50, limiter.getLimit());
+        fullLoad(limiter, TIMEOUT_NANOS);
+        fullLoad(limiter, TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(50, limiter.getLimit());
+    }
+
+    @Test
+    public void test_tryAcquire_limit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 10, 10, TIMEOUT_NANOS, true);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(10, limiter.getInflight());
+
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * 占满并发限制后全部以指定耗时释放
+     */
+    private void fullLoad(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limiter.release(rttNanos);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.BulkheadAOP;
+import cn.bugstack.types.annotations.BulkheadAccessInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * @author gzc
+ * @description 并发隔离切面测试；异常、超出并发限制、熔断时调用回调方法，熔断期间不再执行方法
+ */
+@Slf4j
+public class BulkheadAOPTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BulkheadAOP bulkheadAOP = new BulkheadAOP();
+    private final DrawService drawService = new DrawService();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(bulkheadAOP, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(bulkheadAOP, "adaptive", true);
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerEnabled", true);
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerWindowMillis", 10000L);
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerRequestVolumeThreshold", 20);
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerErrorThresholdPercentage", 50);
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerSleepWindowMillis", 5000L);
+    }
+
+    @Test
+    public void test_doRouter_success() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenReturn("ok");
+
+        Assert.assertEquals("ok", doRouter(jp, "draw"));
+        Assert.assertEquals(0, meterRegistry.get("bulkhead_inflight").tag("endpoint", "draw").gauge().value(), 0);
+        Assert.assertEquals(0, meterRegistry.get("bulkhead_circuit_open").tag("endpoint", "draw").gauge().value(), 0);
+    }
+
+    @Test
+    public void test_doRouter_error_fallback() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenThrow(new RuntimeException("redis timeout"));
+
+        Assert.assertEquals("fallback", doRouter(jp, "draw"));
+        Assert.assertEquals(1.0, meterRegistry.get("bulkhead_error").tag("endpoint", "draw").counter().count(), 0);
+    }
+
+    @Test
+    public void test_doRouter_circuitOpen() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenThrow(new RuntimeException("redis timeout"));
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("fallback", doRouter(jp, "draw"));
+        }
+        Assert.assertEquals(1, meterRegistry.get("bulkhead_circuit_open").tag("endpoint", "draw").gauge().value(), 0);
+
+        // 熔断期间不再执行方法
+        Assert.assertEquals("fallback", doRouter(jp, "draw"));
+        Mockito.verify(jp, Mockito.times(20)).proceed();
+        Assert.assertEquals(1.0, meterRegistry.get("bulkhead_short_circuited").tag("endpoint", "draw").counter().count(), 0);
+    }
+
+    @Test
+    public void test_doRouter_circuitDisabled() throws Throwable {
+        ReflectionTestUtils.setField(bulkheadAOP, "circuitBreakerEnabled", false);
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenThrow(new RuntimeException("redis timeout"));
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals("fallback", doRouter(jp, "draw"));
+        }
+        Mockito.verify(jp, Mockito.times(30)).proceed();
+        Assert.assertNull(meterRegistry.find("bulkhead_circuit_open").gauge());
+    }
+
+    @Test
+    public void test_doRouter_rejected() throws Throwable {
+        ProceedingJoinPoint inner = joinPoint("drawSingle");
+        ProceedingJoinPoint outer = joinPoint("drawSingle");
+        // 并发限制为 1，执行中再次进入时被拒绝
+        Mockito.when(outer.proceed()).thenAnswer(invocation -> doRouter(inner, "drawSingle"));
+
+        Assert.assertEquals("fallback", doRouter(outer, "drawSingle"));
+        Mockito.verify(inner, Mockito.never()).proceed();
+        Assert.assertEquals(1.0, meterRegistry.get("bulkhead_rejected").tag("endpoint", "drawSingle").counter().count(), 0);
+    }
+
+    private Object doRouter(ProceedingJoinPoint jp, String methodName) throws Throwable {
+        Method method = DrawService.class.getMethod(methodName, String.class);
+        return bulkheadAOP.doRouter(jp, method.getAnnotation(BulkheadAccessInterceptor.class));
+    }
+
+    private ProceedingJoinPoint joinPoint(String methodName) throws NoSuchMethodException {
+        MethodSignature signature = Mockito.mock(MethodSignature.class);
+        Mockito.when(signature.getMethod()).thenReturn(DrawService.class.getMethod(methodName, String.class));
+        ProceedingJoinPoint jp = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(jp.getSignature()).thenReturn(signature);
+        Mockito.when(jp.getTarget()).thenReturn(drawService);
+        Mockito.when(jp.getThis()).thenReturn(drawService);
+        Mockito.when(jp.getArgs()).thenReturn(new Object[]{"xiaofuge"});
+        return jp;
+    }
+
+    public static class DrawService {
+
+        @BulkheadAccessInterceptor(fallbackMethod = "drawError")
+        public String draw(String userId) {
+            return "ok";
+        }
+
+        @BulkheadAccessInterceptor(fallbackMethod = "drawError", initialLimit = 1, minLimit = 1, maxLimit = 1)
+        public String drawSingle(String userId) {
+            return "ok";
+        }
+
+        public String drawError(String userId) {
+            return "fallback";
+        }
+
+    }
+
+}
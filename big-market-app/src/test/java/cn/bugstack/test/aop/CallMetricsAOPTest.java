@@ -0,0 +1,116 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.CallMetricsAOP;
+import cn.bugstack.aop.RequestCallCounter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * @author gzc
+ * @description 调用计数切面测试；Redis 调用按方法计数，单次请求的 Redis 调用次数、数据库语句数在请求结束时记录，请求异常同样记录
+ */
+@Slf4j
+public class CallMetricsAOPTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CallMetricsAOP callMetricsAOP = new CallMetricsAOP();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(callMetricsAOP, "meterRegistry", meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        RequestCallCounter.stop();
+    }
+
+    @Test
+    public void test_doRequest_counts() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenAnswer(invocation -> {
+            callMetricsAOP.doRedis(joinPoint("getValue"));
+            callMetricsAOP.doRedis(joinPoint("getValue"));
+            callMetricsAOP.doRedis(joinPoint("decr"));
+            RequestCallCounter.increment(RequestCallCounter.DB);
+            return "ok";
+        });
+
+        Assert.assertEquals("ok", callMetricsAOP.doRequest(jp));
+        Assert.assertEquals(2.0, meterRegistry.get("redis_calls").tag("method", "getValue").counter().count(), 0);
+        Assert.assertEquals(1.0, meterRegistry.get("redis_calls").tag("method", "decr").counter().count(), 0);
+        assertSummary("request_redis_calls", "draw", 1, 3);
+        assertSummary("request_db_statements", "draw", 1, 1);
+    }
+
+    @Test
+    public void test_doRequest_error() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("draw");
+        Mockito.when(jp.proceed()).thenAnswer(invocation -> {
+            callMetricsAOP.doRedis(joinPoint("getValue"));
+            throw new RuntimeException("redis timeout");
+        });
+
+        try {
+            callMetricsAOP.doRequest(jp);
+            Assert.fail("未抛出异常");
+        } catch (RuntimeException e) {
+            log.info("预期异常：{}", e.getMessage());
+        }
+        assertSummary("request_redis_calls", "draw", 1, 1);
+        // 计数已清理，下一个请求重新开始
+        Assert.assertTrue(RequestCallCounter.start());
+    }
+
+    @Test
+    public void test_doRequest_nested() throws Throwable {
+        ProceedingJoinPoint inner = joinPoint("queryRaffleAwardList");
+        Mockito.when(inner.proceed()).thenAnswer(invocation -> {
+            callMetricsAOP.doRedis(joinPoint("getValue"));
+            return null;
+        });
+        ProceedingJoinPoint outer = joinPoint("draw");
+        Mockito.when(outer.proceed()).thenAnswer(invocation -> {
+            callMetricsAOP.doRedis(joinPoint("getValue"));
+            return callMetricsAOP.doRequest(inner);
+        });
+
+        callMetricsAOP.doRequest(outer);
+        // 内层请求计入外层，不单独记录
+        assertSummary("request_redis_calls", "draw", 1, 2);
+        Assert.assertNull(meterRegistry.find("request_redis_calls").tag("endpoint", "queryRaffleAwardList").summary());
+    }
+
+    @Test
+    public void test_doRedis_outsideRequest() {
+        callMetricsAOP.doRedis(joinPoint("getValue"));
+        Assert.assertEquals(1.0, meterRegistry.get("redis_calls").tag("method", "getValue").counter().count(), 0);
+        // 请求外的调用不计入请求
+        Assert.assertArrayEquals(new long[2], RequestCallCounter.stop());
+    }
+
+    private ProceedingJoinPoint joinPoint(String methodName) {
+        Signature signature = Mockito.mock(Signature.class);
+        Mockito.when(signature.getName()).thenReturn(methodName);
+        ProceedingJoinPoint jp = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(jp.getSignature()).thenReturn(signature);
+        return jp;
+    }
+
+    private void assertSummary(String name, String endpoint, long count, double total) {
+        DistributionSummary summary = meterRegistry.get(name).tag("endpoint", endpoint).summary();
+        Assert.assertEquals(count, summary.count());
+        Assert.assertEquals(total, summary.totalAmount(), 0);
+    }
+
+}
@@ -0,0 +1,111 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.CircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gzc
+ * @description 异常比例熔断测试；10 秒窗口、20 次请求、50% 异常比例熔断，5 秒后放行一个试探请求
+ */
+@Slf4j
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(10000, 20, 50, 5000, clock::get);
+
+    @Test
+    public void test_onError_open() {
+        record(10, 10);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_onError_belowRequestVolume() {
+        record(0, 19);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_onError_belowErrorPercentage() {
+        record(15, 5);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_onError_windowExpired() {
+        record(0, 10);
+        // 窗口外的异常不计入
+        advanceMillis(11000);
+        record(9, 1);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_halfOpen_success_close() {
+        record(0, 20);
+        advanceMillis(4999);
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        // 休眠窗口过后只放行一个试探请求
+        advanceMillis(1);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest());
+
+        // 恢复后重新统计，之前的异常不计入
+        record(0, 19);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_halfOpen_error_reopen() {
+        record(0, 20);
+        advanceMillis(5000);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.onError();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        // 重新计算休眠窗口
+        advanceMillis(5000);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_halfOpen_notExecuted_retry() {
+        record(0, 20);
+        advanceMillis(5000);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+
+        // 试探请求超出并发限制未执行，下一个请求重新试探
+        circuitBreaker.onNotExecuted();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest());
+    }
+
+    private void record(int successCount, int errorCount) {
+        for (int i = 0; i < successCount; i++) {
+            circuitBreaker.onSuccess();
+        }
+        for (int i = 0; i < errorCount; i++) {
+            circuitBreaker.onError();
+        }
+    }
+
+    private void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+}
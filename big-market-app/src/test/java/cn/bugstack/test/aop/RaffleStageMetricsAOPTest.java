@@ -0,0 +1,145 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.RaffleStageMetricsAOP;
+import cn.bugstack.domain.activity.model.entity.UserRaffleOrderEntity;
+import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.stereotype.Component;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * @author gzc
+ * @description 抽奖分阶段耗时切面测试；成功、异常的调用都记录 raffle_stage，outcome 标签区分，责任链只记录最外层一次
+ */
+@Slf4j
+public class RaffleStageMetricsAOPTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RaffleStageMetricsAOP raffleStageMetricsAOP = new RaffleStageMetricsAOP();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(raffleStageMetricsAOP, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(raffleStageMetricsAOP, "strategyBuckets", 8);
+    }
+
+    @Test
+    public void test_doPartake_success() throws Throwable {
+        UserRaffleOrderEntity order = UserRaffleOrderEntity.builder().strategyId(100001L).build();
+        ProceedingJoinPoint jp = joinPoint("createOrder", new Object[]{"xiaofuge", 100301L});
+        Mockito.when(jp.proceed()).thenReturn(order);
+
+        Assert.assertSame(order, raffleStageMetricsAOP.doPartake(jp));
+        Assert.assertEquals(1, timer("partake", "createOrder", "1", "success").count());
+    }
+
+    @Test
+    public void test_doPartake_error() throws Throwable {
+        ProceedingJoinPoint jp = joinPoint("createOrder", new Object[]{"xiaofuge", 100301L});
+        Mockito.when(jp.proceed()).thenThrow(new AppException(ResponseCode.ACCOUNT_QUOTA_ERROR.getCode(), ResponseCode.ACCOUNT_QUOTA_ERROR.getInfo()));
+
+        assertThrows(() -> raffleStageMetricsAOP.doPartake(jp));
+        Assert.assertEquals(1, timer("partake", "createOrder", "none", "error").count());
+    }
+
+    @Test
+    public void test_doChain_outermostOnly() throws Throwable {
+        ProceedingJoinPoint inner = joinPoint("logic", new Object[]{"xiaofuge", 100001L});
+        Mockito.when(inner.proceed()).thenReturn(DefaultChainFactory.StrategyAwardVO.builder().awardId(101).logicModel("rule_default").build());
+        ProceedingJoinPoint outer = joinPoint("logic", new Object[]{"xiaofuge", 100001L});
+        Mockito.when(outer.proceed()).thenAnswer(invocation -> raffleStageMetricsAOP.doChain(inner));
+
+        raffleStageMetricsAOP.doChain(outer);
+        Assert.assertEquals(1, timer("chain", "rule_default", "1", "success").count());
+        Assert.assertEquals(1, meterRegistry.find("raffle_stage").tag("stage", "chain").timers().size());
+    }
+
+    @Test
+    public void test_doChain_error() throws Throwable {
+        ProceedingJoinPoint inner = joinPoint("logic", new Object[]{"xiaofuge", 100001L});
+        Mockito.when(inner.proceed()).thenThrow(new RuntimeException("redis timeout"));
+        ProceedingJoinPoint outer = joinPoint("logic", new Object[]{"xiaofuge", 100001L});
+        Mockito.when(outer.proceed()).thenAnswer(invocation -> raffleStageMetricsAOP.doChain(inner));
+
+        assertThrows(() -> raffleStageMetricsAOP.doChain(outer));
+        Assert.assertEquals(1, timer("chain", "none", "1", "error").count());
+
+        // 异常后层级已恢复，下一次调用仍按最外层记录
+        ProceedingJoinPoint next = joinPoint("logicBatch", new Object[]{"xiaofuge", 100001L, 10});
+        Mockito.when(next.proceed()).thenReturn(null);
+        raffleStageMetricsAOP.doChain(next);
+        Assert.assertEquals(1, timer("chain", "batch", "1", "success").count());
+    }
+
+    @Test
+    public void test_doTree_nodeKey() throws Throwable {
+        ProceedingJoinPoint success = joinPoint("logic", new Object[]{"xiaofuge", 100001L, 101, "1", null});
+        Mockito.when(success.getTarget()).thenReturn(new LockTreeNode());
+        Mockito.when(success.proceed()).thenReturn(null);
+        ProceedingJoinPoint error = joinPoint("logic", new Object[]{"xiaofuge", 100001L, 101, "1", null});
+        Mockito.when(error.getTarget()).thenReturn(new LockTreeNode());
+        Mockito.when(error.proceed()).thenThrow(new RuntimeException("db timeout"));
+
+        raffleStageMetricsAOP.doTree(success);
+        assertThrows(() -> raffleStageMetricsAOP.doTree(error));
+        Assert.assertEquals(1, timer("tree", "rule_lock", "1", "success").count());
+        Assert.assertEquals(1, timer("tree", "rule_lock", "1", "error").count());
+    }
+
+    @Test
+    public void test_doAward_doPublish_error() throws Throwable {
+        ProceedingJoinPoint award = joinPoint("saveUserAwardRecord", new Object[]{null});
+        Mockito.when(award.proceed()).thenThrow(new RuntimeException("db timeout"));
+        ProceedingJoinPoint publish = joinPoint("publish", new Object[]{"send_award", "{}"});
+        Mockito.when(publish.proceed()).thenThrow(new RuntimeException("mq timeout"));
+
+        assertThrows(() -> raffleStageMetricsAOP.doAward(award));
+        assertThrows(() -> raffleStageMetricsAOP.doPublish(publish));
+        Assert.assertEquals(1, timer("award", "saveUserAwardRecord", "none", "error").count());
+        Assert.assertEquals(1, timer("mq_publish", "send_award", "none", "error").count());
+    }
+
+    private ProceedingJoinPoint joinPoint(String methodName, Object[] args) {
+        Signature signature = Mockito.mock(Signature.class);
+        Mockito.when(signature.getName()).thenReturn(methodName);
+        ProceedingJoinPoint jp = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(jp.getSignature()).thenReturn(signature);
+        Mockito.when(jp.getArgs()).thenReturn(args);
+        return jp;
+    }
+
+    private Timer timer(String stage, String step, String bucket, String outcome) {
+        Timer timer = meterRegistry.find("raffle_stage").tag("stage", stage).tag("step", step)
+                .tag("strategy_bucket", bucket).tag("outcome", outcome).timer();
+        Assert.assertNotNull(stage + "|" + step + "|" + bucket + "|" + outcome, timer);
+        return timer;
+    }
+
+    private void assertThrows(Invocation invocation) throws Throwable {
+        try {
+            invocation.invoke();
+            Assert.fail("未抛出异常");
+        } catch (Exception e) {
+            log.info("预期异常：{}", e.getMessage());
+        }
+    }
+
+    private interface Invocation {
+        void invoke() throws Throwable;
+    }
+
+    @Component("rule_lock")
+    public static class LockTreeNode {
+    }
+
+}
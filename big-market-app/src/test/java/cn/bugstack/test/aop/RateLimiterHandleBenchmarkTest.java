@@ -0,0 +1,119 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.FallbackMethod;
+import cn.bugstack.aop.RateLimiterKeyExtractor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * @author gzc
+ * @description 限流回调和标识提取的微基准；对比每次反射查找 + Method.invoke、缓存 Method 后 Method.invoke、启动时解析的 MethodHandle invokeExact。
+ * 预热后多轮取最好一轮的 ns/op，只用于比较量级；结果随 JVM 和机器变化，不做耗时断言。
+ * <p>
+ * 运行方式：big-market-app 的 surefire 配置了 skipTests，mvn test 不会执行，需编译后用 JUnitCore 直接运行，默认 JVM 参数
+ * <pre>
+ * mvn -B compile test-compile
+ * mvn -B -q -pl big-market-app dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp "big-market-app/target/test-classes:big-market-app/target/classes:$(cat big-market-app/cp.txt)" \
+ *     org.junit.runner.JUnitCore cn.bugstack.test.aop.RateLimiterHandleBenchmarkTest
+ * </pre>
+ * 参考结果「Temurin 17.0.9，1 核，预热 5 轮，每轮 200 万次取最好一轮」：
+ * 回调方法 getMethod + Method.invoke 55~57、Method.invoke 11~13、MethodHandle.invokeExact 15~16 ns/op；
+ * 限流标识 getDeclaredField + Field.get 28~32、Field.get 15、MethodHandle.invokeExact 14~17 ns/op
+ */
+@Slf4j
+public class RateLimiterHandleBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 2_000_000;
+
+    // 防止结果被 JIT 消除
+    private static volatile Object sink;
+
+    @Test
+    public void test_fallback_invoke() throws Throwable {
+        RaffleService target = new RaffleService();
+        Method method = RaffleService.class.getMethod("draw", DrawRequest.class);
+        Object[] args = new Object[]{new DrawRequest("xiaofuge")};
+
+        Method cachedFallback = RaffleService.class.getMethod("drawError", DrawRequest.class);
+        FallbackMethod fallbackMethod = FallbackMethod.create(RaffleService.class, method, "drawError");
+        Assert.assertEquals(cachedFallback.invoke(target, args), fallbackMethod.invoke(target, args));
+
+        long lookupInvoke = measure(() -> RaffleService.class.getMethod("drawError", method.getParameterTypes()).invoke(target, args));
+        long reflectInvoke = measure(() -> cachedFallback.invoke(target, args));
+        long handleInvoke = measure(() -> fallbackMethod.invoke(target, args));
+        log.info("回调方法 getMethod + Method.invoke: {} ns/op, Method.invoke: {} ns/op, MethodHandle.invokeExact: {} ns/op", lookupInvoke, reflectInvoke, handleInvoke);
+    }
+
+    @Test
+    public void test_key_extract() throws Throwable {
+        Method method = RaffleService.class.getMethod("draw", DrawRequest.class);
+        Object[] args = new Object[]{new DrawRequest("xiaofuge")};
+
+        Field cachedField = DrawRequest.class.getDeclaredField("userId");
+        cachedField.setAccessible(true);
+        RateLimiterKeyExtractor keyExtractor = RateLimiterKeyExtractor.create(method, "userId");
+        Assert.assertEquals("xiaofuge", keyExtractor.extract(args));
+
+        long lookupGet = measure(() -> {
+            Field field = args[0].getClass().getDeclaredField("userId");
+            field.setAccessible(true);
+            return String.valueOf(field.get(args[0]));
+        });
+        long reflectGet = measure(() -> String.valueOf(cachedField.get(args[0])));
+        long handleGet = measure(() -> keyExtractor.extract(args));
+        log.info("限流标识 getDeclaredField + Field.get: {} ns/op, Field.get: {} ns/op, MethodHandle.invokeExact: {} ns/op", lookupGet, reflectGet, handleGet);
+    }
+
+    private long measure(Call call) throws Throwable {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(call);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(call));
+        }
+        return best;
+    }
+
+    private long run(Call call) throws Throwable {
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = call.call();
+        }
+        return (System.nanoTime() - startNanos) / ITERATIONS;
+    }
+
+    private interface Call {
+        Object call() throws Throwable;
+    }
+
+    public static class RaffleService {
+
+        public String draw(DrawRequest request) {
+            return "draw";
+        }
+
+        public String drawError(DrawRequest request) {
+            return "rateLimiter";
+        }
+
+    }
+
+    public static class DrawRequest {
+
+        private final String userId;
+
+        public DrawRequest(String userId) {
+            this.userId = userId;
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.RedisRateLimiter;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * @author gzc
+ * @description 分布式限流测试；未启用黑名单时按预取窗口预取令牌在本地扣减，启用黑名单时每次只取一个令牌，被拒绝的请求都是真正超频
+ */
+@Slf4j
+public class RedisRateLimiterTest {
+
+    private final IRedisService redisService = Mockito.mock(IRedisService.class);
+    private final RedisRateLimiter redisRateLimiter = new RedisRateLimiter();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(redisRateLimiter, "redisService", redisService);
+        ReflectionTestUtils.setField(redisRateLimiter, "prefetchMillis", 100L);
+        ReflectionTestUtils.setField(redisRateLimiter, "maxPrefetch", 50L);
+        ReflectionTestUtils.setField(redisRateLimiter, "blacklistExpireHours", 24L);
+        ReflectionTestUtils.setField(redisRateLimiter, "blacklistLocalSeconds", 60L);
+        redisRateLimiter.init();
+    }
+
+    @Test
+    public void test_tryAcquire_prefetch() {
+        // 100 次/秒，100ms 窗口预取 10 个令牌
+        Mockito.when(redisService.acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), eq(10L), anyDouble(), anyLong())).thenReturn(10L);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(redisRateLimiter.tryAcquire("draw", "all", 100, 0));
+        }
+        Mockito.verify(redisService, Mockito.times(1)).acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), eq(10L), eq(0D), anyLong());
+    }
+
+    @Test
+    public void test_tryAcquire_blacklist_no_prefetch() {
+        Mockito.when(redisService.acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong())).thenReturn(1L);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(redisRateLimiter.tryAcquire("draw", "xiaofuge", 100, 3));
+        }
+        // 启用黑名单时每次请求都在 Redis 中按 1 个令牌判断
+        Mockito.verify(redisService, Mockito.times(5)).acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), eq(1L), eq(3D), anyLong());
+    }
+
+    @Test
+    public void test_tryAcquire_blacklist_local() {
+        Mockito.when(redisService.acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong())).thenReturn(-1L);
+        Assert.assertFalse(redisRateLimiter.tryAcquire("draw", "xiaofuge", 1, 3));
+        // 进入黑名单后本地缓存拦截，不再访问 Redis
+        Assert.assertFalse(redisRateLimiter.tryAcquire("draw", "xiaofuge", 1, 3));
+        Mockito.verify(redisService, Mockito.times(1)).acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong());
+    }
+
+    @Test
+    public void test_tryAcquire_redis_error() {
+        Mockito.when(redisService.acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong())).thenThrow(new RuntimeException("redis down"));
+        Assert.assertTrue(redisRateLimiter.tryAcquire("draw", "xiaofuge", 1, 3));
+    }
+
+    @Test
+    public void test_tryAcquire_redis_error_fallback() {
+        ReflectionTestUtils.setField(redisRateLimiter, "redisFailureBackoffMillis", 60000L);
+        Mockito.when(redisService.acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong())).thenThrow(new RuntimeException("redis down"));
+        AtomicInteger fallbackCount = new AtomicInteger();
+
+        // Redis 异常时使用降级限流的结果
+        Assert.assertFalse(redisRateLimiter.tryAcquire("draw", "xiaofuge", 1, 3, () -> fallbackCount.incrementAndGet() > 1));
+        // 降级期间不再访问 Redis
+        Assert.assertTrue(redisRateLimiter.tryAcquire("draw", "xiaofuge", 1, 3, () -> fallbackCount.incrementAndGet() > 1));
+        Assert.assertEquals(2, fallbackCount.get());
+        Mockito.verify(redisService, Mockito.times(1)).acquireRateLimit(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong());
+    }
+
+}
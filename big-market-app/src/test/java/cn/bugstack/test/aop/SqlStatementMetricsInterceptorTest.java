@@ -0,0 +1,67 @@
+package cn.bugstack.test.aop;
+
+import cn.bugstack.aop.RequestCallCounter;
+import cn.bugstack.config.SqlStatementMetricsInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+/**
+ * @author gzc
+ * @description 数据库语句计数插件测试；通过 MyBatis 插件代理调用 Executor，按语句类型计数并计入当前请求
+ */
+@Slf4j
+public class SqlStatementMetricsInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Configuration configuration = new Configuration();
+
+    @After
+    public void tearDown() {
+        RequestCallCounter.stop();
+    }
+
+    @Test
+    public void test_intercept() throws Exception {
+        Executor target = Mockito.mock(Executor.class);
+        Mockito.when(target.update(Mockito.any(), Mockito.any())).thenReturn(1);
+        Executor executor = (Executor) Plugin.wrap(target, new SqlStatementMetricsInterceptor(meterRegistry));
+
+        RequestCallCounter.start();
+        Assert.assertEquals(1, executor.update(mappedStatement("insertOrder", SqlCommandType.INSERT), null));
+        executor.update(mappedStatement("updateAccount", SqlCommandType.UPDATE), null);
+        executor.query(mappedStatement("queryOrder", SqlCommandType.SELECT), null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        executor.query(mappedStatement("queryAccount", SqlCommandType.SELECT), null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, null, null);
+        // 未拦截的方法不计数
+        executor.commit(true);
+
+        Assert.assertEquals(1.0, count(SqlCommandType.INSERT), 0);
+        Assert.assertEquals(1.0, count(SqlCommandType.UPDATE), 0);
+        Assert.assertEquals(2.0, count(SqlCommandType.SELECT), 0);
+        Assert.assertEquals(0.0, count(SqlCommandType.DELETE), 0);
+        Assert.assertEquals(4, RequestCallCounter.stop()[RequestCallCounter.DB]);
+        Mockito.verify(target).commit(true);
+    }
+
+    private MappedStatement mappedStatement(String id, SqlCommandType sqlCommandType) {
+        return new MappedStatement.Builder(configuration, id,
+                parameterObject -> new BoundSql(configuration, "select 1", Collections.emptyList(), parameterObject), sqlCommandType).build();
+    }
+
+    private double count(SqlCommandType sqlCommandType) {
+        return meterRegistry.get("db_statements").tag("type", sqlCommandType.name().toLowerCase()).counter().count();
+    }
+
+}
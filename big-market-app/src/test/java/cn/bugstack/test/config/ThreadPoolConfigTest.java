@@ -0,0 +1,71 @@
+package cn.bugstack.test.config;
+
+import cn.bugstack.config.ThreadPoolConfig;
+import cn.bugstack.config.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author gzc
+ * @description 线程池线程工厂测试；virtual 模式在 JDK 21+ 创建虚拟线程，低版本回退为平台线程，线程名均为 {线程池名称}-{序号}
+ */
+@Slf4j
+public class ThreadPoolConfigTest {
+
+    @Test
+    public void test_threadFactory_platform() {
+        ThreadFactory threadFactory = ThreadPoolConfig.threadFactory("stock-sync", "platform");
+        Thread first = threadFactory.newThread(() -> {
+        });
+        Thread second = threadFactory.newThread(() -> {
+        });
+
+        Assert.assertEquals("stock-sync-1", first.getName());
+        Assert.assertEquals("stock-sync-2", second.getName());
+        Assert.assertFalse(isVirtual(first));
+    }
+
+    @Test
+    public void test_threadFactory_virtual() throws InterruptedException {
+        ThreadFactory threadFactory = ThreadPoolConfig.threadFactory("stock-sync", "virtual");
+        Thread thread = threadFactory.newThread(() -> {
+        });
+        thread.start();
+        thread.join();
+
+        log.info("java version:{} virtual threads supported:{}", VirtualThreads.javaVersion(), VirtualThreads.isSupported());
+        Assert.assertEquals("stock-sync-1", thread.getName());
+        Assert.assertEquals(VirtualThreads.javaVersion() >= VirtualThreads.MIN_JAVA_VERSION, isVirtual(thread));
+    }
+
+    @Test
+    public void test_javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        try {
+            System.setProperty("java.specification.version", "1.8");
+            Assert.assertEquals(8, VirtualThreads.javaVersion());
+            System.setProperty("java.specification.version", "21");
+            Assert.assertEquals(21, VirtualThreads.javaVersion());
+        } finally {
+            System.setProperty("java.specification.version", version);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_virtualThreadFactory_unsupported() {
+        if (VirtualThreads.isSupported()) throw new IllegalStateException("skip on JDK 21+");
+        VirtualThreads.threadFactory("stock-sync-");
+    }
+
+    private boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package cn.bugstack.test.domain.strategy;
+
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
+import cn.bugstack.domain.strategy.service.armory.algorithm.AliasMethodTable;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author gzc
+ * @description 别名表抽奖分布测试
+ */
+@Slf4j
+public class AliasMethodTableTest {
+
+    @Test
+    public void test_sample() {
+        List<StrategyAwardEntity> strategyAwardEntities = new ArrayList<>();
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(101).awardRate(new BigDecimal("0.8")).build());
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(102).awardRate(new BigDecimal("0.1999")).build());
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(103).awardRate(new BigDecimal("0.0001")).build());
+
+        AliasMethodTable aliasMethodTable = AliasMethodTable.build(strategyAwardEntities);
+        Assert.assertEquals(3, aliasMethodTable.size());
+
+        SecureRandom random = new SecureRandom();
+        Map<Integer, Integer> counter = new HashMap<>();
+        int times = 1_000_000;
+        for (int i = 0; i < times; i++) {
+            counter.merge(aliasMethodTable.sample(random), 1, Integer::sum);
+        }
+
+        log.info("测试结果：{}", counter);
+        Assert.assertEquals(0.8D, counter.get(101) / (double) times, 0.01D);
+        Assert.assertEquals(0.1999D, counter.get(102) / (double) times, 0.01D);
+    }
+
+}
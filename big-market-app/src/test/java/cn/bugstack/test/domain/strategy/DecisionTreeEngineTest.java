@@ -0,0 +1,97 @@
+package cn.bugstack.test.domain.strategy;
+
+import cn.bugstack.domain.strategy.model.valobj.*;
+import cn.bugstack.domain.strategy.service.rule.tree.ILogicTreeNode;
+import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
+import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.IDecisionTreeEngine;
+import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.impl.DecisionTreeEngine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * @author gzc
+ * @description 编译后的决策树引擎测试；节点以规则比值作为校验结果，按预先计算的连线跳转
+ */
+public class DecisionTreeEngineTest {
+
+    /**
+     * rule_lock --TAKE_OVER--> rule_luck_award
+     *           --ALLOW------> rule_stock --TAKE_OVER--> rule_luck_award
+     */
+    @Test
+    public void test_process() {
+        Map<String, ILogicTreeNode> logicTreeNodeGroup = new HashMap<>();
+        logicTreeNodeGroup.put("rule_lock", checkNode(RuleLogicCheckTypeVO.ALLOW, null));
+        logicTreeNodeGroup.put("rule_stock", checkNode(RuleLogicCheckTypeVO.TAKE_OVER, 101));
+        logicTreeNodeGroup.put("rule_luck_award", checkNode(RuleLogicCheckTypeVO.TAKE_OVER, 102));
+
+        RuleTreeVO ruleTreeVO = ruleTreeVO(RuleLimitTypeVO.EQUAL);
+        IDecisionTreeEngine treeEngine = new DecisionTreeEngine(logicTreeNodeGroup, ruleTreeVO);
+        // rule_lock 放行 -> rule_stock 接管 -> rule_luck_award 兜底
+        Assert.assertEquals(Integer.valueOf(102), treeEngine.process("xiaofuge", 100001L, 101, null).getAwardId());
+
+        // 同一个规则树对象只编译一次
+        DefaultTreeFactory defaultTreeFactory = new DefaultTreeFactory(logicTreeNodeGroup);
+        Assert.assertSame(defaultTreeFactory.openLogicTree(ruleTreeVO), defaultTreeFactory.openLogicTree(ruleTreeVO));
+        Assert.assertNotSame(defaultTreeFactory.openLogicTree(ruleTreeVO), defaultTreeFactory.openLogicTree(ruleTreeVO(RuleLimitTypeVO.EQUAL)));
+    }
+
+    @Test
+    public void test_decisionLogic() {
+        // ALLOW < TAKE_OVER
+        Assert.assertTrue(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.TAKE_OVER, line(RuleLimitTypeVO.GT, RuleLogicCheckTypeVO.ALLOW)));
+        Assert.assertFalse(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.ALLOW, line(RuleLimitTypeVO.GT, RuleLogicCheckTypeVO.ALLOW)));
+        Assert.assertTrue(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.ALLOW, line(RuleLimitTypeVO.LT, RuleLogicCheckTypeVO.TAKE_OVER)));
+        Assert.assertTrue(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.ALLOW, line(RuleLimitTypeVO.GE, RuleLogicCheckTypeVO.ALLOW)));
+        Assert.assertFalse(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.ALLOW, line(RuleLimitTypeVO.GE, RuleLogicCheckTypeVO.TAKE_OVER)));
+        Assert.assertTrue(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.TAKE_OVER, line(RuleLimitTypeVO.LE, RuleLogicCheckTypeVO.TAKE_OVER)));
+        Assert.assertFalse(DecisionTreeEngine.decisionLogic(RuleLogicCheckTypeVO.TAKE_OVER, line(RuleLimitTypeVO.LE, RuleLogicCheckTypeVO.ALLOW)));
+    }
+
+    private RuleTreeVO ruleTreeVO(RuleLimitTypeVO ruleLimitType) {
+        Map<String, RuleTreeNodeVO> treeNodeMap = new HashMap<>();
+        treeNodeMap.put("rule_lock", node("rule_lock", Arrays.asList(
+                line("rule_lock", "rule_luck_award", ruleLimitType, RuleLogicCheckTypeVO.TAKE_OVER),
+                line("rule_lock", "rule_stock", ruleLimitType, RuleLogicCheckTypeVO.ALLOW))));
+        treeNodeMap.put("rule_stock", node("rule_stock", Collections.singletonList(
+                line("rule_stock", "rule_luck_award", ruleLimitType, RuleLogicCheckTypeVO.TAKE_OVER))));
+        treeNodeMap.put("rule_luck_award", node("rule_luck_award", null));
+        return RuleTreeVO.builder()
+                .treeId("tree_test")
+                .treeRootRuleNode("rule_lock")
+                .treeNodeMap(treeNodeMap)
+                .build();
+    }
+
+    private RuleTreeNodeVO node(String ruleKey, List<RuleTreeNodeLineVO> treeNodeLineVOList) {
+        return RuleTreeNodeVO.builder()
+                .treeId("tree_test")
+                .ruleKey(ruleKey)
+                .treeNodeLineVOList(treeNodeLineVOList)
+                .build();
+    }
+
+    private RuleTreeNodeLineVO line(RuleLimitTypeVO ruleLimitType, RuleLogicCheckTypeVO ruleLimitValue) {
+        return line("from", "to", ruleLimitType, ruleLimitValue);
+    }
+
+    private RuleTreeNodeLineVO line(String from, String to, RuleLimitTypeVO ruleLimitType, RuleLogicCheckTypeVO ruleLimitValue) {
+        return RuleTreeNodeLineVO.builder()
+                .treeId("tree_test")
+                .ruleNodeFrom(from)
+                .ruleNodeTo(to)
+                .ruleLimitType(ruleLimitType)
+                .ruleLimitValue(ruleLimitValue)
+                .build();
+    }
+
+    private ILogicTreeNode checkNode(RuleLogicCheckTypeVO ruleLogicCheckType, Integer awardId) {
+        return (userId, strategyId, awardIdParam, ruleValue, endDateTime) -> DefaultTreeFactory.TreeActionEntity.builder()
+                .ruleLogicCheckType(ruleLogicCheckType)
+                .strategyAwardVO(null == awardId ? null : DefaultTreeFactory.StrategyAwardVO.builder().awardId(awardId).build())
+                .build();
+    }
+
+}
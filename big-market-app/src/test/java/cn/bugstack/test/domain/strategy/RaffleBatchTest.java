@@ -0,0 +1,245 @@
+package cn.bugstack.test.domain.strategy;
+
+import cn.bugstack.domain.strategy.model.entity.RaffleAwardEntity;
+import cn.bugstack.domain.strategy.model.entity.RaffleFactorEntity;
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
+import cn.bugstack.domain.strategy.model.valobj.*;
+import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import cn.bugstack.domain.strategy.service.armory.StrategyArmoryDispatch;
+import cn.bugstack.domain.strategy.service.armory.StrategyAwardStockLease;
+import cn.bugstack.domain.strategy.service.raffle.DefaultRaffleStrategy;
+import cn.bugstack.domain.strategy.service.rule.chain.ILogicChain;
+import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
+import cn.bugstack.domain.strategy.service.rule.tree.ILogicTreeNode;
+import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
+import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.impl.DecisionTreeEngine;
+import cn.bugstack.domain.strategy.service.rule.tree.impl.RuleStockLogicTreeNode;
+import cn.bugstack.types.common.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.mockito.ArgumentMatchers.*;
+
+/**
+ * @author gzc
+ * @description 连抽批量路径测试；库存按剩余数量部分扣减，批量抽奖与逐次抽奖的结果一致。
+ * 库存由内存计数模拟，扣减语义与 Redis 脚本一致「批量扣减至多 count 个，不足时扣减剩余数量」
+ */
+@Slf4j
+public class RaffleBatchTest {
+
+    private static final Long STRATEGY_ID = 100001L;
+    private static final Integer LUCK_AWARD_ID = 100;
+
+    // 库存 key -> 剩余库存
+    private final Map<String, Long> stocks = new HashMap<>();
+
+    private IStrategyRepository repository;
+    private StrategyArmoryDispatch strategyDispatch;
+    private DefaultRaffleStrategy raffleStrategy;
+    // 责任链按顺序返回的奖品
+    private Deque<Integer> chainAwardIds;
+
+    @Before
+    public void init() {
+        repository = Mockito.mock(IStrategyRepository.class);
+        Mockito.when(repository.queryStrategyAwardCountSegmentCount(anyString())).thenReturn(1);
+        Mockito.when(repository.subtractionAwardStock(anyString(), any(StrategyAwardStockKeyVO.class), any())).thenAnswer(invocation -> {
+            String stockKey = invocation.getArgument(0);
+            long surplus = stocks.getOrDefault(stockKey, 0L);
+            if (surplus <= 0) return false;
+            stocks.put(stockKey, surplus - 1);
+            return true;
+        });
+        Mockito.when(repository.subtractionAwardStock(anyString(), anyLong(), any(StrategyAwardStockKeyVO.class), any())).thenAnswer(invocation -> {
+            String stockKey = invocation.getArgument(0);
+            long count = invocation.getArgument(1);
+            long granted = Math.min(count, stocks.getOrDefault(stockKey, 0L));
+            stocks.put(stockKey, stocks.getOrDefault(stockKey, 0L) - granted);
+            return granted;
+        });
+        Mockito.when(repository.queryStrategyAwardEntity(anyLong(), anyInt())).thenAnswer(invocation -> StrategyAwardEntity.builder()
+                .awardId(invocation.getArgument(1))
+                .awardTitle("award_" + invocation.getArgument(1))
+                .build());
+
+        strategyDispatch = new StrategyArmoryDispatch();
+        ReflectionTestUtils.setField(strategyDispatch, "repository", repository);
+        ReflectionTestUtils.setField(strategyDispatch, "strategyAwardStockLease", new StrategyAwardStockLease());
+
+        RuleStockLogicTreeNode ruleStockLogicTreeNode = new RuleStockLogicTreeNode();
+        ReflectionTestUtils.setField(ruleStockLogicTreeNode, "strategyDispatch", strategyDispatch);
+        Map<String, ILogicTreeNode> logicTreeNodeGroup = new HashMap<>();
+        logicTreeNodeGroup.put("rule_lock", checkNode(RuleLogicCheckTypeVO.ALLOW, null));
+        logicTreeNodeGroup.put("rule_stock", ruleStockLogicTreeNode);
+        logicTreeNodeGroup.put("rule_luck_award", checkNode(RuleLogicCheckTypeVO.TAKE_OVER, LUCK_AWARD_ID));
+        DecisionTreeEngine treeEngine = new DecisionTreeEngine(logicTreeNodeGroup, ruleTreeVO());
+        DefaultTreeFactory defaultTreeFactory = Mockito.mock(DefaultTreeFactory.class);
+        Mockito.when(defaultTreeFactory.openLogicTree(anyLong(), anyInt())).thenReturn(treeEngine);
+
+        ILogicChain logicChain = Mockito.mock(ILogicChain.class);
+        Mockito.when(logicChain.logic(anyString(), anyLong())).thenAnswer(invocation -> chainAward(chainAwardIds.poll()));
+        Mockito.when(logicChain.logicBatch(anyString(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(2);
+            List<DefaultChainFactory.StrategyAwardVO> strategyAwardVOS = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strategyAwardVOS.add(chainAward(chainAwardIds.poll()));
+            }
+            return strategyAwardVOS;
+        });
+        DefaultChainFactory defaultChainFactory = Mockito.mock(DefaultChainFactory.class);
+        Mockito.when(defaultChainFactory.openLogicChain(anyLong())).thenReturn(logicChain);
+
+        raffleStrategy = new DefaultRaffleStrategy(repository, strategyDispatch, defaultChainFactory, defaultTreeFactory);
+    }
+
+    /**
+     * 库存不足时部分扣减；扣减剩余数量，而不是全部失败
+     */
+    @Test
+    public void test_subtractionAwardStock_partial() {
+        stocks.put(stockKey(101), 3L);
+
+        Assert.assertEquals(3, strategyDispatch.subtractionAwardStock("xiaofuge", STRATEGY_ID, 101, null, 5));
+        Assert.assertEquals(0L, (long) stocks.get(stockKey(101)));
+        Assert.assertEquals(0, strategyDispatch.subtractionAwardStock("xiaofuge", STRATEGY_ID, 101, null, 5));
+    }
+
+    /**
+     * 分段库存；起始分段不足时向其他分段借用，合计扣减剩余数量
+     */
+    @Test
+    public void test_subtractionAwardStock_segment() {
+        String cacheKey = stockKey(101);
+        Mockito.when(repository.queryStrategyAwardCountSegmentCount(cacheKey)).thenReturn(2);
+        stocks.put(cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_SUFFIX + 0, 2L);
+        stocks.put(cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_SUFFIX + 1, 1L);
+
+        Assert.assertEquals(3, strategyDispatch.subtractionAwardStock("xiaofuge", STRATEGY_ID, 101, null, 5));
+        Assert.assertEquals(0, strategyDispatch.subtractionAwardStock("xiaofuge", STRATEGY_ID, 101, null, 1));
+    }
+
+    /**
+     * 库存节点连抽；扣减成功的数量接管，库存不足的数量放行
+     */
+    @Test
+    public void test_ruleStock_logicBatch() {
+        stocks.put(stockKey(101), 3L);
+
+        RuleStockLogicTreeNode ruleStockLogicTreeNode = new RuleStockLogicTreeNode();
+        ReflectionTestUtils.setField(ruleStockLogicTreeNode, "strategyDispatch", strategyDispatch);
+        List<DefaultTreeFactory.TreeBatchActionEntity> treeBatchActionEntities = ruleStockLogicTreeNode.logicBatch("xiaofuge", STRATEGY_ID, 101, null, null, 5);
+
+        Assert.assertEquals(2, treeBatchActionEntities.size());
+        Assert.assertEquals(RuleLogicCheckTypeVO.TAKE_OVER, treeBatchActionEntities.get(0).getRuleLogicCheckType());
+        Assert.assertEquals(3, treeBatchActionEntities.get(0).getCount());
+        Assert.assertEquals(Integer.valueOf(101), treeBatchActionEntities.get(0).getStrategyAwardVO().getAwardId());
+        Assert.assertEquals(RuleLogicCheckTypeVO.ALLOW, treeBatchActionEntities.get(1).getRuleLogicCheckType());
+        Assert.assertEquals(2, treeBatchActionEntities.get(1).getCount());
+    }
+
+    /**
+     * 同样的责任链结果和初始库存，批量抽奖与逐次抽奖的奖品分布、剩余库存一致
+     */
+    @Test
+    public void test_performRaffleBatch_matches_performRaffle() {
+        List<Integer> awardIds = Arrays.asList(101, 102, 101, 102, 101, 102, 101, 102, 101, 102);
+
+        resetStock();
+        chainAwardIds = new ArrayDeque<>(awardIds);
+        List<Integer> singleAwardIds = new ArrayList<>();
+        for (int i = 0; i < awardIds.size(); i++) {
+            singleAwardIds.add(raffleStrategy.performRaffle(raffleFactor()).getAwardId());
+        }
+        Map<String, Long> singleStocks = new HashMap<>(stocks);
+
+        resetStock();
+        chainAwardIds = new ArrayDeque<>(awardIds);
+        List<Integer> batchAwardIds = new ArrayList<>();
+        for (RaffleAwardEntity raffleAwardEntity : raffleStrategy.performRaffleBatch(raffleFactor(), awardIds.size())) {
+            batchAwardIds.add(raffleAwardEntity.getAwardId());
+        }
+
+        log.info("测试结果 逐次：{} 批量：{}", singleAwardIds, batchAwardIds);
+        Collections.sort(singleAwardIds);
+        Collections.sort(batchAwardIds);
+        // 101 库存 3、102 库存 2，其余 5 次库存不足走兜底奖品
+        Assert.assertEquals(Arrays.asList(100, 100, 100, 100, 100, 101, 101, 101, 102, 102), singleAwardIds);
+        Assert.assertEquals(singleAwardIds, batchAwardIds);
+        Assert.assertEquals(singleStocks, stocks);
+    }
+
+    private void resetStock() {
+        stocks.put(stockKey(101), 3L);
+        stocks.put(stockKey(102), 2L);
+    }
+
+    private RaffleFactorEntity raffleFactor() {
+        return RaffleFactorEntity.builder()
+                .userId("xiaofuge")
+                .strategyId(STRATEGY_ID)
+                .build();
+    }
+
+    private String stockKey(Integer awardId) {
+        return Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + STRATEGY_ID + Constants.UNDERLINE + awardId;
+    }
+
+    private DefaultChainFactory.StrategyAwardVO chainAward(Integer awardId) {
+        return DefaultChainFactory.StrategyAwardVO.builder()
+                .awardId(awardId)
+                .logicModel(DefaultChainFactory.LogicModel.RULE_DEFAULT.getCode())
+                .build();
+    }
+
+    /**
+     * rule_lock --ALLOW--> rule_stock --ALLOW--> rule_luck_award
+     * rule_lock --TAKE_OVER--> rule_luck_award
+     */
+    private RuleTreeVO ruleTreeVO() {
+        Map<String, RuleTreeNodeVO> treeNodeMap = new HashMap<>();
+        treeNodeMap.put("rule_lock", node("rule_lock", Arrays.asList(
+                line("rule_lock", "rule_luck_award", RuleLogicCheckTypeVO.TAKE_OVER),
+                line("rule_lock", "rule_stock", RuleLogicCheckTypeVO.ALLOW))));
+        treeNodeMap.put("rule_stock", node("rule_stock", Collections.singletonList(
+                line("rule_stock", "rule_luck_award", RuleLogicCheckTypeVO.ALLOW))));
+        treeNodeMap.put("rule_luck_award", node("rule_luck_award", null));
+        return RuleTreeVO.builder()
+                .treeId("tree_batch")
+                .treeRootRuleNode("rule_lock")
+                .treeNodeMap(treeNodeMap)
+                .build();
+    }
+
+    private RuleTreeNodeVO node(String ruleKey, List<RuleTreeNodeLineVO> treeNodeLineVOList) {
+        return RuleTreeNodeVO.builder()
+                .treeId("tree_batch")
+                .ruleKey(ruleKey)
+                .treeNodeLineVOList(treeNodeLineVOList)
+                .build();
+    }
+
+    private RuleTreeNodeLineVO line(String from, String to, RuleLogicCheckTypeVO ruleLimitValue) {
+        return RuleTreeNodeLineVO.builder()
+                .treeId("tree_batch")
+                .ruleNodeFrom(from)
+                .ruleNodeTo(to)
+                .ruleLimitType(RuleLimitTypeVO.EQUAL)
+                .ruleLimitValue(ruleLimitValue)
+                .build();
+    }
+
+    private ILogicTreeNode checkNode(RuleLogicCheckTypeVO ruleLogicCheckType, Integer awardId) {
+        return (userId, strategyId, awardIdParam, ruleValue, endDateTime) -> DefaultTreeFactory.TreeActionEntity.builder()
+                .ruleLogicCheckType(ruleLogicCheckType)
+                .strategyAwardVO(null == awardId ? null : DefaultTreeFactory.StrategyAwardVO.builder().awardId(awardId).build())
+                .build();
+    }
+
+}
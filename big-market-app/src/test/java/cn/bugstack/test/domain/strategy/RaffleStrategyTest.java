@@ -69,7 +69,7 @@ public class RaffleStrategyTest {
             log.info("测试结果：{}", JSON.toJSONString(raffleAwardEntity));
         }
 
-        // 等待 UpdateAwardStockJob 消费队列
+        // 等待 UpdateAwardStockJob 同步库存
         new CountDownLatch(1).await();
     }
 
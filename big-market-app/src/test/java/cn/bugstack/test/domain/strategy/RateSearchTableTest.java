@@ -0,0 +1,75 @@
+package cn.bugstack.test.domain.strategy;
+
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
+import cn.bugstack.domain.strategy.service.armory.algorithm.RateSearchTable;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author gzc
+ * @description 概率查找表「稠密表 / 累积表」测试；按 Redis 读取方式从二进制编码中抽奖，结果需与本地查找一致
+ */
+@Slf4j
+public class RateSearchTableTest {
+
+    @Test
+    public void test_dense() {
+        RateSearchTable rateSearchTable = RateSearchTable.build(strategyAwardEntities(), new BigDecimal(10000), 10000, new SecureRandom());
+        Assert.assertEquals(RateSearchTable.LAYOUT_DENSE, rateSearchTable.getLayout());
+        Assert.assertEquals(10000, rateSearchTable.getRateRange());
+        assertEncoded(rateSearchTable);
+    }
+
+    @Test
+    public void test_cumulative() {
+        RateSearchTable rateSearchTable = RateSearchTable.build(strategyAwardEntities(), new BigDecimal(10000), 1000, new SecureRandom());
+        Assert.assertEquals(RateSearchTable.LAYOUT_CUMULATIVE, rateSearchTable.getLayout());
+        Assert.assertEquals(10000, rateSearchTable.getRateRange());
+        // 累积表编码只和奖品数量有关
+        Assert.assertEquals(RateSearchTable.HEADER_BYTES + 2 * 3 * Integer.BYTES, rateSearchTable.encode().length);
+
+        // [0, 8000) -> 101、[8000, 9999) -> 102、[9999, 10000) -> 103
+        Assert.assertEquals(Integer.valueOf(101), rateSearchTable.search(0));
+        Assert.assertEquals(Integer.valueOf(101), rateSearchTable.search(7999));
+        Assert.assertEquals(Integer.valueOf(102), rateSearchTable.search(8000));
+        Assert.assertEquals(Integer.valueOf(102), rateSearchTable.search(9998));
+        Assert.assertEquals(Integer.valueOf(103), rateSearchTable.search(9999));
+        assertEncoded(rateSearchTable);
+    }
+
+    private void assertEncoded(RateSearchTable rateSearchTable) {
+        byte[] encoded = rateSearchTable.encode();
+        RateSearchTable.Header header = RateSearchTable.decodeHeader(Arrays.copyOf(encoded, RateSearchTable.HEADER_BYTES));
+        Assert.assertEquals(rateSearchTable.getRateRange(), header.getRateRange());
+        RateSearchTable decodedTable = header.decodeTable(Arrays.copyOfRange(encoded, RateSearchTable.HEADER_BYTES, RateSearchTable.HEADER_BYTES + header.tableLength()));
+
+        int[] counter = new int[3];
+        for (int rateKey = 0; rateKey < header.getRateRange(); rateKey++) {
+            int offset = header.payloadOffset(rateKey);
+            byte[] payload = Arrays.copyOfRange(encoded, offset, offset + header.payloadLength());
+            Integer awardId = header.search(payload, rateKey);
+            Assert.assertEquals(rateSearchTable.search(rateKey), awardId);
+            Assert.assertEquals(awardId, decodedTable.search(rateKey));
+            counter[awardId - 101]++;
+        }
+
+        log.info("测试结果：{}", Arrays.toString(counter));
+        Assert.assertArrayEquals(new int[]{8000, 1999, 1}, counter);
+    }
+
+    private List<StrategyAwardEntity> strategyAwardEntities() {
+        List<StrategyAwardEntity> strategyAwardEntities = new ArrayList<>();
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(101).awardRate(new BigDecimal("0.8")).build());
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(102).awardRate(new BigDecimal("0.1999")).build());
+        strategyAwardEntities.add(StrategyAwardEntity.builder().awardId(103).awardRate(new BigDecimal("0.0001")).build());
+        return strategyAwardEntities;
+    }
+
+}
@@ -0,0 +1,265 @@
+package cn.bugstack.test.infrastructure;
+
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
+import cn.bugstack.domain.activity.model.aggregate.CreatePartakeOrderAggregate;
+import cn.bugstack.domain.activity.model.entity.DeliveryOrderEntity;
+import cn.bugstack.domain.activity.model.entity.TaskEntity;
+import cn.bugstack.domain.activity.model.entity.UserRaffleOrderEntity;
+import cn.bugstack.domain.activity.model.valobj.UserRaffleOrderStateVO;
+import cn.bugstack.domain.activity.model.valobj.TaskStateVO;
+import cn.bugstack.infrastructure.adapter.repository.ActivityRepository;
+import cn.bugstack.infrastructure.dao.*;
+import cn.bugstack.infrastructure.dao.po.RaffleActivityAccount;
+import cn.bugstack.infrastructure.dao.po.RaffleActivityAccountMonth;
+import cn.bugstack.infrastructure.dao.po.RaffleActivityOrder;
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournal;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.bugstack.types.common.Constants;
+import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.exception.AppException;
+import com.alibaba.fastjson2.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.*;
+
+/**
+ * @author gzc
+ * @description 额度账本测试；账本缺失时加账户锁，按数据库额度扣除未对账的任务重建，充值增加账本失败时标记待重建而不移除，
+ * 保存抽奖单只有事务回滚时才归还额度
+ */
+@Slf4j
+public class ActivityRepositoryQuotaLedgerTest {
+
+    private static final String USER_ID = "xiaofuge";
+    private static final Long ACTIVITY_ID = 100301L;
+    private static final String TOPIC = "activity_account_quota";
+    private static final String MONTH = "2026-10";
+    private static final String DAY = "2026-10-18";
+    private static final String LEDGER_KEY = Constants.RedisKey.ACTIVITY_ACCOUNT_QUOTA_LEDGER_KEY + ACTIVITY_ID + Constants.UNDERLINE + USER_ID;
+    private static final String ACCOUNT_LOCK_KEY = Constants.RedisKey.ACTIVITY_ACCOUNT_LOCK + USER_ID + Constants.UNDERLINE + ACTIVITY_ID;
+
+    private final IRedisService redisService = Mockito.mock(IRedisService.class);
+    private final IRaffleActivityAccountDao raffleActivityAccountDao = Mockito.mock(IRaffleActivityAccountDao.class);
+    private final IRaffleActivityAccountMonthDao raffleActivityAccountMonthDao = Mockito.mock(IRaffleActivityAccountMonthDao.class);
+    private final IRaffleActivityAccountDayDao raffleActivityAccountDayDao = Mockito.mock(IRaffleActivityAccountDayDao.class);
+    private final IRaffleActivityOrderDao raffleActivityOrderDao = Mockito.mock(IRaffleActivityOrderDao.class);
+    private final IUserRaffleOrderDao userRaffleOrderDao = Mockito.mock(IUserRaffleOrderDao.class);
+    private final ITaskDao taskDao = Mockito.mock(ITaskDao.class);
+    private final PartakeOrderJournal partakeOrderJournal = Mockito.mock(PartakeOrderJournal.class);
+    private final TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+    private final RLock lock = Mockito.mock(RLock.class);
+    private final ActivityRepository activityRepository = new ActivityRepository();
+
+    @Before
+    public void setUp() {
+        ActivityAccountQuotaMessageEvent activityAccountQuotaMessageEvent = Mockito.mock(ActivityAccountQuotaMessageEvent.class);
+        Mockito.when(activityAccountQuotaMessageEvent.topic()).thenReturn(TOPIC);
+        Mockito.when(transactionTemplate.execute(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(new SimpleTransactionStatus()));
+        Mockito.when(redisService.getLock(anyString())).thenReturn(lock);
+        Mockito.when(lock.isLocked()).thenReturn(true);
+        Mockito.when(lock.isHeldByCurrentThread()).thenReturn(true);
+
+        ReflectionTestUtils.setField(activityRepository, "redisService", redisService);
+        ReflectionTestUtils.setField(activityRepository, "raffleActivityAccountDao", raffleActivityAccountDao);
+        ReflectionTestUtils.setField(activityRepository, "raffleActivityAccountMonthDao", raffleActivityAccountMonthDao);
+        ReflectionTestUtils.setField(activityRepository, "raffleActivityAccountDayDao", raffleActivityAccountDayDao);
+        ReflectionTestUtils.setField(activityRepository, "raffleActivityOrderDao", raffleActivityOrderDao);
+        ReflectionTestUtils.setField(activityRepository, "userRaffleOrderDao", userRaffleOrderDao);
+        ReflectionTestUtils.setField(activityRepository, "taskDao", taskDao);
+        ReflectionTestUtils.setField(activityRepository, "partakeOrderJournal", partakeOrderJournal);
+        ReflectionTestUtils.setField(activityRepository, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(activityRepository, "dbRouter", Mockito.mock(IDBRouterStrategy.class));
+        ReflectionTestUtils.setField(activityRepository, "taskMessagePublisher", Mockito.mock(TaskMessagePublisher.class));
+        ReflectionTestUtils.setField(activityRepository, "activityAccountQuotaMessageEvent", activityAccountQuotaMessageEvent);
+        ReflectionTestUtils.setField(activityRepository, "consumeRecordRetentionDays", 7);
+    }
+
+    @Test
+    public void test_subtraction_ledgerMiss_loadMinusPending() {
+        Mockito.when(redisService.subtractionQuotaLedger(LEDGER_KEY, MONTH, DAY, 1)).thenReturn(-4L, -4L, 7L);
+        // 写后日志中未落库 1 次；数据库未消费的任务中同一条重复出现，另有昨日的十连抽和其他活动的任务
+        Task journalTask = quotaTask("m1", ACTIVITY_ID, MONTH, DAY, 1);
+        Mockito.when(partakeOrderJournal.queryReservedTasks(USER_ID, ACTIVITY_ID)).thenReturn(Collections.singletonList(journalTask));
+        Mockito.when(taskDao.queryUnconsumedTaskList(eq(USER_ID), eq(TOPIC), any(Date.class))).thenReturn(Arrays.asList(
+                quotaTask("m1", ACTIVITY_ID, MONTH, DAY, 1),
+                quotaTask("m2", ACTIVITY_ID, MONTH, "2026-10-17", 10),
+                quotaTask("m3", 100302L, MONTH, DAY, 5)));
+        RaffleActivityAccount account = new RaffleActivityAccount();
+        account.setTotalCountSurplus(30);
+        account.setMonthCountSurplus(20);
+        account.setDayCountSurplus(12);
+        Mockito.when(raffleActivityAccountDao.queryActivityAccountByUserId(any())).thenReturn(account);
+        RaffleActivityAccountMonth accountMonth = new RaffleActivityAccountMonth();
+        accountMonth.setMonthCountSurplus(18);
+        Mockito.when(raffleActivityAccountMonthDao.queryActivityAccountMonthByUserId(any())).thenReturn(accountMonth);
+
+        long surplus = activityRepository.subtractionActivityAccountQuota(USER_ID, ACTIVITY_ID, MONTH, DAY, 1, new Date());
+
+        Assert.assertEquals(7L, surplus);
+        // 总 30 - 11；月 18 - 11、月镜像 20 - 11；日账户不存在，以日镜像 12 扣除当日 1 次，日镜像扣除全部 11 次
+        Mockito.verify(redisService).initQuotaLedger(eq(LEDGER_KEY), eq(19L), eq(MONTH), eq(7L), eq(9L), eq(DAY), eq(11L), eq(1L), anyLong());
+        Mockito.verify(redisService).getLock(ACCOUNT_LOCK_KEY);
+        Mockito.verify(lock).lock(3, java.util.concurrent.TimeUnit.SECONDS);
+        Mockito.verify(lock).unlock();
+    }
+
+    @Test
+    public void test_subtraction_ledgerLoadedWhileWaiting() {
+        Mockito.when(redisService.subtractionQuotaLedger(LEDGER_KEY, MONTH, DAY, 1)).thenReturn(-4L, 5L);
+
+        Assert.assertEquals(5L, activityRepository.subtractionActivityAccountQuota(USER_ID, ACTIVITY_ID, MONTH, DAY, 1, new Date()));
+        Mockito.verify(redisService, Mockito.never()).initQuotaLedger(anyString(), anyLong(), anyString(), anyLong(), anyLong(), anyString(), anyLong(), anyLong(), anyLong());
+        Mockito.verify(taskDao, Mockito.never()).queryUnconsumedTaskList(anyString(), anyString(), any());
+        Mockito.verify(lock).unlock();
+    }
+
+    @Test
+    public void test_subtraction_accountMissing() {
+        Mockito.when(redisService.subtractionQuotaLedger(LEDGER_KEY, MONTH, DAY, 1)).thenReturn(-4L);
+
+        Assert.assertEquals(-1L, activityRepository.subtractionActivityAccountQuota(USER_ID, ACTIVITY_ID, MONTH, DAY, 1, new Date()));
+        Mockito.verify(redisService, Mockito.never()).initQuotaLedger(anyString(), anyLong(), anyString(), anyLong(), anyLong(), anyString(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void test_updateOrder_addQuotaLedger_retry() {
+        mockDeliveryOrder();
+        Mockito.when(redisService.addQuotaLedger(eq(LEDGER_KEY), anyLong(), anyString(), anyLong(), anyString(), anyLong()))
+                .thenThrow(new RuntimeException("redis timeout"))
+                .thenReturn(1L);
+
+        activityRepository.updateOrder(deliveryOrder());
+
+        Mockito.verify(redisService, Mockito.times(2)).addQuotaLedger(eq(LEDGER_KEY), eq(10L), anyString(), eq(10L), anyString(), eq(10L));
+        Mockito.verify(redisService, Mockito.never()).markQuotaLedgerDirty(anyString());
+        // 入账与增加账本在账户锁内
+        Mockito.verify(redisService).getLock(ACCOUNT_LOCK_KEY);
+    }
+
+    @Test
+    public void test_updateOrder_addQuotaLedger_fail_markDirty() {
+        mockDeliveryOrder();
+        Mockito.when(redisService.addQuotaLedger(eq(LEDGER_KEY), anyLong(), anyString(), anyLong(), anyString(), anyLong()))
+                .thenThrow(new RuntimeException("redis timeout"));
+
+        activityRepository.updateOrder(deliveryOrder());
+
+        Mockito.verify(redisService, Mockito.times(3)).addQuotaLedger(eq(LEDGER_KEY), anyLong(), anyString(), anyLong(), anyString(), anyLong());
+        Mockito.verify(redisService).markQuotaLedgerDirty(LEDGER_KEY);
+        Mockito.verify(redisService, Mockito.never()).remove(anyString());
+    }
+
+    @Test
+    public void test_savePartakeOrder_rolledBack_giveBack() {
+        Mockito.doThrow(new DuplicateKeyException("uq_order_id")).when(userRaffleOrderDao).insert(any());
+
+        try {
+            activityRepository.saveCreatePartakeOrderAggregate(partakeOrderAggregate());
+            Assert.fail("未抛出异常");
+        } catch (AppException e) {
+            log.info("预期异常：{}", e.getCode());
+        }
+        Mockito.verify(redisService).addQuotaLedger(LEDGER_KEY, 1, MONTH, 1, DAY, 1);
+        Mockito.verify(redisService, Mockito.never()).markQuotaLedgerDirty(anyString());
+    }
+
+    @Test
+    public void test_savePartakeOrder_commitUnknown_noGiveBack() {
+        // 回调执行成功，提交阶段异常
+        Mockito.doAnswer(invocation -> {
+            ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(new SimpleTransactionStatus());
+            throw new TransactionSystemException("commit timeout");
+        }).when(transactionTemplate).execute(any());
+
+        try {
+            activityRepository.saveCreatePartakeOrderAggregate(partakeOrderAggregate());
+            Assert.fail("未抛出异常");
+        } catch (TransactionSystemException e) {
+            log.info("预期异常：{}", e.getMessage());
+        }
+        Mockito.verify(redisService, Mockito.never()).addQuotaLedger(anyString(), anyLong(), anyString(), anyLong(), anyString(), anyLong());
+        Mockito.verify(redisService).markQuotaLedgerDirty(LEDGER_KEY);
+    }
+
+    private void mockDeliveryOrder() {
+        RaffleActivityOrder raffleActivityOrder = new RaffleActivityOrder();
+        raffleActivityOrder.setUserId(USER_ID);
+        raffleActivityOrder.setActivityId(ACTIVITY_ID);
+        raffleActivityOrder.setTotalCount(10);
+        raffleActivityOrder.setMonthCount(10);
+        raffleActivityOrder.setDayCount(10);
+        Mockito.when(raffleActivityOrderDao.queryRaffleActivityOrder(any())).thenReturn(raffleActivityOrder);
+        Mockito.when(raffleActivityOrderDao.updateOrderCompleted(any())).thenReturn(1);
+    }
+
+    private DeliveryOrderEntity deliveryOrder() {
+        DeliveryOrderEntity deliveryOrderEntity = new DeliveryOrderEntity();
+        deliveryOrderEntity.setUserId(USER_ID);
+        deliveryOrderEntity.setOutBusinessNo("700091009111");
+        return deliveryOrderEntity;
+    }
+
+    private CreatePartakeOrderAggregate partakeOrderAggregate() {
+        ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage message = quotaMessage(ACTIVITY_ID, MONTH, DAY, 1);
+        return CreatePartakeOrderAggregate.builder()
+                .userId(USER_ID)
+                .activityId(ACTIVITY_ID)
+                .quotaLedger(true)
+                .userRaffleOrderEntity(UserRaffleOrderEntity.builder()
+                        .userId(USER_ID)
+                        .activityId(ACTIVITY_ID)
+                        .orderId("313091076458")
+                        .orderTime(new Date())
+                        .orderState(UserRaffleOrderStateVO.create)
+                        .build())
+                .taskEntity(TaskEntity.builder()
+                        .userId(USER_ID)
+                        .topic(TOPIC)
+                        .messageId("m1")
+                        .message(BaseEvent.EventMessage.<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>builder().id("m1").data(message).build())
+                        .state(TaskStateVO.create)
+                        .build())
+                .build();
+    }
+
+    private Task quotaTask(String messageId, Long activityId, String month, String day, int count) {
+        Task task = new Task();
+        task.setUserId(USER_ID);
+        task.setTopic(TOPIC);
+        task.setMessageId(messageId);
+        task.setMessage(JSON.toJSONString(BaseEvent.EventMessage.<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>builder()
+                .id(messageId)
+                .data(quotaMessage(activityId, month, day, count))
+                .build()));
+        return task;
+    }
+
+    private ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage quotaMessage(Long activityId, String month, String day, int count) {
+        return ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage.builder()
+                .userId(USER_ID)
+                .activityId(activityId)
+                .month(month)
+                .day(day)
+                .count(count)
+                .build();
+    }
+
+}
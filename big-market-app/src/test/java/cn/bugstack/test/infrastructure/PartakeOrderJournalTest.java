@@ -0,0 +1,318 @@
+package cn.bugstack.test.infrastructure;
+
+import cn.bugstack.infrastructure.dao.ITaskDao;
+import cn.bugstack.infrastructure.dao.IUserRaffleOrderDao;
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.dao.po.UserRaffleOrder;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournal;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournalEntry;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.bugstack.types.common.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+
+/**
+ * @author gzc
+ * @description 抽奖单写后日志测试；Redis 日志列表、预留哈希、失败计数用内存结构模拟，抽奖单和任务按唯一索引写入内存表
+ */
+@Slf4j
+public class PartakeOrderJournalTest {
+
+    private static final Long ACTIVITY_ID = 100301L;
+    private static final int PARTITIONS = 4;
+
+    private final IRedisService redisService = Mockito.mock(IRedisService.class);
+    private final IUserRaffleOrderDao userRaffleOrderDao = Mockito.mock(IUserRaffleOrderDao.class);
+    private final ITaskDao taskDao = Mockito.mock(ITaskDao.class);
+    private final TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+    private final TaskMessagePublisher taskMessagePublisher = Mockito.mock(TaskMessagePublisher.class);
+    private final RLock lock = Mockito.mock(RLock.class);
+    private final PartakeOrderJournal partakeOrderJournal = new PartakeOrderJournal();
+
+    // Redis 列表、哈希
+    private final Map<String, LinkedList<String>> lists = new HashMap<>();
+    private final Map<String, Map<String, String>> hashes = new HashMap<>();
+    // 数据库唯一索引：抽奖单ID、消息ID
+    private final Set<String> orderIds = new HashSet<>();
+    private final Set<String> messageIds = new HashSet<>();
+    // 落库失败的抽奖单ID
+    private final Set<String> invalidOrderIds = new HashSet<>();
+
+    @Before
+    public void setUp() throws InterruptedException {
+        ReflectionTestUtils.setField(partakeOrderJournal, "enabled", true);
+        ReflectionTestUtils.setField(partakeOrderJournal, "partitions", PARTITIONS);
+        ReflectionTestUtils.setField(partakeOrderJournal, "batchSize", 200);
+        ReflectionTestUtils.setField(partakeOrderJournal, "maxFailures", 2);
+        ReflectionTestUtils.setField(partakeOrderJournal, "redisService", redisService);
+        ReflectionTestUtils.setField(partakeOrderJournal, "userRaffleOrderDao", userRaffleOrderDao);
+        ReflectionTestUtils.setField(partakeOrderJournal, "taskDao", taskDao);
+        ReflectionTestUtils.setField(partakeOrderJournal, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(partakeOrderJournal, "dbRouter", Mockito.mock(IDBRouterStrategy.class));
+        ReflectionTestUtils.setField(partakeOrderJournal, "taskMessagePublisher", taskMessagePublisher);
+
+        Mockito.when(transactionTemplate.execute(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(new SimpleTransactionStatus()));
+        Mockito.when(redisService.getLock(anyString())).thenReturn(lock);
+        Mockito.when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(true);
+        Mockito.when(lock.isLocked()).thenReturn(true);
+        Mockito.when(lock.isHeldByCurrentThread()).thenReturn(true);
+        mockRedis();
+        mockDao();
+    }
+
+    @Test
+    public void test_append_queryReserved() {
+        PartakeOrderJournalEntry batch = entry("xiaofuge", "m1", 1000L, "o1", "o2", "o3");
+        PartakeOrderJournalEntry older = entry("xiaofuge", "m2", 2000L, "o4");
+        PartakeOrderJournalEntry latest = entry("xiaofuge", "m3", 3000L, "o5");
+        partakeOrderJournal.append(batch);
+        partakeOrderJournal.append(latest);
+        partakeOrderJournal.append(older);
+
+        Assert.assertEquals(3, lists.get(journalKey("xiaofuge")).size());
+        Assert.assertEquals(5, hashes.get(reservedKey("xiaofuge")).size());
+        // 连抽的抽奖单不作为未使用的抽奖单返回，单抽取最新的一条
+        Assert.assertEquals("o5", partakeOrderJournal.queryReservedOrder("xiaofuge", ACTIVITY_ID).getOrderId());
+        // 连抽的 3 个字段共用一条日志，任务按消息ID去重
+        List<Task> tasks = partakeOrderJournal.queryReservedTasks("xiaofuge", ACTIVITY_ID);
+        Assert.assertEquals(3, tasks.size());
+    }
+
+    @Test
+    public void test_queryReserved_batchOnly() {
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1", "o2"));
+
+        Assert.assertNull(partakeOrderJournal.queryReservedOrder("xiaofuge", ACTIVITY_ID));
+    }
+
+    @Test
+    public void test_flush() {
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1"));
+        partakeOrderJournal.append(entry("xiaofuge", "m2", 2000L, "o2", "o3"));
+
+        partakeOrderJournal.flush();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("o1", "o2", "o3")), orderIds);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("m1", "m2")), messageIds);
+        Assert.assertTrue(lists.get(journalKey("xiaofuge")).isEmpty());
+        Assert.assertTrue(hashes.get(reservedKey("xiaofuge")).isEmpty());
+        Mockito.verify(taskMessagePublisher, Mockito.times(2)).publishAfterCommit(any(Task.class));
+        // 空分区不争抢分区锁
+        Mockito.verify(redisService, Mockito.times(1)).getLock(anyString());
+        Mockito.verify(redisService).getLock(Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_LOCK + partition("xiaofuge"));
+    }
+
+    @Test
+    public void test_flush_emptyJournal() {
+        partakeOrderJournal.flush();
+
+        Mockito.verify(redisService, Mockito.times(PARTITIONS)).journalSize(anyString());
+        Mockito.verify(redisService, Mockito.never()).getLock(anyString());
+        Mockito.verify(redisService, Mockito.never()).rangeJournal(anyString(), anyInt());
+    }
+
+    @Test
+    public void test_flushReserved_racingFlush() {
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1"));
+        partakeOrderJournal.append(entry("xiaofuge", "m2", 2000L, "o2"));
+        // 定时落库读取日志后、批量写入前，发奖先落库了 o1
+        Mockito.doAnswer(invocation -> {
+            partakeOrderJournal.flushReserved("xiaofuge", ACTIVITY_ID, "o1");
+            insertOrders(invocation.getArgument(0));
+            return null;
+        }).when(userRaffleOrderDao).insertBatch(anyList());
+
+        partakeOrderJournal.flush();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("o1", "o2")), orderIds);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("m1", "m2")), messageIds);
+        Assert.assertTrue(lists.get(journalKey("xiaofuge")).isEmpty());
+        Assert.assertTrue(hashes.get(reservedKey("xiaofuge")).isEmpty());
+        Mockito.verify(redisService, Mockito.never()).incrJournalFailure(anyString(), anyString(), anyLong());
+        Mockito.verify(redisService, Mockito.never()).deadLetterJournal(anyString(), anyString(), anyString(), anyString());
+        // 发奖落库和定时落库各发送一次，消费端按消息ID防重
+        Mockito.verify(taskMessagePublisher, Mockito.times(3)).publishAfterCommit(any(Task.class));
+    }
+
+    @Test
+    public void test_flushReserved_alreadyFlushed() {
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1"));
+        partakeOrderJournal.flush();
+
+        partakeOrderJournal.flushReserved("xiaofuge", ACTIVITY_ID, "o1");
+
+        Mockito.verify(userRaffleOrderDao, Mockito.never()).insert(any());
+        Mockito.verify(taskMessagePublisher, Mockito.times(1)).publishAfterCommit(any(Task.class));
+    }
+
+    @Test
+    public void test_flush_deadLetter() {
+        invalidOrderIds.add("bad");
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1"));
+        partakeOrderJournal.append(entry("xiaofuge", "m2", 2000L, "bad"));
+
+        // 第 1 次：o1 落库，bad 失败 1 次，这一批保留在日志中
+        partakeOrderJournal.flush();
+        Assert.assertEquals(2, lists.get(journalKey("xiaofuge")).size());
+        Assert.assertEquals(Collections.singleton("o1"), orderIds);
+        Mockito.verify(redisService, Mockito.never()).deadLetterJournal(anyString(), anyString(), anyString(), anyString());
+
+        // 第 2 次：bad 失败次数达到上限移入死信，日志移除，账本标记待重建
+        partakeOrderJournal.flush();
+        Assert.assertTrue(lists.get(journalKey("xiaofuge")).isEmpty());
+        Assert.assertTrue(hashes.get(reservedKey("xiaofuge")).isEmpty());
+        Assert.assertEquals(1, lists.get(Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_DEAD_LETTER_KEY).size());
+        Assert.assertEquals(Collections.singleton("m1"), messageIds);
+        Mockito.verify(redisService).markQuotaLedgerDirty(Constants.RedisKey.ACTIVITY_ACCOUNT_QUOTA_LEDGER_KEY + ACTIVITY_ID + Constants.UNDERLINE + "xiaofuge");
+        // 只发送已落库的对账任务
+        Mockito.verify(taskMessagePublisher, Mockito.times(1)).publishAfterCommit(Mockito.argThat((Task task) -> "m1".equals(task.getMessageId())));
+        Mockito.verify(taskMessagePublisher, Mockito.never()).publishAfterCommit(Mockito.argThat((Task task) -> "m2".equals(task.getMessageId())));
+    }
+
+    @Test
+    public void test_flush_databaseDown_noFailureCount() {
+        partakeOrderJournal.append(entry("xiaofuge", "m1", 1000L, "o1"));
+        Mockito.doThrow(new RuntimeException("db down")).when(transactionTemplate).execute(any());
+
+        partakeOrderJournal.flush();
+
+        Assert.assertEquals(1, lists.get(journalKey("xiaofuge")).size());
+        Mockito.verify(redisService, Mockito.never()).incrJournalFailure(anyString(), anyString(), anyLong());
+        Mockito.verify(redisService, Mockito.never()).markQuotaLedgerDirty(anyString());
+    }
+
+    private void mockRedis() {
+        Mockito.when(redisService.appendJournal(anyString(), anyString(), anyList(), anyString(), anyLong())).thenAnswer(invocation -> {
+            LinkedList<String> list = lists.computeIfAbsent(invocation.getArgument(0), key -> new LinkedList<>());
+            list.addLast(invocation.getArgument(3));
+            Map<String, String> hash = hashes.computeIfAbsent(invocation.getArgument(1), key -> new HashMap<>());
+            for (String field : invocation.<List<String>>getArgument(2)) {
+                hash.put(field, invocation.getArgument(3));
+            }
+            return (long) list.size();
+        });
+        Mockito.when(redisService.journalSize(anyString())).thenAnswer(invocation -> (long) lists.getOrDefault(invocation.getArgument(0), new LinkedList<>()).size());
+        Mockito.when(redisService.rangeJournal(anyString(), anyInt())).thenAnswer(invocation -> {
+            List<String> list = lists.getOrDefault(invocation.getArgument(0), new LinkedList<>());
+            return new ArrayList<>(list.subList(0, Math.min(list.size(), invocation.<Integer>getArgument(1))));
+        });
+        Mockito.when(redisService.trimJournal(anyString(), anyList())).thenAnswer(invocation -> {
+            LinkedList<String> list = lists.get(invocation.<String>getArgument(0));
+            List<String> values = invocation.getArgument(1);
+            if (null == list || list.size() < values.size() || !list.subList(0, values.size()).equals(values)) return false;
+            for (int i = 0; i < values.size(); i++) {
+                list.removeFirst();
+            }
+            return true;
+        });
+        Mockito.when(redisService.getJournalReserved(anyString(), anyString())).thenAnswer(invocation -> hashes.getOrDefault(invocation.getArgument(0), new HashMap<>()).get(invocation.<String>getArgument(1)));
+        Mockito.when(redisService.getJournalReservedValues(anyString())).thenAnswer(invocation -> new ArrayList<>(hashes.getOrDefault(invocation.getArgument(0), new HashMap<>()).values()));
+        Mockito.doAnswer(invocation -> {
+            Map<String, String> hash = hashes.getOrDefault(invocation.getArgument(0), new HashMap<>());
+            hash.keySet().removeAll(invocation.<List<String>>getArgument(1));
+            return null;
+        }).when(redisService).removeJournalReserved(anyString(), anyList());
+        Map<String, Long> failures = new HashMap<>();
+        Mockito.when(redisService.incrJournalFailure(anyString(), anyString(), anyLong())).thenAnswer(invocation -> failures.merge(invocation.getArgument(0) + "#" + invocation.getArgument(1), 1L, Long::sum));
+        Mockito.doAnswer(invocation -> {
+            lists.computeIfAbsent(invocation.getArgument(0), key -> new LinkedList<>()).addLast(invocation.getArgument(3));
+            failures.remove(invocation.getArgument(1) + "#" + invocation.getArgument(2));
+            return null;
+        }).when(redisService).deadLetterJournal(anyString(), anyString(), anyString(), anyString());
+    }
+
+    private void mockDao() {
+        Mockito.doAnswer(invocation -> {
+            insertOrders(Collections.singletonList(invocation.getArgument(0)));
+            return null;
+        }).when(userRaffleOrderDao).insert(any());
+        Mockito.doAnswer(invocation -> {
+            insertOrders(invocation.getArgument(0));
+            return null;
+        }).when(userRaffleOrderDao).insertBatch(anyList());
+        Mockito.doAnswer(invocation -> {
+            insertTasks(Collections.singletonList(invocation.getArgument(0)));
+            return null;
+        }).when(taskDao).insert(any());
+        Mockito.doAnswer(invocation -> {
+            insertTasks(invocation.getArgument(0));
+            return null;
+        }).when(taskDao).insertBatch(anyList());
+    }
+
+    // 多行写入任一行冲突时整条语句失败
+    private void insertOrders(List<UserRaffleOrder> userRaffleOrders) {
+        for (UserRaffleOrder userRaffleOrder : userRaffleOrders) {
+            if (invalidOrderIds.contains(userRaffleOrder.getOrderId())) throw new DataIntegrityViolationException("invalid order " + userRaffleOrder.getOrderId());
+            if (orderIds.contains(userRaffleOrder.getOrderId())) throw new DuplicateKeyException("uq_order_id " + userRaffleOrder.getOrderId());
+        }
+        for (UserRaffleOrder userRaffleOrder : userRaffleOrders) {
+            orderIds.add(userRaffleOrder.getOrderId());
+        }
+    }
+
+    private void insertTasks(List<Task> tasks) {
+        for (Task task : tasks) {
+            if (messageIds.contains(task.getMessageId())) throw new DuplicateKeyException("uq_message_id " + task.getMessageId());
+        }
+        for (Task task : tasks) {
+            messageIds.add(task.getMessageId());
+        }
+    }
+
+    private PartakeOrderJournalEntry entry(String userId, String messageId, long orderTime, String... orderIds) {
+        List<UserRaffleOrder> userRaffleOrders = new ArrayList<>();
+        for (String orderId : orderIds) {
+            userRaffleOrders.add(UserRaffleOrder.builder()
+                    .userId(userId)
+                    .activityId(ACTIVITY_ID)
+                    .strategyId(100006L)
+                    .orderId(orderId)
+                    .orderTime(new Date(orderTime))
+                    .orderState("create")
+                    .build());
+        }
+        Task task = new Task();
+        task.setUserId(userId);
+        task.setTopic("activity_account_quota");
+        task.setMessageId(messageId);
+        task.setMessage("{}");
+        task.setState("create");
+        return PartakeOrderJournalEntry.builder()
+                .userId(userId)
+                .activityId(ACTIVITY_ID)
+                .userRaffleOrders(userRaffleOrders)
+                .task(task)
+                .build();
+    }
+
+    private int partition(String userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % PARTITIONS;
+    }
+
+    private String journalKey(String userId) {
+        return Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_KEY + partition(userId);
+    }
+
+    private String reservedKey(String userId) {
+        return Constants.RedisKey.ACTIVITY_PARTAKE_RESERVED_KEY + ACTIVITY_ID + Constants.UNDERLINE + userId;
+    }
+
+}
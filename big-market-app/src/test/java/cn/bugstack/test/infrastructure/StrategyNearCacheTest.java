@@ -0,0 +1,113 @@
+package cn.bugstack.test.infrastructure;
+
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleGroupVO;
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleValueVO;
+import cn.bugstack.infrastructure.adapter.repository.StrategyRepository;
+import cn.bugstack.infrastructure.dao.IStrategyAwardDao;
+import cn.bugstack.infrastructure.dao.po.StrategyAward;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.types.common.Constants;
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author gzc
+ * @description 策略配置近端缓存测试；失效时先删除 Redis 中的配置再通知各节点清除本地缓存，缓存的规则值对象只读，Redis 编解码不受只读访问器影响
+ */
+@Slf4j
+public class StrategyNearCacheTest {
+
+    private static final Long STRATEGY_ID = 100006L;
+
+    @Test
+    public void test_invalidateStrategyNearCache() {
+        IRedisService redisService = Mockito.mock(IRedisService.class);
+        IStrategyAwardDao strategyAwardDao = Mockito.mock(IStrategyAwardDao.class);
+        StrategyRepository strategyRepository = new StrategyRepository();
+        ReflectionTestUtils.setField(strategyRepository, "redisService", redisService);
+        ReflectionTestUtils.setField(strategyRepository, "strategyAwardDao", strategyAwardDao);
+        StrategyAward lockAward = new StrategyAward();
+        lockAward.setAwardId(101);
+        lockAward.setRuleModels("tree_lock_1");
+        StrategyAward award = new StrategyAward();
+        award.setAwardId(102);
+        Mockito.when(strategyAwardDao.queryStrategyAwardListByStrategyId(STRATEGY_ID)).thenReturn(Arrays.asList(lockAward, award));
+
+        strategyRepository.invalidateStrategyNearCache(STRATEGY_ID);
+
+        // Redis 中的配置删除后再通知各节点清除本地缓存，各节点回源到数据库
+        InOrder inOrder = Mockito.inOrder(redisService);
+        inOrder.verify(redisService).remove(Constants.RedisKey.STRATEGY_KEY + STRATEGY_ID);
+        inOrder.verify(redisService).remove(Constants.RedisKey.STRATEGY_AWARD_LIST_KEY + STRATEGY_ID);
+        inOrder.verify(redisService).remove(Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + STRATEGY_ID);
+        inOrder.verify(redisService).remove(Constants.RedisKey.STRATEGY_AWARD_KEY + STRATEGY_ID + Constants.UNDERLINE + 101);
+        inOrder.verify(redisService).remove(Constants.RedisKey.RULE_TREE_VO_KEY + "tree_lock_1");
+        inOrder.verify(redisService).remove(Constants.RedisKey.STRATEGY_AWARD_KEY + STRATEGY_ID + Constants.UNDERLINE + 102);
+        inOrder.verify(redisService).invalidateNearValue(
+                Constants.RedisKey.STRATEGY_KEY + STRATEGY_ID,
+                Constants.RedisKey.STRATEGY_AWARD_LIST_KEY + STRATEGY_ID,
+                Constants.RedisKey.STRATEGY_AWARD_KEY + STRATEGY_ID + Constants.UNDERLINE,
+                Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + STRATEGY_ID + Constants.UNDERLINE,
+                Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + STRATEGY_ID,
+                Constants.RedisKey.RULE_TREE_VO_KEY);
+    }
+
+    @Test
+    public void test_strategyRuleValueVO_readOnly() {
+        StrategyRuleValueVO ruleWeight = StrategyRuleValueVO.parse(STRATEGY_ID, null, "rule_weight", "6000:102,103 4000:102");
+        StrategyRuleValueVO ruleBlacklist = StrategyRuleValueVO.parse(STRATEGY_ID, null, "rule_blacklist", "101:user001,user002");
+
+        // 修改返回的数组不影响缓存的对象
+        int[] weightValues = ruleWeight.getWeightValues();
+        weightValues[0] = 1;
+        ruleWeight.getWeightKeys()[0] = "1:101";
+        Assert.assertArrayEquals(new int[]{4000, 6000}, ruleWeight.getWeightValues());
+        Assert.assertArrayEquals(new String[]{"4000:102", "6000:102,103"}, ruleWeight.getWeightKeys());
+
+        assertUnsupported(() -> ruleWeight.getWeightAwardIds().put("1:101", Collections.singletonList(101)));
+        assertUnsupported(() -> ruleWeight.getWeightAwardIds().get("6000:102,103").add(101));
+        assertUnsupported(() -> ruleBlacklist.getBlacklistUserIds().add("user003"));
+        Assert.assertEquals(2, ruleBlacklist.getBlacklistUserIds().size());
+    }
+
+    @Test
+    public void test_strategyRuleGroupVO_codec() throws Exception {
+        HashMap<String, StrategyRuleValueVO> ruleValues = new HashMap<>();
+        ruleValues.put(StrategyRuleGroupVO.ruleKey(null, "rule_weight"), StrategyRuleValueVO.parse(STRATEGY_ID, null, "rule_weight", "4000:102,103 5000:102,103,104"));
+        ruleValues.put(StrategyRuleGroupVO.ruleKey(null, "rule_blacklist"), StrategyRuleValueVO.parse(STRATEGY_ID, null, "rule_blacklist", "101:user001"));
+        StrategyRuleGroupVO strategyRuleGroupVO = StrategyRuleGroupVO.builder().strategyId(STRATEGY_ID).ruleValues(ruleValues).build();
+
+        // 与 RedisClientConfig 使用同一个编解码器
+        ByteBuf byteBuf = JsonJacksonCodec.INSTANCE.getValueEncoder().encode(strategyRuleGroupVO);
+        StrategyRuleGroupVO decoded = (StrategyRuleGroupVO) JsonJacksonCodec.INSTANCE.getValueDecoder().decode(byteBuf, null);
+        byteBuf.release();
+
+        Assert.assertEquals(strategyRuleGroupVO, decoded);
+        assertUnsupported(() -> decoded.getRuleValues().clear());
+        Map<String, List<Integer>> weightAwardIds = decoded.queryRuleValue(null, "rule_weight").getWeightAwardIds();
+        Assert.assertEquals(Arrays.asList(102, 103, 104), weightAwardIds.get("5000:102,103,104"));
+        Assert.assertTrue(decoded.queryRuleValue(null, "rule_blacklist").getBlacklistUserIds().contains("user001"));
+    }
+
+    private void assertUnsupported(Runnable runnable) {
+        try {
+            runnable.run();
+            Assert.fail("缓存对象可被修改");
+        } catch (UnsupportedOperationException e) {
+            log.info("只读：{}", e.getClass().getSimpleName());
+        }
+    }
+
+}
@@ -4,8 +4,10 @@ import cn.bugstack.domain.strategy.model.valobj.RuleTreeVO;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
 import cn.bugstack.infrastructure.redis.IRedisService;
 import cn.bugstack.types.common.Constants;
+import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
 import com.alibaba.fastjson2.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -46,6 +48,25 @@ public class StrategyRepositoryTest {
         strategyRepository.subtractionAwardStock(cacheKey);
     }
 
+    /**
+     * 批量扣减库存；库存不足时扣减剩余数量，扣减成功的数量累加到已消耗计数
+     */
+    @Test
+    public void test_subtractionAwardStock_batch() {
+        String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + "999999" + Constants.UNDERLINE + "101";
+        String consumedKey = Constants.RedisKey.STRATEGY_AWARD_STOCK_CONSUMED_KEY + "999999" + Constants.UNDERLINE + "101";
+        redisService.remove(cacheKey + Constants.UNDERLINE + "lock");
+        redisService.remove(consumedKey);
+        redisService.setAtomicLong(cacheKey, 3);
+        StrategyAwardStockKeyVO strategyAwardStockKeyVO = StrategyAwardStockKeyVO.builder().strategyId(999999L).awardId(101).build();
+
+        Assert.assertEquals(2, strategyRepository.subtractionAwardStock(cacheKey, 2, strategyAwardStockKeyVO, null));
+        Assert.assertEquals(1, strategyRepository.subtractionAwardStock(cacheKey, 5, strategyAwardStockKeyVO, null));
+        Assert.assertEquals(0, strategyRepository.subtractionAwardStock(cacheKey, 5, strategyAwardStockKeyVO, null));
+        Assert.assertEquals(Long.valueOf(0), redisService.getAtomicLong(cacheKey));
+        Assert.assertEquals(Long.valueOf(3), redisService.getAtomicLong(consumedKey));
+    }
+
     @Test
     public void test_getValue() {
         String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + "300001" + Constants.UNDERLINE + "102";
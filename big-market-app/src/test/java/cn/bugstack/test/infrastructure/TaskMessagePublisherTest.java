@@ -0,0 +1,119 @@
+package cn.bugstack.test.infrastructure;
+
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * @author gzc
+ * @description 任务消息发送测试；事务提交后才放入发送队列，回滚不发送，队列已满不阻塞，批量发送只返回 Broker 确认的任务
+ */
+@Slf4j
+public class TaskMessagePublisherTest {
+
+    private final EventPublisher eventPublisher = Mockito.mock(EventPublisher.class);
+    private final TaskMessagePublisher taskMessagePublisher = new TaskMessagePublisher();
+    private BlockingQueue<Task> queue;
+
+    @Before
+    public void setUp() {
+        // 不启动发送线程，直接检查队列
+        queue = new ArrayBlockingQueue<>(2);
+        ReflectionTestUtils.setField(taskMessagePublisher, "queue", queue);
+        ReflectionTestUtils.setField(taskMessagePublisher, "eventPublisher", eventPublisher);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void test_publishAfterCommit_commit() {
+        taskMessagePublisher.publishAfterCommit(task("m1"));
+        Assert.assertTrue("提交前不放入队列", queue.isEmpty());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        Assert.assertEquals("m1", queue.poll().getMessageId());
+    }
+
+    @Test
+    public void test_publishAfterCommit_rollback() {
+        taskMessagePublisher.publishAfterCommit(Arrays.asList(task("m1"), task("m2")));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        Assert.assertTrue("回滚不发送", queue.isEmpty());
+    }
+
+    @Test
+    public void test_publishAfterCommit_noTransaction_queueFull() {
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // 队列容量 2，第三条丢弃，保持 create 状态等待 SendMessageTaskJob 补偿
+        taskMessagePublisher.publishAfterCommit(Arrays.asList(task("m1"), task("m2"), task("m3")));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals("m1", queue.poll().getMessageId());
+        Assert.assertEquals("m2", queue.poll().getMessageId());
+    }
+
+    @Test
+    public void test_publishConfirmed() {
+        // m1 ack、m2 nack、m3 发送异常
+        Mockito.doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(2);
+            correlationData.getFuture().set(new CorrelationData.Confirm("m1".equals(correlationData.getId()), "nack"));
+            return null;
+        }).when(eventPublisher).publish(anyString(), anyString(), any(CorrelationData.class));
+        Mockito.doThrow(new RuntimeException("connection closed")).when(eventPublisher)
+                .publish(anyString(), anyString(), Mockito.argThat((CorrelationData correlationData) -> "m3".equals(correlationData.getId())));
+
+        List<Task> confirmedTasks = taskMessagePublisher.publishConfirmed(Arrays.asList(task("m1"), task("m2"), task("m3")), 1000);
+
+        Assert.assertEquals(1, confirmedTasks.size());
+        Assert.assertEquals("m1", confirmedTasks.get(0).getMessageId());
+    }
+
+    @Test
+    public void test_publishConfirmed_timeout() {
+        // 未收到确认
+        List<Task> confirmedTasks = taskMessagePublisher.publishConfirmed(Arrays.asList(task("m1"), task("m2")), 50);
+        Assert.assertTrue(confirmedTasks.isEmpty());
+        Mockito.verify(eventPublisher, Mockito.times(2)).publish(anyString(), anyString(), any(CorrelationData.class));
+    }
+
+    private Task task(String messageId) {
+        Task task = new Task();
+        task.setUserId("xiaofuge");
+        task.setTopic("send_award");
+        task.setMessageId(messageId);
+        task.setMessage("{}");
+        return task;
+    }
+
+}
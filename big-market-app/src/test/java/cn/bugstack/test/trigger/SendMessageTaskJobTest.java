@@ -0,0 +1,140 @@
+package cn.bugstack.test.trigger;
+
+import cn.bugstack.domain.task.service.TaskService;
+import cn.bugstack.infrastructure.adapter.repository.TaskRepository;
+import cn.bugstack.infrastructure.dao.ITaskDao;
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.dao.po.TaskBacklog;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.bugstack.trigger.job.SendMessageTaskJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+/**
+ * @author gzc
+ * @description 任务补偿投递测试；每批在同一事务内 SKIP LOCKED 认领并更新为投递中，确认的任务批量更新为完成，其余更新为失败
+ */
+@Slf4j
+public class SendMessageTaskJobTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final long CLAIM_DELAY_SECONDS = 60;
+
+    private final ITaskDao taskDao = Mockito.mock(ITaskDao.class);
+    private final TaskMessagePublisher taskMessagePublisher = Mockito.mock(TaskMessagePublisher.class);
+    private final TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+    private final IDBRouterStrategy dbRouter = Mockito.mock(IDBRouterStrategy.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SendMessageTaskJob sendMessageTaskJob = new SendMessageTaskJob();
+
+    @Before
+    public void setUp() {
+        Mockito.when(transactionTemplate.execute(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(new SimpleTransactionStatus()));
+        TaskBacklog taskBacklog = new TaskBacklog();
+        taskBacklog.setCount(3L);
+        taskBacklog.setLagSeconds(120L);
+        Mockito.when(taskDao.queryTaskBacklog()).thenReturn(taskBacklog);
+
+        TaskRepository taskRepository = new TaskRepository();
+        ReflectionTestUtils.setField(taskRepository, "taskDao", taskDao);
+        ReflectionTestUtils.setField(taskRepository, "taskMessagePublisher", taskMessagePublisher);
+        ReflectionTestUtils.setField(taskRepository, "transactionTemplate", transactionTemplate);
+        TaskService taskService = new TaskService();
+        ReflectionTestUtils.setField(taskService, "taskRepository", taskRepository);
+
+        ReflectionTestUtils.setField(sendMessageTaskJob, "taskService", taskService);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "dbRouter", dbRouter);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "dbCount", 1);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "maxBatches", 10);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "claimDelaySeconds", CLAIM_DELAY_SECONDS);
+        ReflectionTestUtils.setField(sendMessageTaskJob, "confirmTimeoutMillis", 1000L);
+        sendMessageTaskJob.init();
+    }
+
+    @Test
+    public void test_exec() {
+        // 第一批 2 条全部确认；第二批 1 条未确认，不足一批后结束
+        Mockito.when(taskDao.queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE))
+                .thenReturn(Arrays.asList(task("m1"), task("m2")))
+                .thenReturn(Collections.singletonList(task("m3")));
+        Mockito.when(taskMessagePublisher.publishConfirmed(anyList(), anyLong()))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenReturn(Collections.emptyList());
+
+        sendMessageTaskJob.exec();
+
+        InOrder inOrder = Mockito.inOrder(transactionTemplate, taskDao, taskMessagePublisher, dbRouter);
+        inOrder.verify(dbRouter).setDBKey(1);
+        // 认领和更新为投递中在同一事务内
+        inOrder.verify(transactionTemplate).execute(any());
+        inOrder.verify(taskDao).queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE);
+        inOrder.verify(taskDao).updateTaskSendMessageSending(Arrays.asList("m1", "m2"));
+        inOrder.verify(taskMessagePublisher).publishConfirmed(anyList(), anyLong());
+        inOrder.verify(taskDao).updateTaskSendMessageCompletedBatch(Mockito.argThat(messageIds -> messageIds.size() == 2 && messageIds.containsAll(Arrays.asList("m1", "m2"))));
+        inOrder.verify(transactionTemplate).execute(any());
+        inOrder.verify(taskDao).queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE);
+        inOrder.verify(taskDao).updateTaskSendMessageSending(Collections.singletonList("m3"));
+        inOrder.verify(taskMessagePublisher).publishConfirmed(anyList(), anyLong());
+        inOrder.verify(taskDao).updateTaskSendMessageFailBatch(Collections.singletonList("m3"));
+        inOrder.verify(dbRouter).clear();
+        Mockito.verify(taskDao, Mockito.times(2)).queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE);
+
+        Assert.assertEquals(3, meterRegistry.get("task_relay_backlog").tag("db", "db01").gauge().value(), 0);
+        Assert.assertEquals(120, meterRegistry.get("task_relay_lag_seconds").tag("db", "db01").gauge().value(), 0);
+    }
+
+    @Test
+    public void test_exec_nothingClaimed() {
+        Mockito.when(taskDao.queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE)).thenReturn(new ArrayList<>());
+
+        sendMessageTaskJob.exec();
+
+        Mockito.verify(taskDao, Mockito.never()).updateTaskSendMessageSending(anyList());
+        Mockito.verify(taskMessagePublisher, Mockito.never()).publishConfirmed(anyList(), anyLong());
+        Mockito.verify(dbRouter).clear();
+    }
+
+    @Test
+    public void test_exec_claimFailed() {
+        // 认领事务异常时当前分库本次不投递，路由仍被清理
+        Mockito.when(taskDao.queryNoSendMessageTaskListForUpdate(CLAIM_DELAY_SECONDS, BATCH_SIZE)).thenThrow(new RuntimeException("Lock wait timeout exceeded"));
+
+        sendMessageTaskJob.exec();
+
+        Mockito.verify(taskDao, Mockito.never()).updateTaskSendMessageSending(anyList());
+        Mockito.verify(taskMessagePublisher, Mockito.never()).publishConfirmed(anyList(), anyLong());
+        Mockito.verify(dbRouter).clear();
+    }
+
+    private Task task(String messageId) {
+        Task task = new Task();
+        task.setUserId("xiaofuge");
+        task.setTopic("send_award");
+        task.setMessageId(messageId);
+        task.setMessage("{}");
+        return task;
+    }
+
+}
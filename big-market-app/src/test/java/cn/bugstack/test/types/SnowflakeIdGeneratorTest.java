@@ -0,0 +1,72 @@
+package cn.bugstack.test.types;
+
+import cn.bugstack.types.id.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author gzc
+ * @description 雪花算法订单号测试；单节点严格递增、多线程不重复，且只凭订单号算出的路由下标与 db-router 按 userId 计算一致
+ */
+@Slf4j
+public class SnowflakeIdGeneratorTest {
+
+    private final SnowflakeIdGenerator snowflakeIdGenerator = new SnowflakeIdGenerator();
+
+    @Test
+    public void test_nextId_monotonic() {
+        long last = 0;
+        for (int i = 0; i < 100000; i++) {
+            long id = snowflakeIdGenerator.nextId(1, i);
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+        long timestampMillis = SnowflakeIdGenerator.timestampMillis(String.valueOf(last));
+        log.info("测试结果：{} 生成时间：{}", last, timestampMillis);
+        Assert.assertTrue(Math.abs(timestampMillis - System.currentTimeMillis()) < 60_000);
+    }
+
+    @Test
+    public void test_nextId_concurrent() throws InterruptedException {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    Assert.assertTrue(ids.add(snowflakeIdGenerator.nextId(SnowflakeIdGenerator.MAX_WORKER_ID, 0)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(8 * 20000, ids.size());
+    }
+
+    @Test
+    public void test_routeIndex() {
+        // 2库4表，与 db-router 的 (size - 1) & (hashCode ^ hashCode >>> 16) 一致
+        int size = 2 * 4;
+        Set<Integer> routeIndexes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String userId = "xiaofuge" + i;
+            int hashCode = userId.hashCode();
+            int idx = (size - 1) & (hashCode ^ hashCode >>> 16);
+            String orderId = String.valueOf(snowflakeIdGenerator.nextId(i & SnowflakeIdGenerator.MAX_WORKER_ID, SnowflakeIdGenerator.routeBits(userId)));
+            Assert.assertEquals(idx, SnowflakeIdGenerator.routeIndex(orderId, size));
+            Assert.assertTrue(orderId.length() <= 20);
+            routeIndexes.add(idx);
+        }
+        Assert.assertEquals(size, routeIndexes.size());
+    }
+
+}
@@ -0,0 +1,75 @@
+package cn.bugstack.domain.activity.event;
+
+import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.id.IOrderIdGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Date;
+
+/**
+ * @author gzc
+ * @description 活动账户额度对账消息；额度账本模式下额度已在 Redis 扣减，消费该消息把扣减同步到数据库账户
+ */
+@Component
+public class ActivityAccountQuotaMessageEvent extends BaseEvent<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> {
+
+    @Value("${spring.rabbitmq.topic.activity_account_quota}")
+    private String topic;
+
+    // 消息ID取雪花算法订单号，全局唯一；随机数消息ID碰撞时，消费记录防重会把不同的消息当作重复丢弃
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
+
+    @Override
+    public EventMessage<ActivityAccountQuotaMessage> buildEventMessage(ActivityAccountQuotaMessage data) {
+        return EventMessage.<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>builder()
+                .id(orderIdGenerator.nextOrderId(data.getUserId()))
+                .timestamp(new Date())
+                .data(data)
+                .build();
+    }
+
+    @Override
+    public String topic() {
+        return topic;
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ActivityAccountQuotaMessage {
+
+        /**
+         * 用户ID
+         */
+        private String userId;
+        /**
+         * 活动ID
+         */
+        private Long activityId;
+        /**
+         * 抽奖单ID；十连抽为第一个抽奖单ID
+         */
+        private String orderId;
+        /**
+         * 扣减月份（yyyy-mm）
+         */
+        private String month;
+        /**
+         * 扣减日期（yyyy-mm-dd）
+         */
+        private String day;
+        /**
+         * 扣减数量；1 单抽、10 十连抽
+         */
+        private Integer count;
+    }
+
+}
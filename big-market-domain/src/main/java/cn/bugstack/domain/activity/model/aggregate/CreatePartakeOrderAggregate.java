@@ -59,4 +59,14 @@ public class CreatePartakeOrderAggregate {
 
     private UserTenRaffleOrderEntity userTenRaffleOrderEntity;
 
+    /**
+     * 额度账本模式；true = 额度已在 Redis 账本扣减，只写入抽奖单和对账任务，账户额度由对账消息异步更新
+     */
+    private boolean quotaLedger;
+
+    /**
+     * 账户额度对账任务；额度账本模式下使用
+     */
+    private TaskEntity taskEntity;
+
 }
@@ -26,5 +26,9 @@ public class DeliveryOrderEntity {
      * 业务仿重ID - 外部透传。返利、行为等唯一标识
      */
     private String outBusinessNo;
+    /**
+     * 消息ID - 批量消费时按消息ID防重
+     */
+    private String messageId;
 
 }
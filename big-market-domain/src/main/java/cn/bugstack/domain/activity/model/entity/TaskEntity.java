@@ -0,0 +1,32 @@
+package cn.bugstack.domain.activity.model.entity;
+
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
+import cn.bugstack.domain.activity.model.valobj.TaskStateVO;
+import cn.bugstack.types.event.BaseEvent;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author gzc
+ * @description 任务实体对象；额度账本模式下与抽奖单同事务写入，保证账户额度对账消息可补偿发送
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskEntity {
+
+    /** 用户ID */
+    private String userId;
+    /** 消息主题 */
+    private String topic;
+    /** 消息编号 */
+    private String messageId;
+    /** 消息主体 */
+    private BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> message;
+    /** 任务状态；create-创建、completed-完成、fail-失败 */
+    private TaskStateVO state;
+
+}
@@ -1,9 +1,11 @@
 package cn.bugstack.domain.activity.repository;
 
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
 import cn.bugstack.domain.activity.model.aggregate.CreatePartakeOrderAggregate;
 import cn.bugstack.domain.activity.model.aggregate.CreateQuotaOrderAggregate;
 import cn.bugstack.domain.activity.model.entity.*;
 import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
+import cn.bugstack.types.event.BaseEvent;
 
 import java.math.BigDecimal;
 import java.util.Date;
@@ -18,6 +20,13 @@ public interface IActivityRepository {
 
     ActivitySkuEntity queryActivitySku(Long sku);
 
+    /**
+     * 失效活动配置的近端缓存，装配时调用，通知所有节点重新从 Redis 加载
+     *
+     * @param activityId 活动ID
+     */
+    void invalidateActivityNearCache(Long activityId);
+
     ActivityEntity queryRaffleActivityByActivityId(Long activityId);
 
     ActivityCountEntity queryRaffleActivityCountByActivityCountId(Long activityCountId);
@@ -28,15 +37,17 @@ public interface IActivityRepository {
 
     void cacheActivitySkuStockCount(String cacheKey, Integer stockCount);
 
-    boolean subtractionActivitySkuStock(Long sku, String cacheKey, Date endDateTime);
-
-    void activitySkuStockConsumeSendQueue(ActivitySkuStockKeyVO activitySkuStockKeyVO);
-
-    ActivitySkuStockKeyVO takeQueueValue(Long sku) throws InterruptedException;
+    /**
+     * 扣减活动sku库存；扣减成功时同一次脚本调用内累加已消耗计数
+     */
+    boolean subtractionActivitySkuStock(ActivitySkuStockKeyVO activitySkuStockKeyVO, String cacheKey, Date endDateTime);
 
-    void clearQueueValue(Long sku);
+    /**
+     * 同步活动sku库存；GETSET 取走已消耗计数，一条 UPDATE 扣减「剩余库存最少扣到 0」，更新失败或 sku 不存在时把计数加回
+     */
+    long syncActivitySkuStock(Long sku);
 
-    void updateActivitySkuStock(Long sku);
+    void clearActivitySkuStockConsumed(Long sku);
 
     void clearActivitySkuStock(Long sku);
 
@@ -54,6 +65,25 @@ public interface IActivityRepository {
 
     void saveCreatePartakeOrderAggregateTen(CreatePartakeOrderAggregate createPartakeOrderAggregate);
 
+    /**
+     * 额度账本扣减；总、月、日额度在 Redis 账本中一次校验并扣减，账本不存在时从数据库账户初始化
+     *
+     * @param userId      用户ID
+     * @param activityId  活动ID
+     * @param month       当前月份
+     * @param day         当前日期
+     * @param count       扣减数量
+     * @param endDateTime 活动结束时间
+     * @return 扣减后的总剩余额度；-1 总额度不足，-2 月额度不足，-3 日额度不足
+     */
+    long subtractionActivityAccountQuota(String userId, Long activityId, String month, String day, int count, Date endDateTime);
+
+    /**
+     * 额度账本对账；把已在 Redis 扣减的额度同步到数据库账户，按消息ID防重
+     * 消息按用户分库分组，每个分库一个事务，同一账户的扣减合并后更新
+     */
+    void reconcileActivityAccountQuota(List<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> eventMessages);
+
     List<ActivitySkuEntity> queryActivitySkuListByActivityId(Long activityId);
 
     Integer queryRaffleActivityAccountDayPartakeCount(Long activityId, String userId);
@@ -64,6 +94,11 @@ public interface IActivityRepository {
 
     void updateOrder(DeliveryOrderEntity deliveryOrderEntity);
 
+    /**
+     * 批量订单出货；按用户分库分组，每个分库一个事务，按消息ID防重，已出货的订单跳过
+     */
+    void updateOrders(String topic, List<DeliveryOrderEntity> deliveryOrderEntities);
+
     UnpaidActivityOrderEntity queryUnpaidActivityOrder(SkuRechargeEntity skuRechargeEntity);
 
     List<SkuProductEntity> querySkuProductEntityListByActivityId(Long activityId);
@@ -1,6 +1,10 @@
 package cn.bugstack.domain.activity.service;
 
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
 import cn.bugstack.domain.activity.model.entity.*;
+import cn.bugstack.types.event.BaseEvent;
+
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -26,6 +30,13 @@ public interface IRaffleActivityAccountQuotaService {
      */
     void updateOrder(DeliveryOrderEntity deliveryOrderEntity);
 
+    /**
+     * 批量订单出货 - 积分充值；按用户分库分组，每个分库一个事务，按消息ID防重
+     * @param topic                 消费的消息主题
+     * @param deliveryOrderEntities 出货单实体对象
+     */
+    void updateOrders(String topic, List<DeliveryOrderEntity> deliveryOrderEntities);
+
     /**
      * 查询活动账户 - 总，参与次数
      *
@@ -53,4 +64,11 @@ public interface IRaffleActivityAccountQuotaService {
      */
     ActivityAccountEntity queryActivityAccountEntity(Long activityId, String userId);
 
+    /**
+     * 账户额度对账；额度账本模式下，把已在 Redis 账本扣减的额度同步到数据库账户「总、月、日」
+     *
+     * @param eventMessages 一批账户额度对账消息，按消息ID防重
+     */
+    void reconcileActivityAccountQuota(List<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> eventMessages);
+
 }
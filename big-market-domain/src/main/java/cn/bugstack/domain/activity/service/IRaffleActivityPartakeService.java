@@ -28,7 +28,23 @@ public interface IRaffleActivityPartakeService {
      */
     UserRaffleOrderEntity createOrder(PartakeRaffleActivityEntity partakeRaffleActivityEntity);
 
-
+    /**
+     * 创建十连抽抽奖单；等同于 createBatchOrders(userId, activityId, 10)
+     *
+     * @param userId     用户ID
+     * @param activityId 活动ID
+     * @return 用户批量抽奖订单实体对象
+     */
     UserTenRaffleOrderEntity createTenOrders(String userId, Long activityId);
 
+    /**
+     * 创建连抽抽奖单；一次扣减 count 个账户额度，产生 count 个抽奖单，同一事务写入。
+     *
+     * @param userId     用户ID
+     * @param activityId 活动ID
+     * @param count      抽奖次数
+     * @return 用户批量抽奖订单实体对象
+     */
+    UserTenRaffleOrderEntity createBatchOrders(String userId, Long activityId, int count);
+
 }
@@ -1,7 +1,5 @@
 package cn.bugstack.domain.activity.service;
 
-import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
-
 import java.util.List;
 
 /**
@@ -11,27 +9,19 @@ import java.util.List;
 public interface IRaffleActivitySkuStockService {
 
     /**
-     * 获取活动sku库存消耗队列
-     *
-     * @param sku 指定sku
-     * @return 奖品库存Key信息
-     * @throws InterruptedException 异常
-     */
-    ActivitySkuStockKeyVO takeQueueValue(Long sku) throws InterruptedException;
-
-    /**
-     * 清空队列
+     * 同步活动sku库存；取走上次同步后的已消耗计数，一次更新到数据库
      *
-     * @param sku 指定sku
+     * @param sku 活动商品
+     * @return 本次同步的数量
      */
-    void clearQueueValue(Long sku);
+    long syncActivitySkuStock(Long sku);
 
     /**
-     * 延迟队列 + 任务趋势更新活动sku库存
+     * 清空已消耗计数；库存耗尽后数据库库存直接清零，不再同步
      *
      * @param sku 活动商品
      */
-    void updateActivitySkuStock(Long sku);
+    void clearActivitySkuStockConsumed(Long sku);
 
     /**
      * 缓存库存以消耗完毕，清空数据库库存
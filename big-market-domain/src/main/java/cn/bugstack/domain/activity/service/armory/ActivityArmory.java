@@ -1,6 +1,7 @@
 package cn.bugstack.domain.activity.service.armory;
 
 import cn.bugstack.domain.activity.model.entity.ActivitySkuEntity;
+import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
 import cn.bugstack.domain.activity.repository.IActivityRepository;
 import cn.bugstack.types.common.Constants;
 import lombok.extern.slf4j.Slf4j;
@@ -33,7 +34,8 @@ public class ActivityArmory implements IActivityArmory, IActivityDispatch {
             activityRepository.queryRaffleActivityCountByActivityCountId(activitySkuEntity.getActivityCountId());
         }
 
-        // 预热活动【查询时预热到缓存】
+        // 预热活动【查询时预热到缓存】，先失效各节点近端缓存
+        activityRepository.invalidateActivityNearCache(activityId);
         activityRepository.queryRaffleActivityByActivityId(activityId);
 
         return true;
@@ -45,7 +47,8 @@ public class ActivityArmory implements IActivityArmory, IActivityDispatch {
         ActivitySkuEntity activitySkuEntity = activityRepository.queryActivitySku(sku);
         cacheActivitySkuStockCount(sku, activitySkuEntity.getStockCountSurplus());
 
-        // 预热活动【查询时预热到缓存】
+        // 预热活动【查询时预热到缓存】，先失效各节点近端缓存
+        activityRepository.invalidateActivityNearCache(activitySkuEntity.getActivityId());
         activityRepository.queryRaffleActivityByActivityId(activitySkuEntity.getActivityId());
 
         // 预热活动次数【查询时预热到缓存】
@@ -60,9 +63,12 @@ public class ActivityArmory implements IActivityArmory, IActivityDispatch {
     }
 
     @Override
-    public boolean subtractionActivitySkuStock(Long sku, Date endDateTime) {
+    public boolean subtractionActivitySkuStock(Long sku, Long activityId, Date endDateTime) {
         String cacheKey = Constants.RedisKey.ACTIVITY_SKU_STOCK_COUNT_KEY + sku;
-        return activityRepository.subtractionActivitySkuStock(sku, cacheKey, endDateTime);
+        return activityRepository.subtractionActivitySkuStock(ActivitySkuStockKeyVO.builder()
+                .sku(sku)
+                .activityId(activityId)
+                .build(), cacheKey, endDateTime);
     }
 
 }
@@ -13,9 +13,10 @@ public interface IActivityDispatch {
      * 根据策略ID和奖品ID，扣减奖品缓存库存
      *
      * @param sku 互动SKU
+     * @param activityId 活动ID，扣减成功时与 sku 一起构建库存标识
      * @param endDateTime 活动结束时间，根据结束时间设置加锁的key为结束时间
      * @return 扣减结果
      */
-    boolean subtractionActivitySkuStock(Long sku, Date endDateTime);
+    boolean subtractionActivitySkuStock(Long sku, Long activityId, Date endDateTime);
 
 }
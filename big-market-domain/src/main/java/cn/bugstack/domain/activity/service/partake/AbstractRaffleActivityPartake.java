@@ -3,6 +3,7 @@ package cn.bugstack.domain.activity.service.partake;
 import cn.bugstack.domain.activity.model.aggregate.CreatePartakeOrderAggregate;
 import cn.bugstack.domain.activity.model.entity.ActivityEntity;
 import cn.bugstack.domain.activity.model.entity.PartakeRaffleActivityEntity;
+import cn.bugstack.domain.activity.model.entity.TaskEntity;
 import cn.bugstack.domain.activity.model.entity.UserRaffleOrderEntity;
 import cn.bugstack.domain.activity.model.entity.UserTenRaffleOrderEntity;
 import cn.bugstack.domain.activity.model.valobj.ActivityStateVO;
@@ -70,8 +71,12 @@ public abstract class AbstractRaffleActivityPartake implements IRaffleActivityPa
 
         // 5. 填充抽奖单实体对象
         createPartakeOrderAggregate.setUserRaffleOrderEntity(userRaffleOrder);
+        // 额度账本模式；构建账户额度对账任务，与抽奖单同事务写入
+        if (createPartakeOrderAggregate.isQuotaLedger()) {
+            createPartakeOrderAggregate.setTaskEntity(this.buildAccountQuotaTask(userId, activityId, userRaffleOrder.getOrderId(), 1, currentDate));
+        }
 
-        // 6. 保存聚合对象 - 一个领域内的一个聚合是一个事务操作 todo 改为异步
+        // 6. 保存聚合对象 - 一个领域内的一个聚合是一个事务操作；额度账本模式下可开启写后落库，由仓储异步批量写入
         activityRepository.saveCreatePartakeOrderAggregate(createPartakeOrderAggregate);
 
         return userRaffleOrder;
@@ -79,13 +84,21 @@ public abstract class AbstractRaffleActivityPartake implements IRaffleActivityPa
 
     @Override
     public UserTenRaffleOrderEntity createTenOrders(String userId, Long activityId) {
-        return createTenOrders(PartakeRaffleActivityEntity.builder()
+        return createBatchOrders(userId, activityId, 10);
+    }
+
+    @Override
+    public UserTenRaffleOrderEntity createBatchOrders(String userId, Long activityId, int count) {
+        if (count <= 0) {
+            throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+        }
+        return createBatchOrders(PartakeRaffleActivityEntity.builder()
                 .userId(userId)
                 .activityId(activityId)
-                .build());
+                .build(), count);
     }
 
-    private UserTenRaffleOrderEntity createTenOrders(PartakeRaffleActivityEntity partakeRaffleActivityEntity) {
+    private UserTenRaffleOrderEntity createBatchOrders(PartakeRaffleActivityEntity partakeRaffleActivityEntity, int count) {
         // 0. 基础信息
         String userId = partakeRaffleActivityEntity.getUserId();
         Long activityId = partakeRaffleActivityEntity.getActivityId();
@@ -105,14 +118,18 @@ public abstract class AbstractRaffleActivityPartake implements IRaffleActivityPa
             throw new AppException(ResponseCode.ACTIVITY_DATE_ERROR.getCode(), ResponseCode.ACTIVITY_DATE_ERROR.getInfo());
         }
 
-        // 3. 额度账户过滤&返回账户构建聚合对象
-        CreatePartakeOrderAggregate createPartakeOrderAggregate = this.doFilterAccountTen(userId, activityId, currentDate);
+        // 3. 额度账户过滤&返回账户构建聚合对象「count 个额度一次扣减」
+        CreatePartakeOrderAggregate createPartakeOrderAggregate = this.doFilterAccountBatch(userId, activityId, currentDate, count);
 
         // 4. 构建订单
-        UserTenRaffleOrderEntity userTenRaffleOrderEntity = this.buildUserTenRaffleOrders(userId, activityId, currentDate);
+        UserTenRaffleOrderEntity userTenRaffleOrderEntity = this.buildUserBatchRaffleOrders(userId, activityId, currentDate, count);
 
         // 5. 填充抽奖单实体对象
         createPartakeOrderAggregate.setUserTenRaffleOrderEntity(userTenRaffleOrderEntity);
+        // 额度账本模式；构建账户额度对账任务，与抽奖单同事务写入
+        if (createPartakeOrderAggregate.isQuotaLedger()) {
+            createPartakeOrderAggregate.setTaskEntity(this.buildAccountQuotaTask(userId, activityId, userTenRaffleOrderEntity.getOrderIds().get(0), count, currentDate));
+        }
 
         // 6. 保存聚合对象 - 一个领域内的一个聚合是一个事务操作
         activityRepository.saveCreatePartakeOrderAggregateTen(createPartakeOrderAggregate);
@@ -122,10 +139,12 @@ public abstract class AbstractRaffleActivityPartake implements IRaffleActivityPa
 
     protected abstract CreatePartakeOrderAggregate doFilterAccount(String userId, Long activityId, Date currentDate);
 
-    protected abstract CreatePartakeOrderAggregate doFilterAccountTen(String userId, Long activityId, Date currentDate);
+    protected abstract CreatePartakeOrderAggregate doFilterAccountBatch(String userId, Long activityId, Date currentDate, int count);
 
     protected abstract UserRaffleOrderEntity buildUserRaffleOrder(String userId, Long activityId, Date currentDate);
 
-    protected abstract UserTenRaffleOrderEntity buildUserTenRaffleOrders(String userId, Long activityId, Date currentDate);
+    protected abstract UserTenRaffleOrderEntity buildUserBatchRaffleOrders(String userId, Long activityId, Date currentDate, int count);
+
+    protected abstract TaskEntity buildAccountQuotaTask(String userId, Long activityId, String orderId, int count, Date currentDate);
 
 }
@@ -1,12 +1,16 @@
 package cn.bugstack.domain.activity.service.partake;
 
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
 import cn.bugstack.domain.activity.model.aggregate.CreatePartakeOrderAggregate;
 import cn.bugstack.domain.activity.model.entity.*;
+import cn.bugstack.domain.activity.model.valobj.TaskStateVO;
 import cn.bugstack.domain.activity.model.valobj.UserRaffleOrderStateVO;
 import cn.bugstack.domain.activity.repository.IActivityRepository;
+import cn.bugstack.types.event.BaseEvent;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
-import org.apache.commons.lang3.RandomStringUtils;
+import cn.bugstack.types.id.IOrderIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.text.SimpleDateFormat;
@@ -25,12 +29,25 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
     private final SimpleDateFormat dateFormatMonth = new SimpleDateFormat("yyyy-MM");
     private final SimpleDateFormat dateFormatDay = new SimpleDateFormat("yyyy-MM-dd");
 
-    public RaffleActivityPartakeService(IActivityRepository activityRepository) {
+    private final ActivityAccountQuotaMessageEvent activityAccountQuotaMessageEvent;
+    private final IOrderIdGenerator orderIdGenerator;
+
+    // 额度账本模式；总、月、日额度在 Redis 账本中一次扣减，数据库账户额度由对账消息异步更新
+    @Value("${activity.partake.quota-ledger:false}")
+    private boolean quotaLedger;
+
+    public RaffleActivityPartakeService(IActivityRepository activityRepository, ActivityAccountQuotaMessageEvent activityAccountQuotaMessageEvent, IOrderIdGenerator orderIdGenerator) {
         super(activityRepository);
+        this.activityAccountQuotaMessageEvent = activityAccountQuotaMessageEvent;
+        this.orderIdGenerator = orderIdGenerator;
     }
 
     @Override
     protected CreatePartakeOrderAggregate doFilterAccount(String userId, Long activityId, Date currentDate) {
+        if (quotaLedger) {
+            return doFilterAccountLedger(userId, activityId, currentDate, 1);
+        }
+
         // 第二次走数据库：查询总账户额度
         ActivityAccountEntity activityAccountEntity = activityRepository.queryActivityAccountByUserId(userId, activityId);
 
@@ -90,13 +107,17 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
     }
 
     @Override
-    protected CreatePartakeOrderAggregate doFilterAccountTen(String userId, Long activityId, Date currentDate) {
+    protected CreatePartakeOrderAggregate doFilterAccountBatch(String userId, Long activityId, Date currentDate, int count) {
+        if (quotaLedger) {
+            return doFilterAccountLedger(userId, activityId, currentDate, count);
+        }
+
         // 查询总账户额度
         ActivityAccountEntity activityAccountEntity = activityRepository.queryActivityAccountByUserId(userId, activityId);
 
         // 额度判断（只判断总剩余额度）
-        if (null == activityAccountEntity || activityAccountEntity.getTotalCountSurplus() < 10) {
-            throw new AppException(ResponseCode.ACCOUNT_QUOTA_10_ERROR.getCode(), ResponseCode.ACCOUNT_QUOTA_10_ERROR.getInfo());
+        if (null == activityAccountEntity || activityAccountEntity.getTotalCountSurplus() < count) {
+            throw quotaError(count, ResponseCode.ACCOUNT_QUOTA_ERROR, ResponseCode.ACCOUNT_QUOTA_10_ERROR, ResponseCode.ACCOUNT_QUOTA_BATCH_ERROR);
         }
 
         String month = dateFormatMonth.format(currentDate);
@@ -104,8 +125,8 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
 
         // 查询月账户额度
         ActivityAccountMonthEntity activityAccountMonthEntity = activityRepository.queryActivityAccountMonthByUserId(userId, activityId, month);
-        if (null != activityAccountMonthEntity && activityAccountMonthEntity.getMonthCountSurplus() < 10) {
-            throw new AppException(ResponseCode.ACCOUNT_MONTH_QUOTA_10_ERROR.getCode(), ResponseCode.ACCOUNT_MONTH_QUOTA_10_ERROR.getInfo());
+        if (null != activityAccountMonthEntity && activityAccountMonthEntity.getMonthCountSurplus() < count) {
+            throw quotaError(count, ResponseCode.ACCOUNT_MONTH_QUOTA_ERROR, ResponseCode.ACCOUNT_MONTH_QUOTA_10_ERROR, ResponseCode.ACCOUNT_MONTH_QUOTA_BATCH_ERROR);
         }
 
         // 创建月账户额度；true = 存在月账户、false = 不存在月账户
@@ -121,8 +142,8 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
 
         // 查询日账户额度
         ActivityAccountDayEntity activityAccountDayEntity = activityRepository.queryActivityAccountDayByUserId(userId, activityId, day);
-        if (null != activityAccountDayEntity && activityAccountDayEntity.getDayCountSurplus() < 10) {
-            throw new AppException(ResponseCode.ACCOUNT_DAY_QUOTA_10_ERROR.getCode(), ResponseCode.ACCOUNT_DAY_QUOTA_10_ERROR.getInfo());
+        if (null != activityAccountDayEntity && activityAccountDayEntity.getDayCountSurplus() < count) {
+            throw quotaError(count, ResponseCode.ACCOUNT_DAY_QUOTA_ERROR, ResponseCode.ACCOUNT_DAY_QUOTA_10_ERROR, ResponseCode.ACCOUNT_DAY_QUOTA_BATCH_ERROR);
         }
 
         // 创建日账户额度；true = 存在日账户、false = 不存在日账户
@@ -149,6 +170,40 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
         return createPartakeOrderAggregate;
     }
 
+    /**
+     * 额度账本过滤；一次 Redis 调用完成总、月、日额度的校验和扣减，不再查询数据库账户
+     */
+    private CreatePartakeOrderAggregate doFilterAccountLedger(String userId, Long activityId, Date currentDate, int count) {
+        ActivityEntity activityEntity = activityRepository.queryRaffleActivityByActivityId(activityId);
+        String month = dateFormatMonth.format(currentDate);
+        String day = dateFormatDay.format(currentDate);
+
+        long surplus = activityRepository.subtractionActivityAccountQuota(userId, activityId, month, day, count, activityEntity.getEndDateTime());
+        if (-1 == surplus) {
+            throw quotaError(count, ResponseCode.ACCOUNT_QUOTA_ERROR, ResponseCode.ACCOUNT_QUOTA_10_ERROR, ResponseCode.ACCOUNT_QUOTA_BATCH_ERROR);
+        }
+        if (-2 == surplus) {
+            throw quotaError(count, ResponseCode.ACCOUNT_MONTH_QUOTA_ERROR, ResponseCode.ACCOUNT_MONTH_QUOTA_10_ERROR, ResponseCode.ACCOUNT_MONTH_QUOTA_BATCH_ERROR);
+        }
+        if (-3 == surplus) {
+            throw quotaError(count, ResponseCode.ACCOUNT_DAY_QUOTA_ERROR, ResponseCode.ACCOUNT_DAY_QUOTA_10_ERROR, ResponseCode.ACCOUNT_DAY_QUOTA_BATCH_ERROR);
+        }
+
+        CreatePartakeOrderAggregate createPartakeOrderAggregate = new CreatePartakeOrderAggregate();
+        createPartakeOrderAggregate.setUserId(userId);
+        createPartakeOrderAggregate.setActivityId(activityId);
+        createPartakeOrderAggregate.setQuotaLedger(true);
+        return createPartakeOrderAggregate;
+    }
+
+    /**
+     * 额度不足异常；按抽奖次数区分单抽、十连抽、其他连抽的提示
+     */
+    private AppException quotaError(int count, ResponseCode single, ResponseCode ten, ResponseCode batch) {
+        ResponseCode responseCode = 1 == count ? single : 10 == count ? ten : batch;
+        return new AppException(responseCode.getCode(), responseCode.getInfo());
+    }
+
     @Override
     protected UserRaffleOrderEntity buildUserRaffleOrder(String userId, Long activityId, Date currentDate) {
         ActivityEntity activityEntity = activityRepository.queryRaffleActivityByActivityId(activityId);
@@ -158,7 +213,7 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
         userRaffleOrder.setActivityId(activityId);
         userRaffleOrder.setActivityName(activityEntity.getActivityName());
         userRaffleOrder.setStrategyId(activityEntity.getStrategyId());
-        userRaffleOrder.setOrderId(RandomStringUtils.randomNumeric(12));
+        userRaffleOrder.setOrderId(orderIdGenerator.nextOrderId(userId));
         userRaffleOrder.setOrderTime(currentDate);
         userRaffleOrder.setOrderState(UserRaffleOrderStateVO.create);
         userRaffleOrder.setEndDateTime(activityEntity.getEndDateTime());
@@ -167,13 +222,12 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
 
 
     @Override
-    protected UserTenRaffleOrderEntity buildUserTenRaffleOrders(String userId, Long activityId, Date currentDate) {
+    protected UserTenRaffleOrderEntity buildUserBatchRaffleOrders(String userId, Long activityId, Date currentDate, int count) {
 
         ActivityEntity activityEntity = activityRepository.queryRaffleActivityByActivityId(activityId);
-        List<String> orders = new ArrayList<>(10);
-        for (int i = 0; i < 10; i++) {
-            String curOrder = RandomStringUtils.randomNumeric(12);
-            orders.add(curOrder);
+        List<String> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(orderIdGenerator.nextOrderId(userId));
         }
 
         UserTenRaffleOrderEntity userTenRaffleOrderEntity = new UserTenRaffleOrderEntity();
@@ -188,4 +242,26 @@ public class RaffleActivityPartakeService extends AbstractRaffleActivityPartake{
 
         return userTenRaffleOrderEntity;
     }
+
+    @Override
+    protected TaskEntity buildAccountQuotaTask(String userId, Long activityId, String orderId, int count, Date currentDate) {
+        ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage activityAccountQuotaMessage = ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage.builder()
+                .userId(userId)
+                .activityId(activityId)
+                .orderId(orderId)
+                .month(dateFormatMonth.format(currentDate))
+                .day(dateFormatDay.format(currentDate))
+                .count(count)
+                .build();
+        BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> eventMessage = activityAccountQuotaMessageEvent.buildEventMessage(activityAccountQuotaMessage);
+
+        TaskEntity taskEntity = new TaskEntity();
+        taskEntity.setUserId(userId);
+        taskEntity.setTopic(activityAccountQuotaMessageEvent.topic());
+        taskEntity.setMessageId(eventMessage.getId());
+        taskEntity.setMessage(eventMessage);
+        taskEntity.setState(TaskStateVO.create);
+        return taskEntity;
+    }
+
 }
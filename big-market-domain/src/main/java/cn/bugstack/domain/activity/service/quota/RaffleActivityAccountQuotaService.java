@@ -1,13 +1,14 @@
 package cn.bugstack.domain.activity.service.quota;
 
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
 import cn.bugstack.domain.activity.model.aggregate.CreateQuotaOrderAggregate;
 import cn.bugstack.domain.activity.model.entity.*;
-import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
 import cn.bugstack.domain.activity.repository.IActivityRepository;
 import cn.bugstack.domain.activity.service.IRaffleActivitySkuStockService;
 import cn.bugstack.domain.activity.service.quota.policy.ITradePolicy;
 import cn.bugstack.domain.activity.service.quota.rule.factory.DefaultActivityChainFactory;
-import org.apache.commons.lang3.RandomStringUtils;
+import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
@@ -22,8 +23,11 @@ import java.util.Map;
 @Service
 public class RaffleActivityAccountQuotaService extends AbstractRaffleActivityAccountQuota implements IRaffleActivitySkuStockService {
 
-    public RaffleActivityAccountQuotaService(IActivityRepository activityRepository, DefaultActivityChainFactory defaultActivityChainFactory, Map<String, ITradePolicy> tradePolicyGroup) {
+    private final IOrderIdGenerator orderIdGenerator;
+
+    public RaffleActivityAccountQuotaService(IActivityRepository activityRepository, DefaultActivityChainFactory defaultActivityChainFactory, Map<String, ITradePolicy> tradePolicyGroup, IOrderIdGenerator orderIdGenerator) {
         super(activityRepository, defaultActivityChainFactory, tradePolicyGroup);
+        this.orderIdGenerator = orderIdGenerator;
     }
 
     @Override
@@ -35,8 +39,7 @@ public class RaffleActivityAccountQuotaService extends AbstractRaffleActivityAcc
         activityOrderEntity.setActivityId(activityEntity.getActivityId());
         activityOrderEntity.setActivityName(activityEntity.getActivityName());
         activityOrderEntity.setStrategyId(activityEntity.getStrategyId());
-        // 公司里一般会有专门的雪花算法UUID服务，我们这里直接生成个12位就可以了。
-        activityOrderEntity.setOrderId(RandomStringUtils.randomNumeric(12));
+        activityOrderEntity.setOrderId(orderIdGenerator.nextOrderId(skuRechargeEntity.getUserId()));
         activityOrderEntity.setOrderTime(new Date());
         activityOrderEntity.setTotalCount(activityCountEntity.getTotalCount());
         activityOrderEntity.setDayCount(activityCountEntity.getDayCount());
@@ -56,18 +59,13 @@ public class RaffleActivityAccountQuotaService extends AbstractRaffleActivityAcc
     }
 
     @Override
-    public ActivitySkuStockKeyVO takeQueueValue(Long sku) throws InterruptedException {
-        return activityRepository.takeQueueValue(sku);
+    public long syncActivitySkuStock(Long sku) {
+        return activityRepository.syncActivitySkuStock(sku);
     }
 
     @Override
-    public void clearQueueValue(Long sku) {
-        activityRepository.clearQueueValue(sku);
-    }
-
-    @Override
-    public void updateActivitySkuStock(Long sku) {
-        activityRepository.updateActivitySkuStock(sku);
+    public void clearActivitySkuStockConsumed(Long sku) {
+        activityRepository.clearActivitySkuStockConsumed(sku);
     }
 
     @Override
@@ -85,6 +83,11 @@ public class RaffleActivityAccountQuotaService extends AbstractRaffleActivityAcc
         activityRepository.updateOrder(deliveryOrderEntity);
     }
 
+    @Override
+    public void updateOrders(String topic, List<DeliveryOrderEntity> deliveryOrderEntities) {
+        activityRepository.updateOrders(topic, deliveryOrderEntities);
+    }
+
     @Override
     public Integer queryRaffleActivityAccountPartakeCount(Long activityId, String userId) {
         return activityRepository.queryRaffleActivityAccountPartakeCount(activityId, userId);
@@ -100,4 +103,9 @@ public class RaffleActivityAccountQuotaService extends AbstractRaffleActivityAcc
         return activityRepository.queryActivityAccountEntity(activityId, userId);
     }
 
+    @Override
+    public void reconcileActivityAccountQuota(List<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> eventMessages) {
+        activityRepository.reconcileActivityAccountQuota(eventMessages);
+    }
+
 }
@@ -3,8 +3,6 @@ package cn.bugstack.domain.activity.service.quota.rule.impl;
 import cn.bugstack.domain.activity.model.entity.ActivityCountEntity;
 import cn.bugstack.domain.activity.model.entity.ActivityEntity;
 import cn.bugstack.domain.activity.model.entity.ActivitySkuEntity;
-import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
-import cn.bugstack.domain.activity.repository.IActivityRepository;
 import cn.bugstack.domain.activity.service.armory.IActivityDispatch;
 import cn.bugstack.domain.activity.service.quota.rule.AbstractActionChain;
 import cn.bugstack.types.enums.ResponseCode;
@@ -24,21 +22,13 @@ public class ActivitySkuStockActionChain extends AbstractActionChain {
 
     @Resource
     private IActivityDispatch activityDispatch;
-    @Resource
-    private IActivityRepository activityRepository;
 
     @Override
     public boolean action(ActivitySkuEntity activitySkuEntity, ActivityEntity activityEntity, ActivityCountEntity activityCountEntity) {
-        // 扣减库存
-        boolean status = activityDispatch.subtractionActivitySkuStock(activitySkuEntity.getSku(), activityEntity.getEndDateTime());
+        // 扣减库存「扣减成功时同时累加已消耗计数，定时同步库存记录」
+        boolean status = activityDispatch.subtractionActivitySkuStock(activitySkuEntity.getSku(), activityEntity.getActivityId(), activityEntity.getEndDateTime());
         // true；库存扣减成功
         if (status) {
-            // 写入延迟队列，延迟消费更新库存记录
-            activityRepository.activitySkuStockConsumeSendQueue(ActivitySkuStockKeyVO.builder()
-                    .sku(activitySkuEntity.getSku())
-                    .activityId(activityEntity.getActivityId())
-                    .build());
-
             return true;
         }
 
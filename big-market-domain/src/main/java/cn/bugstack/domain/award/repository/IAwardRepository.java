@@ -14,6 +14,11 @@ public interface IAwardRepository {
 
     void saveUserAwardRecord(UserAwardRecordAggregate userAwardRecordAggregate);
 
+    /**
+     * 批量保存同一用户的中奖记录；一个事务内多行写入中奖记录和任务，一次更新全部抽奖单状态
+     */
+    void saveUserAwardRecords(List<UserAwardRecordAggregate> userAwardRecordAggregates);
+
     String queryAwardConfig(Integer awardId);
 
     void saveGiveOutPrizesAggregate(GiveOutPrizesAggregate giveOutPrizesAggregate);
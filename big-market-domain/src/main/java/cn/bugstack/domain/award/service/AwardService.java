@@ -12,11 +12,9 @@ import cn.bugstack.types.event.BaseEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -31,9 +29,6 @@ public class AwardService implements IAwardService {
     private final SendAwardMessageEvent sendAwardMessageEvent;
     private final Map<String, IDistributeAward> distributeAwardMap;
 
-    @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
-
     public AwardService(IAwardRepository awardRepository, SendAwardMessageEvent sendAwardMessageEvent, Map<String, IDistributeAward> distributeAwardMap) {
         this.awardRepository = awardRepository;
         this.sendAwardMessageEvent = sendAwardMessageEvent;
@@ -42,6 +37,22 @@ public class AwardService implements IAwardService {
 
     @Override
     public void saveUserAwardRecord(UserAwardRecordEntity userAwardRecordEntity) {
+        // 存储聚合对象 - 一个事务下，用户的中奖记录
+        awardRepository.saveUserAwardRecord(buildUserAwardRecordAggregate(userAwardRecordEntity));
+    }
+
+    @Override
+    public void saveUserAwardRecordsTen(List<UserAwardRecordEntity> userAwardRecordEntityList) {
+        List<UserAwardRecordAggregate> userAwardRecordAggregates = new ArrayList<>(userAwardRecordEntityList.size());
+        for (UserAwardRecordEntity userAwardRecordEntity : userAwardRecordEntityList) {
+            userAwardRecordAggregates.add(buildUserAwardRecordAggregate(userAwardRecordEntity));
+        }
+
+        // 存储聚合对象 - 一个事务下批量写入，替代每条记录一个异步事务
+        awardRepository.saveUserAwardRecords(userAwardRecordAggregates);
+    }
+
+    private UserAwardRecordAggregate buildUserAwardRecordAggregate(UserAwardRecordEntity userAwardRecordEntity) {
         // 构建消息对象
         SendAwardMessageEvent.SendAwardMessage sendAwardMessage = new SendAwardMessageEvent.SendAwardMessage();
         sendAwardMessage.setUserId(userAwardRecordEntity.getUserId());
@@ -61,28 +72,10 @@ public class AwardService implements IAwardService {
         taskEntity.setState(TaskStateVO.create);
 
         // 构建聚合对象
-        UserAwardRecordAggregate userAwardRecordAggregate = UserAwardRecordAggregate.builder()
+        return UserAwardRecordAggregate.builder()
                 .taskEntity(taskEntity)
                 .userAwardRecordEntity(userAwardRecordEntity)
                 .build();
-
-        // 存储聚合对象 - 一个事务下，用户的中奖记录
-        awardRepository.saveUserAwardRecord(userAwardRecordAggregate);
-
-    }
-
-    @Override
-    public void saveUserAwardRecordsTen(List<UserAwardRecordEntity> userAwardRecordEntityList) {
-
-        for (UserAwardRecordEntity entity : userAwardRecordEntityList) {
-            CompletableFuture.runAsync( () -> {
-               saveUserAwardRecord(entity);
-            }, threadPoolExecutor).exceptionally( exception -> {
-                log.error("异步保存中奖记录失败 userId:{} orderId:{}", entity.getUserId(), entity.getOrderId(), exception);
-                return null;
-            });
-        }
-
     }
 
     @Override
@@ -1,14 +1,15 @@
 package cn.bugstack.domain.credit.event;
 
 import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.util.Date;
 
@@ -23,10 +24,14 @@ public class CreditAdjustSuccessMessageEvent extends BaseEvent<CreditAdjustSucce
     @Value("${spring.rabbitmq.topic.credit_adjust_success}")
     private String topic;
 
+    // 消息ID生成器；与订单号同源，全局唯一
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
+
     @Override
     public EventMessage<CreditAdjustSuccessMessage> buildEventMessage(CreditAdjustSuccessMessage data) {
         return EventMessage.<CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage>builder()
-                .id(RandomStringUtils.randomNumeric(11))
+                .id(orderIdGenerator.nextOrderId(data.getUserId()))
                 .timestamp(new Date())
                 .data(data)
                 .build();
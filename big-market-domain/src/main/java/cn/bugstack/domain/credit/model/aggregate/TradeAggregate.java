@@ -12,7 +12,6 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.apache.commons.lang3.RandomStringUtils;
 
 import java.math.BigDecimal;
 
@@ -35,19 +34,22 @@ public class TradeAggregate {
     private CreditOrderEntity creditOrderEntity;
     // 任务实体 - 补偿 MQ 消息
     private TaskEntity taskEntity;
+    // 消息ID - 批量消费时按消息ID防重
+    private String messageId;
 
     public static CreditAccountEntity createCreditAccountEntity(String userId, BigDecimal adjustAmount) {
         return CreditAccountEntity.builder().userId(userId).adjustAmount(adjustAmount).build();
     }
 
     public static CreditOrderEntity createCreditOrderEntity(String userId,
+                                                            String orderId,
                                                             TradeNameVO tradeName,
                                                             TradeTypeVO tradeType,
                                                             BigDecimal tradeAmount,
                                                             String outBusinessNo) {
         return CreditOrderEntity.builder()
                 .userId(userId)
-                .orderId(RandomStringUtils.randomNumeric(12))
+                .orderId(orderId)
                 .tradeName(tradeName)
                 .tradeType(tradeType)
                 .tradeAmount(tradeAmount)
@@ -3,6 +3,8 @@ package cn.bugstack.domain.credit.repository;
 import cn.bugstack.domain.credit.model.aggregate.TradeAggregate;
 import cn.bugstack.domain.credit.model.entity.CreditAccountEntity;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 用户积分仓储
@@ -12,6 +14,11 @@ public interface ICreditRepository {
 
     void saveUserCreditTradeOrder(TradeAggregate tradeAggregate);
 
+    /**
+     * 批量保存积分交易订单；按用户分库分组，每个分库一个事务，按消息ID防重，同一用户的积分合并后更新
+     */
+    void saveUserCreditTradeOrders(String topic, List<TradeAggregate> tradeAggregates);
+
     CreditAccountEntity queryUserCreditAccount(String userId);
 
 }
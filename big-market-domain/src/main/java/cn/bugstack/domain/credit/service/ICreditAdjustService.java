@@ -3,6 +3,8 @@ package cn.bugstack.domain.credit.service;
 import cn.bugstack.domain.credit.model.entity.CreditAccountEntity;
 import cn.bugstack.domain.credit.model.entity.TradeEntity;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 积分调额接口【正逆向，增减积分】
@@ -17,6 +19,13 @@ public interface ICreditAdjustService {
      */
     String createOrder(TradeEntity tradeEntity);
 
+    /**
+     * 批量创建增加积分额度订单；按用户分库分组，每个分库一个事务，按消息ID防重
+     * @param topic        消费的消息主题
+     * @param tradeEntities 交易实体对象，只支持正向交易
+     */
+    void createOrders(String topic, List<TradeEntity> tradeEntities);
+
     /**
      * 查询用户积分账户
      * @param userId 用户ID
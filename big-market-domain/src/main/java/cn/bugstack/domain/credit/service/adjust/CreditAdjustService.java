@@ -12,10 +12,13 @@ import cn.bugstack.domain.credit.service.ICreditAdjustService;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.BaseEvent;
 import cn.bugstack.types.exception.AppException;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author gzc
@@ -29,6 +32,8 @@ public class CreditAdjustService implements ICreditAdjustService {
     private ICreditRepository creditRepository;
     @Resource
     private CreditAdjustSuccessMessageEvent creditAdjustSuccessMessageEvent;
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
 
     /**
      * 创建 user_credit_order 有三处：
@@ -48,6 +53,30 @@ public class CreditAdjustService implements ICreditAdjustService {
             }
         }
 
+        // 1. 构建交易聚合对象
+        TradeAggregate tradeAggregate = buildTradeAggregate(tradeEntity);
+
+        // 2. 保存积分交易订单
+        creditRepository.saveUserCreditTradeOrder(tradeAggregate);
+
+        return tradeAggregate.getCreditOrderEntity().getOrderId();
+    }
+
+    @Override
+    public void createOrders(String topic, List<TradeEntity> tradeEntities) {
+        if (tradeEntities.isEmpty()) return;
+        List<TradeAggregate> tradeAggregates = new ArrayList<>(tradeEntities.size());
+        for (TradeEntity tradeEntity : tradeEntities) {
+            // 逆向交易需要逐条校验积分额度，不走批量
+            if (!TradeTypeVO.FORWARD.equals(tradeEntity.getTradeType())) {
+                throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+            }
+            tradeAggregates.add(buildTradeAggregate(tradeEntity));
+        }
+        creditRepository.saveUserCreditTradeOrders(topic, tradeAggregates);
+    }
+
+    private TradeAggregate buildTradeAggregate(TradeEntity tradeEntity) {
         // 1. 创建账户积分实体
         CreditAccountEntity creditAccountEntity = TradeAggregate.createCreditAccountEntity(
                 tradeEntity.getUserId(),
@@ -56,6 +85,7 @@ public class CreditAdjustService implements ICreditAdjustService {
         // 2. 创建账户订单实体
         CreditOrderEntity creditOrderEntity = TradeAggregate.createCreditOrderEntity(
                 tradeEntity.getUserId(),
+                orderIdGenerator.nextOrderId(tradeEntity.getUserId()),
                 tradeEntity.getTradeName(),
                 tradeEntity.getTradeType(),
                 tradeEntity.getAmount(),
@@ -72,17 +102,13 @@ public class CreditAdjustService implements ICreditAdjustService {
         TaskEntity taskEntity = TradeAggregate.createTaskEntity(tradeEntity.getUserId(), creditAdjustSuccessMessageEvent.topic(), creditAdjustSuccessMessageEventMessage.getId(), creditAdjustSuccessMessageEventMessage);
 
         // 4. 构建交易聚合对象
-        TradeAggregate tradeAggregate = TradeAggregate.builder()
+        return TradeAggregate.builder()
                 .userId(tradeEntity.getUserId())
                 .creditAccountEntity(creditAccountEntity)
                 .creditOrderEntity(creditOrderEntity)
                 .taskEntity(taskEntity)
+                .messageId(tradeEntity.getMessageId())
                 .build();
-
-        // 5. 保存积分交易订单
-        creditRepository.saveUserCreditTradeOrder(tradeAggregate);
-
-        return creditOrderEntity.getOrderId();
     }
 
     @Override
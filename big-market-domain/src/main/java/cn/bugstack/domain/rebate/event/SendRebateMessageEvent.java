@@ -2,14 +2,15 @@ package cn.bugstack.domain.rebate.event;
 
 import cn.bugstack.domain.award.event.SendAwardMessageEvent;
 import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
 import java.util.Date;
 
 /**
@@ -23,10 +24,13 @@ public class SendRebateMessageEvent extends BaseEvent<SendRebateMessageEvent.Reb
     @Value("${spring.rabbitmq.topic.send_rebate}")
     private String topic;
 
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
+
     @Override
     public EventMessage<RebateMessage> buildEventMessage(RebateMessage data) {
         return EventMessage.<SendRebateMessageEvent.RebateMessage>builder()
-                .id(RandomStringUtils.randomNumeric(11))
+                .id(orderIdGenerator.nextOrderId(data.getUserId()))
                 .timestamp(new Date())
                 .data(data)
                 .build();
@@ -10,7 +10,7 @@ import cn.bugstack.domain.rebate.model.valobj.TaskStateVO;
 import cn.bugstack.domain.rebate.repository.IBehaviorRebateRepository;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.event.BaseEvent;
-import org.apache.commons.lang3.RandomStringUtils;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -29,6 +29,8 @@ public class BehaviorRebateService implements IBehaviorRebateService {
     private IBehaviorRebateRepository behaviorRebateRepository;
     @Resource
     private SendRebateMessageEvent sendRebateMessageEvent;
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
 
     @Override
     public List<String> createOrder(BehaviorEntity behaviorEntity) {
@@ -44,7 +46,7 @@ public class BehaviorRebateService implements IBehaviorRebateService {
             String bizId = behaviorEntity.getUserId() + Constants.UNDERLINE + dailyBehaviorRebateVO.getRebateType() + Constants.UNDERLINE + behaviorEntity.getOutBusinessNo();
             BehaviorRebateOrderEntity behaviorRebateOrderEntity = BehaviorRebateOrderEntity.builder()
                     .userId(behaviorEntity.getUserId())
-                    .orderId(RandomStringUtils.randomNumeric(12))
+                    .orderId(orderIdGenerator.nextOrderId(behaviorEntity.getUserId()))
                     .behaviorType(dailyBehaviorRebateVO.getBehaviorType())
                     .rebateDesc(dailyBehaviorRebateVO.getRebateDesc())
                     .rebateType(dailyBehaviorRebateVO.getRebateType())
@@ -0,0 +1,28 @@
+package cn.bugstack.domain.strategy.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author gzc
+ * @description 抽奖策略调度模式值对象
+ */
+@Getter
+@AllArgsConstructor
+public enum StrategyDispatchModeVO {
+
+    RATE_TABLE("rate_table", "概率查找表；装配到 Redis，每次抽奖查询 Redis"),
+    ALIAS("alias", "别名表；装配到本地内存，Redis 只发布版本号，抽奖无网络 IO"),
+    ;
+
+    private final String code;
+    private final String info;
+
+    public static StrategyDispatchModeVO of(String code) {
+        for (StrategyDispatchModeVO mode : values()) {
+            if (mode.code.equals(code)) return mode;
+        }
+        return RATE_TABLE;
+    }
+
+}
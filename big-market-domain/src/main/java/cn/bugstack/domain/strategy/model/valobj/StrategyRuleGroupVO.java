@@ -0,0 +1,45 @@
+package cn.bugstack.domain.strategy.model.valobj;
+
+import cn.bugstack.types.common.Constants;
+import lombok.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author gzc
+ * @description 策略规则组值对象；一个策略的全部规则，装配时一次从 strategy_rule 加载，按 (awardId, ruleModel) 取值；近端缓存共享，只读
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StrategyRuleGroupVO {
+
+    /** 抽奖策略ID */
+    private Long strategyId;
+    /** 规则 key -> 规则值；规则 key 见 ruleKey */
+    private HashMap<String, StrategyRuleValueVO> ruleValues;
+
+    public Map<String, StrategyRuleValueVO> getRuleValues() {
+        return null == ruleValues ? null : Collections.unmodifiableMap(ruleValues);
+    }
+
+    /**
+     * 查询规则值，未配置返回 null
+     */
+    public StrategyRuleValueVO queryRuleValue(Integer awardId, String ruleModel) {
+        return null == ruleValues ? null : ruleValues.get(ruleKey(awardId, ruleModel));
+    }
+
+    /**
+     * 规则 key；策略规则为 ruleModel，奖品规则为 ruleModel_awardId
+     */
+    public static String ruleKey(Integer awardId, String ruleModel) {
+        return null == awardId ? ruleModel : ruleModel + Constants.UNDERLINE + awardId;
+    }
+
+}
@@ -0,0 +1,136 @@
+package cn.bugstack.domain.strategy.model.valobj;
+
+import cn.bugstack.types.common.Constants;
+import lombok.*;
+
+import java.util.*;
+
+/**
+ * @author gzc
+ * @description 策略规则值对象；按 (strategyId, awardId, ruleModel) 区分，装配时解析为类型化的规则值，抽奖时不再解析字符串。
+ * 对象缓存在近端缓存中由各调用方共享，只读：不提供公开的 setter，数组返回副本，集合返回不可修改的视图
+ */
+@Getter
+@Setter(AccessLevel.PRIVATE)
+@ToString
+@EqualsAndHashCode
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StrategyRuleValueVO {
+
+    /** 抽奖策略ID */
+    private Long strategyId;
+    /** 抽奖奖品ID【规则类型为策略，则不需要奖品ID】 */
+    private Integer awardId;
+    /** 抽奖规则类型 */
+    private String ruleModel;
+    /** 抽奖规则比值「原始配置」 */
+    private String ruleValue;
+
+    /** rule_weight 权重值，升序；如 4000、5000、6000 */
+    private int[] weightValues;
+    /** rule_weight 权重值对应的规则 key，与 weightValues 下标一致；如 4000:102,103,104,105 */
+    private String[] weightKeys;
+    /** rule_weight 规则 key -> 奖品ID，按权重值升序 */
+    private LinkedHashMap<String, List<Integer>> weightAwardIds;
+
+    /** rule_blacklist 黑名单奖品ID */
+    private Integer blacklistAwardId;
+    /** rule_blacklist 黑名单用户 */
+    private HashSet<String> blacklistUserIds;
+
+    /** rule_lock 抽奖 n 次后解锁 */
+    private Long lockCount;
+
+    public int[] getWeightValues() {
+        return null == weightValues ? null : weightValues.clone();
+    }
+
+    public String[] getWeightKeys() {
+        return null == weightKeys ? null : weightKeys.clone();
+    }
+
+    public Map<String, List<Integer>> getWeightAwardIds() {
+        if (null == weightAwardIds) return null;
+        Map<String, List<Integer>> awardIds = new LinkedHashMap<>(weightAwardIds.size());
+        for (Map.Entry<String, List<Integer>> entry : weightAwardIds.entrySet()) {
+            awardIds.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(awardIds);
+    }
+
+    public Set<String> getBlacklistUserIds() {
+        return null == blacklistUserIds ? null : Collections.unmodifiableSet(blacklistUserIds);
+    }
+
+    /**
+     * 解析规则值
+     * 1. rule_weight；4000:102,103,104,105 5000:102,103,104,105,106,107 6000:102,103,104,105,106,107,108,109
+     * 2. rule_blacklist；101:user001,user002,user003
+     * 3. rule_lock；1
+     */
+    public static StrategyRuleValueVO parse(Long strategyId, Integer awardId, String ruleModel, String ruleValue) {
+        StrategyRuleValueVO strategyRuleValueVO = StrategyRuleValueVO.builder()
+                .strategyId(strategyId)
+                .awardId(awardId)
+                .ruleModel(ruleModel)
+                .ruleValue(ruleValue)
+                .build();
+        if (null == ruleValue || ruleValue.isEmpty()) return strategyRuleValueVO;
+
+        switch (ruleModel) {
+            case "rule_weight":
+                parseRuleWeight(strategyRuleValueVO, ruleValue);
+                break;
+            case "rule_blacklist":
+                String[] splitRuleValue = ruleValue.split(Constants.COLON);
+                if (splitRuleValue.length != 2) {
+                    throw new IllegalArgumentException("rule_blacklist rule_value invalid input format" + ruleValue);
+                }
+                strategyRuleValueVO.setBlacklistAwardId(Integer.parseInt(splitRuleValue[0]));
+                strategyRuleValueVO.setBlacklistUserIds(new HashSet<>(Arrays.asList(splitRuleValue[1].split(Constants.SPLIT))));
+                break;
+            case "rule_lock":
+                strategyRuleValueVO.setLockCount(Long.parseLong(ruleValue.trim()));
+                break;
+            default:
+                break;
+        }
+        return strategyRuleValueVO;
+    }
+
+    private static void parseRuleWeight(StrategyRuleValueVO strategyRuleValueVO, String ruleValue) {
+        TreeMap<Integer, String> sortedKeys = new TreeMap<>();
+        Map<String, List<Integer>> awardIds = new HashMap<>();
+        for (String ruleValueGroup : ruleValue.split(Constants.SPACE)) {
+            // 检查输入是否为空
+            if (ruleValueGroup.isEmpty()) continue;
+            // 分割字符串以获取键和值
+            String[] parts = ruleValueGroup.split(Constants.COLON);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("rule_weight rule_rule invalid input format" + ruleValueGroup);
+            }
+            List<Integer> values = new ArrayList<>();
+            for (String valueString : parts[1].split(Constants.SPLIT)) {
+                values.add(Integer.parseInt(valueString));
+            }
+            sortedKeys.put(Integer.parseInt(parts[0]), ruleValueGroup);
+            awardIds.put(ruleValueGroup, values);
+        }
+
+        int[] weightValues = new int[sortedKeys.size()];
+        String[] weightKeys = new String[sortedKeys.size()];
+        LinkedHashMap<String, List<Integer>> weightAwardIds = new LinkedHashMap<>();
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : sortedKeys.entrySet()) {
+            weightValues[i] = entry.getKey();
+            weightKeys[i++] = entry.getValue();
+            weightAwardIds.put(entry.getValue(), awardIds.get(entry.getValue()));
+        }
+        strategyRuleValueVO.setWeightValues(weightValues);
+        strategyRuleValueVO.setWeightKeys(weightKeys);
+        strategyRuleValueVO.setWeightAwardIds(weightAwardIds);
+    }
+
+}
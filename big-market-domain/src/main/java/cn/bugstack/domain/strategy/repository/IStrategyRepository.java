@@ -5,8 +5,9 @@ import cn.bugstack.domain.strategy.model.entity.StrategyEntity;
 import cn.bugstack.domain.strategy.model.entity.StrategyRuleEntity;
 import cn.bugstack.domain.strategy.model.valobj.RuleTreeVO;
 import cn.bugstack.domain.strategy.model.valobj.RuleWeightVO;
-import cn.bugstack.domain.strategy.model.valobj.StrategyAwardRuleModelVO;
 import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleGroupVO;
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleValueVO;
 
 import java.util.Date;
 import java.util.List;
@@ -21,13 +22,46 @@ public interface IStrategyRepository {
 
     List<StrategyAwardEntity> queryStrategyAwardList(Long strategyId);
 
-    void storeStrategyAwardSearchRateTable(String key, Integer rateRange, Map<Integer, Integer> strategyAwardSearchRateTable);
+    /**
+     * 失效策略配置的近端缓存「策略、策略奖品、规则树、库存分段数量」，装配时调用，通知所有节点重新从 Redis 加载
+     *
+     * @param strategyId 策略ID
+     */
+    void invalidateStrategyNearCache(Long strategyId);
+
+    /**
+     * 存储概率查找表的二进制编码「RateSearchTable#encode」
+     *
+     * @param key       策略ID 或 策略ID_权重值
+     * @param rateTable 二进制编码
+     */
+    void storeStrategyRateSearchTable(String key, byte[] rateTable);
 
-    Integer getStrategyAwardAssemble(String key, Integer rateKey);
+    /**
+     * 按偏移量读取概率查找表的二进制编码，未装配时抛出 UN_ASSEMBLED_STRATEGY_ARMORY
+     *
+     * @param key    策略ID 或 策略ID_权重值
+     * @param offset 偏移量
+     * @param length 读取长度
+     * @return 二进制片段
+     */
+    byte[] queryStrategyRateSearchTable(String key, int offset, int length);
 
-    int getRateRange(Long strategyId);
+    /**
+     * 发布策略配置版本号；每次装配递增，各节点本地编译的别名表、责任链等按版本号重建
+     *
+     * @param strategyId 策略ID
+     * @return 新版本号
+     */
+    long publishStrategyConfigVersion(Long strategyId);
 
-    int getRateRange(String key);
+    /**
+     * 查询策略配置版本号
+     *
+     * @param strategyId 策略ID
+     * @return 版本号，未装配为 0
+     */
+    long queryStrategyConfigVersion(Long strategyId);
 
     StrategyEntity queryStrategyEntityByStrategyId(Long strategyId);
 
@@ -37,7 +71,23 @@ public interface IStrategyRepository {
 
     String queryStrategyRuleValue(Long strategyId, Integer awardId, String ruleModel);
 
-    StrategyAwardRuleModelVO queryStrategyAwardRuleModelVO(Long strategyId, Integer awardId);
+    /**
+     * 装配策略规则；一次查询策略的全部 strategy_rule 配置，解析后写入缓存
+     *
+     * @param strategyId 策略ID
+     * @return 策略规则组
+     */
+    StrategyRuleGroupVO cacheStrategyRuleGroup(Long strategyId);
+
+    /**
+     * 查询解析后的策略规则值，未配置返回 null
+     *
+     * @param strategyId 策略ID
+     * @param awardId    奖品ID，策略规则为 null
+     * @param ruleModel  规则模型
+     * @return 规则值
+     */
+    StrategyRuleValueVO queryStrategyRuleValueVO(Long strategyId, Integer awardId, String ruleModel);
 
     /**
      * 根据规则树ID，查询树结构信息
@@ -55,6 +105,24 @@ public interface IStrategyRepository {
      */
     void cacheStrategyAwardCount(String cacheKey, Integer awardCount);
 
+    /**
+     * 缓存奖品库存「分段」；库存均分到 cacheKey_segment_{0..n-1}，并记录分段数量。
+     * 已装配过的库存不覆盖，已按不分段装配过的库存保持不分段。
+     *
+     * @param cacheKey     key
+     * @param awardCount   库存值
+     * @param segmentCount 分段数量，1 为不分段
+     */
+    void cacheStrategyAwardCount(String cacheKey, Integer awardCount, int segmentCount);
+
+    /**
+     * 查询奖品库存分段数量
+     *
+     * @param cacheKey key
+     * @return 分段数量，未分段为 1
+     */
+    int queryStrategyAwardCountSegmentCount(String cacheKey);
+
     /**
      * 缓存key，decr 方式扣减库存
      *
@@ -64,28 +132,71 @@ public interface IStrategyRepository {
     Boolean subtractionAwardStock(String cacheKey);
 
     /**
-     * 缓存key，decr 方式扣减库存
+     * 缓存key，decr 方式扣减库存；扣减成功时同一次脚本调用内累加已消耗计数
      *
-     * @param cacheKey    缓存Key
-     * @param endDateTime 活动结束时间
+     * @param cacheKey                缓存Key
+     * @param strategyAwardStockKeyVO 奖品库存标识，扣减成功后累加该奖品的已消耗计数
+     * @param endDateTime             活动结束时间
      * @return 扣减结果
      */
-    Boolean subtractionAwardStock(String cacheKey, Date endDateTime);
+    Boolean subtractionAwardStock(String cacheKey, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime);
 
     /**
-     * 写入奖品库存消费队列
+     * 批量扣减奖品库存；一次扣减至多 count 个库存，扣减成功的数量同一次脚本调用内累加到已消耗计数
      *
-     * @param strategyAwardStockKeyVO 对象值对象
+     * @param cacheKey                缓存Key
+     * @param count                   扣减数量
+     * @param strategyAwardStockKeyVO 奖品库存标识
+     * @param endDateTime             活动结束时间
+     * @return 实际扣减的数量
      */
-    void awardStockConsumeSendQueue(StrategyAwardStockKeyVO strategyAwardStockKeyVO);
+    long subtractionAwardStock(String cacheKey, long count, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime);
 
+    /**
+     * 租用奖品库存；先从归还池租用，再扣减库存，一次至多 leaseCount 个，同时把上一租约已消耗的数量累加到已消耗计数
+     *
+     * @param cacheKey                缓存Key
+     * @param leaseCount              租约数量
+     * @param strategyAwardStockKeyVO 奖品库存标识
+     * @param consumedCount           上一租约已消耗的数量
+     * @param endDateTime             活动结束时间
+     * @return 实际租到的库存数量
+     */
+    long leaseAwardStock(String cacheKey, long leaseCount, StrategyAwardStockKeyVO strategyAwardStockKeyVO, long consumedCount, Date endDateTime);
 
     /**
-     * 获取奖品库存消费队列
+     * 归还租约中未使用的奖品库存到归还池，同时把已消耗的数量累加到已消耗计数
+     *
+     * @param cacheKey                缓存Key
+     * @param unusedCount             未使用的数量
+     * @param strategyAwardStockKeyVO 奖品库存标识
+     * @param consumedCount           已消耗的数量
      */
-    StrategyAwardStockKeyVO takeQueueValue(Long strategyId, Integer awardId) throws InterruptedException;
+    void returnAwardStock(String cacheKey, long unusedCount, StrategyAwardStockKeyVO strategyAwardStockKeyVO, long consumedCount);
 
-    List<StrategyAwardStockKeyVO> takeQueueValueBatch(Long strategyId, Integer awardId);
+    /**
+     * 累加奖品已消耗计数「INCRBY」；连抽时同一奖品的多次消耗一次累加
+     *
+     * @param strategyAwardStockKeyVO 奖品库存标识
+     * @param count                   消耗数量
+     */
+    void awardStockConsumeIncr(StrategyAwardStockKeyVO strategyAwardStockKeyVO, int count);
+
+    /**
+     * 同步奖品库存到数据库；GETSET 取走上次同步后的已消耗计数，一条 UPDATE 扣减「剩余库存最少扣到 0」，更新失败或奖品不存在时把计数加回
+     *
+     * @param strategyId 策略ID
+     * @param awardId    奖品ID
+     * @return 本次同步的数量
+     */
+    long syncStrategyAwardStock(Long strategyId, Integer awardId);
+
+    /**
+     * 批量查询奖品已消耗计数「一次往返」；用于跳过没有待同步数量的奖品
+     *
+     * @return 与入参顺序一致的待同步数量
+     */
+    List<Long> queryAwardStockConsumedCount(List<StrategyAwardStockKeyVO> strategyAwardStockKeyVOS);
 
     /**
      * 更新奖品库存消耗
@@ -95,8 +206,6 @@ public interface IStrategyRepository {
      */
     void updateStrategyAwardStock(Long strategyId, Integer awardId);
 
-    void updateStrategyAwardStockBatch(Long strategyId, Integer awardId, int totalCount);
-
 
     /**
      * 根据策略ID+奖品ID的唯一值组合，查询奖品信息
@@ -13,13 +13,8 @@ import cn.bugstack.types.exception.AppException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
-import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author gzc
@@ -37,9 +32,6 @@ public abstract class AbstractRaffleStrategy implements IRaffleStrategy {
     // 抽奖的决策树 -> 负责抽奖中到抽奖后的规则过滤，如抽奖到A奖品ID，之后要做次数的判断和库存的扣减等。
     protected final DefaultTreeFactory defaultTreeFactory;
 
-    @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
-
     // 为什么 Spring 推荐使用构造注入；https://docs.spring.io/spring-framework/reference/core/beans/dependencies/factory-collaborators.html
     public AbstractRaffleStrategy(IStrategyRepository repository, IStrategyDispatch strategyDispatch, DefaultChainFactory defaultChainFactory, DefaultTreeFactory defaultTreeFactory) {
         this.repository = repository;
@@ -82,40 +74,55 @@ public abstract class AbstractRaffleStrategy implements IRaffleStrategy {
 
     @Override
     public List<RaffleAwardEntity> performRaffleTen(UserTenRaffleOrderEntity tenRaffleOrderEntity) {
+        return performRaffleBatch(RaffleFactorEntity.builder()
+                .userId(tenRaffleOrderEntity.getUserId())
+                .strategyId(tenRaffleOrderEntity.getStrategyId())
+                .endDateTime(tenRaffleOrderEntity.getEndDateTime())
+                .build(), tenRaffleOrderEntity.getOrderIds().size());
+    }
+
+    @Override
+    public List<RaffleAwardEntity> performRaffleBatch(RaffleFactorEntity raffleFactorEntity, int count) {
+        // 1. 参数校验
+        String userId = raffleFactorEntity.getUserId();
+        Long strategyId = raffleFactorEntity.getStrategyId();
+        if (null == strategyId || StringUtils.isBlank(userId) || count <= 0) {
+            throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+        }
 
-        List<CompletableFuture<RaffleAwardEntity>> resList = new ArrayList<>(10);
-        for (int i = 0; i < 10; i++) {
-            RaffleFactorEntity raffleFactorEntity = RaffleFactorEntity.builder()
-                        .userId(tenRaffleOrderEntity.getUserId())
-                        .strategyId(tenRaffleOrderEntity.getStrategyId())
-                        .endDateTime(tenRaffleOrderEntity.getEndDateTime())
-                        .build();
-
-            // supplyAsync 有返回值的异步调用
-            CompletableFuture<RaffleAwardEntity> res = CompletableFuture.supplyAsync( () -> {
-                try {
-                    // 执行单次抽奖
-                    return performRaffle(raffleFactorEntity);
-                } catch (Exception e) {
-                    log.error("单次抽奖异常 userId:{}", tenRaffleOrderEntity.getUserId(), e);
-                    throw e;
-                }
-            }, threadPoolExecutor);
-
-            resList.add(res);
+        // 2. 责任链一次采样 count 个奖品；黑名单、权重等非默认抽奖的直接返回抽奖结果，默认抽奖按奖品ID合并数量
+        List<RaffleAwardEntity> raffleAwardEntities = new ArrayList<>(count);
+        Map<Integer, StrategyAwardEntity> strategyAwardCache = new HashMap<>();
+        Map<Integer, Integer> defaultAwardCounts = new LinkedHashMap<>();
+        for (DefaultChainFactory.StrategyAwardVO chainStrategyAwardVO : raffleLogicChainBatch(userId, strategyId, count)) {
+            if (!DefaultChainFactory.LogicModel.RULE_DEFAULT.getCode().equals(chainStrategyAwardVO.getLogicModel())) {
+                raffleAwardEntities.add(buildRaffleAwardEntity(strategyId, chainStrategyAwardVO.getAwardId(), chainStrategyAwardVO.getAwardRuleValue(), strategyAwardCache));
+                continue;
+            }
+            defaultAwardCounts.merge(chainStrategyAwardVO.getAwardId(), 1, Integer::sum);
         }
 
-        // finishFuture 只负责监控 不负责收集结果
-        CompletableFuture<Void> finishFuture = CompletableFuture.allOf(resList.toArray(new CompletableFuture[0]));
-        try {
-            finishFuture.join();
-        }catch (Exception e){
-            log.error("十连抽过程中发生异常", e);
-            // 根据业务决定是返回部分成功，还是直接抛异常回滚
-            throw new AppException(ResponseCode.TEN_DRAW_FAILED.getCode(), ResponseCode.TEN_DRAW_FAILED.getInfo());
+        // 3. 规则树按奖品过滤；同一奖品的次数锁只查询一次、库存一次扣减
+        for (Map.Entry<Integer, Integer> entry : defaultAwardCounts.entrySet()) {
+            List<DefaultTreeFactory.StrategyAwardVO> treeStrategyAwardVOS = raffleLogicTreeBatch(userId, strategyId, entry.getKey(), raffleFactorEntity.getEndDateTime(), entry.getValue());
+            for (DefaultTreeFactory.StrategyAwardVO treeStrategyAwardVO : treeStrategyAwardVOS) {
+                raffleAwardEntities.add(buildRaffleAwardEntity(strategyId, treeStrategyAwardVO.getAwardId(), treeStrategyAwardVO.getAwardRuleValue(), strategyAwardCache));
+            }
         }
 
-        return resList.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        // 4. 合并后同一奖品相邻，打乱展示顺序
+        Collections.shuffle(raffleAwardEntities, ThreadLocalRandom.current());
+        return raffleAwardEntities;
+    }
+
+    private RaffleAwardEntity buildRaffleAwardEntity(Long strategyId, Integer awardId, String awardConfig, Map<Integer, StrategyAwardEntity> strategyAwardCache) {
+        StrategyAwardEntity strategyAward = strategyAwardCache.computeIfAbsent(awardId, id -> repository.queryStrategyAwardEntity(strategyId, id));
+        return RaffleAwardEntity.builder()
+                .awardId(awardId)
+                .awardTitle(strategyAward.getAwardTitle())
+                .awardConfig(awardConfig)
+                .sort(strategyAward.getSort())
+                .build();
     }
 
     /**
@@ -127,6 +134,16 @@ public abstract class AbstractRaffleStrategy implements IRaffleStrategy {
      */
     public abstract DefaultChainFactory.StrategyAwardVO raffleLogicChain(String userId, Long strategyId);
 
+    /**
+     * 连抽计算，责任链抽象方法
+     *
+     * @param userId     用户ID
+     * @param strategyId 策略ID
+     * @param count      抽奖次数
+     * @return 奖品ID，数量与抽奖次数一致
+     */
+    public abstract List<DefaultChainFactory.StrategyAwardVO> raffleLogicChainBatch(String userId, Long strategyId, int count);
+
     /**
      * 抽奖结果过滤，决策树抽象方法
      *
@@ -148,4 +165,16 @@ public abstract class AbstractRaffleStrategy implements IRaffleStrategy {
      */
     public abstract DefaultTreeFactory.StrategyAwardVO raffleLogicTree(String userId, Long strategyId, Integer awardId, Date endDateTime);
 
+    /**
+     * 连抽结果过滤，决策树抽象方法
+     *
+     * @param userId      用户ID
+     * @param strategyId  策略ID
+     * @param awardId     奖品ID
+     * @param endDateTime 活动结束时间 - 用于设定缓存有效期
+     * @param count       该奖品的抽中次数
+     * @return 过滤结果，数量与抽中次数一致
+     */
+    public abstract List<DefaultTreeFactory.StrategyAwardVO> raffleLogicTreeBatch(String userId, Long strategyId, Integer awardId, Date endDateTime, int count);
+
 }
@@ -6,19 +6,25 @@ import java.util.List;
 
 /**
  * @author gzc
- * @description 抽奖库存相关服务，获取库存消耗队列
+ * @description 抽奖库存相关服务，同步奖品库存消耗
  */
 public interface IRaffleStock {
 
     /**
-     * 获取奖品库存消耗队列
+     * 同步奖品库存消耗；取走上次同步后的已消耗计数，一次更新到数据库
      *
-     * @return 奖品库存Key信息
-     * @throws InterruptedException 异常
+     * @param strategyId 策略ID
+     * @param awardId    奖品ID
+     * @return 本次同步的数量
      */
-    StrategyAwardStockKeyVO takeQueueValue(Long strategyId, Integer awardId) throws InterruptedException;
+    long syncStrategyAwardStock(Long strategyId, Integer awardId);
 
-    List<StrategyAwardStockKeyVO> takeQueueValueBatch(Long strategyId, Integer awardId) throws InterruptedException;
+    /**
+     * 批量查询奖品待同步的已消耗数量
+     *
+     * @return 与入参顺序一致的待同步数量
+     */
+    List<Long> queryStrategyAwardStockConsumedCount(List<StrategyAwardStockKeyVO> strategyAwardStockKeyVOS);
 
     /**
      * 更新奖品库存消耗记录
@@ -28,6 +34,4 @@ public interface IRaffleStock {
      */
     void updateStrategyAwardStock(Long strategyId, Integer awardId);
 
-    void updateStrategyAwardStockBatch(Long strategyId, Integer awardId, int totalCount);
-
 }
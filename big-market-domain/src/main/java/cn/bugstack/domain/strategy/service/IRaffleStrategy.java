@@ -21,6 +21,21 @@ public interface IRaffleStrategy {
      */
     RaffleAwardEntity performRaffle(RaffleFactorEntity raffleFactorEntity);
 
+    /**
+     * 执行十连抽；等同于 performRaffleBatch 抽奖 10 次
+     *
+     * @param tenRaffleOrderEntity 批量抽奖单
+     * @return 抽奖的奖品，数量与抽奖单一致
+     */
     List<RaffleAwardEntity> performRaffleTen(UserTenRaffleOrderEntity tenRaffleOrderEntity);
 
+    /**
+     * 执行连抽；count 次抽奖一次计算「一次采样、同一奖品的规则树过滤和库存扣减一次完成」，开销接近单次抽奖
+     *
+     * @param raffleFactorEntity 抽奖因子实体对象
+     * @param count              抽奖次数
+     * @return 抽奖的奖品，数量与抽奖次数一致
+     */
+    List<RaffleAwardEntity> performRaffleBatch(RaffleFactorEntity raffleFactorEntity, int count);
+
 }
@@ -1,6 +1,7 @@
 package cn.bugstack.domain.strategy.service.armory;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -33,6 +34,25 @@ public interface IStrategyDispatch {
      */
     Integer getRandomAwardId(String key);
 
+    /**
+     * 连抽；一次读取抽奖策略装配的查找表，本地抽取 count 个随机结果
+     *
+     * @param strategyId 策略ID
+     * @param count      抽奖次数
+     * @return 抽奖结果
+     */
+    List<Integer> getRandomAwardIds(Long strategyId, int count);
+
+    /**
+     * 连抽；一次读取权重档位的查找表，本地抽取 count 个随机结果
+     *
+     * @param strategyId      策略ID
+     * @param ruleWeightValue 权重值
+     * @param count           抽奖次数
+     * @return 抽奖结果
+     */
+    List<Integer> getRandomAwardIds(Long strategyId, String ruleWeightValue, int count);
+
     /**
      * 根据策略ID和奖品ID，扣减奖品缓存库存
      *
@@ -43,4 +63,27 @@ public interface IStrategyDispatch {
      */
     Boolean subtractionAwardStock(Long strategyId, Integer awardId, Date endDateTime);
 
+    /**
+     * 根据策略ID和奖品ID，扣减奖品缓存库存；分段库存模式下按用户ID选择起始分段
+     *
+     * @param userId      用户ID
+     * @param strategyId  策略ID
+     * @param awardId     奖品ID
+     * @param endDateTime 活动结束时间
+     * @return 扣减结果
+     */
+    Boolean subtractionAwardStock(String userId, Long strategyId, Integer awardId, Date endDateTime);
+
+    /**
+     * 根据策略ID和奖品ID，批量扣减奖品缓存库存；连抽时同一奖品的 count 次扣减一次完成，库存不足时部分扣减
+     *
+     * @param userId      用户ID
+     * @param strategyId  策略ID
+     * @param awardId     奖品ID
+     * @param endDateTime 活动结束时间
+     * @param count       扣减数量
+     * @return 实际扣减的数量
+     */
+    int subtractionAwardStock(String userId, Long strategyId, Integer awardId, Date endDateTime, int count);
+
 }
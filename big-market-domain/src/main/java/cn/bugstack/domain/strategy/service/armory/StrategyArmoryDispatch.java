@@ -2,18 +2,24 @@ package cn.bugstack.domain.strategy.service.armory;
 
 import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
 import cn.bugstack.domain.strategy.model.entity.StrategyEntity;
-import cn.bugstack.domain.strategy.model.entity.StrategyRuleEntity;
+import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
+import cn.bugstack.domain.strategy.model.valobj.StrategyDispatchModeVO;
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleValueVO;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import cn.bugstack.domain.strategy.service.armory.algorithm.AliasMethodTable;
+import cn.bugstack.domain.strategy.service.armory.algorithm.RateSearchTable;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -26,9 +32,30 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
 
     @Resource
     private IStrategyRepository repository;
+    @Resource
+    private StrategyAwardStockLease strategyAwardStockLease;
+    @Resource
+    private StrategyConfigVersion strategyConfigVersion;
 
     private final SecureRandom secureRandom = new SecureRandom();
 
+    // 调度模式；rate_table = Redis 概率查找表、alias = 本地别名表
+    @Value("${strategy.armory.dispatch-mode:rate_table}")
+    private String dispatchMode;
+
+    // 稠密查找表最大占位数量；超过时使用累积表 + 二分查找
+    @Value("${strategy.armory.dense-table-max-size:10000}")
+    private int denseTableMaxSize;
+
+    // 库存分段最大数量，1 为不分段；以及单个分段的最小库存
+    @Value("${strategy.armory.stock-segment-max-count:1}")
+    private int stockSegmentMaxCount;
+    @Value("${strategy.armory.stock-segment-min-size:1000}")
+    private int stockSegmentMinSize;
+
+    // 本地别名表，策略ID -> 当前版本的别名表组
+    private final Map<Long, AliasTableGroup> aliasTableGroups = new ConcurrentHashMap<>();
+
     @Override
     public boolean assembleLotteryStrategyByActivityId(Long activityId) {
         Long strategyId = repository.queryStrategyIdByActivityId(activityId);
@@ -37,8 +64,12 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
 
     @Override
     public boolean assembleLotteryStrategy(Long strategyId) {
-        // 1. 查询策略配置
+        // 0. 失效各节点近端缓存的策略配置
+        repository.invalidateStrategyNearCache(strategyId);
+
+        // 1. 查询策略配置；策略规则一次查询全部加载并解析
         List<StrategyAwardEntity> strategyAwardEntities = repository.queryStrategyAwardList(strategyId);
+        repository.cacheStrategyRuleGroup(strategyId);
 
         // 2 缓存奖品库存【用于decr扣减库存使用】
         for (StrategyAwardEntity strategyAward : strategyAwardEntities) {
@@ -47,29 +78,68 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
             cacheStrategyAwardCount(strategyId, awardId, awardCount);
         }
 
+        // 3. 别名表模式；本地构建，Redis 只发布版本号，其他节点按版本号从相同的 strategy_award 重建
+        if (isAliasMode()) {
+            long version = strategyConfigVersion.publish(strategyId);
+            aliasTableGroups.put(strategyId, buildAliasTableGroup(strategyId, strategyAwardEntities, version));
+            return true;
+        }
+
         // 3.1 默认装配配置【全量抽奖概率】
         assembleLotteryStrategy(String.valueOf(strategyId), strategyAwardEntities);
 
         // 3.2 权重策略配置 - 适用于 rule_weight 权重规则配置【4000:102,103,104,105 5000:102,103,104,105,106,107 6000:102,103,104,105,106,107,108,109】
+        Map<String, List<Integer>> ruleWeightValueMap = queryRuleWeightValueMap(strategyId);
+        if (null != ruleWeightValueMap) {
+            for (String key : ruleWeightValueMap.keySet()) {
+                List<Integer> ruleWeightValues = ruleWeightValueMap.get(key);
+                ArrayList<StrategyAwardEntity> strategyAwardEntitiesClone = new ArrayList<>(strategyAwardEntities);
+                strategyAwardEntitiesClone.removeIf(entity -> !ruleWeightValues.contains(entity.getAwardId()));
+                assembleLotteryStrategy(String.valueOf(strategyId).concat(Constants.UNDERLINE).concat(key), strategyAwardEntitiesClone);
+            }
+        }
+
+        // 4. 发布策略配置版本号，各节点按版本号重新编译责任链
+        strategyConfigVersion.publish(strategyId);
+
+        return true;
+    }
+
+    /**
+     * 查询权重规则配置，未使用 rule_weight 返回 null
+     */
+    private Map<String, List<Integer>> queryRuleWeightValueMap(Long strategyId) {
         StrategyEntity strategyEntity = repository.queryStrategyEntityByStrategyId(strategyId);
         String ruleWeight = strategyEntity.getRuleWeight();
-        if (null == ruleWeight) return true;
+        if (null == ruleWeight) return null;
 
-        StrategyRuleEntity strategyRuleEntity = repository.queryStrategyRule(strategyId, ruleWeight);
+        StrategyRuleValueVO strategyRuleValueVO = repository.queryStrategyRuleValueVO(strategyId, null, ruleWeight);
         // 业务异常，策略规则中 rule_weight 权重规则已适用但未配置
-        if (null == strategyRuleEntity) {
+        if (null == strategyRuleValueVO || null == strategyRuleValueVO.getWeightAwardIds()) {
             throw new AppException(ResponseCode.STRATEGY_RULE_WEIGHT_IS_NULL.getCode(), ResponseCode.STRATEGY_RULE_WEIGHT_IS_NULL.getInfo());
         }
+        return strategyRuleValueVO.getWeightAwardIds();
+    }
 
-        Map<String, List<Integer>> ruleWeightValueMap = strategyRuleEntity.getRuleWeightValues();
-        for (String key : ruleWeightValueMap.keySet()) {
-            List<Integer> ruleWeightValues = ruleWeightValueMap.get(key);
-            ArrayList<StrategyAwardEntity> strategyAwardEntitiesClone = new ArrayList<>(strategyAwardEntities);
-            strategyAwardEntitiesClone.removeIf(entity -> !ruleWeightValues.contains(entity.getAwardId()));
-            assembleLotteryStrategy(String.valueOf(strategyId).concat(Constants.UNDERLINE).concat(key), strategyAwardEntitiesClone);
+    /**
+     * 构建策略的全部别名表「默认全量概率 + 各个权重档位」，key 与概率查找表的 Redis key 后缀保持一致
+     */
+    private AliasTableGroup buildAliasTableGroup(Long strategyId, List<StrategyAwardEntity> strategyAwardEntities, long version) {
+        Map<String, AliasMethodTable> aliasTables = new HashMap<>();
+        aliasTables.put(String.valueOf(strategyId), AliasMethodTable.build(strategyAwardEntities));
+
+        Map<String, List<Integer>> ruleWeightValueMap = queryRuleWeightValueMap(strategyId);
+        if (null != ruleWeightValueMap) {
+            for (String key : ruleWeightValueMap.keySet()) {
+                List<Integer> ruleWeightValues = ruleWeightValueMap.get(key);
+                ArrayList<StrategyAwardEntity> strategyAwardEntitiesClone = new ArrayList<>(strategyAwardEntities);
+                strategyAwardEntitiesClone.removeIf(entity -> !ruleWeightValues.contains(entity.getAwardId()));
+                aliasTables.put(String.valueOf(strategyId).concat(Constants.UNDERLINE).concat(key), AliasMethodTable.build(strategyAwardEntitiesClone));
+            }
         }
 
-        return true;
+        log.info("抽奖策略装配-别名表 strategyId:{} version:{} tables:{}", strategyId, version, aliasTables.keySet());
+        return new AliasTableGroup(version, aliasTables);
     }
 
     /**
@@ -89,28 +159,12 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
         // 2. 循环计算找到概率范围值
         BigDecimal rateRange = BigDecimal.valueOf(convert(minAwardRate.doubleValue()));
 
-        // 3. 生成策略奖品概率查找表「这里指需要在list集合中，存放上对应的奖品占位即可，占位越多等于概率越高」
-        List<Integer> strategyAwardSearchRateTables = new ArrayList<>(rateRange.intValue());
-        for (StrategyAwardEntity strategyAward : strategyAwardEntities) {
-            Integer awardId = strategyAward.getAwardId();
-            BigDecimal awardRate = strategyAward.getAwardRate();
-            // 计算出每个概率值需要存放到查找表的数量，循环填充
-            for (int i = 0; i < rateRange.multiply(awardRate).intValue(); i++) {
-                strategyAwardSearchRateTables.add(awardId);
-            }
-        }
-
-        // 4. 对存储的奖品进行乱序操作
-        Collections.shuffle(strategyAwardSearchRateTables);
-
-        // 5. 生成出Map集合，key值，对应的就是后续的概率值。通过概率来获得对应的奖品ID
-        Map<Integer, Integer> shuffleStrategyAwardSearchRateTable = new LinkedHashMap<>();
-        for (int i = 0; i < strategyAwardSearchRateTables.size(); i++) {
-            shuffleStrategyAwardSearchRateTable.put(i, strategyAwardSearchRateTables.get(i));
-        }
+        // 3. 生成策略奖品概率查找表「占位越多等于概率越高」；占位数量超过稠密表上限时改为累积表 + 二分查找，避免高精度概率膨胀
+        RateSearchTable rateSearchTable = RateSearchTable.build(strategyAwardEntities, rateRange, denseTableMaxSize, secureRandom);
 
-        // 6. 存放到 Redis
-        repository.storeStrategyAwardSearchRateTable(key, shuffleStrategyAwardSearchRateTable.size(), shuffleStrategyAwardSearchRateTable);
+        // 4. 二进制编码存放到 Redis
+        repository.storeStrategyRateSearchTable(key, rateSearchTable.encode());
+        log.info("抽奖策略装配-概率查找表 key:{} layout:{} rateRange:{}", key, rateSearchTable.getLayout(), rateSearchTable.getRateRange());
     }
 
     /**
@@ -173,15 +227,23 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
      */
     private void cacheStrategyAwardCount(Long strategyId, Integer awardId, Integer awardCount) {
         String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + strategyId + Constants.UNDERLINE + awardId;
-        repository.cacheStrategyAwardCount(cacheKey, awardCount);
+        repository.cacheStrategyAwardCount(cacheKey, awardCount, stockSegmentCount(awardCount));
+    }
+
+    /**
+     * 库存分段数量；库存不足两个分段最小库存时不分段，否则按最小库存切分，不超过最大分段数量
+     */
+    private int stockSegmentCount(Integer awardCount) {
+        if (stockSegmentMaxCount <= 1 || null == awardCount || awardCount < 2 * stockSegmentMinSize) return 1;
+        return Math.min(stockSegmentMaxCount, awardCount / stockSegmentMinSize);
     }
 
     @Override
     public Integer getRandomAwardId(Long strategyId) {
-        // 分布式部署下，不一定为当前应用做的策略装配。也就是值不一定会保存到本应用，而是分布式应用，所以需要从 Redis 中获取。
-        int rateRange = repository.getRateRange(strategyId);
-        // 通过生成的随机值，获取概率值奖品查找表的结果
-        return repository.getStrategyAwardAssemble(String.valueOf(strategyId), secureRandom.nextInt(rateRange));
+        if (isAliasMode()) {
+            return getRandomAwardIdByAliasTable(strategyId, String.valueOf(strategyId));
+        }
+        return getRandomAwardIdByRateSearchTable(String.valueOf(strategyId));
     }
 
     @Override
@@ -192,16 +254,169 @@ public class StrategyArmoryDispatch implements IStrategyArmory, IStrategyDispatc
 
     @Override
     public Integer getRandomAwardId(String key) {
-        // 分布式部署下，不一定为当前应用做的策略装配。也就是值不一定会保存到本应用，而是分布式应用，所以需要从 Redis 中获取。
-        int rateRange = repository.getRateRange(key);
-        // 通过生成的随机值，获取概率值奖品查找表的结果
-        return repository.getStrategyAwardAssemble(key, secureRandom.nextInt(rateRange));
+        if (isAliasMode()) {
+            int index = key.indexOf(Constants.UNDERLINE);
+            Long strategyId = Long.valueOf(index < 0 ? key : key.substring(0, index));
+            return getRandomAwardIdByAliasTable(strategyId, key);
+        }
+        return getRandomAwardIdByRateSearchTable(key);
+    }
+
+    @Override
+    public List<Integer> getRandomAwardIds(Long strategyId, int count) {
+        return getRandomAwardIdsByKey(strategyId, String.valueOf(strategyId), count);
+    }
+
+    @Override
+    public List<Integer> getRandomAwardIds(Long strategyId, String ruleWeightValue, int count) {
+        return getRandomAwardIdsByKey(strategyId, String.valueOf(strategyId).concat(Constants.UNDERLINE).concat(ruleWeightValue), count);
+    }
+
+    /**
+     * 连抽；别名表直接本地采样。概率查找表读取一次编码头和完整 payload，在本地还原查找表后采样，
+     * 不再每次抽奖读取一次 Redis，连抽的网络 IO 与单抽相同
+     */
+    private List<Integer> getRandomAwardIdsByKey(Long strategyId, String key, int count) {
+        List<Integer> awardIds = new ArrayList<>(count);
+        if (isAliasMode()) {
+            AliasMethodTable aliasMethodTable = queryAliasMethodTable(strategyId, key);
+            for (int i = 0; i < count; i++) {
+                awardIds.add(aliasMethodTable.sample(secureRandom));
+            }
+            return awardIds;
+        }
+
+        RateSearchTable.Header header = RateSearchTable.decodeHeader(repository.queryStrategyRateSearchTable(key, 0, RateSearchTable.HEADER_BYTES));
+        RateSearchTable rateSearchTable = header.decodeTable(repository.queryStrategyRateSearchTable(key, RateSearchTable.HEADER_BYTES, header.tableLength()));
+        for (int i = 0; i < count; i++) {
+            awardIds.add(rateSearchTable.search(secureRandom.nextInt(header.getRateRange())));
+        }
+        return awardIds;
+    }
+
+    /**
+     * 概率查找表抽奖；分布式部署下，不一定为当前应用做的策略装配，所以需要从 Redis 中获取。
+     * 1. 读取编码头，获得随机范围与表结构
+     * 2. 稠密表只读取随机值对应的 4 个字节；累积表读取全部累积上界「只和奖品数量有关」后二分查找
+     */
+    private Integer getRandomAwardIdByRateSearchTable(String key) {
+        RateSearchTable.Header header = RateSearchTable.decodeHeader(repository.queryStrategyRateSearchTable(key, 0, RateSearchTable.HEADER_BYTES));
+        int rateKey = secureRandom.nextInt(header.getRateRange());
+        byte[] payload = repository.queryStrategyRateSearchTable(key, header.payloadOffset(rateKey), header.payloadLength());
+        return header.search(payload, rateKey);
+    }
+
+    /**
+     * 别名表抽奖；本地命中且未到版本校验时间时，不产生任何网络 IO。版本变化（或本节点未装配）时从 strategy_award 重建
+     */
+    private Integer getRandomAwardIdByAliasTable(Long strategyId, String key) {
+        return queryAliasMethodTable(strategyId, key).sample(secureRandom);
+    }
+
+    private AliasMethodTable queryAliasMethodTable(Long strategyId, String key) {
+        long version = strategyConfigVersion.query(strategyId);
+        if (0 == version) {
+            throw new AppException(ResponseCode.UN_ASSEMBLED_STRATEGY_ARMORY.getCode(), strategyId + Constants.COLON + ResponseCode.UN_ASSEMBLED_STRATEGY_ARMORY.getInfo());
+        }
+
+        AliasTableGroup aliasTableGroup = aliasTableGroups.get(strategyId);
+        if (null == aliasTableGroup || aliasTableGroup.version < version) {
+            aliasTableGroup = aliasTableGroups.compute(strategyId, (id, latest) -> null != latest && latest.version >= version
+                    ? latest
+                    : buildAliasTableGroup(id, repository.queryStrategyAwardList(id), version));
+        }
+
+        AliasMethodTable aliasMethodTable = aliasTableGroup.aliasTables.get(key);
+        if (null == aliasMethodTable) {
+            throw new AppException(ResponseCode.UN_ASSEMBLED_STRATEGY_ARMORY.getCode(), key + Constants.COLON + ResponseCode.UN_ASSEMBLED_STRATEGY_ARMORY.getInfo());
+        }
+        return aliasMethodTable;
+    }
+
+    private boolean isAliasMode() {
+        return StrategyDispatchModeVO.ALIAS.equals(StrategyDispatchModeVO.of(dispatchMode));
     }
 
     @Override
     public Boolean subtractionAwardStock(Long strategyId, Integer awardId, Date endDateTime) {
+        return subtractionAwardStock(null, strategyId, awardId, endDateTime);
+    }
+
+    @Override
+    public Boolean subtractionAwardStock(String userId, Long strategyId, Integer awardId, Date endDateTime) {
         String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + strategyId + Constants.UNDERLINE + awardId;
-        return repository.subtractionAwardStock(cacheKey, endDateTime);
+        // 扣减成功时，同时累加奖品的已消耗计数，定时同步数据库记录
+        StrategyAwardStockKeyVO strategyAwardStockKeyVO = StrategyAwardStockKeyVO.builder()
+                .strategyId(strategyId)
+                .awardId(awardId)
+                .build();
+
+        List<String> stockKeys = queryStockKeys(userId, cacheKey);
+
+        // 本地租约；一次从 Redis 租出一批库存，本地扣减
+        if (strategyAwardStockLease.isEnabled()) {
+            return strategyAwardStockLease.subtractionAwardStock(cacheKey, stockKeys, strategyAwardStockKeyVO, endDateTime);
+        }
+
+        // 每个分段独立扣减加锁，各分段之和即总库存，不会超卖
+        for (String stockKey : stockKeys) {
+            if (repository.subtractionAwardStock(stockKey, strategyAwardStockKeyVO, endDateTime)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int subtractionAwardStock(String userId, Long strategyId, Integer awardId, Date endDateTime, int count) {
+        String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + strategyId + Constants.UNDERLINE + awardId;
+        StrategyAwardStockKeyVO strategyAwardStockKeyVO = StrategyAwardStockKeyVO.builder()
+                .strategyId(strategyId)
+                .awardId(awardId)
+                .build();
+
+        List<String> stockKeys = queryStockKeys(userId, cacheKey);
+
+        // 本地租约；逐个从本地租约扣减，租约用完时才续租
+        if (strategyAwardStockLease.isEnabled()) {
+            return strategyAwardStockLease.subtractionAwardStock(cacheKey, stockKeys, strategyAwardStockKeyVO, endDateTime, count);
+        }
+
+        // 每个分段一次脚本调用扣减剩余数量，分段不足时向下一个分段借用
+        int granted = 0;
+        for (String stockKey : stockKeys) {
+            granted += (int) repository.subtractionAwardStock(stockKey, count - granted, strategyAwardStockKeyVO, endDateTime);
+            if (granted >= count) break;
+        }
+        return granted;
+    }
+
+    /**
+     * 库存 key，按扣减顺序排列；不分段时为 cacheKey 本身。
+     * 分段库存按用户ID（无用户ID时按线程）选择起始分段，分段库存不足时依次向其他分段借用。
+     */
+    private List<String> queryStockKeys(String userId, String cacheKey) {
+        int segmentCount = repository.queryStrategyAwardCountSegmentCount(cacheKey);
+        if (segmentCount <= 1) return Collections.singletonList(cacheKey);
+
+        int hash = null == userId ? (int) Thread.currentThread().getId() : userId.hashCode();
+        int start = Math.floorMod(hash, segmentCount);
+        List<String> stockKeys = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            stockKeys.add(cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_SUFFIX + (start + i) % segmentCount);
+        }
+        return stockKeys;
+    }
+
+    /**
+     * 策略别名表组；同一版本下的默认表和权重表
+     */
+    private static class AliasTableGroup {
+        private final long version;
+        private final Map<String, AliasMethodTable> aliasTables;
+
+        private AliasTableGroup(long version, Map<String, AliasMethodTable> aliasTables) {
+            this.version = version;
+            this.aliasTables = aliasTables;
+        }
     }
 
 }
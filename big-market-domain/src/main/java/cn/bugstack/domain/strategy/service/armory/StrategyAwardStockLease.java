@@ -0,0 +1,207 @@
+package cn.bugstack.domain.strategy.service.armory;
+
+import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
+import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gzc
+ * @description 奖品库存本地租约；每个节点一次从 Redis 租出一批库存，本地 CAS 扣减，用完再续租。
+ * 1. 已消耗的数量在续租或归还时一次性累加到已消耗计数，UpdateAwardStockJob 同步数据库的数量与实际发放一致
+ * 2. 未使用的库存在租约到期或应用关闭时归还到库存 key 的归还池，槽位保持加锁，下一次租约优先从归还池租用。
+ * 归还池只由租约使用，stock-lease-size 改为 0 后池中剩余的库存不再发放
+ */
+@Slf4j
+@Component
+public class StrategyAwardStockLease {
+
+    // 全部库存 key 租不到库存时，在该时间内直接返回库存不足，避免售罄后每次请求都串行访问 Redis
+    private static final long SOLD_OUT_BACKOFF_MILLIS = 1000L;
+
+    @Resource
+    private IStrategyRepository repository;
+
+    // 租约数量，0 为不启用
+    @Value("${strategy.armory.stock-lease-size:0}")
+    private long leaseSize;
+
+    // 租约有效期，到期后归还未使用的库存
+    @Value("${strategy.armory.stock-lease-expire-millis:10000}")
+    private long leaseExpireMillis;
+
+    // 奖品库存 key -> 租约
+    private final Map<String, LeaseHolder> leaseHolders = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return leaseSize > 0;
+    }
+
+    /**
+     * 扣减奖品库存；优先从本地租约扣减，租约用完或到期时续租
+     *
+     * @param cacheKey                奖品库存 key
+     * @param stockKeys               可租用的库存 key，按借用顺序排列「不分段时为 cacheKey 本身」
+     * @param strategyAwardStockKeyVO 奖品库存标识
+     * @param endDateTime             活动结束时间
+     * @return 扣减结果
+     */
+    public boolean subtractionAwardStock(String cacheKey, List<String> stockKeys, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime) {
+        LeaseHolder leaseHolder = leaseHolders.computeIfAbsent(cacheKey, key -> new LeaseHolder(strategyAwardStockKeyVO));
+        long now = System.currentTimeMillis();
+        if (leaseHolder.tryAcquire(now)) return true;
+
+        synchronized (leaseHolder) {
+            if (leaseHolder.tryAcquire(now)) return true;
+            if (leaseHolder.soldOutTime > now) return false;
+
+            // 1. 关闭当前租约；有未使用的库存时归还，否则已消耗的数量随下一次租约一起计数
+            long consumedCount = 0;
+            Lease lease = leaseHolder.lease;
+            if (null != lease) {
+                long unusedCount = lease.close();
+                consumedCount = lease.grantedCount - unusedCount;
+                if (unusedCount > 0) {
+                    try {
+                        repository.returnAwardStock(lease.stockKey, unusedCount, strategyAwardStockKeyVO, consumedCount);
+                    } catch (Exception e) {
+                        // 归还失败恢复租约，由到期归还兜底
+                        leaseHolder.lease = lease.reopen(unusedCount);
+                        throw e;
+                    }
+                    consumedCount = 0;
+                    leaseHolder.lease = null;
+                }
+                // 库存已用完的租约保留到已消耗的数量随续租计数成功，续租异常时由到期归还兜底
+            }
+
+            // 2. 按借用顺序续租
+            for (String stockKey : stockKeys) {
+                long grantedCount = repository.leaseAwardStock(stockKey, leaseSize, strategyAwardStockKeyVO, consumedCount, endDateTime);
+                consumedCount = 0;
+                leaseHolder.lease = null;
+                if (grantedCount <= 0) continue;
+                leaseHolder.lease = new Lease(stockKey, grantedCount, now + leaseExpireMillis);
+                return leaseHolder.tryAcquire(now);
+            }
+
+            leaseHolder.soldOutTime = now + SOLD_OUT_BACKOFF_MILLIS;
+            return false;
+        }
+    }
+
+    /**
+     * 批量扣减奖品库存；本地租约逐个扣减，只有租约用完或到期时才访问 Redis
+     *
+     * @return 实际扣减的数量
+     */
+    public int subtractionAwardStock(String cacheKey, List<String> stockKeys, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime, int count) {
+        int granted = 0;
+        while (granted < count && subtractionAwardStock(cacheKey, stockKeys, strategyAwardStockKeyVO, endDateTime)) {
+            granted++;
+        }
+        return granted;
+    }
+
+    /**
+     * 归还到期的租约
+     */
+    @Scheduled(fixedDelayString = "${strategy.armory.stock-lease-check-millis:1000}")
+    public void returnExpiredLease() {
+        if (!isEnabled()) return;
+        returnLease(System.currentTimeMillis());
+    }
+
+    /**
+     * 应用关闭时归还全部租约
+     */
+    @PreDestroy
+    public void destroy() {
+        returnLease(Long.MAX_VALUE);
+    }
+
+    private void returnLease(long now) {
+        for (Map.Entry<String, LeaseHolder> entry : leaseHolders.entrySet()) {
+            LeaseHolder leaseHolder = entry.getValue();
+            synchronized (leaseHolder) {
+                Lease lease = leaseHolder.lease;
+                if (null == lease || lease.expireTime > now) continue;
+                long unusedCount = lease.close();
+                try {
+                    repository.returnAwardStock(lease.stockKey, unusedCount, leaseHolder.strategyAwardStockKeyVO, lease.grantedCount - unusedCount);
+                    leaseHolder.lease = null;
+                } catch (Exception e) {
+                    // 归还失败恢复租约，下次继续归还
+                    leaseHolder.lease = lease.reopen(unusedCount);
+                    log.error("奖品库存租约归还失败 cacheKey:{} stockKey:{} unusedCount:{}", entry.getKey(), lease.stockKey, unusedCount, e);
+                }
+            }
+        }
+    }
+
+    private static class LeaseHolder {
+        private final StrategyAwardStockKeyVO strategyAwardStockKeyVO;
+        private volatile Lease lease;
+        private volatile long soldOutTime;
+
+        private LeaseHolder(StrategyAwardStockKeyVO strategyAwardStockKeyVO) {
+            this.strategyAwardStockKeyVO = strategyAwardStockKeyVO;
+        }
+
+        private boolean tryAcquire(long now) {
+            Lease current = lease;
+            return null != current && current.expireTime > now && current.tryAcquire();
+        }
+    }
+
+    private static class Lease {
+        private final String stockKey;
+        private final long grantedCount;
+        private final long expireTime;
+        private final AtomicLong remaining;
+
+        private Lease(String stockKey, long grantedCount, long expireTime) {
+            this(stockKey, grantedCount, grantedCount, expireTime);
+        }
+
+        private Lease(String stockKey, long grantedCount, long remaining, long expireTime) {
+            this.stockKey = stockKey;
+            this.grantedCount = grantedCount;
+            this.expireTime = expireTime;
+            this.remaining = new AtomicLong(remaining);
+        }
+
+        private boolean tryAcquire() {
+            for (; ; ) {
+                long current = remaining.get();
+                if (current <= 0) return false;
+                if (remaining.compareAndSet(current, current - 1)) return true;
+            }
+        }
+
+        /**
+         * 关闭租约，返回未使用的数量；关闭后不能再扣减
+         */
+        private long close() {
+            return remaining.getAndSet(0);
+        }
+
+        /**
+         * 以关闭时未使用的数量重新打开租约
+         */
+        private Lease reopen(long unusedCount) {
+            return new Lease(stockKey, grantedCount, unusedCount, expireTime);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package cn.bugstack.domain.strategy.service.armory;
+
+import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author gzc
+ * @description 策略配置版本号；装配时递增发布到 Redis，各节点本地编译的别名表、责任链按版本号判断是否需要重建。
+ * 每个策略最多间隔 CHECK_INTERVAL_MILLIS 读取一次 Redis，稳定状态下抽奖不产生配置类的网络 IO。
+ */
+@Component
+public class StrategyConfigVersion {
+
+    // 版本校验间隔；每个节点最多间隔该时长读取一次 Redis 中发布的版本号
+    private static final long CHECK_INTERVAL_MILLIS = 10_000L;
+
+    @Resource
+    private IStrategyRepository repository;
+
+    // 策略ID -> 本地版本号
+    private final Map<Long, LocalVersion> localVersions = new ConcurrentHashMap<>();
+
+    /**
+     * 发布新版本号，装配时调用
+     */
+    public long publish(Long strategyId) {
+        long version = repository.publishStrategyConfigVersion(strategyId);
+        localVersions.put(strategyId, new LocalVersion(version, System.currentTimeMillis()));
+        return version;
+    }
+
+    /**
+     * 查询版本号，未装配为 0
+     */
+    public long query(Long strategyId) {
+        long now = System.currentTimeMillis();
+        LocalVersion localVersion = localVersions.get(strategyId);
+        if (null != localVersion && now - localVersion.checkTime <= CHECK_INTERVAL_MILLIS) {
+            return localVersion.version;
+        }
+        long version = repository.queryStrategyConfigVersion(strategyId);
+        localVersions.put(strategyId, new LocalVersion(version, now));
+        return version;
+    }
+
+    private static class LocalVersion {
+        private final long version;
+        private final long checkTime;
+
+        private LocalVersion(long version, long checkTime) {
+            this.version = version;
+            this.checkTime = checkTime;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package cn.bugstack.domain.strategy.service.armory.algorithm;
+
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author gzc
+ * @description 别名表「Walker/Vose Alias Method」；内存只和奖品数量 n 有关，抽奖 O(1)，不再随 award_rate 的精度膨胀。
+ * 1. 把 n 个奖品概率放大 n 倍，均分到 n 个桶里，每个桶最多只放 2 个奖品「自己 + 别名」
+ * 2. 抽奖时先随机一个桶，再用桶内概率决定取自己还是别名
+ */
+public final class AliasMethodTable {
+
+    /** 桶对应的奖品ID */
+    private final int[] awardIds;
+    /** 桶内命中自己的概率 */
+    private final double[] probability;
+    /** 桶内未命中时的别名下标 */
+    private final int[] alias;
+
+    private AliasMethodTable(int[] awardIds, double[] probability, int[] alias) {
+        this.awardIds = awardIds;
+        this.probability = probability;
+        this.alias = alias;
+    }
+
+    /**
+     * 根据策略奖品构建别名表，概率按 award_rate 总和归一化，与概率查找表「占位数量之和作为随机范围」的效果一致
+     */
+    public static AliasMethodTable build(List<StrategyAwardEntity> strategyAwardEntities) {
+        int n = strategyAwardEntities.size();
+        if (0 == n) {
+            throw new IllegalArgumentException("alias table strategy award list is empty");
+        }
+
+        BigDecimal totalRate = BigDecimal.ZERO;
+        for (StrategyAwardEntity strategyAward : strategyAwardEntities) {
+            totalRate = totalRate.add(strategyAward.getAwardRate());
+        }
+        if (totalRate.signum() <= 0) {
+            throw new IllegalArgumentException("alias table strategy award rate sum is zero");
+        }
+
+        int[] awardIds = new int[n];
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            StrategyAwardEntity strategyAward = strategyAwardEntities.get(i);
+            awardIds[i] = strategyAward.getAwardId();
+            scaled[i] = strategyAward.getAwardRate().doubleValue() * n / totalRate.doubleValue();
+        }
+
+        // 1. 概率小于1的放入 small，大于等于1的放入 large；用数组做栈，避免装箱
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0D) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        // 2. 每次用一个 large 填满一个 small 桶，剩余部分重新归类
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0D;
+            if (scaled[more] < 1.0D) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+
+        // 3. 剩余桶概率为1「small 中剩余的只可能是浮点误差」
+        while (largeSize > 0) {
+            int more = large[--largeSize];
+            probability[more] = 1.0D;
+            alias[more] = more;
+        }
+        while (smallSize > 0) {
+            int less = small[--smallSize];
+            probability[less] = 1.0D;
+            alias[less] = less;
+        }
+
+        return new AliasMethodTable(awardIds, probability, alias);
+    }
+
+    /**
+     * 抽奖；一次随机选桶，一次随机选桶内奖品
+     */
+    public Integer sample(Random random) {
+        int column = random.nextInt(awardIds.length);
+        return random.nextDouble() < probability[column] ? awardIds[column] : awardIds[alias[column]];
+    }
+
+    public int size() {
+        return awardIds.length;
+    }
+
+}
@@ -0,0 +1,236 @@
+package cn.bugstack.domain.strategy.service.armory.algorithm;
+
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author gzc
+ * @description 概率查找表；全部使用 int[] 存储，不再产生 List<Integer> / Map<Integer, Integer> 装箱对象。
+ * 1. 稠密表「DENSE」：每个随机值一个占位，rateKey 直接下标命中，O(1)；适合概率范围较小的策略
+ * 2. 累积表「CUMULATIVE」：每个奖品只存一个累积上界，rateKey 二分查找，O(log n)；内存只和奖品数量有关，适合高精度概率
+ * <p>
+ * 持久化编码「大端 int」：[layout][rateRange][size] + payload
+ * - DENSE payload：size 个奖品ID，size == rateRange，抽奖时只需按偏移量读取 4 个字节
+ * - CUMULATIVE payload：size 个奖品ID + size 个累积上界「不含」
+ */
+public final class RateSearchTable {
+
+    public static final int LAYOUT_DENSE = 1;
+    public static final int LAYOUT_CUMULATIVE = 2;
+
+    /** 编码头长度；layout + rateRange + size */
+    public static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private final int layout;
+    private final int rateRange;
+    /** DENSE 为每个占位的奖品ID；CUMULATIVE 为每个奖品的奖品ID */
+    private final int[] awardIds;
+    /** CUMULATIVE 累积上界；DENSE 为 null */
+    private final int[] upperBounds;
+
+    private RateSearchTable(int layout, int rateRange, int[] awardIds, int[] upperBounds) {
+        this.layout = layout;
+        this.rateRange = rateRange;
+        this.awardIds = awardIds;
+        this.upperBounds = upperBounds;
+    }
+
+    /**
+     * 构建概率查找表；占位数量与原查找表一致「rateRange * awardRate 取整」，占位总和作为随机范围。
+     * 占位总和不超过 denseMaxSize 时构建稠密表，否则构建累积表。
+     *
+     * @param strategyAwardEntities 策略奖品
+     * @param rateRange             概率范围值，如 0.0001 对应 10000
+     * @param denseMaxSize          稠密表最大占位数量
+     * @param random                稠密表乱序使用的随机数
+     */
+    public static RateSearchTable build(List<StrategyAwardEntity> strategyAwardEntities, BigDecimal rateRange, int denseMaxSize, Random random) {
+        int n = strategyAwardEntities.size();
+        int[] awardIds = new int[n];
+        int[] upperBounds = new int[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            StrategyAwardEntity strategyAward = strategyAwardEntities.get(i);
+            awardIds[i] = strategyAward.getAwardId();
+            total += rateRange.multiply(strategyAward.getAwardRate()).longValue();
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("rate search table range overflow, rateRange:" + rateRange);
+            }
+            upperBounds[i] = (int) total;
+        }
+        if (0 == total) {
+            throw new IllegalArgumentException("rate search table range is zero, rateRange:" + rateRange);
+        }
+
+        if (total > denseMaxSize) {
+            return new RateSearchTable(LAYOUT_CUMULATIVE, (int) total, awardIds, upperBounds);
+        }
+
+        // 稠密表；按累积上界填充占位后 Fisher-Yates 原地乱序
+        int[] slots = new int[(int) total];
+        int from = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = from; j < upperBounds[i]; j++) {
+                slots[j] = awardIds[i];
+            }
+            from = upperBounds[i];
+        }
+        for (int i = slots.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = slots[i];
+            slots[i] = slots[j];
+            slots[j] = tmp;
+        }
+        return new RateSearchTable(LAYOUT_DENSE, slots.length, slots, null);
+    }
+
+    /**
+     * 本地抽奖
+     *
+     * @param rateKey [0, rateRange) 范围内的随机值
+     */
+    public Integer search(int rateKey) {
+        if (LAYOUT_DENSE == layout) return awardIds[rateKey];
+        return awardIds[searchUpperBound(upperBounds, rateKey)];
+    }
+
+    /**
+     * 二进制编码，用于写入 Redis
+     */
+    public byte[] encode() {
+        int ints = 3 + awardIds.length + (null == upperBounds ? 0 : upperBounds.length);
+        byte[] bytes = new byte[ints * Integer.BYTES];
+        int offset = writeInt(bytes, 0, layout);
+        offset = writeInt(bytes, offset, rateRange);
+        offset = writeInt(bytes, offset, awardIds.length);
+        for (int awardId : awardIds) {
+            offset = writeInt(bytes, offset, awardId);
+        }
+        if (null != upperBounds) {
+            for (int upperBound : upperBounds) {
+                offset = writeInt(bytes, offset, upperBound);
+            }
+        }
+        return bytes;
+    }
+
+    public int getLayout() {
+        return layout;
+    }
+
+    public int getRateRange() {
+        return rateRange;
+    }
+
+    /**
+     * 解析编码头；抽奖时先读取编码头，再按 layout 读取最少的字节
+     */
+    public static Header decodeHeader(byte[] bytes) {
+        return new Header(readInt(bytes, 0), readInt(bytes, Integer.BYTES), readInt(bytes, 2 * Integer.BYTES));
+    }
+
+    /**
+     * 编码头
+     */
+    public static final class Header {
+        private final int layout;
+        private final int rateRange;
+        private final int size;
+
+        private Header(int layout, int rateRange, int size) {
+            this.layout = layout;
+            this.rateRange = rateRange;
+            this.size = size;
+        }
+
+        public int getRateRange() {
+            return rateRange;
+        }
+
+        /**
+         * 抽奖需要读取的 payload 偏移量；稠密表只读取 rateKey 对应的占位，累积表读取全部 payload
+         */
+        public int payloadOffset(int rateKey) {
+            return LAYOUT_DENSE == layout ? HEADER_BYTES + rateKey * Integer.BYTES : HEADER_BYTES;
+        }
+
+        /**
+         * 抽奖需要读取的 payload 长度
+         */
+        public int payloadLength() {
+            return LAYOUT_DENSE == layout ? Integer.BYTES : 2 * size * Integer.BYTES;
+        }
+
+        /**
+         * 根据按 payloadOffset / payloadLength 读取的字节获取奖品ID
+         */
+        public Integer search(byte[] payload, int rateKey) {
+            if (LAYOUT_DENSE == layout) return readInt(payload, 0);
+            int[] upperBounds = new int[size];
+            for (int i = 0; i < size; i++) {
+                upperBounds[i] = readInt(payload, (size + i) * Integer.BYTES);
+            }
+            return readInt(payload, searchUpperBound(upperBounds, rateKey) * Integer.BYTES);
+        }
+
+        /**
+         * 完整 payload 长度；连抽时一次读取全部 payload，本地解码后多次抽奖
+         */
+        public int tableLength() {
+            return LAYOUT_DENSE == layout ? size * Integer.BYTES : 2 * size * Integer.BYTES;
+        }
+
+        /**
+         * 根据从 HEADER_BYTES 开始读取的 tableLength 个字节还原查找表
+         */
+        public RateSearchTable decodeTable(byte[] table) {
+            int[] awardIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                awardIds[i] = readInt(table, i * Integer.BYTES);
+            }
+            if (LAYOUT_DENSE == layout) return new RateSearchTable(layout, rateRange, awardIds, null);
+
+            int[] upperBounds = new int[size];
+            for (int i = 0; i < size; i++) {
+                upperBounds[i] = readInt(table, (size + i) * Integer.BYTES);
+            }
+            return new RateSearchTable(layout, rateRange, awardIds, upperBounds);
+        }
+    }
+
+    /**
+     * 二分查找第一个大于 rateKey 的累积上界
+     */
+    private static int searchUpperBound(int[] upperBounds, int rateKey) {
+        int low = 0;
+        int high = upperBounds.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (upperBounds[mid] > rateKey) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+        return offset + Integer.BYTES;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+}
@@ -1,9 +1,7 @@
 package cn.bugstack.domain.strategy.service.raffle;
 
 import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
-import cn.bugstack.domain.strategy.model.valobj.RuleTreeVO;
 import cn.bugstack.domain.strategy.model.valobj.RuleWeightVO;
-import cn.bugstack.domain.strategy.model.valobj.StrategyAwardRuleModelVO;
 import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
 import cn.bugstack.domain.strategy.service.AbstractRaffleStrategy;
@@ -18,6 +16,7 @@ import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.IDecisionTre
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +40,12 @@ public class DefaultRaffleStrategy extends AbstractRaffleStrategy implements IRa
         return logicChain.logic(userId, strategyId);
     }
 
+    @Override
+    public List<DefaultChainFactory.StrategyAwardVO> raffleLogicChainBatch(String userId, Long strategyId, int count) {
+        ILogicChain logicChain = defaultChainFactory.openLogicChain(strategyId);
+        return logicChain.logicBatch(userId, strategyId, count);
+    }
+
     @Override
     public DefaultTreeFactory.StrategyAwardVO raffleLogicTree(String userId, Long strategyId, Integer awardId) {
         return raffleLogicTree(userId, strategyId, awardId, null);
@@ -48,36 +53,40 @@ public class DefaultRaffleStrategy extends AbstractRaffleStrategy implements IRa
 
     @Override
     public DefaultTreeFactory.StrategyAwardVO raffleLogicTree(String userId, Long strategyId, Integer awardId, Date endDateTime) {
-        StrategyAwardRuleModelVO strategyAwardRuleModelVO = repository.queryStrategyAwardRuleModelVO(strategyId, awardId);
-        if (null == strategyAwardRuleModelVO) {
+        // 策略奖品规则树快照；奖品未配置规则树时直接返回
+        IDecisionTreeEngine treeEngine = defaultTreeFactory.openLogicTree(strategyId, awardId);
+        if (null == treeEngine) {
             return DefaultTreeFactory.StrategyAwardVO.builder().awardId(awardId).build();
         }
-        RuleTreeVO ruleTreeVO = repository.queryRuleTreeVOByTreeId(strategyAwardRuleModelVO.getRuleModels());
-        if (null == ruleTreeVO) {
-            throw new RuntimeException("存在抽奖策略配置的规则模型 Key，未在库表 rule_tree、rule_tree_node、rule_tree_line 配置对应的规则树信息 " + strategyAwardRuleModelVO.getRuleModels());
-        }
-        IDecisionTreeEngine treeEngine = defaultTreeFactory.openLogicTree(ruleTreeVO);
         return treeEngine.process(userId, strategyId, awardId, endDateTime);
     }
 
     @Override
-    public StrategyAwardStockKeyVO takeQueueValue(Long strategyId, Integer awardId) throws InterruptedException {
-        return repository.takeQueueValue(strategyId, awardId);
+    public List<DefaultTreeFactory.StrategyAwardVO> raffleLogicTreeBatch(String userId, Long strategyId, Integer awardId, Date endDateTime, int count) {
+        IDecisionTreeEngine treeEngine = defaultTreeFactory.openLogicTree(strategyId, awardId);
+        if (null == treeEngine) {
+            List<DefaultTreeFactory.StrategyAwardVO> strategyAwardVOS = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strategyAwardVOS.add(DefaultTreeFactory.StrategyAwardVO.builder().awardId(awardId).build());
+            }
+            return strategyAwardVOS;
+        }
+        return treeEngine.processBatch(userId, strategyId, awardId, endDateTime, count);
     }
 
     @Override
-    public List<StrategyAwardStockKeyVO> takeQueueValueBatch(Long strategyId, Integer awardId) throws InterruptedException {
-        return repository.takeQueueValueBatch(strategyId, awardId);
+    public long syncStrategyAwardStock(Long strategyId, Integer awardId) {
+        return repository.syncStrategyAwardStock(strategyId, awardId);
     }
 
     @Override
-    public void updateStrategyAwardStock(Long strategyId, Integer awardId) {
-        repository.updateStrategyAwardStock(strategyId, awardId);
+    public List<Long> queryStrategyAwardStockConsumedCount(List<StrategyAwardStockKeyVO> strategyAwardStockKeyVOS) {
+        return repository.queryAwardStockConsumedCount(strategyAwardStockKeyVOS);
     }
 
     @Override
-    public void updateStrategyAwardStockBatch(Long strategyId, Integer awardId, int totalCount) {
-        repository.updateStrategyAwardStockBatch(strategyId, awardId, totalCount);
+    public void updateStrategyAwardStock(Long strategyId, Integer awardId) {
+        repository.updateStrategyAwardStock(strategyId, awardId);
     }
 
     @Override
@@ -1,7 +1,11 @@
 package cn.bugstack.domain.strategy.service.rule.chain;
 
+import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 抽奖策略责任链，判断走那种抽奖策略。如；默认抽象、权重抽奖、黑名单抽奖
@@ -23,6 +27,25 @@ public abstract class AbstractLogicChain implements ILogicChain{
         return next;
     }
 
+    /**
+     * 默认无需编译；有规则配置的责任链在此解析规则值，抽奖时直接使用编译结果，不再解析字符串和查询规则配置
+     */
+    @Override
+    public void compile(Long strategyId) {
+    }
+
+    /**
+     * 默认逐次执行 logic；可一次计算的责任链覆盖此方法
+     */
+    @Override
+    public List<DefaultChainFactory.StrategyAwardVO> logicBatch(String userId, Long strategyId, int count) {
+        List<DefaultChainFactory.StrategyAwardVO> strategyAwardVOS = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strategyAwardVOS.add(logic(userId, strategyId));
+        }
+        return strategyAwardVOS;
+    }
+
     protected abstract String ruleModel();
 
 }
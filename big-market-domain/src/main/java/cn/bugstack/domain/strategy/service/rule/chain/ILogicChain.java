@@ -2,6 +2,8 @@ package cn.bugstack.domain.strategy.service.rule.chain;
 
 import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 抽奖策略规则责任链接口
@@ -18,4 +20,14 @@ public interface ILogicChain extends ILogicChainArmory, Cloneable {
      */
     DefaultChainFactory.StrategyAwardVO logic(String userId, Long strategyId);
 
+    /**
+     * 连抽责任链；同一用户的 count 次抽奖一起计算，规则判断只执行一次，抽奖结果一次采样
+     *
+     * @param userId     用户ID
+     * @param strategyId 策略ID
+     * @param count      抽奖次数
+     * @return 奖品对象，数量与抽奖次数一致
+     */
+    List<DefaultChainFactory.StrategyAwardVO> logicBatch(String userId, Long strategyId, int count);
+
 }
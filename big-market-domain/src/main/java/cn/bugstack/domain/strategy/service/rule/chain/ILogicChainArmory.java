@@ -11,4 +11,11 @@ public interface ILogicChainArmory {
 
     ILogicChain appendNext(ILogicChain next);
 
+    /**
+     * 编译规则配置；责任链按策略配置版本号构建时调用一次
+     *
+     * @param strategyId 策略ID
+     */
+    void compile(Long strategyId);
+
 }
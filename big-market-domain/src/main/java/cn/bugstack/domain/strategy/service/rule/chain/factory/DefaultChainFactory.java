@@ -2,12 +2,12 @@ package cn.bugstack.domain.strategy.service.rule.chain.factory;
 
 import cn.bugstack.domain.strategy.model.entity.StrategyEntity;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import cn.bugstack.domain.strategy.service.armory.StrategyConfigVersion;
 import cn.bugstack.domain.strategy.service.rule.chain.ILogicChain;
 import lombok.*;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -22,52 +22,71 @@ public class DefaultChainFactory {
     private final ApplicationContext applicationContext;
     // 仓储信息
     protected IStrategyRepository repository;
-    // 存放策略链，策略ID -> 责任链
-    private final Map<Long, ILogicChain> strategyChainGroup;
+    // 策略配置版本号
+    private final StrategyConfigVersion strategyConfigVersion;
+    // 存放策略链，策略ID -> 编译后的责任链
+    private final Map<Long, StrategyChain> strategyChainGroup;
 
-    public DefaultChainFactory(ApplicationContext applicationContext, IStrategyRepository repository) {
+    public DefaultChainFactory(ApplicationContext applicationContext, IStrategyRepository repository, StrategyConfigVersion strategyConfigVersion) {
         this.applicationContext = applicationContext;
         this.repository = repository;
+        this.strategyConfigVersion = strategyConfigVersion;
         this.strategyChainGroup = new ConcurrentHashMap<>();
     }
 
     /**
-     * 通过策略ID，构建责任链
+     * 通过策略ID，构建责任链；每个策略配置版本只编译一次，重新装配后按新版本重建
      *
      * @param strategyId 策略ID
      * @return LogicChain
      */
     public ILogicChain openLogicChain(Long strategyId) {
-        ILogicChain cacheLogicChain = strategyChainGroup.get(strategyId);
-        if (null != cacheLogicChain) return cacheLogicChain;
+        long version = strategyConfigVersion.query(strategyId);
+        StrategyChain cacheStrategyChain = strategyChainGroup.get(strategyId);
+        if (null != cacheStrategyChain && cacheStrategyChain.version >= version) return cacheStrategyChain.logicChain;
 
+        return strategyChainGroup.compute(strategyId, (id, latest) -> null != latest && latest.version >= version
+                ? latest
+                : new StrategyChain(version, buildLogicChain(id))).logicChain;
+    }
+
+    private ILogicChain buildLogicChain(Long strategyId) {
         StrategyEntity strategy = repository.queryStrategyEntityByStrategyId(strategyId);
         String[] ruleModels = strategy.ruleModels();
 
         // 如果未配置策略规则，则只装填一个默认责任链
         if (null == ruleModels || 0 == ruleModels.length) {
-            ILogicChain ruleDefaultLogicChain = applicationContext.getBean(LogicModel.RULE_DEFAULT.getCode(), ILogicChain.class);
-            // 写入缓存
-            strategyChainGroup.put(strategyId, ruleDefaultLogicChain);
-            return ruleDefaultLogicChain;
+            return openChain(LogicModel.RULE_DEFAULT.getCode(), strategyId);
         }
 
-        // 按照配置顺序装填用户配置的责任链；rule_blacklist、rule_weight 「注意此数据从Redis缓存中获取，如果更新库表，记得在测试阶段手动处理缓存」
-        ILogicChain logicChain = applicationContext.getBean(ruleModels[0], ILogicChain.class);
+        // 按照配置顺序装填用户配置的责任链；rule_blacklist、rule_weight 规则值在装填时编译
+        ILogicChain logicChain = openChain(ruleModels[0], strategyId);
         ILogicChain current = logicChain;
         for (int i = 1; i < ruleModels.length; i++) {
-            ILogicChain nextChain = applicationContext.getBean(ruleModels[i], ILogicChain.class);
-            current = current.appendNext(nextChain);
+            current = current.appendNext(openChain(ruleModels[i], strategyId));
         }
 
         // 责任链的最后装填默认责任链
-        current.appendNext(applicationContext.getBean(LogicModel.RULE_DEFAULT.getCode(), ILogicChain.class));
-        // 写入缓存
-        strategyChainGroup.put(strategyId, logicChain);
+        current.appendNext(openChain(LogicModel.RULE_DEFAULT.getCode(), strategyId));
+        return logicChain;
+    }
 
+    private ILogicChain openChain(String ruleModel, Long strategyId) {
+        ILogicChain logicChain = applicationContext.getBean(ruleModel, ILogicChain.class);
+        logicChain.compile(strategyId);
         return logicChain;
     }
 
+    private static class StrategyChain {
+        private final long version;
+        private final ILogicChain logicChain;
+
+        private StrategyChain(long version, ILogicChain logicChain) {
+            this.version = version;
+            this.logicChain = logicChain;
+        }
+    }
+
     @Data
     @Builder
     @AllArgsConstructor
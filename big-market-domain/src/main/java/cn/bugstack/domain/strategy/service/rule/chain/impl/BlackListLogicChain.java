@@ -1,15 +1,20 @@
 package cn.bugstack.domain.strategy.service.rule.chain.impl;
 
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleValueVO;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
 import cn.bugstack.domain.strategy.service.rule.chain.AbstractLogicChain;
 import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
-import cn.bugstack.types.common.Constants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -24,30 +29,56 @@ public class BlackListLogicChain extends AbstractLogicChain {
     @Resource
     private IStrategyRepository repository;
 
+    // 编译结果；黑名单奖品ID、黑名单用户
+    private Integer awardId;
+    private Set<String> userBlackIds = Collections.emptySet();
+
+    /**
+     * 读取装配时已解析的规则值 100:user001,user002
+     */
     @Override
-    public DefaultChainFactory.StrategyAwardVO logic(String userId, Long strategyId) {
+    public void compile(Long strategyId) {
+        StrategyRuleValueVO strategyRuleValueVO = repository.queryStrategyRuleValueVO(strategyId, null, ruleModel());
+        if (null == strategyRuleValueVO || null == strategyRuleValueVO.getBlacklistUserIds()) {
+            log.error("抽奖责任链-黑名单告警【策略配置黑名单，但ruleValue未配置相应值】 strategyId:{} ruleModel:{}", strategyId, ruleModel());
+            return;
+        }
+        this.awardId = strategyRuleValueVO.getBlacklistAwardId();
+        this.userBlackIds = Collections.unmodifiableSet(new HashSet<>(strategyRuleValueVO.getBlacklistUserIds()));
+    }
 
-        // 查询规则值配置
-        String ruleValue = repository.queryStrategyRuleValue(strategyId, ruleModel());
-        String[] splitRuleValue = ruleValue.split(Constants.COLON);
-        Integer awardId = Integer.parseInt(splitRuleValue[0]);
+    @Override
+    public DefaultChainFactory.StrategyAwardVO logic(String userId, Long strategyId) {
 
         // 黑名单抽奖判断
-        String[] userBlackIds = splitRuleValue[1].split(Constants.SPLIT);
-        for (String userBlackId : userBlackIds) {
-            if (userId.equals(userBlackId)) {
-                return DefaultChainFactory.StrategyAwardVO.builder()
-                        .awardId(awardId)
-                        .logicModel(ruleModel())
-                        .awardRuleValue("1,10")
-                        .build();
-            }
+        if (userBlackIds.contains(userId)) {
+            return DefaultChainFactory.StrategyAwardVO.builder()
+                    .awardId(awardId)
+                    .logicModel(ruleModel())
+                    .awardRuleValue("1,10")
+                    .build();
         }
 
         // 过滤其他责任链
         return next().logic(userId, strategyId);
     }
 
+    @Override
+    public List<DefaultChainFactory.StrategyAwardVO> logicBatch(String userId, Long strategyId, int count) {
+
+        // 黑名单用户的每次抽奖结果相同
+        if (userBlackIds.contains(userId)) {
+            return new ArrayList<>(Collections.nCopies(count, DefaultChainFactory.StrategyAwardVO.builder()
+                    .awardId(awardId)
+                    .logicModel(ruleModel())
+                    .awardRuleValue("1,10")
+                    .build()));
+        }
+
+        // 过滤其他责任链
+        return next().logicBatch(userId, strategyId, count);
+    }
+
     @Override
     protected String ruleModel() {
         return DefaultChainFactory.LogicModel.RULE_BLACKLIST.getCode();
@@ -9,6 +9,8 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author gzc
@@ -32,6 +34,19 @@ public class DefaultLogicChain extends AbstractLogicChain {
                 .build();
     }
 
+    @Override
+    public List<DefaultChainFactory.StrategyAwardVO> logicBatch(String userId, Long strategyId, int count) {
+        List<Integer> awardIds = strategyDispatch.getRandomAwardIds(strategyId, count);
+        List<DefaultChainFactory.StrategyAwardVO> strategyAwardVOS = new ArrayList<>(count);
+        for (Integer awardId : awardIds) {
+            strategyAwardVOS.add(DefaultChainFactory.StrategyAwardVO.builder()
+                    .awardId(awardId)
+                    .logicModel(ruleModel())
+                    .build());
+        }
+        return strategyAwardVOS;
+    }
+
     @Override
     protected String ruleModel() {
         return DefaultChainFactory.LogicModel.RULE_DEFAULT.getCode();
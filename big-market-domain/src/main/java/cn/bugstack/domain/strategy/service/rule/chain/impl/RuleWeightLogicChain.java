@@ -1,17 +1,19 @@
 package cn.bugstack.domain.strategy.service.rule.chain.impl;
 
+import cn.bugstack.domain.strategy.model.valobj.StrategyRuleValueVO;
 import cn.bugstack.domain.strategy.repository.IStrategyRepository;
 import cn.bugstack.domain.strategy.service.armory.IStrategyDispatch;
 import cn.bugstack.domain.strategy.service.rule.chain.AbstractLogicChain;
 import cn.bugstack.domain.strategy.service.rule.chain.factory.DefaultChainFactory;
-import cn.bugstack.types.common.Constants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -32,18 +34,31 @@ public class RuleWeightLogicChain extends AbstractLogicChain {
     // 按需选择需要的计算策略，旧版是 AnalyticalNotEqual 算法，新增加 = 算法。使用时可以实例化 AnalyticalEqual 即可。这个操作也可以从数据库中配置处理。
     private final IAnalytical analytical = new AnalyticalEqual();
 
+    // 编译结果；升序排列的权重值及对应的规则 key「如 4000:102,103,104,105」
+    private int[] analyticalSortedKeys = new int[0];
+    private String[] analyticalValues = new String[0];
+
+    /**
+     * 读取装配时已解析的权重规则值 10:102,103 70:106,107 1000:104,105
+     */
+    @Override
+    public void compile(Long strategyId) {
+        StrategyRuleValueVO strategyRuleValueVO = repository.queryStrategyRuleValueVO(strategyId, null, ruleModel());
+        if (null == strategyRuleValueVO || null == strategyRuleValueVO.getWeightValues()) return;
+        this.analyticalValues = strategyRuleValueVO.getWeightKeys();
+        this.analyticalSortedKeys = strategyRuleValueVO.getWeightValues();
+    }
+
     /**
      * 权重责任链过滤；
      * 1. 权重规则格式；4000:102,103,104,105 5000:102,103,104,105,106,107 6000:102,103,104,105,106,107,108,109
-     * 2. 解析数据格式；判断哪个范围符合用户的特定抽奖范围
+     * 2. 判断哪个范围符合用户的特定抽奖范围；规则值已在 compile 中解析，这里只查询用户已参与的次数
      */
     @Override
     public DefaultChainFactory.StrategyAwardVO logic(String userId, Long strategyId) {
 
-        String ruleValue = repository.queryStrategyRuleValue(strategyId, ruleModel());
-        // 1. 解析权重规则值 10:102,103 70:106,107 1000:104,105
-        Map<Integer, String> analyticalValueGroup = getAnalyticalValue(ruleValue);
-        if (null == analyticalValueGroup || analyticalValueGroup.isEmpty()) {
+        // 1. 权重规则值
+        if (0 == analyticalSortedKeys.length) {
             log.error("抽奖责任链-权重告警【策略配置权重，但ruleValue未配置相应值】 userId:{} strategyId:{} ruleModel:{}", userId, strategyId, ruleModel());
             return next().logic(userId, strategyId);
         }
@@ -52,7 +67,7 @@ public class RuleWeightLogicChain extends AbstractLogicChain {
         Integer userCount = repository.queryActivityAccountTotalUseCount(userId, strategyId);
 
         // 3. 获取权重对应key
-        String analyticalValue = analytical.getAnalyticalValue(analyticalValueGroup, userCount);
+        String analyticalValue = analytical.getAnalyticalValue(analyticalSortedKeys, analyticalValues, userCount);
 
         // 4. 权重抽奖
         if (null != analyticalValue) {
@@ -67,39 +82,55 @@ public class RuleWeightLogicChain extends AbstractLogicChain {
         return next().logic(userId, strategyId);
     }
 
+    /**
+     * 连抽权重过滤；用户已参与的次数只查询一次，命中的权重档位一次采样 count 个奖品
+     */
     @Override
-    protected String ruleModel() {
-        return DefaultChainFactory.LogicModel.RULE_WEIGHT.getCode();
-    }
+    public List<DefaultChainFactory.StrategyAwardVO> logicBatch(String userId, Long strategyId, int count) {
+        if (0 == analyticalSortedKeys.length) {
+            log.error("抽奖责任链-权重告警【策略配置权重，但ruleValue未配置相应值】 userId:{} strategyId:{} ruleModel:{}", userId, strategyId, ruleModel());
+            return next().logicBatch(userId, strategyId, count);
+        }
 
-    private Map<Integer, String> getAnalyticalValue(String ruleValue) {
-        String[] ruleValueGroups = ruleValue.split(Constants.SPACE);
-        Map<Integer, String> ruleValueMap = new HashMap<>();
-        for (String ruleValueKey : ruleValueGroups) {
-            // 检查输入是否为空
-            if (ruleValueKey == null || ruleValueKey.isEmpty()) {
-                return ruleValueMap;
-            }
-            // 分割字符串以获取键和值
-            String[] parts = ruleValueKey.split(Constants.COLON);
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("rule_weight rule_rule invalid input format" + ruleValueKey);
-            }
-            ruleValueMap.put(Integer.parseInt(parts[0]), ruleValueKey);
+        Integer userCount = repository.queryActivityAccountTotalUseCount(userId, strategyId);
+        String analyticalValue = analytical.getAnalyticalValue(analyticalSortedKeys, analyticalValues, userCount);
+        if (null == analyticalValue) {
+            return next().logicBatch(userId, strategyId, count);
+        }
+
+        List<Integer> awardIds = strategyDispatch.getRandomAwardIds(strategyId, analyticalValue, count);
+        List<DefaultChainFactory.StrategyAwardVO> strategyAwardVOS = new ArrayList<>(count);
+        for (Integer awardId : awardIds) {
+            strategyAwardVOS.add(DefaultChainFactory.StrategyAwardVO.builder()
+                    .awardId(awardId)
+                    .logicModel(ruleModel())
+                    .build());
         }
-        return ruleValueMap;
+        return strategyAwardVOS;
+    }
+
+    @Override
+    protected String ruleModel() {
+        return DefaultChainFactory.LogicModel.RULE_WEIGHT.getCode();
     }
 
     interface IAnalytical {
-        String getAnalyticalValue(Map<Integer, String> analyticalValueGroup, Integer userScore);
+        /**
+         * @param analyticalSortedKeys 升序排列的权重值
+         * @param analyticalValues     权重值对应的规则 key，与 analyticalSortedKeys 下标一致
+         * @param userScore            用户已参与的次数
+         */
+        String getAnalyticalValue(int[] analyticalSortedKeys, String[] analyticalValues, Integer userScore);
     }
 
     // 获得指定权重值 = n
     static class AnalyticalEqual implements IAnalytical {
 
         @Override
-        public String getAnalyticalValue(Map<Integer, String> analyticalValueGroup, Integer userScore) {
-            return analyticalValueGroup.get(userScore);
+        public String getAnalyticalValue(int[] analyticalSortedKeys, String[] analyticalValues, Integer userScore) {
+            if (null == userScore) return null;
+            int index = Arrays.binarySearch(analyticalSortedKeys, userScore);
+            return index < 0 ? null : analyticalValues[index];
         }
     }
 
@@ -107,35 +138,14 @@ public class RuleWeightLogicChain extends AbstractLogicChain {
     static class AnalyticalNotEqual implements IAnalytical {
 
         @Override
-        public String getAnalyticalValue(Map<Integer, String> analyticalValueGroup, Integer userScore) {
-            // 2. 转换Keys值，并默认排序
-            List<Integer> analyticalSortedKeys = new ArrayList<>(analyticalValueGroup.keySet());
-            Collections.sort(analyticalSortedKeys);
-
-            // 3. 找出最小符合的值，也就是【4500 积分，能找到 4000:102,103,104,105】、【5000 积分，能找到 5000:102,103,104,105,106,107】
-            /* 找到最后一个符合的值[如用户传了一个 5900 应该返回正确结果为 5000]，如果使用 Lambda findFirst 需要注意使用 sorted 反转结果
-             *   Long nextValue = null;
-             *         for (Long analyticalSortedKeyValue : analyticalSortedKeys){
-             *             if (userScore >= analyticalSortedKeyValue){
-             *                 nextValue = analyticalSortedKeyValue;
-             *             }
-             *         }
-             * 星球伙伴 @慢慢来 ID 6267 提供
-             * Long nextValue = analyticalSortedKeys.stream()
-             *      .filter(key -> userScore >= key)
-             *      .max(Comparator.naturalOrder())
-             *      .orElse(null);
-             */
-            Integer nextValue = analyticalSortedKeys.stream()
-                    .sorted(Comparator.reverseOrder())
-                    .filter(analyticalSortedKeyValue -> userScore >= analyticalSortedKeyValue)
-                    .findFirst()
-                    .orElse(null);
-
+        public String getAnalyticalValue(int[] analyticalSortedKeys, String[] analyticalValues, Integer userScore) {
+            if (null == userScore) return null;
+            // 找出最后一个不大于用户积分的值，也就是【4500 积分，能找到 4000:102,103,104,105】、【5000 积分，能找到 5000:102,103,104,105,106,107】
+            int index = Arrays.binarySearch(analyticalSortedKeys, userScore);
+            if (index < 0) index = -index - 2;
             // 返回权重范围的 key值
-            return analyticalValueGroup.get(nextValue);
+            return index < 0 ? null : analyticalValues[index];
         }
     }
 
-
 }
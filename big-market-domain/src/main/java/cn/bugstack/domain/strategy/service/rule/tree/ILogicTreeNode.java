@@ -2,7 +2,9 @@ package cn.bugstack.domain.strategy.service.rule.tree;
 
 import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -13,4 +15,20 @@ public interface ILogicTreeNode {
 
     DefaultTreeFactory.TreeActionEntity logic(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime);
 
+    /**
+     * 连抽节点计算；同一奖品的 count 次抽奖一起过滤，返回按动作分组的数量。默认逐次执行 logic
+     */
+    default List<DefaultTreeFactory.TreeBatchActionEntity> logicBatch(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime, int count) {
+        List<DefaultTreeFactory.TreeBatchActionEntity> treeBatchActionEntities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DefaultTreeFactory.TreeActionEntity treeActionEntity = logic(userId, strategyId, awardId, ruleValue, endDateTime);
+            treeBatchActionEntities.add(DefaultTreeFactory.TreeBatchActionEntity.builder()
+                    .ruleLogicCheckType(treeActionEntity.getRuleLogicCheckType())
+                    .strategyAwardVO(treeActionEntity.getStrategyAwardVO())
+                    .count(1)
+                    .build());
+        }
+        return treeBatchActionEntities;
+    }
+
 }
@@ -1,14 +1,21 @@
 package cn.bugstack.domain.strategy.service.rule.tree.factory;
 
+import cn.bugstack.domain.strategy.model.entity.StrategyAwardEntity;
 import cn.bugstack.domain.strategy.model.valobj.RuleLogicCheckTypeVO;
 import cn.bugstack.domain.strategy.model.valobj.RuleTreeVO;
+import cn.bugstack.domain.strategy.repository.IStrategyRepository;
+import cn.bugstack.domain.strategy.service.armory.StrategyConfigVersion;
 import cn.bugstack.domain.strategy.service.rule.tree.ILogicTreeNode;
 import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.IDecisionTreeEngine;
 import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.impl.DecisionTreeEngine;
 import lombok.*;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -19,13 +26,87 @@ import java.util.Map;
 public class DefaultTreeFactory {
 
     private final Map<String, ILogicTreeNode> logicTreeNodeGroup;
+    // 存放编译后的规则树，规则树ID -> 决策树引擎
+    private final Map<String, TreeEngine> treeEngineGroup = new ConcurrentHashMap<>();
+    // 存放策略的规则树快照，策略ID -> 奖品ID -> 决策树引擎
+    private final Map<Long, StrategyTreeSnapshot> strategyTreeSnapshotGroup = new ConcurrentHashMap<>();
+
+    @Resource
+    private IStrategyRepository repository;
+    @Resource
+    private StrategyConfigVersion strategyConfigVersion;
 
     public DefaultTreeFactory(Map<String, ILogicTreeNode> logicTreeNodeGroup) {
         this.logicTreeNodeGroup = logicTreeNodeGroup;
     }
 
+    /**
+     * 获取规则树对应的决策树引擎；每个规则树对象只编译一次。
+     * 规则树对象来自近端缓存，重新装配时缓存失效、重新加载为新的对象，引擎随之重新编译
+     */
     public IDecisionTreeEngine openLogicTree(RuleTreeVO ruleTreeVO) {
-        return new DecisionTreeEngine(logicTreeNodeGroup, ruleTreeVO);
+        TreeEngine treeEngine = treeEngineGroup.get(ruleTreeVO.getTreeId());
+        if (null != treeEngine && treeEngine.ruleTreeVO == ruleTreeVO) return treeEngine.decisionTreeEngine;
+
+        treeEngine = new TreeEngine(ruleTreeVO, new DecisionTreeEngine(logicTreeNodeGroup, ruleTreeVO));
+        treeEngineGroup.put(ruleTreeVO.getTreeId(), treeEngine);
+        return treeEngine.decisionTreeEngine;
+    }
+
+    /**
+     * 获取策略奖品配置的决策树引擎，奖品未配置规则树返回 null。
+     * 策略的全部奖品规则树按策略配置版本号编译为一份不可变快照，重新装配后按新版本重建，抽奖时不再查询 strategy_award
+     *
+     * @param strategyId 策略ID
+     * @param awardId    奖品ID
+     * @return 决策树引擎
+     */
+    public IDecisionTreeEngine openLogicTree(Long strategyId, Integer awardId) {
+        long version = strategyConfigVersion.query(strategyId);
+        StrategyTreeSnapshot snapshot = strategyTreeSnapshotGroup.get(strategyId);
+        if (null == snapshot || snapshot.version < version) {
+            snapshot = strategyTreeSnapshotGroup.compute(strategyId, (id, latest) -> null != latest && latest.version >= version
+                    ? latest
+                    : new StrategyTreeSnapshot(version, buildTreeEngines(id)));
+        }
+        return snapshot.treeEngines.get(awardId);
+    }
+
+    /**
+     * 按策略奖品列表「已包含 rule_models」编译全部奖品的规则树
+     */
+    private Map<Integer, IDecisionTreeEngine> buildTreeEngines(Long strategyId) {
+        Map<Integer, IDecisionTreeEngine> treeEngines = new HashMap<>();
+        for (StrategyAwardEntity strategyAward : repository.queryStrategyAwardList(strategyId)) {
+            String ruleModels = strategyAward.getRuleModels();
+            if (null == ruleModels || ruleModels.isEmpty()) continue;
+            RuleTreeVO ruleTreeVO = repository.queryRuleTreeVOByTreeId(ruleModels);
+            if (null == ruleTreeVO) {
+                throw new RuntimeException("存在抽奖策略配置的规则模型 Key，未在库表 rule_tree、rule_tree_node、rule_tree_line 配置对应的规则树信息 " + ruleModels);
+            }
+            treeEngines.put(strategyAward.getAwardId(), openLogicTree(ruleTreeVO));
+        }
+        return Collections.unmodifiableMap(treeEngines);
+    }
+
+    private static class StrategyTreeSnapshot {
+        private final long version;
+        private final Map<Integer, IDecisionTreeEngine> treeEngines;
+
+        private StrategyTreeSnapshot(long version, Map<Integer, IDecisionTreeEngine> treeEngines) {
+            this.version = version;
+            this.treeEngines = treeEngines;
+        }
+    }
+
+    private static class TreeEngine {
+        private final RuleTreeVO ruleTreeVO;
+        private final IDecisionTreeEngine decisionTreeEngine;
+
+        private TreeEngine(RuleTreeVO ruleTreeVO, IDecisionTreeEngine decisionTreeEngine) {
+            this.ruleTreeVO = ruleTreeVO;
+            this.decisionTreeEngine = decisionTreeEngine;
+        }
     }
 
     /**
@@ -40,6 +121,19 @@ public class DefaultTreeFactory {
         private StrategyAwardVO strategyAwardVO;
     }
 
+    /**
+     * 连抽决策树动作；count 次抽奖中得到相同动作的数量
+     */
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TreeBatchActionEntity {
+        private RuleLogicCheckTypeVO ruleLogicCheckType;
+        private StrategyAwardVO strategyAwardVO;
+        private int count;
+    }
+
     @Data
     @Builder
     @AllArgsConstructor
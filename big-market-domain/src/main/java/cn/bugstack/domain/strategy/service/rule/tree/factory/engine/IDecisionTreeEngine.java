@@ -3,6 +3,7 @@ package cn.bugstack.domain.strategy.service.rule.tree.factory.engine;
 import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -13,4 +14,9 @@ public interface IDecisionTreeEngine {
 
     DefaultTreeFactory.StrategyAwardVO process(String userId, Long strategyId, Integer awardId, Date endDateTime);
 
+    /**
+     * 连抽过滤；同一奖品的 count 次抽奖一起走规则树，各节点按数量处理，返回 count 个过滤结果
+     */
+    List<DefaultTreeFactory.StrategyAwardVO> processBatch(String userId, Long strategyId, Integer awardId, Date endDateTime, int count);
+
 }
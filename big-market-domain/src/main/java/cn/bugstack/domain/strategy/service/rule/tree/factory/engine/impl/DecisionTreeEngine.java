@@ -6,75 +6,152 @@ import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
 import cn.bugstack.domain.strategy.service.rule.tree.factory.engine.IDecisionTreeEngine;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
- * @description 决策树引擎
+ * @description 决策树引擎；构建时把规则树编译为数组下标的节点程序，每个节点按 RuleLogicCheckTypeVO 下标预先计算好下一个节点，
+ * 执行时不再按字符串查找节点、不再遍历连线比较枚举 code
  * @create 2024-01-27 11:34
  */
 @Slf4j
 public class DecisionTreeEngine implements IDecisionTreeEngine {
 
-    private final Map<String, ILogicTreeNode> logicTreeNodeGroup;
+    /** 没有下一个节点 */
+    private static final int END = -1;
 
-    private final RuleTreeVO ruleTreeVO;
+    private static final RuleLogicCheckTypeVO[] CHECK_TYPES = RuleLogicCheckTypeVO.values();
+
+    /** 根节点下标 */
+    private final int rootIndex;
+    /** 节点下标 -> 决策节点 */
+    private final ILogicTreeNode[] logicTreeNodes;
+    /** 节点下标 -> 规则比值 */
+    private final String[] ruleValues;
+    /** 节点下标 -> [RuleLogicCheckTypeVO.ordinal] -> 下一个节点下标 */
+    private final int[][] transitions;
 
     public DecisionTreeEngine(Map<String, ILogicTreeNode> logicTreeNodeGroup, RuleTreeVO ruleTreeVO) {
-        this.logicTreeNodeGroup = logicTreeNodeGroup;
-        this.ruleTreeVO = ruleTreeVO;
+        Map<String, RuleTreeNodeVO> treeNodeMap = ruleTreeVO.getTreeNodeMap();
+
+        // 1. 节点编号
+        Map<String, Integer> nodeIndexMap = new HashMap<>();
+        List<RuleTreeNodeVO> treeNodes = new ArrayList<>(treeNodeMap.size());
+        for (Map.Entry<String, RuleTreeNodeVO> entry : treeNodeMap.entrySet()) {
+            nodeIndexMap.put(entry.getKey(), treeNodes.size());
+            treeNodes.add(entry.getValue());
+        }
+
+        // 2. 节点程序
+        int size = treeNodes.size();
+        this.logicTreeNodes = new ILogicTreeNode[size];
+        this.ruleValues = new String[size];
+        this.transitions = new int[size][];
+        for (int i = 0; i < size; i++) {
+            RuleTreeNodeVO ruleTreeNode = treeNodes.get(i);
+            ILogicTreeNode logicTreeNode = logicTreeNodeGroup.get(ruleTreeNode.getRuleKey());
+            if (null == logicTreeNode) {
+                throw new IllegalArgumentException("rule tree " + ruleTreeVO.getTreeId() + " node " + ruleTreeNode.getRuleKey() + " not found");
+            }
+            logicTreeNodes[i] = logicTreeNode;
+            ruleValues[i] = ruleTreeNode.getRuleValue();
+            transitions[i] = compileTransition(ruleTreeNode.getTreeNodeLineVOList(), nodeIndexMap);
+        }
+
+        Integer rootIndex = nodeIndexMap.get(ruleTreeVO.getTreeRootRuleNode());
+        this.rootIndex = null == rootIndex ? END : rootIndex;
     }
 
     @Override
     public DefaultTreeFactory.StrategyAwardVO process(String userId, Long strategyId, Integer awardId, Date endDateTime) {
         DefaultTreeFactory.StrategyAwardVO strategyAwardData = null;
 
-        // 获取基础信息
-        String nextNode = ruleTreeVO.getTreeRootRuleNode();
-        Map<String, RuleTreeNodeVO> treeNodeMap = ruleTreeVO.getTreeNodeMap();
-
         // 获取起始节点「根节点记录了第一个要执行的规则」
-        RuleTreeNodeVO ruleTreeNode = treeNodeMap.get(nextNode);
-        while (null != nextNode) {
-            // 获取决策节点
-            ILogicTreeNode logicTreeNode = logicTreeNodeGroup.get(ruleTreeNode.getRuleKey());
-            String ruleValue = ruleTreeNode.getRuleValue();
-
+        int nodeIndex = rootIndex;
+        while (END != nodeIndex) {
             // 决策节点计算
-            DefaultTreeFactory.TreeActionEntity logicEntity = logicTreeNode.logic(userId, strategyId, awardId, ruleValue, endDateTime);
-            RuleLogicCheckTypeVO ruleLogicCheckTypeVO = logicEntity.getRuleLogicCheckType();
+            DefaultTreeFactory.TreeActionEntity logicEntity = logicTreeNodes[nodeIndex].logic(userId, strategyId, awardId, ruleValues[nodeIndex], endDateTime);
             strategyAwardData = logicEntity.getStrategyAwardVO();
 
             // 获取下个节点
-            nextNode = nextNode(ruleLogicCheckTypeVO.getCode(), ruleTreeNode.getTreeNodeLineVOList());
-            ruleTreeNode = treeNodeMap.get(nextNode);
+            nodeIndex = transitions[nodeIndex][logicEntity.getRuleLogicCheckType().ordinal()];
         }
 
         // 返回最终结果
         return strategyAwardData;
     }
 
-    public String nextNode(String matterValue, List<RuleTreeNodeLineVO> treeNodeLineVOList) {
-        if (null == treeNodeLineVOList || treeNodeLineVOList.isEmpty()) return null;
-        for (RuleTreeNodeLineVO nodeLine : treeNodeLineVOList) {
-            if (decisionLogic(matterValue, nodeLine)) {
-                return nodeLine.getRuleNodeTo();
+    /**
+     * 连抽过滤；待处理的「节点, 数量」出栈执行，节点返回的每组动作按连线进入下一个节点，
+     * 没有下一个节点时该组数量的抽奖以本组结果结束。与逐次执行 process 的结果一致，但每个节点只执行一次
+     */
+    @Override
+    public List<DefaultTreeFactory.StrategyAwardVO> processBatch(String userId, Long strategyId, Integer awardId, Date endDateTime, int count) {
+        List<DefaultTreeFactory.StrategyAwardVO> strategyAwardDataList = new ArrayList<>(count);
+        if (END == rootIndex) {
+            strategyAwardDataList.addAll(Collections.nCopies(count, (DefaultTreeFactory.StrategyAwardVO) null));
+            return strategyAwardDataList;
+        }
+
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[]{rootIndex, count});
+        while (!pending.isEmpty()) {
+            int[] current = pending.pop();
+            int nodeIndex = current[0];
+            List<DefaultTreeFactory.TreeBatchActionEntity> logicEntities = logicTreeNodes[nodeIndex].logicBatch(userId, strategyId, awardId, ruleValues[nodeIndex], endDateTime, current[1]);
+            for (DefaultTreeFactory.TreeBatchActionEntity logicEntity : logicEntities) {
+                if (logicEntity.getCount() <= 0) continue;
+                int nextIndex = transitions[nodeIndex][logicEntity.getRuleLogicCheckType().ordinal()];
+                if (END == nextIndex) {
+                    strategyAwardDataList.addAll(Collections.nCopies(logicEntity.getCount(), logicEntity.getStrategyAwardVO()));
+                } else {
+                    pending.push(new int[]{nextIndex, logicEntity.getCount()});
+                }
+            }
+        }
+
+        return strategyAwardDataList;
+    }
+
+    /**
+     * 预先计算每种校验结果的下一个节点；按连线配置顺序取第一条满足的连线，与逐条匹配的结果一致
+     */
+    private static int[] compileTransition(List<RuleTreeNodeLineVO> treeNodeLineVOList, Map<String, Integer> nodeIndexMap) {
+        int[] transition = new int[CHECK_TYPES.length];
+        Arrays.fill(transition, END);
+        if (null == treeNodeLineVOList || treeNodeLineVOList.isEmpty()) return transition;
+
+        for (RuleLogicCheckTypeVO matterValue : CHECK_TYPES) {
+            for (RuleTreeNodeLineVO nodeLine : treeNodeLineVOList) {
+                if (!decisionLogic(matterValue, nodeLine)) continue;
+                Integer nodeIndex = nodeIndexMap.get(nodeLine.getRuleNodeTo());
+                transition[matterValue.ordinal()] = null == nodeIndex ? END : nodeIndex;
+                break;
             }
         }
-        return null;
+        return transition;
     }
 
-    public boolean decisionLogic(String matterValue, RuleTreeNodeLineVO nodeLine) {
+    /**
+     * 连线判断；GT、LT、GE、LE 按 RuleLogicCheckTypeVO 的声明顺序比较「ALLOW < TAKE_OVER」
+     */
+    public static boolean decisionLogic(RuleLogicCheckTypeVO matterValue, RuleTreeNodeLineVO nodeLine) {
+        RuleLogicCheckTypeVO ruleLimitValue = nodeLine.getRuleLimitValue();
+        if (null == nodeLine.getRuleLimitType() || null == ruleLimitValue) return false;
+        int compare = matterValue.compareTo(ruleLimitValue);
         switch (nodeLine.getRuleLimitType()) {
             case EQUAL:
-                return matterValue.equals(nodeLine.getRuleLimitValue().getCode());
-            // 以下规则暂时不需要实现
+                return 0 == compare;
             case GT:
+                return compare > 0;
             case LT:
+                return compare < 0;
             case GE:
+                return compare >= 0;
             case LE:
+                return compare <= 0;
+            // 以下规则暂时不需要实现
+            case ENUM:
             default:
                 return false;
         }
@@ -8,7 +8,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -48,4 +50,17 @@ public class RuleLockLogicTreeNode implements ILogicTreeNode {
                 .build();
     }
 
+    /**
+     * 连抽时用户当天的抽奖次数相同，只查询一次
+     */
+    @Override
+    public List<DefaultTreeFactory.TreeBatchActionEntity> logicBatch(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime, int count) {
+        DefaultTreeFactory.TreeActionEntity treeActionEntity = logic(userId, strategyId, awardId, ruleValue, endDateTime);
+        return Collections.singletonList(DefaultTreeFactory.TreeBatchActionEntity.builder()
+                .ruleLogicCheckType(treeActionEntity.getRuleLogicCheckType())
+                .strategyAwardVO(treeActionEntity.getStrategyAwardVO())
+                .count(count)
+                .build());
+    }
+
 }
@@ -10,7 +10,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author gzc
@@ -25,6 +27,23 @@ public class RuleLuckAwardLogicTreeNode implements ILogicTreeNode {
 
     @Override
     public DefaultTreeFactory.TreeActionEntity logic(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime) {
+        return logic(userId, strategyId, awardId, ruleValue, 1);
+    }
+
+    /**
+     * 连抽时兜底奖品相同，规则值只解析一次
+     */
+    @Override
+    public List<DefaultTreeFactory.TreeBatchActionEntity> logicBatch(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime, int count) {
+        DefaultTreeFactory.TreeActionEntity treeActionEntity = logic(userId, strategyId, awardId, ruleValue, count);
+        return Collections.singletonList(DefaultTreeFactory.TreeBatchActionEntity.builder()
+                .ruleLogicCheckType(treeActionEntity.getRuleLogicCheckType())
+                .strategyAwardVO(treeActionEntity.getStrategyAwardVO())
+                .count(count)
+                .build());
+    }
+
+    private DefaultTreeFactory.TreeActionEntity logic(String userId, Long strategyId, Integer awardId, String ruleValue, int count) {
         String[] split = ruleValue.split(Constants.COLON);
         if (split.length == 0) {
             log.error("规则过滤-兜底奖品，兜底奖品未配置告警 userId:{} strategyId:{} awardId:{}", userId, strategyId, awardId);
@@ -34,11 +53,11 @@ public class RuleLuckAwardLogicTreeNode implements ILogicTreeNode {
         Integer luckAwardId = Integer.valueOf(split[0]);
         String awardRuleValue = split.length > 1 ? split[1] : "";
 
-        // 奖品的库存扣减 写入延迟队列 延迟消费更新数据库记录
-        strategyRepository.awardStockConsumeSendQueue(StrategyAwardStockKeyVO.builder()
+        // 累加兜底奖品的已消耗计数，由定时任务同步数据库
+        strategyRepository.awardStockConsumeIncr(StrategyAwardStockKeyVO.builder()
                 .strategyId(strategyId)
                 .awardId(luckAwardId)
-                .build());
+                .build(), count);
 
         // 返回兜底奖品
         return DefaultTreeFactory.TreeActionEntity.builder()
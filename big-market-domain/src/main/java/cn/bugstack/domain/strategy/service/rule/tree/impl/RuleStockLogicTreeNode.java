@@ -1,8 +1,6 @@
 package cn.bugstack.domain.strategy.service.rule.tree.impl;
 
 import cn.bugstack.domain.strategy.model.valobj.RuleLogicCheckTypeVO;
-import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
-import cn.bugstack.domain.strategy.repository.IStrategyRepository;
 import cn.bugstack.domain.strategy.service.armory.IStrategyDispatch;
 import cn.bugstack.domain.strategy.service.rule.tree.ILogicTreeNode;
 import cn.bugstack.domain.strategy.service.rule.tree.factory.DefaultTreeFactory;
@@ -10,7 +8,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -23,21 +23,13 @@ public class RuleStockLogicTreeNode implements ILogicTreeNode {
 
     @Resource
     private IStrategyDispatch strategyDispatch;
-    @Resource
-    private IStrategyRepository strategyRepository;
 
     @Override
     public DefaultTreeFactory.TreeActionEntity logic(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime) {
-        // 扣减库存
-        Boolean status = strategyDispatch.subtractionAwardStock(strategyId, awardId, endDateTime);
+        // 扣减库存「扣减成功时同时累加已消耗计数，定时同步数据库记录」
+        Boolean status = strategyDispatch.subtractionAwardStock(userId, strategyId, awardId, endDateTime);
         // true；库存扣减成功，TAKE_OVER 规则节点接管，返回奖品ID，奖品规则配置
         if (status) {
-            // 奖品的库存扣减 写入延迟队列 延迟消费更新数据库记录
-            strategyRepository.awardStockConsumeSendQueue(StrategyAwardStockKeyVO.builder()
-                    .strategyId(strategyId)
-                    .awardId(awardId)
-                    .build());
-
             // 注意；根据数据库表中配置走不同的节点。目前数据库配置 ALLOW 是走到下一个节点。
             return DefaultTreeFactory.TreeActionEntity.builder()
                     .ruleLogicCheckType(RuleLogicCheckTypeVO.TAKE_OVER)
@@ -55,4 +47,32 @@ public class RuleStockLogicTreeNode implements ILogicTreeNode {
                 .build();
     }
 
+    /**
+     * 连抽扣减库存；同一奖品的 count 次扣减一次完成，扣减成功的数量接管，库存不足的数量放行
+     */
+    @Override
+    public List<DefaultTreeFactory.TreeBatchActionEntity> logicBatch(String userId, Long strategyId, Integer awardId, String ruleValue, Date endDateTime, int count) {
+        int granted = strategyDispatch.subtractionAwardStock(userId, strategyId, awardId, endDateTime, count);
+
+        List<DefaultTreeFactory.TreeBatchActionEntity> treeBatchActionEntities = new ArrayList<>(2);
+        if (granted > 0) {
+            treeBatchActionEntities.add(DefaultTreeFactory.TreeBatchActionEntity.builder()
+                    .ruleLogicCheckType(RuleLogicCheckTypeVO.TAKE_OVER)
+                    .strategyAwardVO(DefaultTreeFactory.StrategyAwardVO.builder()
+                            .awardId(awardId)
+                            .awardRuleValue(ruleValue)
+                            .build())
+                    .count(granted)
+                    .build());
+        }
+        if (granted < count) {
+            log.warn("规则过滤-库存扣减-告警，库存不足。userId:{} strategyId:{} awardId:{} count:{} granted:{}", userId, strategyId, awardId, count, granted);
+            treeBatchActionEntities.add(DefaultTreeFactory.TreeBatchActionEntity.builder()
+                    .ruleLogicCheckType(RuleLogicCheckTypeVO.ALLOW)
+                    .count(count - granted)
+                    .build());
+        }
+        return treeBatchActionEntities;
+    }
+
 }
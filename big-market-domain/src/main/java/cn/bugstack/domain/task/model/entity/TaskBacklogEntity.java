@@ -0,0 +1,23 @@
+package cn.bugstack.domain.task.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author gzc
+ * @description 任务积压实体对象
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskBacklogEntity {
+
+    /** 未完成任务数 */
+    private long count;
+    /** 最早未完成任务距今的秒数，无积压为 0 */
+    private long lagSeconds;
+
+}
@@ -1,7 +1,9 @@
 package cn.bugstack.domain.task.repository;
 
+import cn.bugstack.domain.task.model.entity.TaskBacklogEntity;
 import cn.bugstack.domain.task.model.entity.TaskEntity;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -11,12 +13,16 @@ import java.util.List;
  */
 public interface ITaskRepository {
 
-    List<TaskEntity> queryNoSendMessageTaskList();
+    List<TaskEntity> claimNoSendMessageTaskList(int limit, long claimDelaySeconds);
 
-    void sendMessage(TaskEntity taskEntity);
+    List<String> sendMessageBatch(List<TaskEntity> taskEntities, long confirmTimeoutMillis);
 
-    void updateTaskSendMessageCompleted(String userId, String messageId);
+    void updateTaskSendMessageCompletedBatch(List<String> messageIds);
 
-    void updateTaskSendMessageFail(String userId, String messageId);
+    void updateTaskSendMessageFailBatch(List<String> messageIds);
+
+    TaskBacklogEntity queryTaskBacklog();
+
+    int deleteExpiredMessageConsumeRecord(Date expireTime, int limit);
 
 }
@@ -1,7 +1,9 @@
 package cn.bugstack.domain.task.service;
 
+import cn.bugstack.domain.task.model.entity.TaskBacklogEntity;
 import cn.bugstack.domain.task.model.entity.TaskEntity;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -12,16 +14,39 @@ import java.util.List;
 public interface ITaskService {
 
     /**
-     * 查询发送MQ失败和超时1分钟未发送的MQ
+     * 认领当前分库待发送的任务；认领后状态为投递中，投递中的任务超过 claimDelaySeconds 未完成时可被重新认领
      *
-     * @return 未发送的任务消息列表10条
+     * @param limit             认领数量
+     * @param claimDelaySeconds 创建、失败、投递中的任务更新时间距今超过该秒数才可认领
+     * @return 认领的任务列表
      */
-    List<TaskEntity> queryNoSendMessageTaskList();
+    List<TaskEntity> claimNoSendMessageTaskList(int limit, long claimDelaySeconds);
 
-    void sendMessage(TaskEntity taskEntity);
+    /**
+     * 批量发送MQ消息；全部发出后统一等待 Broker 确认
+     *
+     * @param taskEntities         任务列表
+     * @param confirmTimeoutMillis 等待确认的超时时间
+     * @return 已确认的消息编号
+     */
+    List<String> sendMessageBatch(List<TaskEntity> taskEntities, long confirmTimeoutMillis);
+
+    void updateTaskSendMessageCompletedBatch(List<String> messageIds);
+
+    void updateTaskSendMessageFailBatch(List<String> messageIds);
 
-    void updateTaskSendMessageCompleted(String userId, String messageId);
+    /**
+     * 查询当前分库未完成的任务积压
+     */
+    TaskBacklogEntity queryTaskBacklog();
 
-    void updateTaskSendMessageFail(String userId, String messageId);
+    /**
+     * 删除当前分库过期的消息消费记录；消息重新投递的时间窗口之外的记录不再用于防重
+     *
+     * @param expireTime 删除创建时间早于该时间的记录
+     * @param limit      一次删除的数量
+     * @return 删除的数量
+     */
+    int deleteExpiredMessageConsumeRecord(Date expireTime, int limit);
 
 }
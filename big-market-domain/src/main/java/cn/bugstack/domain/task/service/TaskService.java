@@ -1,10 +1,12 @@
 package cn.bugstack.domain.task.service;
 
+import cn.bugstack.domain.task.model.entity.TaskBacklogEntity;
 import cn.bugstack.domain.task.model.entity.TaskEntity;
 import cn.bugstack.domain.task.repository.ITaskRepository;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -19,23 +21,33 @@ public class TaskService implements ITaskService {
     private ITaskRepository taskRepository;
 
     @Override
-    public List<TaskEntity> queryNoSendMessageTaskList() {
-        return taskRepository.queryNoSendMessageTaskList();
+    public List<TaskEntity> claimNoSendMessageTaskList(int limit, long claimDelaySeconds) {
+        return taskRepository.claimNoSendMessageTaskList(limit, claimDelaySeconds);
     }
 
     @Override
-    public void sendMessage(TaskEntity taskEntity) {
-        taskRepository.sendMessage(taskEntity);
+    public List<String> sendMessageBatch(List<TaskEntity> taskEntities, long confirmTimeoutMillis) {
+        return taskRepository.sendMessageBatch(taskEntities, confirmTimeoutMillis);
     }
 
     @Override
-    public void updateTaskSendMessageCompleted(String userId, String messageId) {
-        taskRepository.updateTaskSendMessageCompleted(userId, messageId);
+    public void updateTaskSendMessageCompletedBatch(List<String> messageIds) {
+        taskRepository.updateTaskSendMessageCompletedBatch(messageIds);
     }
 
     @Override
-    public void updateTaskSendMessageFail(String userId, String messageId) {
-        taskRepository.updateTaskSendMessageFail(userId, messageId);
+    public void updateTaskSendMessageFailBatch(List<String> messageIds) {
+        taskRepository.updateTaskSendMessageFailBatch(messageIds);
+    }
+
+    @Override
+    public TaskBacklogEntity queryTaskBacklog() {
+        return taskRepository.queryTaskBacklog();
+    }
+
+    @Override
+    public int deleteExpiredMessageConsumeRecord(Date expireTime, int limit) {
+        return taskRepository.deleteExpiredMessageConsumeRecord(expireTime, limit);
     }
 
 }
@@ -1,5 +1,6 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
 import cn.bugstack.domain.activity.event.ActivitySkuStockZeroMessageEvent;
 import cn.bugstack.domain.activity.model.aggregate.CreatePartakeOrderAggregate;
 import cn.bugstack.domain.activity.model.aggregate.CreateQuotaOrderAggregate;
@@ -11,15 +12,21 @@ import cn.bugstack.domain.activity.repository.IActivityRepository;
 import cn.bugstack.infrastructure.dao.*;
 import cn.bugstack.infrastructure.dao.po.*;
 import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournal;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournalEntry;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.middleware.db.router.DBContextHolder;
 import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.event.BaseEvent;
 import cn.bugstack.types.exception.AppException;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.TypeReference;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBlockingQueue;
-import org.redisson.api.RDelayedQueue;
 import org.redisson.api.RLock;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -27,8 +34,15 @@ import org.springframework.transaction.support.TransactionTemplate;
 import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,6 +54,9 @@ import java.util.concurrent.TimeUnit;
 @Repository
 public class ActivityRepository implements IActivityRepository {
 
+    // 充值入账后增加额度账本的尝试次数，仍失败时标记账本待重建
+    private static final int QUOTA_LEDGER_ADD_ATTEMPTS = 3;
+
     @Resource
     private IRedisService redisService;
     @Resource
@@ -68,6 +85,20 @@ public class ActivityRepository implements IActivityRepository {
     private ActivitySkuStockZeroMessageEvent activitySkuStockZeroMessageEvent;
     @Resource
     private EventPublisher eventPublisher;
+    @Resource
+    private TaskMessagePublisher taskMessagePublisher;
+    @Resource
+    private ITaskDao taskDao;
+    @Resource
+    private PartakeOrderJournal partakeOrderJournal;
+    @Resource
+    private IMessageConsumeRecordDao messageConsumeRecordDao;
+    @Resource
+    private ActivityAccountQuotaMessageEvent activityAccountQuotaMessageEvent;
+
+    // 消费记录保留天数；重建额度账本时只查询该时间内未消费的对账任务
+    @Value("${message.consume-record.retention-days:7}")
+    private int consumeRecordRetentionDays;
 
     @Override
     public ActivitySkuEntity queryActivitySku(Long sku) {
@@ -87,11 +118,16 @@ public class ActivityRepository implements IActivityRepository {
                 .build();
     }
 
+    @Override
+    public void invalidateActivityNearCache(Long activityId) {
+        redisService.invalidateNearValue(Constants.RedisKey.ACTIVITY_KEY + activityId);
+    }
+
     @Override
     public ActivityEntity queryRaffleActivityByActivityId(Long activityId) {
         // 优先从缓存获取
         String cacheKey = Constants.RedisKey.ACTIVITY_KEY + activityId;
-        ActivityEntity activityEntity = redisService.getValue(cacheKey);
+        ActivityEntity activityEntity = redisService.getNearValue(cacheKey);
         if (null != activityEntity)
             return activityEntity;
         // 从库中获取数据
@@ -105,7 +141,7 @@ public class ActivityRepository implements IActivityRepository {
                 .strategyId(raffleActivity.getStrategyId())
                 .state(ActivityStateVO.valueOf(raffleActivity.getState()))
                 .build();
-        redisService.setValue(cacheKey, activityEntity);
+        redisService.setNearValue(cacheKey, activityEntity);
         return activityEntity;
     }
 
@@ -204,6 +240,8 @@ public class ActivityRepository implements IActivityRepository {
                     throw new AppException(ResponseCode.INDEX_DUP.getCode(), e);
                 }
             });
+            // 6. 额度账本已加载时同步增加额度
+            addQuotaLedger(raffleActivityAccount, raffleActivityAccountMonth, raffleActivityAccountDay);
         } finally {
             dbRouter.clear();
             if (lock.isLocked() && lock.isHeldByCurrentThread()) {
@@ -261,22 +299,19 @@ public class ActivityRepository implements IActivityRepository {
     }
 
     @Override
-    public boolean subtractionActivitySkuStock(Long sku, String cacheKey, Date endDateTime) {
-        long surplus = redisService.decr(cacheKey);
-        if (surplus < 0) {
-            // 库存小于0，恢复为0个
-            redisService.setAtomicLong(cacheKey, 0);
-            return false;
-        }
-
-        // 1. 按照cacheKey decr 后的值，如 99、98、97 和 key 组成为库存锁的key进行使用。
-        // 2. 加锁为了兜底，如果后续有恢复库存，手动处理等【运营是人来操作，会有这种情况发放，系统要做防护】，也不会超卖。因为所有的可用库存key，都被加锁了。
+    public boolean subtractionActivitySkuStock(ActivitySkuStockKeyVO activitySkuStockKeyVO, String cacheKey, Date endDateTime) {
+        // 1. 按照cacheKey decr 后的值，如 99、98、97 作为槽位，在 cacheKey_lock 位图中加锁，一个库存一个 bit
+        // 2. 加锁为了兜底，如果后续有恢复库存，手动处理等【运营是人来操作，会有这种情况发放，系统要做防护】，也不会超卖。因为所有的可用库存槽位，都被加锁了。
         // 3. 设置加锁时间为活动到期 + 延迟1天
-        String lockKey = cacheKey + Constants.UNDERLINE + surplus;
+        // 4. 扣减、加锁、累加已消耗计数在一个 Lua 脚本内完成，一次网络往返
+        Long sku = activitySkuStockKeyVO.getSku();
+        String lockKey = cacheKey + Constants.UNDERLINE + "lock";
         long expireMillis = endDateTime.getTime() - System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
-        Boolean lock = redisService.setNx(lockKey, expireMillis, TimeUnit.MILLISECONDS);
-        if (!lock) {
+        long surplus = redisService.subtractionStock(cacheKey, lockKey, expireMillis, Constants.RedisKey.ACTIVITY_SKU_STOCK_CONSUMED_KEY + sku);
+        if (-1 == surplus) return false;
+        if (-2 == surplus) {
             log.warn("活动sku库存加锁失败 {}", lockKey);
+            return false;
         }
 
         if (surplus == 0){
@@ -284,40 +319,33 @@ public class ActivityRepository implements IActivityRepository {
             eventPublisher.publish(activitySkuStockZeroMessageEvent.topic(), activitySkuStockZeroMessageEvent.buildEventMessage(sku));
         }
 
-        return lock;
-    }
-
-    @Override
-    public void activitySkuStockConsumeSendQueue(ActivitySkuStockKeyVO activitySkuStockKeyVO) {
-        String cacheKey = Constants.RedisKey.ACTIVITY_SKU_COUNT_QUERY_KEY + Constants.UNDERLINE + activitySkuStockKeyVO.getSku();
-        RBlockingQueue<ActivitySkuStockKeyVO> blockingQueue = redisService.getBlockingQueue(cacheKey);
-        RDelayedQueue<ActivitySkuStockKeyVO> delayedQueue = redisService.getDelayedQueue(blockingQueue);
-        // 元素会先放入redisson的内部sorted-set（延迟结构）
-        // 延迟到了后自动转移到阻塞队列 消费端可以通过take获取
-        delayedQueue.offer(activitySkuStockKeyVO, 3, TimeUnit.SECONDS);
+        return true;
     }
 
     @Override
-    public ActivitySkuStockKeyVO takeQueueValue(Long sku) throws InterruptedException {
-        String cacheKey = Constants.RedisKey.ACTIVITY_SKU_COUNT_QUERY_KEY + Constants.UNDERLINE + sku;
-        RBlockingQueue<ActivitySkuStockKeyVO> destinationQueue = redisService.getBlockingQueue(cacheKey);
-        // take 会阻塞直到有数据进入延迟队列
-        return destinationQueue.poll();
-    }
-
-    @Override
-    public void clearQueueValue(Long sku) {
-        String cacheKey = Constants.RedisKey.ACTIVITY_SKU_COUNT_QUERY_KEY + Constants.UNDERLINE + sku;
-        RBlockingQueue<ActivitySkuStockKeyVO> blockedQueue = redisService.getBlockingQueue(cacheKey);
-        RDelayedQueue<ActivitySkuStockKeyVO> delayedQueue = redisService.getDelayedQueue(blockedQueue);
-
-        blockedQueue.clear();
-        delayedQueue.destroy();
+    public long syncActivitySkuStock(Long sku) {
+        String consumedKey = Constants.RedisKey.ACTIVITY_SKU_STOCK_CONSUMED_KEY + sku;
+        // 取走计数并清零，之后的扣减累加到下一次同步
+        long consumedCount = redisService.getAndSetAtomicLong(consumedKey, 0);
+        if (consumedCount <= 0) return 0;
+        try {
+            // Redis 已扣减的数量为准，数据库剩余库存不足时扣减到 0，不因条件不满足丢掉取走的计数
+            if (0 == raffleActivitySkuDao.updateActivitySkuStockBatch(sku, consumedCount)) {
+                log.error("同步活动sku库存，sku不存在，计数保留到下次同步 sku: {} consumedCount: {}", sku, consumedCount);
+                redisService.incrBy(consumedKey, consumedCount);
+                return 0;
+            }
+            return consumedCount;
+        } catch (Exception e) {
+            // 更新失败把计数加回，下次同步一起更新
+            redisService.incrBy(consumedKey, consumedCount);
+            throw e;
+        }
     }
 
     @Override
-    public void updateActivitySkuStock(Long sku) {
-        raffleActivitySkuDao.updateActivitySkuStock(sku);
+    public void clearActivitySkuStockConsumed(Long sku) {
+        redisService.remove(Constants.RedisKey.ACTIVITY_SKU_STOCK_CONSUMED_KEY + sku);
     }
 
     @Override
@@ -336,7 +364,11 @@ public class ActivityRepository implements IActivityRepository {
         UserRaffleOrder userRaffleOrderReq = new UserRaffleOrder();
         userRaffleOrderReq.setUserId(partakeRaffleActivityEntity.getUserId());
         userRaffleOrderReq.setActivityId(partakeRaffleActivityEntity.getActivityId());
-        UserRaffleOrder userRaffleOrderRes = userRaffleOrderDao.queryNoUsedRaffleOrder(userRaffleOrderReq);
+        // 写后落库模式下优先读取尚未落库的抽奖单
+        UserRaffleOrder userRaffleOrderRes = partakeOrderJournal.queryReservedOrder(partakeRaffleActivityEntity.getUserId(), partakeRaffleActivityEntity.getActivityId());
+        if (null == userRaffleOrderRes) {
+            userRaffleOrderRes = userRaffleOrderDao.queryNoUsedRaffleOrder(userRaffleOrderReq);
+        }
         if (null == userRaffleOrderRes) return null;
         // 封装结果
         UserRaffleOrderEntity userRaffleOrderEntity = new UserRaffleOrderEntity();
@@ -411,6 +443,10 @@ public class ActivityRepository implements IActivityRepository {
 
     @Override
     public void saveCreatePartakeOrderAggregate(CreatePartakeOrderAggregate createPartakeOrderAggregate) {
+        if (createPartakeOrderAggregate.isQuotaLedger()) {
+            saveQuotaLedgerPartakeOrder(createPartakeOrderAggregate);
+            return;
+        }
         try {
             String userId = createPartakeOrderAggregate.getUserId();
             Long activityId = createPartakeOrderAggregate.getActivityId();
@@ -529,6 +565,10 @@ public class ActivityRepository implements IActivityRepository {
 
     @Override
     public void saveCreatePartakeOrderAggregateTen(CreatePartakeOrderAggregate createPartakeOrderAggregate) {
+        if (createPartakeOrderAggregate.isQuotaLedger()) {
+            saveQuotaLedgerPartakeOrder(createPartakeOrderAggregate);
+            return;
+        }
         try {
             String userId = createPartakeOrderAggregate.getUserId();
             Long activityId = createPartakeOrderAggregate.getActivityId();
@@ -536,31 +576,33 @@ public class ActivityRepository implements IActivityRepository {
             ActivityAccountMonthEntity activityAccountMonthEntity = createPartakeOrderAggregate.getActivityAccountMonthEntity();
             ActivityAccountDayEntity activityAccountDayEntity = createPartakeOrderAggregate.getActivityAccountDayEntity();
             UserTenRaffleOrderEntity userTenRaffleOrderEntity = createPartakeOrderAggregate.getUserTenRaffleOrderEntity();
+            int count = userTenRaffleOrderEntity.getOrderIds().size();
 
             // 统一切换路由，以下事务内的所有操作，都走一个路由
             dbRouter.doRouter(userId);
             transactionTemplate.execute(status -> {
                 try {
                     // 1. 更新总账户
-                    int totalCount = raffleActivityAccountDao.updateActivityAccountSubtractionQuotaTen(
+                    int totalCount = raffleActivityAccountDao.updateActivityAccountSubtractionQuotaBatch(
                             RaffleActivityAccount.builder()
                                     .userId(userId)
                                     .activityId(activityId)
-                                    .build());
+                                    .build(), count);
                     if (1 != totalCount) {
                         status.setRollbackOnly();
-                        log.warn("写入创建十次参与活动记录，更新总账户额度不足，异常 userId: {} activityId: {}", userId, activityId);
-                        throw new AppException(ResponseCode.ACCOUNT_QUOTA_10_ERROR.getCode(), ResponseCode.ACCOUNT_QUOTA_10_ERROR.getInfo());
+                        log.warn("写入创建批量参与活动记录，更新总账户额度不足，异常 userId: {} activityId: {} count: {}", userId, activityId, count);
+                        ResponseCode responseCode = 10 == count ? ResponseCode.ACCOUNT_QUOTA_10_ERROR : ResponseCode.ACCOUNT_QUOTA_BATCH_ERROR;
+                        throw new AppException(responseCode.getCode(), responseCode.getInfo());
                     }
 
                     // 2. 创建或更新月账户，true - 存在则更新，false - 不存在则插入
                     if (createPartakeOrderAggregate.isExistAccountMonth()) {
-                        int updateMonthCount = raffleActivityAccountMonthDao.updateActivityAccountMonthSubtractionQuotaTen(
+                        int updateMonthCount = raffleActivityAccountMonthDao.updateActivityAccountMonthSubtractionQuotaBatch(
                                 RaffleActivityAccountMonth.builder()
                                         .userId(userId)
                                         .activityId(activityId)
                                         .month(activityAccountMonthEntity.getMonth())
-                                        .build());
+                                        .build(), count);
                         if (1 != updateMonthCount) {
                             // 未更新成功则回滚
                             status.setRollbackOnly();
@@ -568,58 +610,58 @@ public class ActivityRepository implements IActivityRepository {
                             throw new AppException(ResponseCode.ACCOUNT_MONTH_QUOTA_ERROR.getCode(), ResponseCode.ACCOUNT_MONTH_QUOTA_ERROR.getInfo());
                         }
                         // 更新总账户中月镜像库存
-                        raffleActivityAccountDao.updateActivityAccountMonthSubtractionQuotaTen(
+                        raffleActivityAccountDao.updateActivityAccountMonthSubtractionQuotaBatch(
                                 RaffleActivityAccount.builder()
                                         .userId(userId)
                                         .activityId(activityId)
-                                        .build());
+                                        .build(), count);
                     } else {
                         raffleActivityAccountMonthDao.insertActivityAccountMonth(RaffleActivityAccountMonth.builder()
                                 .userId(activityAccountMonthEntity.getUserId())
                                 .activityId(activityAccountMonthEntity.getActivityId())
                                 .month(activityAccountMonthEntity.getMonth())
                                 .monthCount(activityAccountMonthEntity.getMonthCount())
-                                .monthCountSurplus(activityAccountMonthEntity.getMonthCountSurplus() - 10)
+                                .monthCountSurplus(activityAccountMonthEntity.getMonthCountSurplus() - count)
                                 .build());
                         // 新创建月账户，则更新总账表中月镜像额度
-                        raffleActivityAccountDao.updateActivityAccountMonthSubtractionQuotaTen(RaffleActivityAccount.builder()
+                        raffleActivityAccountDao.updateActivityAccountMonthSubtractionQuotaBatch(RaffleActivityAccount.builder()
                                 .userId(userId)
                                 .activityId(activityId)
-                                .build());
+                                .build(), count);
                     }
 
 
                     // 3. 创建或更新日账户，true - 存在则更新，false - 不存在则插入
                     if (createPartakeOrderAggregate.isExistAccountDay()) {
-                        int updateDayCount = raffleActivityAccountDayDao.updateActivityAccountDaySubtractionQuotaTen(RaffleActivityAccountDay.builder()
+                        int updateDayCount = raffleActivityAccountDayDao.updateActivityAccountDaySubtractionQuotaBatch(RaffleActivityAccountDay.builder()
                                 .userId(userId)
                                 .activityId(activityId)
                                 .day(activityAccountDayEntity.getDay())
-                                .build());
+                                .build(), count);
                         if (1 != updateDayCount) {
                             status.setRollbackOnly();
                             log.warn("写入创建参与活动记录，更新日账户额度不足，异常 userId: {} activityId: {} day: {}", userId, activityId, activityAccountDayEntity.getDay());
                             throw new AppException(ResponseCode.ACCOUNT_DAY_QUOTA_ERROR.getCode(), ResponseCode.ACCOUNT_DAY_QUOTA_ERROR.getInfo());
                         }
                         // 更新总账户中日镜像库存
-                        raffleActivityAccountDao.updateActivityAccountDaySubtractionQuotaTen(
+                        raffleActivityAccountDao.updateActivityAccountDaySubtractionQuotaBatch(
                                 RaffleActivityAccount.builder()
                                         .userId(userId)
                                         .activityId(activityId)
-                                        .build());
+                                        .build(), count);
                     } else {
                         raffleActivityAccountDayDao.insertActivityAccountDay(RaffleActivityAccountDay.builder()
                                 .userId(activityAccountDayEntity.getUserId())
                                 .activityId(activityAccountDayEntity.getActivityId())
                                 .day(activityAccountDayEntity.getDay())
                                 .dayCount(activityAccountDayEntity.getDayCount())
-                                .dayCountSurplus(activityAccountDayEntity.getDayCountSurplus() - 10)
+                                .dayCountSurplus(activityAccountDayEntity.getDayCountSurplus() - count)
                                 .build());
                         // 新创建日账户，则更新总账表中日镜像额度
-                        raffleActivityAccountDao.updateActivityAccountDaySubtractionQuotaTen(RaffleActivityAccount.builder()
+                        raffleActivityAccountDao.updateActivityAccountDaySubtractionQuotaBatch(RaffleActivityAccount.builder()
                                 .userId(userId)
                                 .activityId(activityId)
-                                .build());
+                                .build(), count);
                     }
 
                     // 4. 写入参与活动订单
@@ -644,6 +686,395 @@ public class ActivityRepository implements IActivityRepository {
         }
     }
 
+    /**
+     * 额度账本模式保存抽奖单；额度已在 Redis 账本扣减，只写入抽奖单和对账任务。
+     * 开启写后落库时写入抽奖单日志后直接返回，由日志分区批量落库。
+     * 只有确定未写入「事务回调内异常，事务已回滚」时才归还账本额度；日志写入超时、提交阶段异常等结果未知时不归还，避免重复归还
+     */
+    private void saveQuotaLedgerPartakeOrder(CreatePartakeOrderAggregate createPartakeOrderAggregate) {
+        String userId = createPartakeOrderAggregate.getUserId();
+        Long activityId = createPartakeOrderAggregate.getActivityId();
+        UserRaffleOrderEntity userRaffleOrderEntity = createPartakeOrderAggregate.getUserRaffleOrderEntity();
+        UserTenRaffleOrderEntity userTenRaffleOrderEntity = createPartakeOrderAggregate.getUserTenRaffleOrderEntity();
+        TaskEntity taskEntity = createPartakeOrderAggregate.getTaskEntity();
+        ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage activityAccountQuotaMessage = taskEntity.getMessage().getData();
+
+        List<UserRaffleOrder> userRaffleOrders = new ArrayList<>();
+        if (null != userRaffleOrderEntity) {
+            userRaffleOrders.add(UserRaffleOrder.builder()
+                    .userId(userRaffleOrderEntity.getUserId())
+                    .activityId(userRaffleOrderEntity.getActivityId())
+                    .activityName(userRaffleOrderEntity.getActivityName())
+                    .strategyId(userRaffleOrderEntity.getStrategyId())
+                    .orderId(userRaffleOrderEntity.getOrderId())
+                    .orderTime(userRaffleOrderEntity.getOrderTime())
+                    .orderState(userRaffleOrderEntity.getOrderState().getCode())
+                    .build());
+        } else {
+            for (String orderId : userTenRaffleOrderEntity.getOrderIds()) {
+                userRaffleOrders.add(UserRaffleOrder.builder()
+                        .userId(userTenRaffleOrderEntity.getUserId())
+                        .activityId(userTenRaffleOrderEntity.getActivityId())
+                        .activityName(userTenRaffleOrderEntity.getActivityName())
+                        .strategyId(userTenRaffleOrderEntity.getStrategyId())
+                        .orderId(orderId)
+                        .orderTime(userTenRaffleOrderEntity.getOrderTime())
+                        .orderState(userTenRaffleOrderEntity.getOrderState().getCode())
+                        .build());
+            }
+        }
+
+        Task task = new Task();
+        task.setUserId(taskEntity.getUserId());
+        task.setTopic(taskEntity.getTopic());
+        task.setMessageId(taskEntity.getMessageId());
+        task.setMessage(JSON.toJSONString(taskEntity.getMessage()));
+        task.setState(taskEntity.getState().getCode());
+
+        // 事务回调内抛出异常时事务回滚，抽奖单和对账任务确定未写入
+        boolean[] rolledBack = new boolean[1];
+        try {
+            if (partakeOrderJournal.isEnabled()) {
+                partakeOrderJournal.append(PartakeOrderJournalEntry.builder()
+                        .userId(userId)
+                        .activityId(activityId)
+                        .userRaffleOrders(userRaffleOrders)
+                        .task(task)
+                        .build());
+                return;
+            }
+
+            dbRouter.doRouter(userId);
+            transactionTemplate.execute(status -> {
+                try {
+                    // 1. 写入参与活动订单
+                    if (null != userRaffleOrderEntity) {
+                        userRaffleOrderDao.insert(userRaffleOrders.get(0));
+                    } else {
+                        userRaffleOrderDao.insertTen(UserRaffleOrder.builder()
+                                .userId(userTenRaffleOrderEntity.getUserId())
+                                .activityId(userTenRaffleOrderEntity.getActivityId())
+                                .activityName(userTenRaffleOrderEntity.getActivityName())
+                                .strategyId(userTenRaffleOrderEntity.getStrategyId())
+                                .orderTime(userTenRaffleOrderEntity.getOrderTime())
+                                .orderState(userTenRaffleOrderEntity.getOrderState().getCode())
+                                .build(), userTenRaffleOrderEntity.getOrderIds());
+                    }
+                    // 2. 写入任务，事务提交后发送消息【如果失败还有任务补偿】
+                    taskDao.insert(task);
+                    taskMessagePublisher.publishAfterCommit(task);
+                    return 1;
+                } catch (DuplicateKeyException e) {
+                    status.setRollbackOnly();
+                    rolledBack[0] = true;
+                    log.error("写入创建参与活动记录，唯一索引冲突 userId: {} activityId: {}", userId, activityId, e);
+                    throw new AppException(ResponseCode.INDEX_DUP.getCode(), e);
+                } catch (RuntimeException e) {
+                    rolledBack[0] = true;
+                    throw e;
+                }
+            });
+        } catch (Exception e) {
+            if (rolledBack[0]) {
+                // 抽奖单未写入，归还账本额度
+                long count = activityAccountQuotaMessage.getCount();
+                redisService.addQuotaLedger(quotaLedgerKey(userId, activityId), count, activityAccountQuotaMessage.getMonth(), count, activityAccountQuotaMessage.getDay(), count);
+            } else {
+                // 结果未知，可能已写入；不归还额度，标记账本待重建，下次使用时按数据库额度扣除未对账的任务重建
+                log.error("额度账本模式保存抽奖单结果未知，不归还额度 userId: {} activityId: {} messageId: {}", userId, activityId, task.getMessageId(), e);
+                markQuotaLedgerDirty(userId, activityId);
+            }
+            throw e;
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    @Override
+    public long subtractionActivityAccountQuota(String userId, Long activityId, String month, String day, int count, Date endDateTime) {
+        String ledgerKey = quotaLedgerKey(userId, activityId);
+        long surplus = redisService.subtractionQuotaLedger(ledgerKey, month, day, count);
+        if (-4 != surplus) return surplus;
+
+        // 账本不存在或待重建；加账户锁重建，与充值入账「数据库入账 + 增加账本」互斥，避免重建时读到的充值再被增加一次
+        RLock lock = redisService.getLock(Constants.RedisKey.ACTIVITY_ACCOUNT_LOCK + userId + Constants.UNDERLINE + activityId);
+        try {
+            lock.lock(3, TimeUnit.SECONDS);
+            // 等锁期间其他请求已重建
+            surplus = redisService.subtractionQuotaLedger(ledgerKey, month, day, count);
+            if (-4 != surplus) return surplus;
+            if (!loadQuotaLedger(userId, activityId, month, day, endDateTime)) return -1;
+            return redisService.subtractionQuotaLedger(ledgerKey, month, day, count);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 从数据库重建额度账本；数据库账户只由对账消息扣减，落后于账本，需扣除尚未对账的扣减：
+     * 1. 写后日志中尚未落库的对账任务
+     * 2. 已落库但尚未被消费的对账任务「发件箱待投递、MQ 在途」
+     * 先读日志再读数据库，日志落库后才移除，两处重复的任务按消息ID去重；任务与账户在同一事务内读取，对账消费的提交要么都可见要么都不可见
+     *
+     * @return false 数据库账户不存在
+     */
+    private boolean loadQuotaLedger(String userId, Long activityId, String month, String day, Date endDateTime) {
+        String topic = activityAccountQuotaMessageEvent.topic();
+        Map<String, Task> pendingTasks = new LinkedHashMap<>();
+        for (Task task : partakeOrderJournal.queryReservedTasks(userId, activityId)) {
+            pendingTasks.put(task.getMessageId(), task);
+        }
+
+        Date createTime = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(consumeRecordRetentionDays));
+        RaffleActivityAccount raffleActivityAccount;
+        RaffleActivityAccountMonth raffleActivityAccountMonth;
+        RaffleActivityAccountDay raffleActivityAccountDay;
+        try {
+            dbRouter.doRouter(userId);
+            Object[] accounts = transactionTemplate.execute(status -> {
+                for (Task task : taskDao.queryUnconsumedTaskList(userId, topic, createTime)) {
+                    pendingTasks.putIfAbsent(task.getMessageId(), task);
+                }
+                return new Object[]{
+                        raffleActivityAccountDao.queryActivityAccountByUserId(RaffleActivityAccount.builder().userId(userId).activityId(activityId).build()),
+                        raffleActivityAccountMonthDao.queryActivityAccountMonthByUserId(RaffleActivityAccountMonth.builder().userId(userId).activityId(activityId).month(month).build()),
+                        raffleActivityAccountDayDao.queryActivityAccountDayByUserId(RaffleActivityAccountDay.builder().userId(userId).activityId(activityId).day(day).build())
+                };
+            });
+            raffleActivityAccount = (RaffleActivityAccount) accounts[0];
+            raffleActivityAccountMonth = (RaffleActivityAccountMonth) accounts[1];
+            raffleActivityAccountDay = (RaffleActivityAccountDay) accounts[2];
+        } finally {
+            dbRouter.clear();
+        }
+        if (null == raffleActivityAccount) return false;
+
+        // 月、日账户不存在时以总账户中的镜像额度作为剩余额度；未对账的扣减按对账时的口径扣除「镜像额度扣除全部，月、日额度只扣除当月、当日」
+        long totalSurplus = raffleActivityAccount.getTotalCountSurplus();
+        long monthMirror = raffleActivityAccount.getMonthCountSurplus();
+        long dayMirror = raffleActivityAccount.getDayCountSurplus();
+        long monthSurplus = null == raffleActivityAccountMonth ? monthMirror : raffleActivityAccountMonth.getMonthCountSurplus();
+        long daySurplus = null == raffleActivityAccountDay ? dayMirror : raffleActivityAccountDay.getDayCountSurplus();
+        for (Task task : pendingTasks.values()) {
+            ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage message = JSON.parseObject(task.getMessage(),
+                    new TypeReference<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>>() {
+                    }).getData();
+            if (!activityId.equals(message.getActivityId())) continue;
+            int count = message.getCount();
+            totalSurplus -= count;
+            monthMirror -= count;
+            dayMirror -= count;
+            if (month.equals(message.getMonth())) monthSurplus -= count;
+            if (day.equals(message.getDay())) daySurplus -= count;
+        }
+
+        // 账本保留到活动结束后一天
+        long expireAtMillis = endDateTime.getTime() + TimeUnit.DAYS.toMillis(1);
+        redisService.initQuotaLedger(quotaLedgerKey(userId, activityId), totalSurplus,
+                month, monthSurplus, monthMirror,
+                day, daySurplus, dayMirror, expireAtMillis);
+        return true;
+    }
+
+    @Override
+    public void reconcileActivityAccountQuota(List<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> eventMessages) {
+        // 1. 按用户分库分组，同一批内重复投递的消息只保留一条
+        Map<String, Map<String, ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> dbMessages = new LinkedHashMap<>();
+        for (BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> eventMessage : eventMessages) {
+            ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage message = eventMessage.getData();
+            dbMessages.computeIfAbsent(dbKey(message.getUserId()), key -> new LinkedHashMap<>()).putIfAbsent(eventMessage.getId(), message);
+        }
+
+        // 2. 每个分库一个事务
+        for (Map<String, ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> messages : dbMessages.values()) {
+            reconcileActivityAccountQuota(messages);
+        }
+    }
+
+    /**
+     * 同一分库的账户额度对账；按消息ID防重，同一账户的扣减按总、月、日合并后各更新一次
+     *
+     * @param messages 消息ID -> 账户额度对账消息
+     */
+    private void reconcileActivityAccountQuota(Map<String, ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> messages) {
+        String topic = activityAccountQuotaMessageEvent.topic();
+        try {
+            dbRouter.doRouter(messages.values().iterator().next().getUserId());
+            transactionTemplate.execute(status -> {
+                // 1. 过滤已消费的消息
+                Set<String> consumedMessageIds = new HashSet<>(messageConsumeRecordDao.queryConsumedMessageIds(topic, new ArrayList<>(messages.keySet())));
+                List<MessageConsumeRecord> messageConsumeRecords = new ArrayList<>();
+                Map<String, QuotaReconcile> quotaReconciles = new LinkedHashMap<>();
+                for (Map.Entry<String, ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage> entry : messages.entrySet()) {
+                    ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage message = entry.getValue();
+                    if (consumedMessageIds.contains(entry.getKey())) {
+                        log.warn("账户额度对账，消息重复 userId: {} activityId: {} messageId: {}", message.getUserId(), message.getActivityId(), entry.getKey());
+                        continue;
+                    }
+                    messageConsumeRecords.add(MessageConsumeRecord.builder()
+                            .userId(message.getUserId())
+                            .topic(topic)
+                            .messageId(entry.getKey())
+                            .build());
+                    quotaReconciles.computeIfAbsent(message.getUserId() + Constants.UNDERLINE + message.getActivityId(),
+                            key -> new QuotaReconcile(message.getUserId(), message.getActivityId())).add(message);
+                }
+                if (messageConsumeRecords.isEmpty()) return 0;
+
+                // 2. 先写消费记录；并发消费同一条消息时唯一索引冲突，整个事务回滚后由消息重试
+                messageConsumeRecordDao.insertBatch(messageConsumeRecords);
+
+                // 3. 按账户合并扣减
+                for (QuotaReconcile quotaReconcile : quotaReconciles.values()) {
+                    reconcileActivityAccountQuota(quotaReconcile);
+                }
+                return messageConsumeRecords.size();
+            });
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    private void reconcileActivityAccountQuota(QuotaReconcile quotaReconcile) {
+        String userId = quotaReconcile.userId;
+        Long activityId = quotaReconcile.activityId;
+        RaffleActivityAccount raffleActivityAccountReq = RaffleActivityAccount.builder()
+                .userId(userId)
+                .activityId(activityId)
+                .build();
+
+        // 额度已在账本中校验，更新不成功说明数据库与账本存在偏差，只记录不回滚
+        // 1. 更新总账户
+        int totalCount = raffleActivityAccountDao.updateActivityAccountSubtractionQuotaBatch(raffleActivityAccountReq, quotaReconcile.totalCount);
+        if (1 != totalCount) {
+            log.error("账户额度对账，更新总账户额度不足 userId: {} activityId: {}", userId, activityId);
+        }
+
+        // 2. 创建或更新月账户，并更新总账户中月镜像额度；跨月的一批消息按月份分别更新
+        for (Map.Entry<String, Integer> entry : quotaReconcile.monthCounts.entrySet()) {
+            String month = entry.getKey();
+            int count = entry.getValue();
+            RaffleActivityAccountMonth raffleActivityAccountMonthReq = RaffleActivityAccountMonth.builder()
+                    .userId(userId)
+                    .activityId(activityId)
+                    .month(month)
+                    .build();
+            RaffleActivityAccountMonth raffleActivityAccountMonth = raffleActivityAccountMonthDao.queryActivityAccountMonthByUserId(raffleActivityAccountMonthReq);
+            if (null != raffleActivityAccountMonth) {
+                int updateMonthCount = raffleActivityAccountMonthDao.updateActivityAccountMonthSubtractionQuotaBatch(raffleActivityAccountMonthReq, count);
+                if (1 != updateMonthCount) {
+                    log.error("账户额度对账，更新月账户额度不足 userId: {} activityId: {} month: {}", userId, activityId, month);
+                }
+            } else {
+                RaffleActivityAccount raffleActivityAccount = raffleActivityAccountDao.queryActivityAccountByUserId(raffleActivityAccountReq);
+                raffleActivityAccountMonthDao.insertActivityAccountMonth(RaffleActivityAccountMonth.builder()
+                        .userId(userId)
+                        .activityId(activityId)
+                        .month(month)
+                        .monthCount(raffleActivityAccount.getMonthCount())
+                        .monthCountSurplus(raffleActivityAccount.getMonthCountSurplus() - count)
+                        .build());
+            }
+            raffleActivityAccountDao.updateActivityAccountMonthSubtractionQuotaBatch(raffleActivityAccountReq, count);
+        }
+
+        // 3. 创建或更新日账户，并更新总账户中日镜像额度
+        for (Map.Entry<String, Integer> entry : quotaReconcile.dayCounts.entrySet()) {
+            String day = entry.getKey();
+            int count = entry.getValue();
+            RaffleActivityAccountDay raffleActivityAccountDayReq = RaffleActivityAccountDay.builder()
+                    .userId(userId)
+                    .activityId(activityId)
+                    .day(day)
+                    .build();
+            RaffleActivityAccountDay raffleActivityAccountDay = raffleActivityAccountDayDao.queryActivityAccountDayByUserId(raffleActivityAccountDayReq);
+            if (null != raffleActivityAccountDay) {
+                int updateDayCount = raffleActivityAccountDayDao.updateActivityAccountDaySubtractionQuotaBatch(raffleActivityAccountDayReq, count);
+                if (1 != updateDayCount) {
+                    log.error("账户额度对账，更新日账户额度不足 userId: {} activityId: {} day: {}", userId, activityId, day);
+                }
+            } else {
+                RaffleActivityAccount raffleActivityAccount = raffleActivityAccountDao.queryActivityAccountByUserId(raffleActivityAccountReq);
+                raffleActivityAccountDayDao.insertActivityAccountDay(RaffleActivityAccountDay.builder()
+                        .userId(userId)
+                        .activityId(activityId)
+                        .day(day)
+                        .dayCount(raffleActivityAccount.getDayCount())
+                        .dayCountSurplus(raffleActivityAccount.getDayCountSurplus() - count)
+                        .build());
+            }
+            raffleActivityAccountDao.updateActivityAccountDaySubtractionQuotaBatch(raffleActivityAccountReq, count);
+        }
+    }
+
+    private String dbKey(String userId) {
+        try {
+            dbRouter.doRouter(userId);
+            return DBContextHolder.getDBKey();
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    /**
+     * 同一账户一批对账消息合并后的扣减数量
+     */
+    private static class QuotaReconcile {
+        private final String userId;
+        private final Long activityId;
+        private int totalCount;
+        // 月份、日期 -> 扣减数量；按消息顺序保留
+        private final Map<String, Integer> monthCounts = new LinkedHashMap<>();
+        private final Map<String, Integer> dayCounts = new LinkedHashMap<>();
+
+        private QuotaReconcile(String userId, Long activityId) {
+            this.userId = userId;
+            this.activityId = activityId;
+        }
+
+        private void add(ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage message) {
+            int count = message.getCount();
+            totalCount += count;
+            monthCounts.merge(message.getMonth(), count, Integer::sum);
+            dayCounts.merge(message.getDay(), count, Integer::sum);
+        }
+    }
+
+    /**
+     * 充值入账后增加额度账本；账本未加载时不处理，下次使用时从数据库初始化。调用方持有账户锁。
+     * 多次增加失败时不移除账本「移除后重建会与未对账的扣减冲突」，标记待重建，由下次扣减加锁后重建
+     */
+    private void addQuotaLedger(RaffleActivityAccount raffleActivityAccount, RaffleActivityAccountMonth raffleActivityAccountMonth, RaffleActivityAccountDay raffleActivityAccountDay) {
+        String userId = raffleActivityAccount.getUserId();
+        Long activityId = raffleActivityAccount.getActivityId();
+        for (int attempt = 1; attempt <= QUOTA_LEDGER_ADD_ATTEMPTS; attempt++) {
+            try {
+                redisService.addQuotaLedger(quotaLedgerKey(userId, activityId),
+                        raffleActivityAccount.getTotalCount(),
+                        raffleActivityAccountMonth.getMonth(), raffleActivityAccountMonth.getMonthCount(),
+                        raffleActivityAccountDay.getDay(), raffleActivityAccountDay.getDayCount());
+                return;
+            } catch (Exception e) {
+                log.warn("额度账本增加失败 userId: {} activityId: {} attempt: {}", userId, activityId, attempt, e);
+            }
+        }
+        markQuotaLedgerDirty(userId, activityId);
+    }
+
+    private void markQuotaLedgerDirty(String userId, Long activityId) {
+        try {
+            redisService.markQuotaLedgerDirty(quotaLedgerKey(userId, activityId));
+        } catch (Exception e) {
+            log.error("额度账本标记待重建失败 userId: {} activityId: {}", userId, activityId, e);
+        }
+    }
+
+    private String quotaLedgerKey(String userId, Long activityId) {
+        return Constants.RedisKey.ACTIVITY_ACCOUNT_QUOTA_LEDGER_KEY + activityId + Constants.UNDERLINE + userId;
+    }
+
     @Override
     public List<ActivitySkuEntity> queryActivitySkuListByActivityId(Long activityId) {
         List<RaffleActivitySku> raffleActivitySkus = raffleActivitySkuDao.queryActivitySkuListByActivityId(activityId);
@@ -784,6 +1215,7 @@ public class ActivityRepository implements IActivityRepository {
     @Override
     public void updateOrder(DeliveryOrderEntity deliveryOrderEntity) {
         RLock lock = redisService.getLock(Constants.RedisKey.ACTIVITY_ACCOUNT_UPDATE_LOCK + deliveryOrderEntity.getUserId() + Constants.UNDERLINE + deliveryOrderEntity.getOutBusinessNo());
+        RLock accountLock = null;
         try {
             // 查询订单
             RaffleActivityOrder raffleActivityOrderReq = new RaffleActivityOrder();
@@ -796,9 +1228,201 @@ public class ActivityRepository implements IActivityRepository {
             }
 
             lock.lock(3, TimeUnit.SECONDS);
+            // 账户锁；数据库入账与增加账本之间不允许重建账本
+            accountLock = redisService.getLock(Constants.RedisKey.ACTIVITY_ACCOUNT_LOCK + raffleActivityOrderRes.getUserId() + Constants.UNDERLINE + raffleActivityOrderRes.getActivityId());
+            accountLock.lock(3, TimeUnit.SECONDS);
+
+            OrderDelivery orderDelivery = new OrderDelivery(raffleActivityOrderRes);
 
+            dbRouter.doRouter(deliveryOrderEntity.getUserId());
+            // 编程式事务
+            Integer updated = transactionTemplate.execute(status -> {
+                try {
+                    // 1. 更新订单
+                    int updateCount = raffleActivityOrderDao.updateOrderCompleted(raffleActivityOrderReq);
+                    if (1 != updateCount) {
+                        status.setRollbackOnly();
+                        return 0;
+                    }
+                    // 2. 更新账户 - 总、月、日
+                    addAccountQuota(orderDelivery);
+                    return 1;
+                } catch (DuplicateKeyException e) {
+                    status.setRollbackOnly();
+                    log.error("更新订单记录，完成态，唯一索引冲突 userId: {} outBusinessNo: {}", deliveryOrderEntity.getUserId(), deliveryOrderEntity.getOutBusinessNo(), e);
+                    throw new AppException(ResponseCode.INDEX_DUP.getCode(), e);
+                }
+            });
+            // 6. 额度账本已加载时同步增加额度
+            if (null != updated && 1 == updated) {
+                addQuotaLedger(orderDelivery.raffleActivityAccount, orderDelivery.raffleActivityAccountMonth, orderDelivery.raffleActivityAccountDay);
+            }
+        } finally {
+            dbRouter.clear();
+            if (null != accountLock && accountLock.isLocked() && accountLock.isHeldByCurrentThread()) {
+                accountLock.unlock();
+            }
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void updateOrders(String topic, List<DeliveryOrderEntity> deliveryOrderEntities) {
+        // 1. 查询订单，按用户分库分组，同一批内重复投递的消息只保留一条
+        Map<String, Map<String, DeliveryOrderEntity>> dbDeliveryOrders = new LinkedHashMap<>();
+        Map<String, RaffleActivityOrder> raffleActivityOrders = new HashMap<>();
+        for (DeliveryOrderEntity deliveryOrderEntity : deliveryOrderEntities) {
+            Map<String, DeliveryOrderEntity> deliveryOrders = dbDeliveryOrders.computeIfAbsent(dbKey(deliveryOrderEntity.getUserId()), key -> new LinkedHashMap<>());
+            if (null != deliveryOrders.putIfAbsent(deliveryOrderEntity.getMessageId(), deliveryOrderEntity)) continue;
+            RaffleActivityOrder raffleActivityOrderReq = new RaffleActivityOrder();
+            raffleActivityOrderReq.setUserId(deliveryOrderEntity.getUserId());
+            raffleActivityOrderReq.setOutBusinessNo(deliveryOrderEntity.getOutBusinessNo());
+            RaffleActivityOrder raffleActivityOrderRes = raffleActivityOrderDao.queryRaffleActivityOrder(raffleActivityOrderReq);
+            if (null != raffleActivityOrderRes) {
+                raffleActivityOrders.put(deliveryOrderEntity.getMessageId(), raffleActivityOrderRes);
+            }
+        }
+
+        // 2. 每个分库一个事务；唯一索引冲突时「并发消费同一消息」改为逐条出货，按订单状态防重
+        for (Map<String, DeliveryOrderEntity> deliveryOrders : dbDeliveryOrders.values()) {
+            // 账户锁；数据库入账与增加账本之间不允许重建账本，按 key 排序加锁避免死锁
+            List<RLock> accountLocks = lockAccounts(deliveryOrders.keySet(), raffleActivityOrders);
+            try {
+                List<OrderDelivery> orderDeliveries = updateOrders(topic, deliveryOrders, raffleActivityOrders);
+                // 3. 额度账本已加载时同步增加额度
+                for (OrderDelivery orderDelivery : orderDeliveries) {
+                    addQuotaLedger(orderDelivery.raffleActivityAccount, orderDelivery.raffleActivityAccountMonth, orderDelivery.raffleActivityAccountDay);
+                }
+                continue;
+            } catch (DuplicateKeyException e) {
+                log.warn("批量更新订单记录，唯一索引冲突，改为逐条出货 topic: {} messageIds: {}", topic, deliveryOrders.keySet(), e);
+            } finally {
+                unlockAccounts(accountLocks);
+            }
+            for (DeliveryOrderEntity deliveryOrderEntity : deliveryOrders.values()) {
+                try {
+                    updateOrder(deliveryOrderEntity);
+                } catch (AppException ex) {
+                    if (!ResponseCode.INDEX_DUP.getCode().equals(ex.getCode())) throw ex;
+                }
+            }
+        }
+    }
+
+    private List<RLock> lockAccounts(Set<String> messageIds, Map<String, RaffleActivityOrder> raffleActivityOrders) {
+        Map<String, RLock> accountLocks = new TreeMap<>();
+        for (String messageId : messageIds) {
+            RaffleActivityOrder raffleActivityOrder = raffleActivityOrders.get(messageId);
+            if (null == raffleActivityOrder) continue;
+            String lockKey = Constants.RedisKey.ACTIVITY_ACCOUNT_LOCK + raffleActivityOrder.getUserId() + Constants.UNDERLINE + raffleActivityOrder.getActivityId();
+            accountLocks.computeIfAbsent(lockKey, redisService::getLock);
+        }
+        List<RLock> locks = new ArrayList<>(accountLocks.size());
+        try {
+            for (RLock lock : accountLocks.values()) {
+                lock.lock(3, TimeUnit.SECONDS);
+                locks.add(lock);
+            }
+        } catch (RuntimeException e) {
+            unlockAccounts(locks);
+            throw e;
+        }
+        return locks;
+    }
+
+    private void unlockAccounts(List<RLock> locks) {
+        for (RLock lock : locks) {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 同一分库的订单出货；按消息ID防重，订单不是待支付状态时跳过
+     *
+     * @param deliveryOrders       消息ID -> 出货单
+     * @param raffleActivityOrders 消息ID -> 订单
+     * @return 本次出货的订单
+     */
+    private List<OrderDelivery> updateOrders(String topic, Map<String, DeliveryOrderEntity> deliveryOrders, Map<String, RaffleActivityOrder> raffleActivityOrders) {
+        try {
+            dbRouter.doRouter(deliveryOrders.values().iterator().next().getUserId());
+            return transactionTemplate.execute(status -> {
+                // 1. 过滤已消费的消息
+                Set<String> consumedMessageIds = new HashSet<>(messageConsumeRecordDao.queryConsumedMessageIds(topic, new ArrayList<>(deliveryOrders.keySet())));
+                List<MessageConsumeRecord> messageConsumeRecords = new ArrayList<>();
+                for (Map.Entry<String, DeliveryOrderEntity> entry : deliveryOrders.entrySet()) {
+                    if (consumedMessageIds.contains(entry.getKey())) {
+                        log.warn("批量更新订单记录，消息重复 userId: {} outBusinessNo: {} messageId: {}", entry.getValue().getUserId(), entry.getValue().getOutBusinessNo(), entry.getKey());
+                        continue;
+                    }
+                    messageConsumeRecords.add(MessageConsumeRecord.builder()
+                            .userId(entry.getValue().getUserId())
+                            .topic(topic)
+                            .messageId(entry.getKey())
+                            .build());
+                }
+                if (messageConsumeRecords.isEmpty()) return Collections.<OrderDelivery>emptyList();
+
+                // 2. 先写消费记录；并发消费同一条消息时唯一索引冲突，整个事务回滚
+                messageConsumeRecordDao.insertBatch(messageConsumeRecords);
+
+                // 3. 逐单更新为完成并增加账户额度；订单表按用户分表，逐单切换分表
+                List<OrderDelivery> orderDeliveries = new ArrayList<>();
+                for (MessageConsumeRecord messageConsumeRecord : messageConsumeRecords) {
+                    RaffleActivityOrder raffleActivityOrderRes = raffleActivityOrders.get(messageConsumeRecord.getMessageId());
+                    if (null == raffleActivityOrderRes) continue;
+                    DeliveryOrderEntity deliveryOrderEntity = deliveryOrders.get(messageConsumeRecord.getMessageId());
+                    RaffleActivityOrder raffleActivityOrderReq = new RaffleActivityOrder();
+                    raffleActivityOrderReq.setUserId(deliveryOrderEntity.getUserId());
+                    raffleActivityOrderReq.setOutBusinessNo(deliveryOrderEntity.getOutBusinessNo());
+                    dbRouter.doRouter(deliveryOrderEntity.getUserId());
+                    if (1 != raffleActivityOrderDao.updateOrderCompleted(raffleActivityOrderReq)) {
+                        log.warn("批量更新订单记录，订单已出货 userId: {} outBusinessNo: {}", deliveryOrderEntity.getUserId(), deliveryOrderEntity.getOutBusinessNo());
+                        continue;
+                    }
+                    OrderDelivery orderDelivery = new OrderDelivery(raffleActivityOrderRes);
+                    addAccountQuota(orderDelivery);
+                    orderDeliveries.add(orderDelivery);
+                }
+                return orderDeliveries;
+            });
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    /**
+     * 订单出货增加账户额度 - 总、月、日；在事务内调用
+     */
+    private void addAccountQuota(OrderDelivery orderDelivery) {
+        // 1. 更新账户 - 总
+        RaffleActivityAccount raffleActivityAccountRes = raffleActivityAccountDao.queryAccountByUserId(orderDelivery.raffleActivityAccount);
+        if (null == raffleActivityAccountRes) {
+            raffleActivityAccountDao.insert(orderDelivery.raffleActivityAccount);
+        } else {
+            raffleActivityAccountDao.updateAccountQuota(orderDelivery.raffleActivityAccount);
+        }
+        // 2. 更新账户 - 月
+        raffleActivityAccountMonthDao.addAccountQuota(orderDelivery.raffleActivityAccountMonth);
+        // 3. 更新账户 - 日
+        raffleActivityAccountDayDao.addAccountQuota(orderDelivery.raffleActivityAccountDay);
+    }
+
+    /**
+     * 订单出货增加的账户额度 - 总、月、日
+     */
+    private static class OrderDelivery {
+        private final RaffleActivityAccount raffleActivityAccount;
+        private final RaffleActivityAccountMonth raffleActivityAccountMonth;
+        private final RaffleActivityAccountDay raffleActivityAccountDay;
+
+        private OrderDelivery(RaffleActivityOrder raffleActivityOrderRes) {
             // 账户对象 - 总
-            RaffleActivityAccount raffleActivityAccount = new RaffleActivityAccount();
+            raffleActivityAccount = new RaffleActivityAccount();
             raffleActivityAccount.setUserId(raffleActivityOrderRes.getUserId());
             raffleActivityAccount.setActivityId(raffleActivityOrderRes.getActivityId());
             raffleActivityAccount.setTotalCount(raffleActivityOrderRes.getTotalCount());
@@ -809,7 +1433,7 @@ public class ActivityRepository implements IActivityRepository {
             raffleActivityAccount.setMonthCountSurplus(raffleActivityOrderRes.getMonthCount());
 
             // 账户对象 - 月
-            RaffleActivityAccountMonth raffleActivityAccountMonth = new RaffleActivityAccountMonth();
+            raffleActivityAccountMonth = new RaffleActivityAccountMonth();
             raffleActivityAccountMonth.setUserId(raffleActivityOrderRes.getUserId());
             raffleActivityAccountMonth.setActivityId(raffleActivityOrderRes.getActivityId());
             raffleActivityAccountMonth.setMonth(RaffleActivityAccountMonth.currentMonth());
@@ -817,47 +1441,12 @@ public class ActivityRepository implements IActivityRepository {
             raffleActivityAccountMonth.setMonthCountSurplus(raffleActivityOrderRes.getMonthCount());
 
             // 账户对象 - 日
-            RaffleActivityAccountDay raffleActivityAccountDay = new RaffleActivityAccountDay();
+            raffleActivityAccountDay = new RaffleActivityAccountDay();
             raffleActivityAccountDay.setUserId(raffleActivityOrderRes.getUserId());
             raffleActivityAccountDay.setActivityId(raffleActivityOrderRes.getActivityId());
             raffleActivityAccountDay.setDay(RaffleActivityAccountDay.currentDay());
             raffleActivityAccountDay.setDayCount(raffleActivityOrderRes.getDayCount());
             raffleActivityAccountDay.setDayCountSurplus(raffleActivityOrderRes.getDayCount());
-
-
-            dbRouter.doRouter(deliveryOrderEntity.getUserId());
-            // 编程式事务
-            transactionTemplate.execute(status -> {
-                try {
-                    // 1. 更新订单
-                    int updateCount = raffleActivityOrderDao.updateOrderCompleted(raffleActivityOrderReq);
-                    if (1 != updateCount) {
-                        status.setRollbackOnly();
-                        return 1;
-                    }
-                    // 2. 更新账户 - 总
-                    RaffleActivityAccount raffleActivityAccountRes = raffleActivityAccountDao.queryAccountByUserId(raffleActivityAccount);
-                    if (null == raffleActivityAccountRes) {
-                        raffleActivityAccountDao.insert(raffleActivityAccount);
-                    } else {
-                        raffleActivityAccountDao.updateAccountQuota(raffleActivityAccount);
-                    }
-                    // 4. 更新账户 - 月
-                    raffleActivityAccountMonthDao.addAccountQuota(raffleActivityAccountMonth);
-                    // 5. 更新账户 - 日
-                    raffleActivityAccountDayDao.addAccountQuota(raffleActivityAccountDay);
-                    return 1;
-                } catch (DuplicateKeyException e) {
-                    status.setRollbackOnly();
-                    log.error("更新订单记录，完成态，唯一索引冲突 userId: {} outBusinessNo: {}", deliveryOrderEntity.getUserId(), deliveryOrderEntity.getOutBusinessNo(), e);
-                    throw new AppException(ResponseCode.INDEX_DUP.getCode(), e);
-                }
-            });
-        } finally {
-            dbRouter.clear();
-            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
         }
     }
 
@@ -13,7 +13,8 @@ import cn.bugstack.infrastructure.dao.po.UserAwardRecord;
 import cn.bugstack.infrastructure.dao.po.UserCreditAccount;
 import cn.bugstack.infrastructure.dao.po.UserRaffleOrder;
 import cn.bugstack.infrastructure.elasticsearch.IElasticSearchUserAwardRecordDao;
-import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.journal.PartakeOrderJournal;
 import cn.bugstack.infrastructure.redis.IRedisService;
 import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
 import cn.bugstack.types.common.Constants;
@@ -53,12 +54,14 @@ public class AwardRepository implements IAwardRepository {
     @Resource
     private TransactionTemplate transactionTemplate;
     @Resource
-    private EventPublisher eventPublisher;
+    private TaskMessagePublisher taskMessagePublisher;
     @Resource
     private IRedisService redisService;
 
     @Resource
     private IElasticSearchUserAwardRecordDao elasticSearchUserAwardRecordDao;
+    @Resource
+    private PartakeOrderJournal partakeOrderJournal;
 
     @Override
     public void saveUserAwardRecord(UserAwardRecordAggregate userAwardRecordAggregate) {
@@ -90,14 +93,18 @@ public class AwardRepository implements IAwardRepository {
         userRaffleOrderReq.setUserId(userAwardRecordEntity.getUserId());
         userRaffleOrderReq.setOrderId(userAwardRecordEntity.getOrderId());
 
+        // 写后落库模式下抽奖单可能尚未落库，更新抽奖单状态前先落库
+        partakeOrderJournal.flushReserved(userId, activityId, userAwardRecordEntity.getOrderId());
+
         try {
             dbRouter.doRouter(userId);
             transactionTemplate.execute(status -> {
                 try {
                     // 写入记录
                     userAwardRecordDao.insert(userAwardRecord);
-                    // 写入任务
+                    // 写入任务，事务提交后发送消息【如果失败还有任务补偿】
                     taskDao.insert(task);
+                    taskMessagePublisher.publishAfterCommit(task);
                     // 更新抽奖单
                     int count = userRaffleOrderDao.updateUserRaffleOrderStateUsed(userRaffleOrderReq);
                     if (1 != count) {
@@ -115,13 +122,76 @@ public class AwardRepository implements IAwardRepository {
         } finally {
             dbRouter.clear();
         }
+    }
+
+    @Override
+    public void saveUserAwardRecords(List<UserAwardRecordAggregate> userAwardRecordAggregates) {
+        if (userAwardRecordAggregates.isEmpty()) return;
+        String userId = userAwardRecordAggregates.get(0).getUserAwardRecordEntity().getUserId();
+        Long activityId = userAwardRecordAggregates.get(0).getUserAwardRecordEntity().getActivityId();
+
+        List<UserAwardRecord> userAwardRecords = new ArrayList<>(userAwardRecordAggregates.size());
+        List<Task> tasks = new ArrayList<>(userAwardRecordAggregates.size());
+        List<String> orderIds = new ArrayList<>(userAwardRecordAggregates.size());
+        for (UserAwardRecordAggregate userAwardRecordAggregate : userAwardRecordAggregates) {
+            UserAwardRecordEntity userAwardRecordEntity = userAwardRecordAggregate.getUserAwardRecordEntity();
+            TaskEntity taskEntity = userAwardRecordAggregate.getTaskEntity();
+            if (!userId.equals(userAwardRecordEntity.getUserId())) {
+                throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+            }
+
+            UserAwardRecord userAwardRecord = new UserAwardRecord();
+            userAwardRecord.setUserId(userAwardRecordEntity.getUserId());
+            userAwardRecord.setActivityId(userAwardRecordEntity.getActivityId());
+            userAwardRecord.setStrategyId(userAwardRecordEntity.getStrategyId());
+            userAwardRecord.setOrderId(userAwardRecordEntity.getOrderId());
+            userAwardRecord.setAwardId(userAwardRecordEntity.getAwardId());
+            userAwardRecord.setAwardTitle(userAwardRecordEntity.getAwardTitle());
+            userAwardRecord.setAwardTime(userAwardRecordEntity.getAwardTime());
+            userAwardRecord.setAwardState(userAwardRecordEntity.getAwardState().getCode());
+            userAwardRecords.add(userAwardRecord);
+
+            Task task = new Task();
+            task.setUserId(taskEntity.getUserId());
+            task.setTopic(taskEntity.getTopic());
+            task.setMessageId(taskEntity.getMessageId());
+            task.setMessage(JSON.toJSONString(taskEntity.getMessage()));
+            task.setState(taskEntity.getState().getCode());
+            tasks.add(task);
+
+            orderIds.add(userAwardRecordEntity.getOrderId());
+        }
+
+        // 写后落库模式下抽奖单可能尚未落库，更新抽奖单状态前先落库
+        for (String orderId : orderIds) {
+            partakeOrderJournal.flushReserved(userId, activityId, orderId);
+        }
 
         try {
-            // 发送消息【在事务外执行，如果失败还有任务补偿】
-            eventPublisher.publish(task.getTopic(), task.getMessage());
-        } catch (Exception e) {
-            log.error("写入发奖记录，发送MQ消息 state: fail userId: {} topic: {}", userId, task.getTopic());
-            taskDao.updateTaskSendMessageFail(task);
+            dbRouter.doRouter(userId);
+            transactionTemplate.execute(status -> {
+                try {
+                    // 写入记录
+                    userAwardRecordDao.insertBatch(userAwardRecords);
+                    // 写入任务，事务提交后发送消息【如果失败还有任务补偿】
+                    taskDao.insertBatch(tasks);
+                    taskMessagePublisher.publishAfterCommit(tasks);
+                    // 更新抽奖单
+                    int count = userRaffleOrderDao.updateUserRaffleOrderStateUsedBatch(userId, orderIds);
+                    if (orderIds.size() != count) {
+                        status.setRollbackOnly();
+                        log.error("批量写入发奖记录，用户抽奖单已使用过，不可重复抽奖 userId: {} activityId: {} orderIds: {} count: {}", userId, activityId, orderIds, count);
+                        throw new AppException(ResponseCode.ACTIVITY_ORDER_ERROR.getCode(), ResponseCode.ACTIVITY_ORDER_ERROR.getInfo());
+                    }
+                    return 1;
+                } catch (DuplicateKeyException e) {
+                    status.setRollbackOnly();
+                    log.error("批量写入发奖记录，唯一索引冲突 userId: {} activityId: {} orderIds: {}", userId, activityId, orderIds, e);
+                    throw new AppException(ResponseCode.INDEX_DUP.getCode(), e);
+                }
+            });
+        } finally {
+            dbRouter.clear();
         }
     }
 
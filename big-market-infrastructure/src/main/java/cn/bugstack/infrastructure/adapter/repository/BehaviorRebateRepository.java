@@ -6,7 +6,7 @@ import cn.bugstack.domain.rebate.model.entity.TaskEntity;
 import cn.bugstack.domain.rebate.model.valobj.BehaviorTypeVO;
 import cn.bugstack.domain.rebate.model.valobj.DailyBehaviorRebateVO;
 import cn.bugstack.domain.rebate.repository.IBehaviorRebateRepository;
-import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
 import cn.bugstack.infrastructure.dao.IDailyBehaviorRebateDao;
 import cn.bugstack.infrastructure.dao.ITaskDao;
 import cn.bugstack.infrastructure.dao.IUserBehaviorRebateOrderDao;
@@ -46,7 +46,7 @@ public class BehaviorRebateRepository implements IBehaviorRebateRepository {
     @Resource
     private TransactionTemplate transactionTemplate;
     @Resource
-    private EventPublisher eventPublisher;
+    private TaskMessagePublisher taskMessagePublisher;
 
     @Override
     public List<DailyBehaviorRebateVO> queryDailyBehaviorRebateConfig(BehaviorTypeVO behaviorTypeVO) {
@@ -92,6 +92,8 @@ public class BehaviorRebateRepository implements IBehaviorRebateRepository {
                         task.setMessage(JSON.toJSONString(taskEntity.getMessage()));
                         task.setState(taskEntity.getState().getCode());
                         taskDao.insert(task);
+                        // 事务提交后发送消息【如果失败还有任务补偿】
+                        taskMessagePublisher.publishAfterCommit(task);
                     }
                     return 1;
                 } catch (DuplicateKeyException e) {
@@ -103,22 +105,6 @@ public class BehaviorRebateRepository implements IBehaviorRebateRepository {
         } finally {
             dbRouter.clear();
         }
-
-        // 同步发送MQ消息
-        for (BehaviorRebateAggregate behaviorRebateAggregate : behaviorRebateAggregates) {
-            TaskEntity taskEntity = behaviorRebateAggregate.getTaskEntity();
-            Task task = new Task();
-            task.setUserId(taskEntity.getUserId());
-            task.setMessageId(taskEntity.getMessageId());
-            try {
-                // 发送消息【在事务外执行，如果失败还有任务补偿】
-                eventPublisher.publish(taskEntity.getTopic(), taskEntity.getMessage());
-            } catch (Exception e) {
-                log.error("写入返利记录，发送MQ消息失败 userId: {} topic: {}", userId, task.getTopic());
-                taskDao.updateTaskSendMessageFail(task);
-            }
-        }
-
     }
 
     @Override
@@ -6,14 +6,17 @@ import cn.bugstack.domain.credit.model.entity.CreditAccountEntity;
 import cn.bugstack.domain.credit.model.entity.CreditOrderEntity;
 import cn.bugstack.domain.credit.model.entity.TaskEntity;
 import cn.bugstack.domain.credit.repository.ICreditRepository;
-import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.dao.IMessageConsumeRecordDao;
 import cn.bugstack.infrastructure.dao.ITaskDao;
 import cn.bugstack.infrastructure.dao.IUserCreditAccountDao;
 import cn.bugstack.infrastructure.dao.IUserCreditOrderDao;
+import cn.bugstack.infrastructure.dao.po.MessageConsumeRecord;
 import cn.bugstack.infrastructure.dao.po.Task;
 import cn.bugstack.infrastructure.dao.po.UserCreditAccount;
 import cn.bugstack.infrastructure.dao.po.UserCreditOrder;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.middleware.db.router.DBContextHolder;
 import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.enums.ResponseCode;
@@ -27,6 +30,12 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Resource;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,7 +60,9 @@ public class CreditRepository implements ICreditRepository {
     @Resource
     private TransactionTemplate transactionTemplate;
     @Resource
-    private EventPublisher eventPublisher;
+    private TaskMessagePublisher taskMessagePublisher;
+    @Resource
+    private IMessageConsumeRecordDao messageConsumeRecordDao;
 
     @Override
     public void saveUserCreditTradeOrder(TradeAggregate tradeAggregate) {
@@ -69,20 +80,9 @@ public class CreditRepository implements ICreditRepository {
         userCreditAccountReq.setAccountStatus(AccountStatusVO.open.getCode());
 
         // 积分订单
-        UserCreditOrder userCreditOrderReq = new UserCreditOrder();
-        userCreditOrderReq.setUserId(creditOrderEntity.getUserId());
-        userCreditOrderReq.setOrderId(creditOrderEntity.getOrderId());
-        userCreditOrderReq.setTradeName(creditOrderEntity.getTradeName().getName());
-        userCreditOrderReq.setTradeType(creditOrderEntity.getTradeType().getCode());
-        userCreditOrderReq.setTradeAmount(creditOrderEntity.getTradeAmount());
-        userCreditOrderReq.setOutBusinessNo(creditOrderEntity.getOutBusinessNo());
+        UserCreditOrder userCreditOrderReq = toUserCreditOrder(creditOrderEntity);
 
-        Task task = new Task();
-        task.setUserId(taskEntity.getUserId());
-        task.setTopic(taskEntity.getTopic());
-        task.setMessageId(taskEntity.getMessageId());
-        task.setMessage(JSON.toJSONString(taskEntity.getMessage()));
-        task.setState(taskEntity.getState().getCode());
+        Task task = toTask(taskEntity);
 
         RLock lock = redisService.getLock(Constants.RedisKey.USER_CREDIT_ACCOUNT_LOCK + userId + Constants.UNDERLINE + creditOrderEntity.getOutBusinessNo());
         try {
@@ -109,8 +109,9 @@ public class CreditRepository implements ICreditRepository {
                     }
                     // 2. 保存账户订单
                     userCreditOrderDao.insert(userCreditOrderReq);
-                    // 3. 写入任务
+                    // 3. 写入任务，事务提交后发送消息【如果失败还有任务补偿】
                     taskDao.insert(task);
+                    taskMessagePublisher.publishAfterCommit(task);
                 } catch (DuplicateKeyException e) {
                     status.setRollbackOnly();
                     log.error("调整账户积分额度异常，唯一索引冲突 userId:{} orderId:{}", userId, creditOrderEntity.getOrderId(), e);
@@ -126,15 +127,120 @@ public class CreditRepository implements ICreditRepository {
                 lock.unlock();
             }
         }
+    }
+
+    @Override
+    public void saveUserCreditTradeOrders(String topic, List<TradeAggregate> tradeAggregates) {
+        // 1. 按用户分库分组，同一批内重复投递的消息只保留一条
+        Map<String, Map<String, TradeAggregate>> dbTradeAggregates = new LinkedHashMap<>();
+        for (TradeAggregate tradeAggregate : tradeAggregates) {
+            dbTradeAggregates.computeIfAbsent(dbKey(tradeAggregate.getUserId()), key -> new LinkedHashMap<>()).putIfAbsent(tradeAggregate.getMessageId(), tradeAggregate);
+        }
 
+        // 2. 每个分库一个事务；唯一索引冲突时「外部单号此前已逐条入账或并发消费同一消息」改为逐条保存，按外部单号唯一索引防重
+        for (Map<String, TradeAggregate> messageTradeAggregates : dbTradeAggregates.values()) {
+            try {
+                saveUserCreditTradeOrders(topic, messageTradeAggregates);
+            } catch (DuplicateKeyException e) {
+                log.warn("批量调整账户积分额度，唯一索引冲突，改为逐条保存 topic: {} messageIds: {}", topic, messageTradeAggregates.keySet(), e);
+                for (TradeAggregate tradeAggregate : messageTradeAggregates.values()) {
+                    saveUserCreditTradeOrder(tradeAggregate);
+                }
+            }
+        }
+    }
+
+    /**
+     * 同一分库的积分交易订单；按消息ID防重，同一用户的积分合并后更新一次，任务一条多行 INSERT 写入
+     *
+     * @param messageTradeAggregates 消息ID -> 交易聚合对象
+     */
+    private void saveUserCreditTradeOrders(String topic, Map<String, TradeAggregate> messageTradeAggregates) {
         try {
-            // 发送消息【在事务外执行，如果失败还有任务补偿】
-            eventPublisher.publish(task.getTopic(), task.getMessage());
-        } catch (Exception e) {
-            log.error("调整账户积分记录，发送MQ消息失败 userId: {} topic: {}", userId, task.getTopic());
-            taskDao.updateTaskSendMessageFail(task);
+            dbRouter.doRouter(messageTradeAggregates.values().iterator().next().getUserId());
+            transactionTemplate.execute(status -> {
+                // 1. 过滤已消费的消息
+                Set<String> consumedMessageIds = new HashSet<>(messageConsumeRecordDao.queryConsumedMessageIds(topic, new ArrayList<>(messageTradeAggregates.keySet())));
+                List<MessageConsumeRecord> messageConsumeRecords = new ArrayList<>();
+                Map<String, BigDecimal> userAmounts = new LinkedHashMap<>();
+                List<UserCreditOrder> userCreditOrders = new ArrayList<>();
+                List<Task> tasks = new ArrayList<>();
+                for (Map.Entry<String, TradeAggregate> entry : messageTradeAggregates.entrySet()) {
+                    TradeAggregate tradeAggregate = entry.getValue();
+                    if (consumedMessageIds.contains(entry.getKey())) {
+                        log.warn("批量调整账户积分额度，消息重复 userId: {} messageId: {}", tradeAggregate.getUserId(), entry.getKey());
+                        continue;
+                    }
+                    messageConsumeRecords.add(MessageConsumeRecord.builder()
+                            .userId(tradeAggregate.getUserId())
+                            .topic(topic)
+                            .messageId(entry.getKey())
+                            .build());
+                    userAmounts.merge(tradeAggregate.getUserId(), tradeAggregate.getCreditAccountEntity().getAdjustAmount(), BigDecimal::add);
+                    userCreditOrders.add(toUserCreditOrder(tradeAggregate.getCreditOrderEntity()));
+                    tasks.add(toTask(tradeAggregate.getTaskEntity()));
+                }
+                if (messageConsumeRecords.isEmpty()) return 0;
+
+                // 2. 先写消费记录；并发消费同一条消息时唯一索引冲突，整个事务回滚
+                messageConsumeRecordDao.insertBatch(messageConsumeRecords);
+
+                // 3. 按用户合并增加积分「首次则插入数据」
+                for (Map.Entry<String, BigDecimal> entry : userAmounts.entrySet()) {
+                    UserCreditAccount userCreditAccountReq = new UserCreditAccount();
+                    userCreditAccountReq.setUserId(entry.getKey());
+                    userCreditAccountReq.setTotalAmount(entry.getValue());
+                    userCreditAccountReq.setAvailableAmount(entry.getValue());
+                    userCreditAccountReq.setAccountStatus(AccountStatusVO.open.getCode());
+                    if (0 == userCreditAccountDao.updateAddAmount(userCreditAccountReq)) {
+                        userCreditAccountDao.insert(userCreditAccountReq);
+                    }
+                }
+
+                // 4. 保存积分订单；订单表按用户分表，逐条切换分表写入
+                for (UserCreditOrder userCreditOrder : userCreditOrders) {
+                    dbRouter.doRouter(userCreditOrder.getUserId());
+                    userCreditOrderDao.insert(userCreditOrder);
+                }
+
+                // 5. 写入任务，事务提交后发送消息【如果失败还有任务补偿】
+                taskDao.insertBatch(tasks);
+                taskMessagePublisher.publishAfterCommit(tasks);
+                return messageConsumeRecords.size();
+            });
+        } finally {
+            dbRouter.clear();
         }
+    }
+
+    private UserCreditOrder toUserCreditOrder(CreditOrderEntity creditOrderEntity) {
+        UserCreditOrder userCreditOrder = new UserCreditOrder();
+        userCreditOrder.setUserId(creditOrderEntity.getUserId());
+        userCreditOrder.setOrderId(creditOrderEntity.getOrderId());
+        userCreditOrder.setTradeName(creditOrderEntity.getTradeName().getName());
+        userCreditOrder.setTradeType(creditOrderEntity.getTradeType().getCode());
+        userCreditOrder.setTradeAmount(creditOrderEntity.getTradeAmount());
+        userCreditOrder.setOutBusinessNo(creditOrderEntity.getOutBusinessNo());
+        return userCreditOrder;
+    }
 
+    private Task toTask(TaskEntity taskEntity) {
+        Task task = new Task();
+        task.setUserId(taskEntity.getUserId());
+        task.setTopic(taskEntity.getTopic());
+        task.setMessageId(taskEntity.getMessageId());
+        task.setMessage(JSON.toJSONString(taskEntity.getMessage()));
+        task.setState(taskEntity.getState().getCode());
+        return task;
+    }
+
+    private String dbKey(String userId) {
+        try {
+            dbRouter.doRouter(userId);
+            return DBContextHolder.getDBKey();
+        } finally {
+            dbRouter.clear();
+        }
     }
 
     @Override
@@ -12,8 +12,6 @@ import cn.bugstack.infrastructure.redis.IRedisService;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.exception.AppException;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBlockingQueue;
-import org.redisson.api.RDelayedQueue;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Resource;
@@ -56,8 +54,9 @@ public class StrategyRepository implements IStrategyRepository {
     public List<StrategyAwardEntity> queryStrategyAwardList(Long strategyId) {
         // 优先从缓存获取
         String cacheKey = Constants.RedisKey.STRATEGY_AWARD_LIST_KEY + strategyId;
-        List<StrategyAwardEntity> strategyAwardEntities = redisService.getValue(cacheKey);
-        if (null != strategyAwardEntities && !strategyAwardEntities.isEmpty()) return strategyAwardEntities;
+        List<StrategyAwardEntity> strategyAwardEntities = redisService.getNearValue(cacheKey);
+        // 缓存的列表为各调用方共享，只读返回
+        if (null != strategyAwardEntities && !strategyAwardEntities.isEmpty()) return Collections.unmodifiableList(strategyAwardEntities);
         // 从库中获取数据
         List<StrategyAward> strategyAwards = strategyAwardDao.queryStrategyAwardListByStrategyId(strategyId);
         strategyAwardEntities = new ArrayList<>(strategyAwards.size());
@@ -75,50 +74,70 @@ public class StrategyRepository implements IStrategyRepository {
                     .build();
             strategyAwardEntities.add(strategyAwardEntity);
         }
-        redisService.setValue(cacheKey, strategyAwardEntities);
-        return strategyAwardEntities;
+        redisService.setNearValue(cacheKey, strategyAwardEntities);
+        return Collections.unmodifiableList(strategyAwardEntities);
     }
 
     /**
-     * 在 Redisson 中，当你调用 getMap 方法时，如果指定的 key 不存在，Redisson 并不会立即在 Redis 数据库中创建这个 key。相反，它会返回一个 RMap 对象的实例，这个实例是一个本地的 Java 对象，它代表了 Redis 中的一个哈希（hash）。
-     * <p>
-     * 当你开始使用这个 RMap 实例进行操作，比如添加键值对，那么 Redisson 会在 Redis 数据库中创建相应的 key，并将数据存储在这个 key 对应的哈希中。如果你只是获取了 RMap 实例而没有进行任何操作，那么在 Redis 数据库中是不会有任何变化的。
-     * <p>
-     * 简单来说，getMap 方法返回的 RMap 对象是懒加载的，只有在你实际进行操作时，Redis 数据库中的数据结构才会被创建或修改。
+     * 失效策略配置的近端缓存；装配策略前调用，装配读取到的是数据库中的最新配置。
+     * 1. 先删除 Redis 中的策略、奖品列表、规则组、奖品和规则树配置，各节点本地失效后回源到数据库，不会再读到 Redis 中的旧值
+     * 2. 再清除本地缓存，并通过 Redis 发布订阅「RTopic」通知其他节点按相同的 key 前缀清除
      */
     @Override
-    public void storeStrategyAwardSearchRateTable(String key, Integer rateRange, Map<Integer, Integer> strategyAwardSearchRateTable) {
-        // 1. 存储抽奖策略范围值，如10000，用于生成1000以内的随机数
-        redisService.setValue(Constants.RedisKey.STRATEGY_RATE_RANGE_KEY + key, rateRange);
-        // 2. 存储概率查找表
-        Map<Integer, Integer> cacheRateTable = redisService.getMap(Constants.RedisKey.STRATEGY_RATE_TABLE_KEY + key);
-        cacheRateTable.putAll(strategyAwardSearchRateTable);
-    }
+    public void invalidateStrategyNearCache(Long strategyId) {
+        redisService.remove(Constants.RedisKey.STRATEGY_KEY + strategyId);
+        redisService.remove(Constants.RedisKey.STRATEGY_AWARD_LIST_KEY + strategyId);
+        redisService.remove(Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + strategyId);
+        for (StrategyAward strategyAward : strategyAwardDao.queryStrategyAwardListByStrategyId(strategyId)) {
+            redisService.remove(Constants.RedisKey.STRATEGY_AWARD_KEY + strategyId + Constants.UNDERLINE + strategyAward.getAwardId());
+            // 奖品的规则模型即规则树 treeId
+            if (null != strategyAward.getRuleModels()) {
+                redisService.remove(Constants.RedisKey.RULE_TREE_VO_KEY + strategyAward.getRuleModels());
+            }
+        }
 
-    @Override
-    public Integer getStrategyAwardAssemble(String key, Integer rateKey) {
-        return redisService.getFromMap(Constants.RedisKey.STRATEGY_RATE_TABLE_KEY + key, rateKey);
+        // 规则树 treeId 与策略无直接关联，本地缓存按前缀全部失效；库存 key 只缓存分段数量
+        redisService.invalidateNearValue(
+                Constants.RedisKey.STRATEGY_KEY + strategyId,
+                Constants.RedisKey.STRATEGY_AWARD_LIST_KEY + strategyId,
+                Constants.RedisKey.STRATEGY_AWARD_KEY + strategyId + Constants.UNDERLINE,
+                Constants.RedisKey.STRATEGY_AWARD_COUNT_KEY + strategyId + Constants.UNDERLINE,
+                Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + strategyId,
+                Constants.RedisKey.RULE_TREE_VO_KEY);
     }
 
     @Override
-    public int getRateRange(Long strategyId) {
-        return getRateRange(String.valueOf(strategyId));
+    public void storeStrategyRateSearchTable(String key, byte[] rateTable) {
+        // 整表一次 SET 覆盖，不会残留上一次装配的占位
+        redisService.setBinaryValue(Constants.RedisKey.STRATEGY_RATE_SEARCH_TABLE_KEY + key, rateTable);
     }
 
     @Override
-    public int getRateRange(String key) {
-        String cacheKey = Constants.RedisKey.STRATEGY_RATE_RANGE_KEY + key;
-        if (!redisService.isExists(cacheKey)) {
+    public byte[] queryStrategyRateSearchTable(String key, int offset, int length) {
+        String cacheKey = Constants.RedisKey.STRATEGY_RATE_SEARCH_TABLE_KEY + key;
+        byte[] bytes = redisService.getBinaryRange(cacheKey, offset, length);
+        if (null == bytes) {
             throw new AppException(UN_ASSEMBLED_STRATEGY_ARMORY.getCode(), cacheKey + Constants.COLON + UN_ASSEMBLED_STRATEGY_ARMORY.getInfo());
         }
-        return redisService.getValue(cacheKey);
+        return bytes;
+    }
+
+    @Override
+    public long publishStrategyConfigVersion(Long strategyId) {
+        return redisService.incr(Constants.RedisKey.STRATEGY_CONFIG_VERSION_KEY + strategyId);
+    }
+
+    @Override
+    public long queryStrategyConfigVersion(Long strategyId) {
+        Long version = redisService.getAtomicLong(Constants.RedisKey.STRATEGY_CONFIG_VERSION_KEY + strategyId);
+        return null == version ? 0L : version;
     }
 
     @Override
     public StrategyEntity queryStrategyEntityByStrategyId(Long strategyId) {
         // 优先从缓存获取
         String cacheKey = Constants.RedisKey.STRATEGY_KEY + strategyId;
-        StrategyEntity strategyEntity = redisService.getValue(cacheKey);
+        StrategyEntity strategyEntity = redisService.getNearValue(cacheKey);
         if (null != strategyEntity) return strategyEntity;
         Strategy strategy = strategyDao.queryStrategyByStrategyId(strategyId);
         if (null == strategy) return StrategyEntity.builder().build();
@@ -127,7 +146,7 @@ public class StrategyRepository implements IStrategyRepository {
                 .strategyDesc(strategy.getStrategyDesc())
                 .ruleModels(strategy.getRuleModels())
                 .build();
-        redisService.setValue(cacheKey, strategyEntity);
+        redisService.setNearValue(cacheKey, strategyEntity);
         return strategyEntity;
     }
 
@@ -155,36 +174,41 @@ public class StrategyRepository implements IStrategyRepository {
 
     @Override
     public String queryStrategyRuleValue(Long strategyId, Integer awardId, String ruleModel) {
-        String cacheKey = Constants.RedisKey.STRATEGY_RULE_KEY_ACTIVITY + ruleModel;
-        String ruleValue = redisService.getValue(cacheKey);
-        if (ruleValue != null)
-            return ruleValue;
-
-        StrategyRule strategyRule = new StrategyRule();
-        strategyRule.setStrategyId(strategyId);
-        strategyRule.setAwardId(awardId);
-        strategyRule.setRuleModel(ruleModel);
-        ruleValue = strategyRuleDao.queryStrategyRuleValue(strategyRule);
+        StrategyRuleValueVO strategyRuleValueVO = queryStrategyRuleValueVO(strategyId, awardId, ruleModel);
+        return null == strategyRuleValueVO ? null : strategyRuleValueVO.getRuleValue();
+    }
 
-        redisService.setValue(cacheKey, ruleValue);
-        return ruleValue;
+    @Override
+    public StrategyRuleGroupVO cacheStrategyRuleGroup(Long strategyId) {
+        List<StrategyRule> strategyRules = strategyRuleDao.queryStrategyRuleListByStrategyId(strategyId);
+        HashMap<String, StrategyRuleValueVO> ruleValues = new HashMap<>();
+        for (StrategyRule strategyRule : strategyRules) {
+            StrategyRuleValueVO strategyRuleValueVO = StrategyRuleValueVO.parse(strategyRule.getStrategyId(), strategyRule.getAwardId(), strategyRule.getRuleModel(), strategyRule.getRuleValue());
+            ruleValues.put(StrategyRuleGroupVO.ruleKey(strategyRule.getAwardId(), strategyRule.getRuleModel()), strategyRuleValueVO);
+        }
+        StrategyRuleGroupVO strategyRuleGroupVO = StrategyRuleGroupVO.builder()
+                .strategyId(strategyId)
+                .ruleValues(ruleValues)
+                .build();
+        redisService.setNearValue(Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + strategyId, strategyRuleGroupVO);
+        return strategyRuleGroupVO;
     }
 
     @Override
-    public StrategyAwardRuleModelVO queryStrategyAwardRuleModelVO(Long strategyId, Integer awardId) {
-        StrategyAward strategyAward = new StrategyAward();
-        strategyAward.setStrategyId(strategyId);
-        strategyAward.setAwardId(awardId);
-        String ruleModels = strategyAwardDao.queryStrategyAwardRuleModels(strategyAward);
-        if (null == ruleModels) return null;
-        return StrategyAwardRuleModelVO.builder().ruleModels(ruleModels).build();
+    public StrategyRuleValueVO queryStrategyRuleValueVO(Long strategyId, Integer awardId, String ruleModel) {
+        // 优先从缓存获取；策略的全部规则按策略ID缓存，未装配的策略在首次查询时加载
+        StrategyRuleGroupVO strategyRuleGroupVO = redisService.getNearValue(Constants.RedisKey.STRATEGY_RULE_GROUP_KEY + strategyId);
+        if (null == strategyRuleGroupVO) {
+            strategyRuleGroupVO = cacheStrategyRuleGroup(strategyId);
+        }
+        return strategyRuleGroupVO.queryRuleValue(awardId, ruleModel);
     }
 
     @Override
     public RuleTreeVO queryRuleTreeVOByTreeId(String treeId) {
         // 优先从缓存获取
         String cacheKey = Constants.RedisKey.RULE_TREE_VO_KEY + treeId;
-        RuleTreeVO ruleTreeVOCache = redisService.getValue(cacheKey);
+        RuleTreeVO ruleTreeVOCache = redisService.getNearValue(cacheKey);
         if (null != ruleTreeVOCache) return ruleTreeVOCache;
 
         // 从数据库获取
@@ -230,80 +254,138 @@ public class StrategyRepository implements IStrategyRepository {
                 .treeNodeMap(treeNodeMap)
                 .build();
 
-        redisService.setValue(cacheKey, ruleTreeVODB);
+        redisService.setNearValue(cacheKey, ruleTreeVODB);
         return ruleTreeVODB;
     }
 
     @Override
     public void cacheStrategyAwardCount(String cacheKey, Integer awardCount) {
-        if (redisService.isExists(cacheKey)) return;
-        redisService.setAtomicLong(cacheKey, awardCount);
+        cacheStrategyAwardCount(cacheKey, awardCount, 1);
+    }
+
+    @Override
+    public void cacheStrategyAwardCount(String cacheKey, Integer awardCount, int segmentCount) {
+        String segmentCountKey = cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_COUNT_SUFFIX;
+        if (redisService.isExists(segmentCountKey)) return;
+
+        // 已按不分段装配过的库存，保持不分段，避免库存重复
+        boolean assembled = redisService.isExists(cacheKey);
+        if (assembled) segmentCount = 1;
+
+        // 先记录分段数量，再写入库存；抽奖时按分段数量选择库存 key
+        redisService.setValue(segmentCountKey, segmentCount);
+        if (1 == segmentCount) {
+            if (!assembled) redisService.setAtomicLong(cacheKey, awardCount);
+            return;
+        }
+
+        // 库存均分到各个分段，余数分给前面的分段
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentAwardCount = awardCount / segmentCount + (i < awardCount % segmentCount ? 1 : 0);
+            redisService.setAtomicLong(cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_SUFFIX + i, segmentAwardCount);
+        }
+    }
+
+    @Override
+    public int queryStrategyAwardCountSegmentCount(String cacheKey) {
+        // 分段数量只在装配时写入，走近端缓存
+        Integer segmentCount = redisService.getNearValue(cacheKey + Constants.RedisKey.STRATEGY_AWARD_COUNT_SEGMENT_COUNT_SUFFIX);
+        return null == segmentCount ? 1 : segmentCount;
     }
 
     @Override
     public Boolean subtractionAwardStock(String cacheKey) {
-        return subtractionAwardStock(cacheKey, null);
+        return subtractionAwardStock(cacheKey, null, null);
     }
 
     /**
      * 扣减库存并加锁操作，decr和0对比，如果是incr操作就和总量对比，和总量对比可以动态添加库存
-     * @param cacheKey    缓存Key
-     * @param endDateTime 活动结束时间
+     * 1. 按照cacheKey decr 后的值，如 99、98、97 作为槽位，在 cacheKey_lock 位图中加锁，一个库存一个 bit
+     * 2. 加锁为了兜底，如果后续有恢复库存，手动处理等，也不会超卖。因为所有的可用库存槽位，都被加锁了。
+     * 3. 扣减、加锁、累加已消耗计数在一个 Lua 脚本内完成，一次网络往返
+     *
+     * @param cacheKey                缓存Key
+     * @param strategyAwardStockKeyVO 奖品库存标识，为 null 时不计数
+     * @param endDateTime             活动结束时间
      */
     @Override
-    public Boolean subtractionAwardStock(String cacheKey, Date endDateTime) {
-        long surplus = redisService.decr(cacheKey);
-        if (surplus < 0) {
-            // 库存小于0，恢复为0个
-            redisService.setAtomicLong(cacheKey, 0);
-            return false;
-        }
-        // 1. 按照cacheKey decr 后的值，如 99、98、97 和 key 组成为库存锁的key进行使用。
-        // 2. 加锁为了兜底，如果后续有恢复库存，手动处理等，也不会超卖。因为所有的可用库存key，都被加锁了。
-        String lockKey = cacheKey + Constants.UNDERLINE + surplus;
-        Boolean lock = false;
-        if (null != endDateTime) {
-            long expireMillis = endDateTime.getTime() - System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
-            lock = redisService.setNx(lockKey, expireMillis, TimeUnit.MILLISECONDS);
-        } else {
-            lock = redisService.setNx(lockKey);
-        }
-        if (!lock) {
+    public Boolean subtractionAwardStock(String cacheKey, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime) {
+        String lockKey = awardStockLockKey(cacheKey);
+        String consumedKey = null == strategyAwardStockKeyVO ? null : awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId());
+        long surplus = redisService.subtractionStock(cacheKey, lockKey, awardStockLockExpireMillis(endDateTime), consumedKey);
+        if (-2 == surplus) {
             log.warn("策略奖品库存加锁失败 {}", lockKey);
         }
-        return lock;
+        return surplus >= 0;
     }
 
-
+    @Override
+    public long subtractionAwardStock(String cacheKey, long count, StrategyAwardStockKeyVO strategyAwardStockKeyVO, Date endDateTime) {
+        return redisService.subtractionStockBatch(cacheKey, awardStockLockKey(cacheKey), awardStockLockExpireMillis(endDateTime), count,
+                awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId()));
+    }
 
     @Override
-    public void awardStockConsumeSendQueue(StrategyAwardStockKeyVO strategyAwardStockKeyVO) {
-        String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_QUERY_KEY + Constants.UNDERLINE + strategyAwardStockKeyVO.getStrategyId() + Constants.UNDERLINE + strategyAwardStockKeyVO.getAwardId();
-        // 目标队列本质： list
-        RBlockingQueue<StrategyAwardStockKeyVO> blockingQueue = redisService.getBlockingQueue(cacheKey);
-        // 延迟逻辑包装器本质： ZSet + 消息通知
-        RDelayedQueue<StrategyAwardStockKeyVO> delayedQueue = redisService.getDelayedQueue(blockingQueue);
-        // 先放入延迟队列 再放入目标队列
-        delayedQueue.offer(strategyAwardStockKeyVO, 3, TimeUnit.SECONDS);
+    public long leaseAwardStock(String cacheKey, long leaseCount, StrategyAwardStockKeyVO strategyAwardStockKeyVO, long consumedCount, Date endDateTime) {
+        return redisService.leaseStock(cacheKey, awardStockLockKey(cacheKey), awardStockReturnedKey(cacheKey), awardStockLockExpireMillis(endDateTime), leaseCount,
+                awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId()), consumedCount);
     }
 
     @Override
-    public StrategyAwardStockKeyVO takeQueueValue(Long strategyId, Integer awardId){
-        String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_QUERY_KEY + Constants.UNDERLINE + strategyId + Constants.UNDERLINE + awardId;
-        RBlockingQueue<StrategyAwardStockKeyVO> destinationQueue = redisService.getBlockingQueue(cacheKey);
+    public void returnAwardStock(String cacheKey, long unusedCount, StrategyAwardStockKeyVO strategyAwardStockKeyVO, long consumedCount) {
+        redisService.returnStock(awardStockReturnedKey(cacheKey), unusedCount,
+                awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId()), consumedCount);
+    }
+
+    private String awardStockLockKey(String cacheKey) {
+        return cacheKey + Constants.UNDERLINE + "lock";
+    }
+
+    private String awardStockReturnedKey(String cacheKey) {
+        return cacheKey + Constants.UNDERLINE + "returned";
+    }
+
+    private String awardStockConsumedKey(Long strategyId, Integer awardId) {
+        return Constants.RedisKey.STRATEGY_AWARD_STOCK_CONSUMED_KEY + strategyId + Constants.UNDERLINE + awardId;
+    }
 
-        return destinationQueue.poll();// 为了快速清空 直接用poll() 取不到就break ，不要阻塞等待 浪费连接资源
+    private long awardStockLockExpireMillis(Date endDateTime) {
+        return null == endDateTime ? 0 : endDateTime.getTime() - System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
     }
 
     @Override
-    public List<StrategyAwardStockKeyVO> takeQueueValueBatch(Long strategyId, Integer awardId){
-        String cacheKey = Constants.RedisKey.STRATEGY_AWARD_COUNT_QUERY_KEY + Constants.UNDERLINE + strategyId + Constants.UNDERLINE + awardId;
-        RBlockingQueue<StrategyAwardStockKeyVO> destinationQueue = redisService.getBlockingQueue(cacheKey);
+    public void awardStockConsumeIncr(StrategyAwardStockKeyVO strategyAwardStockKeyVO, int count) {
+        redisService.incrBy(awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId()), count);
+    }
 
-        int MAX_BATCH_SIZE = 50;
-        List<StrategyAwardStockKeyVO> batchList = new ArrayList<>(MAX_BATCH_SIZE);
-        destinationQueue.drainTo(batchList, MAX_BATCH_SIZE);
-        return batchList;// 为了快速清空 直接用poll() 取不到就break ，不要阻塞等待 浪费连接资源
+    @Override
+    public long syncStrategyAwardStock(Long strategyId, Integer awardId) {
+        String consumedKey = awardStockConsumedKey(strategyId, awardId);
+        // 取走计数并清零，之后的扣减累加到下一次同步
+        long consumedCount = redisService.getAndSetAtomicLong(consumedKey, 0);
+        if (consumedCount <= 0) return 0;
+        try {
+            // Redis 已发放的数量为准，数据库剩余库存不足时扣减到 0，不因条件不满足丢掉取走的计数
+            if (0 == strategyAwardDao.updateStrategyAwardStockBatch(strategyId, awardId, consumedCount)) {
+                log.error("同步奖品库存，奖品不存在，计数保留到下次同步 strategyId: {} awardId: {} consumedCount: {}", strategyId, awardId, consumedCount);
+                redisService.incrBy(consumedKey, consumedCount);
+                return 0;
+            }
+            return consumedCount;
+        } catch (Exception e) {
+            // 更新失败把计数加回，下次同步一起更新
+            redisService.incrBy(consumedKey, consumedCount);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Long> queryAwardStockConsumedCount(List<StrategyAwardStockKeyVO> strategyAwardStockKeyVOS) {
+        List<String> consumedKeys = new ArrayList<>(strategyAwardStockKeyVOS.size());
+        for (StrategyAwardStockKeyVO strategyAwardStockKeyVO : strategyAwardStockKeyVOS) {
+            consumedKeys.add(awardStockConsumedKey(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId()));
+        }
+        return redisService.getAtomicLongs(consumedKeys);
     }
 
     @Override
@@ -314,16 +396,11 @@ public class StrategyRepository implements IStrategyRepository {
         strategyAwardDao.updateStrategyAwardStock(strategyAward);
     }
 
-    @Override
-    public void updateStrategyAwardStockBatch(Long strategyId, Integer awardId, int totalCount) {
-        strategyAwardDao.updateStrategyAwardStockBatch(strategyId, awardId, totalCount);
-    }
-
     @Override
     public StrategyAwardEntity queryStrategyAwardEntity(Long strategyId, Integer awardId) {
         // 优先从缓存获取
         String cacheKey = Constants.RedisKey.STRATEGY_AWARD_KEY + strategyId + Constants.UNDERLINE + awardId;
-        StrategyAwardEntity strategyAwardEntity = redisService.getValue(cacheKey);
+        StrategyAwardEntity strategyAwardEntity = redisService.getNearValue(cacheKey);
         if (null != strategyAwardEntity) return strategyAwardEntity;
         // 查询数据
         StrategyAward strategyAwardReq = new StrategyAward();
@@ -342,7 +419,7 @@ public class StrategyRepository implements IStrategyRepository {
                 .sort(strategyAwardRes.getSort())
                 .build();
         // 缓存结果
-        redisService.setValue(cacheKey, strategyAwardEntity);
+        redisService.setNearValue(cacheKey, strategyAwardEntity);
         // 返回数据
         return strategyAwardEntity;
     }
@@ -406,15 +483,11 @@ public class StrategyRepository implements IStrategyRepository {
 
         ruleWeightVOS = new ArrayList<>();
         // 1. 查询权重规则配置
-        StrategyRule strategyRuleReq = new StrategyRule();
-        strategyRuleReq.setStrategyId(strategyId);
-        strategyRuleReq.setRuleModel(DefaultChainFactory.LogicModel.RULE_WEIGHT.getCode());
-        String ruleValue = strategyRuleDao.queryStrategyRuleValue(strategyRuleReq);
-        // 2. 借助实体对象转换规则
-        StrategyRuleEntity strategyRuleEntity = new StrategyRuleEntity();
-        strategyRuleEntity.setRuleModel(DefaultChainFactory.LogicModel.RULE_WEIGHT.getCode());
-        strategyRuleEntity.setRuleValue(ruleValue);
-        Map<String, List<Integer>> ruleWeightValues = strategyRuleEntity.getRuleWeightValues();
+        StrategyRuleValueVO strategyRuleValueVO = queryStrategyRuleValueVO(strategyId, null, DefaultChainFactory.LogicModel.RULE_WEIGHT.getCode());
+        if (null == strategyRuleValueVO || null == strategyRuleValueVO.getWeightAwardIds()) return ruleWeightVOS;
+        String ruleValue = strategyRuleValueVO.getRuleValue();
+        // 2. 装配时已解析的权重规则
+        Map<String, List<Integer>> ruleWeightValues = strategyRuleValueVO.getWeightAwardIds();
         // 3. 遍历规则组装奖品配置
         Set<String> ruleWeightKeys = ruleWeightValues.keySet();
         for (String ruleWeightKey : ruleWeightKeys) {
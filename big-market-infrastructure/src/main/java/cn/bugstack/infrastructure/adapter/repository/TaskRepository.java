@@ -1,14 +1,19 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
+import cn.bugstack.domain.task.model.entity.TaskBacklogEntity;
 import cn.bugstack.domain.task.model.entity.TaskEntity;
 import cn.bugstack.domain.task.repository.ITaskRepository;
-import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.dao.IMessageConsumeRecordDao;
 import cn.bugstack.infrastructure.dao.ITaskDao;
 import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.dao.po.TaskBacklog;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -22,42 +27,84 @@ public class TaskRepository implements ITaskRepository {
     @Resource
     private ITaskDao taskDao;
     @Resource
-    private EventPublisher eventPublisher;
+    private TaskMessagePublisher taskMessagePublisher;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private IMessageConsumeRecordDao messageConsumeRecordDao;
 
     @Override
-    public List<TaskEntity> queryNoSendMessageTaskList() {
-        List<Task> tasks = taskDao.queryNoSendMessageTaskList();
-        List<TaskEntity> taskEntities = new ArrayList<>(tasks.size());
-        for (Task task : tasks) {
-            TaskEntity taskEntity = new TaskEntity();
-            taskEntity.setUserId(task.getUserId());
-            taskEntity.setTopic(task.getTopic());
-            taskEntity.setMessageId(task.getMessageId());
-            taskEntity.setMessage(task.getMessage());
-            taskEntities.add(taskEntity);
+    public List<TaskEntity> claimNoSendMessageTaskList(int limit, long claimDelaySeconds) {
+        // 认领和更新为投递中在同一事务内完成，SKIP LOCKED 保证多个节点同时认领时互不阻塞、不重复
+        List<Task> tasks = transactionTemplate.execute(status -> {
+            List<Task> claimedTasks = taskDao.queryNoSendMessageTaskListForUpdate(claimDelaySeconds, limit);
+            if (!claimedTasks.isEmpty()) {
+                List<String> messageIds = new ArrayList<>(claimedTasks.size());
+                for (Task task : claimedTasks) {
+                    messageIds.add(task.getMessageId());
+                }
+                taskDao.updateTaskSendMessageSending(messageIds);
+            }
+            return claimedTasks;
+        });
+        return toTaskEntities(tasks);
+    }
+
+    @Override
+    public List<String> sendMessageBatch(List<TaskEntity> taskEntities, long confirmTimeoutMillis) {
+        List<Task> tasks = new ArrayList<>(taskEntities.size());
+        for (TaskEntity taskEntity : taskEntities) {
+            Task task = new Task();
+            task.setUserId(taskEntity.getUserId());
+            task.setTopic(taskEntity.getTopic());
+            task.setMessageId(taskEntity.getMessageId());
+            task.setMessage(taskEntity.getMessage());
+            tasks.add(task);
         }
-        return taskEntities;
+        List<Task> confirmedTasks = taskMessagePublisher.publishConfirmed(tasks, confirmTimeoutMillis);
+        List<String> confirmedMessageIds = new ArrayList<>(confirmedTasks.size());
+        for (Task task : confirmedTasks) {
+            confirmedMessageIds.add(task.getMessageId());
+        }
+        return confirmedMessageIds;
     }
 
     @Override
-    public void sendMessage(TaskEntity taskEntity) {
-        eventPublisher.publish(taskEntity.getTopic(), taskEntity.getMessage());
+    public void updateTaskSendMessageCompletedBatch(List<String> messageIds) {
+        taskDao.updateTaskSendMessageCompletedBatch(messageIds);
     }
 
     @Override
-    public void updateTaskSendMessageCompleted(String userId, String messageId) {
-        Task taskReq = new Task();
-        taskReq.setUserId(userId);
-        taskReq.setMessageId(messageId);
-        taskDao.updateTaskSendMessageCompleted(taskReq);
+    public void updateTaskSendMessageFailBatch(List<String> messageIds) {
+        taskDao.updateTaskSendMessageFailBatch(messageIds);
     }
 
     @Override
-    public void updateTaskSendMessageFail(String userId, String messageId) {
-        Task taskReq = new Task();
-        taskReq.setUserId(userId);
-        taskReq.setMessageId(messageId);
-        taskDao.updateTaskSendMessageFail(taskReq);
+    public TaskBacklogEntity queryTaskBacklog() {
+        TaskBacklog taskBacklog = taskDao.queryTaskBacklog();
+        if (null == taskBacklog) return TaskBacklogEntity.builder().build();
+        return TaskBacklogEntity.builder()
+                .count(null == taskBacklog.getCount() ? 0 : taskBacklog.getCount())
+                .lagSeconds(null == taskBacklog.getLagSeconds() ? 0 : taskBacklog.getLagSeconds())
+                .build();
+    }
+
+    @Override
+    public int deleteExpiredMessageConsumeRecord(Date expireTime, int limit) {
+        return messageConsumeRecordDao.deleteExpired(expireTime, limit);
+    }
+
+    private List<TaskEntity> toTaskEntities(List<Task> tasks) {
+        List<TaskEntity> taskEntities = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            TaskEntity taskEntity = new TaskEntity();
+            taskEntity.setUserId(task.getUserId());
+            taskEntity.setTopic(task.getTopic());
+            taskEntity.setMessageId(task.getMessageId());
+            taskEntity.setMessage(task.getMessage());
+            taskEntities.add(taskEntity);
+        }
+        return taskEntities;
     }
 
 }
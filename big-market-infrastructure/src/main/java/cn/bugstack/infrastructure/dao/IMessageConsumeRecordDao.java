@@ -0,0 +1,28 @@
+package cn.bugstack.infrastructure.dao;
+
+import cn.bugstack.infrastructure.dao.po.MessageConsumeRecord;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gzc
+ * @description 消息消费记录表；不分表，调用方按用户设置分库并在业务事务内调用
+ */
+@Mapper
+public interface IMessageConsumeRecordDao {
+
+    List<String> queryConsumedMessageIds(@Param("topic") String topic, @Param("messageIds") List<String> messageIds);
+
+    void insertBatch(List<MessageConsumeRecord> messageConsumeRecords);
+
+    /**
+     * 删除创建时间早于 expireTime 的消费记录；调用方设置分库
+     *
+     * @return 删除的数量
+     */
+    int deleteExpired(@Param("expireTime") Date expireTime, @Param("limit") int limit);
+
+}
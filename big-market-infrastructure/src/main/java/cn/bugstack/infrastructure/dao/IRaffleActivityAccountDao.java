@@ -3,6 +3,7 @@ package cn.bugstack.infrastructure.dao;
 import cn.bugstack.infrastructure.dao.po.RaffleActivityAccount;
 import cn.bugstack.middleware.db.router.annotation.DBRouter;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -22,15 +23,15 @@ public interface IRaffleActivityAccountDao {
 
     int updateActivityAccountSubtractionQuota(RaffleActivityAccount raffleActivityAccount);
 
-    int updateActivityAccountSubtractionQuotaTen(RaffleActivityAccount raffleActivityAccount);
+    int updateActivityAccountSubtractionQuotaBatch(@Param("account") RaffleActivityAccount raffleActivityAccount, @Param("count") int count);
 
     int updateActivityAccountMonthSubtractionQuota(RaffleActivityAccount raffleActivityAccount);
 
-    int updateActivityAccountMonthSubtractionQuotaTen(RaffleActivityAccount raffleActivityAccount);
+    int updateActivityAccountMonthSubtractionQuotaBatch(@Param("account") RaffleActivityAccount raffleActivityAccount, @Param("count") int count);
 
     int updateActivityAccountDaySubtractionQuota(RaffleActivityAccount raffleActivityAccount);
 
-    int updateActivityAccountDaySubtractionQuotaTen(RaffleActivityAccount raffleActivityAccount);
+    int updateActivityAccountDaySubtractionQuotaBatch(@Param("account") RaffleActivityAccount raffleActivityAccount, @Param("count") int count);
 
     RaffleActivityAccount queryAccountByUserId(RaffleActivityAccount raffleActivityAccount);
 
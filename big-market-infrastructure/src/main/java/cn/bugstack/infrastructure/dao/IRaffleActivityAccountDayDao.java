@@ -3,6 +3,7 @@ package cn.bugstack.infrastructure.dao;
 import cn.bugstack.infrastructure.dao.po.RaffleActivityAccountDay;
 import cn.bugstack.middleware.db.router.annotation.DBRouter;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -16,7 +17,7 @@ public interface IRaffleActivityAccountDayDao {
 
     int updateActivityAccountDaySubtractionQuota(RaffleActivityAccountDay raffleActivityAccountDay);
 
-    int updateActivityAccountDaySubtractionQuotaTen(RaffleActivityAccountDay raffleActivityAccountDay);
+    int updateActivityAccountDaySubtractionQuotaBatch(@Param("accountDay") RaffleActivityAccountDay raffleActivityAccountDay, @Param("count") int count);
 
     @DBRouter
     RaffleActivityAccountDay queryActivityAccountDayByUserId(RaffleActivityAccountDay raffleActivityAccountDayReq);
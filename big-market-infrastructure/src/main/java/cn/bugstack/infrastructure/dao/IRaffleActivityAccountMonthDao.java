@@ -3,6 +3,7 @@ package cn.bugstack.infrastructure.dao;
 import cn.bugstack.infrastructure.dao.po.RaffleActivityAccountMonth;
 import cn.bugstack.middleware.db.router.annotation.DBRouter;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -19,7 +20,7 @@ public interface IRaffleActivityAccountMonthDao {
 
     int updateActivityAccountMonthSubtractionQuota(RaffleActivityAccountMonth raffleActivityAccountMonth);
 
-    int updateActivityAccountMonthSubtractionQuotaTen(RaffleActivityAccountMonth raffleActivityAccountMonth);
+    int updateActivityAccountMonthSubtractionQuotaBatch(@Param("accountMonth") RaffleActivityAccountMonth raffleActivityAccountMonth, @Param("count") int count);
 
     void addAccountQuota(RaffleActivityAccountMonth raffleActivityAccountMonth);
 
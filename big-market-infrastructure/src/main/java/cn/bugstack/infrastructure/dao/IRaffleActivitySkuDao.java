@@ -2,6 +2,7 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.RaffleActivitySku;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -17,6 +18,8 @@ public interface IRaffleActivitySkuDao {
 
     void updateActivitySkuStock(Long sku);
 
+    int updateActivitySkuStockBatch(@Param("sku") Long sku, @Param("deductCount") long deductCount);
+
     void clearActivitySkuStock(Long sku);
 
     List<RaffleActivitySku> queryActivitySkuListByActivityId(Long activityId);
@@ -18,11 +18,9 @@ public interface IStrategyAwardDao {
 
     List<StrategyAward> queryStrategyAwardListByStrategyId(Long strategyId);
 
-    String queryStrategyAwardRuleModels(StrategyAward strategyAward);
-
     void updateStrategyAwardStock(StrategyAward strategyAward);
 
-    void updateStrategyAwardStockBatch(@Param("strategyId") Long strategyId, @Param("awardId") Integer awardId, @Param("deductCount") int deductCount);
+    int updateStrategyAwardStockBatch(@Param("strategyId") Long strategyId, @Param("awardId") Integer awardId, @Param("deductCount") long deductCount);
 
     StrategyAward queryStrategyAward(StrategyAward strategyAwardReq);
 
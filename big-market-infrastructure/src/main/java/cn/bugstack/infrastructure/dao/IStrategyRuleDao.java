@@ -19,4 +19,6 @@ public interface IStrategyRuleDao {
 
     String queryStrategyRuleValue(StrategyRule strategyRule);
 
+    List<StrategyRule> queryStrategyRuleListByStrategyId(Long strategyId);
+
 }
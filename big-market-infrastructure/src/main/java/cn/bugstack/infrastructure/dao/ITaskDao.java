@@ -1,9 +1,11 @@
 package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.Task;
-import cn.bugstack.middleware.db.router.annotation.DBRouter;
+import cn.bugstack.infrastructure.dao.po.TaskBacklog;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -16,12 +18,29 @@ public interface ITaskDao {
 
     void insert(Task task);
 
-    @DBRouter
-    void updateTaskSendMessageCompleted(Task task);
+    void insertBatch(List<Task> tasks);
 
-    @DBRouter
-    void updateTaskSendMessageFail(Task task);
+    /**
+     * 认领待发送的任务「FOR UPDATE SKIP LOCKED」；需在事务内调用，并在同一事务内更新为投递中
+     *
+     * @param claimDelaySeconds 任务更新时间距今超过该秒数才可认领
+     * @param limit             认领数量
+     */
+    List<Task> queryNoSendMessageTaskListForUpdate(@Param("claimDelaySeconds") long claimDelaySeconds, @Param("limit") int limit);
 
-    List<Task> queryNoSendMessageTaskList();
+    void updateTaskSendMessageSending(List<String> messageIds);
+
+    void updateTaskSendMessageCompletedBatch(List<String> messageIds);
+
+    void updateTaskSendMessageFailBatch(List<String> messageIds);
+
+    TaskBacklog queryTaskBacklog();
+
+    /**
+     * 查询用户尚未被消费的任务；任务与消费记录在同一分库，调用方设置分库
+     *
+     * @param createTime 只查询该时间之后创建的任务「消费记录保留期内」
+     */
+    List<Task> queryUnconsumedTaskList(@Param("userId") String userId, @Param("topic") String topic, @Param("createTime") Date createTime);
 
 }
@@ -4,6 +4,8 @@ import cn.bugstack.infrastructure.dao.po.UserAwardRecord;
 import cn.bugstack.middleware.db.router.annotation.DBRouterStrategy;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 用户中奖记录表
@@ -15,6 +17,8 @@ public interface IUserAwardRecordDao {
 
     void insert(UserAwardRecord userAwardRecord);
 
+    void insertBatch(List<UserAwardRecord> userAwardRecords);
+
     int updateAwardRecordCompletedState(UserAwardRecord userAwardRecordReq);
 
 }
@@ -21,9 +21,13 @@ public interface IUserRaffleOrderDao {
 
     void insertTen(@Param("user") UserRaffleOrder userRaffleOrder,@Param("orderIds") List<String> orderIds);
 
+    void insertBatch(List<UserRaffleOrder> userRaffleOrders);
+
     @DBRouter
     UserRaffleOrder queryNoUsedRaffleOrder(UserRaffleOrder userRaffleOrderReq);
 
     int updateUserRaffleOrderStateUsed(UserRaffleOrder userRaffleOrderReq);
 
+    int updateUserRaffleOrderStateUsedBatch(@Param("userId") String userId, @Param("orderIds") List<String> orderIds);
+
 }
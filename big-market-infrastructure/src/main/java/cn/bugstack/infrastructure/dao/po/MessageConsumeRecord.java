@@ -0,0 +1,31 @@
+package cn.bugstack.infrastructure.dao.po;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author gzc
+ * @description 消息消费记录；批量消费时按消息ID防重，与业务数据在同一事务内写入
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MessageConsumeRecord {
+
+    /** 自增ID */
+    private Long id;
+    /** 用户ID */
+    private String userId;
+    /** 消息主题 */
+    private String topic;
+    /** 消息编号 */
+    private String messageId;
+    /** 创建时间 */
+    private Date createTime;
+
+}
@@ -0,0 +1,17 @@
+package cn.bugstack.infrastructure.dao.po;
+
+import lombok.Data;
+
+/**
+ * @author gzc
+ * @description 任务表积压统计；未完成「create、sending、fail」的任务
+ */
+@Data
+public class TaskBacklog {
+
+    /** 未完成任务数 */
+    private Long count;
+    /** 最早未完成任务距今的秒数 */
+    private Long lagSeconds;
+
+}
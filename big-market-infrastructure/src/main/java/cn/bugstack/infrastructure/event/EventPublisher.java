@@ -3,6 +3,7 @@ package cn.bugstack.infrastructure.event;
 import cn.bugstack.types.event.BaseEvent;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -37,4 +38,16 @@ public class EventPublisher {
         }
     }
 
+    /**
+     * 发送消息，不等待确认；Broker 确认结果通过 correlationData.getFuture() 获取，需开启 publisher-confirm-type: correlated
+     */
+    public void publish(String topic, String eventMessageJSON, CorrelationData correlationData) {
+        try {
+            rabbitTemplate.convertAndSend(topic, (Object) eventMessageJSON, correlationData);
+        } catch (Exception e) {
+            log.error("发送MQ消息失败 topic:{} message:{}", topic, eventMessageJSON, e);
+            throw e;
+        }
+    }
+
 }
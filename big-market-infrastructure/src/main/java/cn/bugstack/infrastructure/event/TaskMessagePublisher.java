@@ -0,0 +1,210 @@
+package cn.bugstack.infrastructure.event;
+
+import cn.bugstack.infrastructure.dao.ITaskDao;
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.middleware.db.router.DBContextHolder;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author gzc
+ * @description 任务消息发送；事务提交后把任务放入内存有界队列，由发送线程批量发送并统一等待 Broker 确认。
+ * 1. 发送不占用请求线程；事务回滚时不发送
+ * 2. 已确认的任务按分库用一条 UPDATE 批量更新为完成，消费端不再逐条更新任务表
+ * 3. 队列已满、发送失败或进程宕机时任务保持 create 状态，由 SendMessageTaskJob 认领补偿
+ */
+@Slf4j
+@Component
+public class TaskMessagePublisher {
+
+    @Resource
+    private EventPublisher eventPublisher;
+    @Resource
+    private ITaskDao taskDao;
+    @Resource
+    private IDBRouterStrategy dbRouter;
+
+    @Value("${task.publisher.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每批发送的最大数量
+    @Value("${task.publisher.batch-size:200}")
+    private int batchSize;
+
+    // 一批消息等待 Broker 确认的超时时间
+    @Value("${task.publisher.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+
+    private BlockingQueue<Task> queue;
+    private Thread publishThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        publishThread = new Thread(this::publishLoop, "task-message-publisher");
+        publishThread.setDaemon(true);
+        publishThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        publishThread.interrupt();
+        publishThread.join(confirmTimeoutMillis);
+        // 发送线程退出后把队列中剩余的任务发完
+        List<Task> tasks = new ArrayList<>();
+        while (queue.drainTo(tasks, batchSize) > 0) {
+            publishBatch(tasks);
+            tasks.clear();
+        }
+    }
+
+    /**
+     * 事务提交后发送；必须在写入任务的事务内调用，没有事务时直接放入队列
+     */
+    public void publishAfterCommit(Task task) {
+        publishAfterCommit(Collections.singletonList(task));
+    }
+
+    /**
+     * 事务提交后批量发送；必须在写入任务的事务内调用，没有事务时直接放入队列
+     */
+    public void publishAfterCommit(List<Task> tasks) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(tasks);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(tasks);
+            }
+        });
+    }
+
+    /**
+     * 批量发送，全部发出后统一等待 Broker 确认
+     *
+     * @return 已确认的任务
+     */
+    public List<Task> publishConfirmed(List<Task> tasks, long confirmTimeoutMillis) {
+        // 1. 全部发出，不逐条等待确认
+        Map<CorrelationData, Task> correlations = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            CorrelationData correlationData = new CorrelationData(task.getMessageId());
+            try {
+                eventPublisher.publish(task.getTopic(), task.getMessage(), correlationData);
+                correlations.put(correlationData, task);
+            } catch (Exception e) {
+                log.error("批量发送MQ消息失败 userId: {} topic: {} messageId: {}", task.getUserId(), task.getTopic(), task.getMessageId());
+            }
+        }
+
+        // 2. 统一等待确认，超时或 nack 的消息不计入已确认
+        List<Task> confirmedTasks = new ArrayList<>(correlations.size());
+        long deadline = System.currentTimeMillis() + confirmTimeoutMillis;
+        for (Map.Entry<CorrelationData, Task> entry : correlations.entrySet()) {
+            CorrelationData correlationData = entry.getKey();
+            try {
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (confirm.isAck()) {
+                    confirmedTasks.add(entry.getValue());
+                } else {
+                    log.error("批量发送MQ消息未确认 messageId: {} reason: {}", correlationData.getId(), confirm.getReason());
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                log.error("批量发送MQ消息等待确认失败 messageId: {}", correlationData.getId(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return confirmedTasks;
+    }
+
+    private void enqueue(List<Task> tasks) {
+        for (Task task : tasks) {
+            if (!queue.offer(task)) {
+                // 队列已满不阻塞请求线程，任务保持 create 状态等待补偿
+                log.warn("任务消息发送队列已满，等待任务补偿 userId: {} topic: {} messageId: {}", task.getUserId(), task.getTopic(), task.getMessageId());
+            }
+        }
+    }
+
+    private void publishLoop() {
+        List<Task> tasks = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Task task = queue.poll(1, TimeUnit.SECONDS);
+                if (null == task) continue;
+                tasks.add(task);
+                queue.drainTo(tasks, batchSize - 1);
+                publishBatch(tasks);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (Exception e) {
+                log.error("任务消息批量发送失败 count: {}", tasks.size(), e);
+            } finally {
+                tasks.clear();
+            }
+        }
+    }
+
+    private void publishBatch(List<Task> tasks) {
+        List<Task> confirmedTasks = publishConfirmed(tasks, confirmTimeoutMillis);
+        if (confirmedTasks.isEmpty()) return;
+
+        // 按分库分组，每个分库一条 UPDATE
+        Map<String, List<Task>> dbTasks = new HashMap<>();
+        for (Task task : confirmedTasks) {
+            dbTasks.computeIfAbsent(dbKey(task.getUserId()), key -> new ArrayList<>()).add(task);
+        }
+        for (List<Task> group : dbTasks.values()) {
+            List<String> messageIds = new ArrayList<>(group.size());
+            for (Task task : group) {
+                messageIds.add(task.getMessageId());
+            }
+            try {
+                dbRouter.doRouter(group.get(0).getUserId());
+                taskDao.updateTaskSendMessageCompletedBatch(messageIds);
+            } catch (Exception e) {
+                // 更新失败的任务保持 create 状态，补偿时重复发送，消费端按业务ID幂等
+                log.error("任务消息已发送，更新任务完成失败 count: {}", messageIds.size(), e);
+            } finally {
+                dbRouter.clear();
+            }
+        }
+    }
+
+    private String dbKey(String userId) {
+        try {
+            dbRouter.doRouter(userId);
+            return DBContextHolder.getDBKey();
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package cn.bugstack.infrastructure.id;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.types.common.Constants;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import cn.bugstack.types.id.IOrderIdGenerator;
+import cn.bugstack.types.id.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author gzc
+ * @description 订单号生成器；节点ID通过 Redis 租约分配，定时续期。
+ * 1. 租约续期失败时保留节点ID到本地记录的到期时间，到期后不再生成订单号，避免和重新获取该节点ID的节点重复
+ * 2. 订单号携带 userId 的路由位，与 db-router 按 userId 计算的库表一致「SnowflakeIdGenerator.routeIndex」，便于按订单号排查所在库表
+ */
+@Slf4j
+@Component
+public class OrderIdGenerator implements IOrderIdGenerator {
+
+    @Resource
+    private IRedisService redisService;
+
+    // 节点ID租约有效期
+    @Value("${order-id.worker-lease-expire-millis:30000}")
+    private long leaseExpireMillis;
+
+    @Value("${mini-db-router.jdbc.datasource.dbCount}")
+    private int dbCount;
+
+    @Value("${mini-db-router.jdbc.datasource.tbCount}")
+    private int tbCount;
+
+    private final SnowflakeIdGenerator snowflakeIdGenerator = new SnowflakeIdGenerator();
+
+    // 租约持有者标识，每个进程唯一
+    private final String owner = UUID.randomUUID().toString();
+
+    private volatile WorkerLease workerLease;
+
+    @PostConstruct
+    public void init() {
+        if (dbCount * tbCount > SnowflakeIdGenerator.MAX_ROUTE_SIZE) {
+            throw new IllegalStateException("订单号路由位不足 dbCount * tbCount: " + dbCount * tbCount);
+        }
+        workerLease = acquireWorkerLease(System.currentTimeMillis());
+    }
+
+    @Override
+    public String nextOrderId(String userId) {
+        WorkerLease lease = workerLease;
+        if (null == lease || lease.expireTime <= System.currentTimeMillis()) {
+            throw new AppException(ResponseCode.ORDER_ID_WORKER_ERROR.getCode(), ResponseCode.ORDER_ID_WORKER_ERROR.getInfo());
+        }
+        return String.valueOf(snowflakeIdGenerator.nextId(lease.workerId, SnowflakeIdGenerator.routeBits(userId)));
+    }
+
+    /**
+     * 续期节点ID租约；租约丢失或尚未分配时重新获取
+     */
+    @Scheduled(fixedDelayString = "${order-id.worker-lease-renew-millis:10000}")
+    public void renewWorkerLease() {
+        long now = System.currentTimeMillis();
+        WorkerLease lease = workerLease;
+        if (null != lease) {
+            try {
+                if (redisService.renewLease(leaseKey(lease.workerId), owner, leaseExpireMillis)) {
+                    workerLease = new WorkerLease(lease.workerId, now + leaseExpireMillis);
+                    return;
+                }
+                log.warn("订单号节点ID租约已丢失 workerId:{}", lease.workerId);
+                workerLease = null;
+            } catch (Exception e) {
+                // 续期异常保留租约到本地到期时间，下次继续续期
+                log.error("订单号节点ID租约续期失败 workerId:{}", lease.workerId, e);
+                return;
+            }
+        }
+        workerLease = acquireWorkerLease(now);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        WorkerLease lease = workerLease;
+        if (null == lease) return;
+        workerLease = null;
+        try {
+            redisService.releaseLease(leaseKey(lease.workerId), owner);
+        } catch (Exception e) {
+            log.error("订单号节点ID租约释放失败 workerId:{}", lease.workerId, e);
+        }
+    }
+
+    private WorkerLease acquireWorkerLease(long now) {
+        // 随机起点，多个节点同时启动时减少对同一个节点ID的争抢
+        int start = ThreadLocalRandom.current().nextInt(SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+        try {
+            for (int i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+                int workerId = (start + i) & SnowflakeIdGenerator.MAX_WORKER_ID;
+                if (redisService.acquireLease(leaseKey(workerId), owner, leaseExpireMillis)) {
+                    log.info("订单号节点ID租约获取成功 workerId:{}", workerId);
+                    return new WorkerLease(workerId, now + leaseExpireMillis);
+                }
+            }
+            log.error("订单号节点ID租约获取失败，节点ID已全部分配");
+        } catch (Exception e) {
+            log.error("订单号节点ID租约获取失败", e);
+        }
+        return null;
+    }
+
+    private String leaseKey(int workerId) {
+        return Constants.RedisKey.ORDER_ID_WORKER_LEASE_KEY + workerId;
+    }
+
+    private static class WorkerLease {
+        private final int workerId;
+        private final long expireTime;
+
+        private WorkerLease(int workerId, long expireTime) {
+            this.workerId = workerId;
+            this.expireTime = expireTime;
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+package cn.bugstack.infrastructure.journal;
+
+import cn.bugstack.infrastructure.dao.ITaskDao;
+import cn.bugstack.infrastructure.dao.IUserRaffleOrderDao;
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.dao.po.UserRaffleOrder;
+import cn.bugstack.infrastructure.event.TaskMessagePublisher;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.middleware.db.router.DBContextHolder;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import cn.bugstack.types.common.Constants;
+import com.alibaba.fastjson2.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gzc
+ * @description 抽奖单写后日志；额度账本模式下抽奖单先写入 Redis 日志并直接返回，再按用户分区批量落库。
+ * 1. 日志按 userId 分区写入 Redis 列表，落库成功后才从列表头部移除，进程宕机不丢失
+ * 2. 每个分区同一时刻只有一个节点落库；一批日志按分库分组，每个分库一个事务
+ * 3. 落库前抽奖单保存在预留哈希中，查询未使用抽奖单、发奖前落库都从预留哈希读取，保证读到自己的写入
+ * 4. 单条日志落库失败次数达到 write-behind-max-failures 后移入死信列表，不再阻塞所在分区，由人工处理；
+ * 死信的抽奖单和对账任务未落库，账本已扣减的额度不会再对账到数据库，标记账本待重建，下次使用时按数据库额度重建
+ * 5. 各节点定时落库，只对有日志的分区争抢分区锁，起始分区随机，减少多个节点在同一分区上的争抢
+ */
+@Slf4j
+@Component
+public class PartakeOrderJournal {
+
+    // 预留哈希有效期；正常落库延迟远小于该时长
+    private static final long RESERVED_EXPIRE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Value("${activity.partake.write-behind:false}")
+    private boolean enabled;
+
+    @Value("${activity.partake.write-behind-partitions:4}")
+    private int partitions;
+
+    @Value("${activity.partake.write-behind-batch-size:200}")
+    private int batchSize;
+
+    @Value("${activity.partake.write-behind-max-failures:5}")
+    private int maxFailures;
+
+    @Resource
+    private IRedisService redisService;
+    @Resource
+    private IUserRaffleOrderDao userRaffleOrderDao;
+    @Resource
+    private ITaskDao taskDao;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private IDBRouterStrategy dbRouter;
+    @Resource
+    private TaskMessagePublisher taskMessagePublisher;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 写入日志
+     */
+    public void append(PartakeOrderJournalEntry entry) {
+        redisService.appendJournal(journalKey(entry.getUserId()), reservedKey(entry.getUserId(), entry.getActivityId()),
+                orderIds(entry), JSON.toJSONString(entry), RESERVED_EXPIRE_MILLIS);
+    }
+
+    /**
+     * 查询尚未落库的单抽抽奖单，取最新的一条；连抽的抽奖单在同一次请求中全部使用，不作为未使用的抽奖单返回
+     */
+    public UserRaffleOrder queryReservedOrder(String userId, Long activityId) {
+        if (!enabled) return null;
+        UserRaffleOrder latest = null;
+        for (String value : redisService.getJournalReservedValues(reservedKey(userId, activityId))) {
+            List<UserRaffleOrder> userRaffleOrders = JSON.parseObject(value, PartakeOrderJournalEntry.class).getUserRaffleOrders();
+            if (1 != userRaffleOrders.size()) continue;
+            UserRaffleOrder userRaffleOrder = userRaffleOrders.get(0);
+            if (null == latest || userRaffleOrder.getOrderTime().after(latest.getOrderTime())) {
+                latest = userRaffleOrder;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 查询尚未落库的对账任务；十连抽的多个抽奖单共用一条日志，按消息ID去重
+     */
+    public List<Task> queryReservedTasks(String userId, Long activityId) {
+        if (!enabled) return Collections.emptyList();
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        for (String value : redisService.getJournalReservedValues(reservedKey(userId, activityId))) {
+            Task task = JSON.parseObject(value, PartakeOrderJournalEntry.class).getTask();
+            if (null != task) {
+                tasks.putIfAbsent(task.getMessageId(), task);
+            }
+        }
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * 抽奖单尚未落库时立即落库；发奖更新抽奖单状态前调用
+     */
+    public void flushReserved(String userId, Long activityId, String orderId) {
+        if (!enabled) return;
+        String value = redisService.getJournalReserved(reservedKey(userId, activityId), orderId);
+        if (null == value) return;
+
+        PartakeOrderJournalEntry entry = JSON.parseObject(value, PartakeOrderJournalEntry.class);
+        try {
+            dbRouter.doRouter(userId);
+            transactionTemplate.execute(status -> {
+                insertIgnoreDuplicate(entry);
+                return 1;
+            });
+        } finally {
+            dbRouter.clear();
+        }
+        redisService.removeJournalReserved(reservedKey(userId, activityId), orderIds(entry));
+        publish(entry);
+    }
+
+    /**
+     * 分区落库；每个节点从随机分区开始依次检查，只对有日志的分区尝试获取分区锁，获取到的分区一直落库到日志为空。
+     * 分区锁不指定租期，由看门狗续期，积压较多时持续落库也不会被其他节点抢占
+     */
+    @Scheduled(fixedDelayString = "${activity.partake.write-behind-flush-millis:100}")
+    public void flush() {
+        if (!enabled) return;
+        int start = ThreadLocalRandom.current().nextInt(partitions);
+        for (int i = 0; i < partitions; i++) {
+            int partition = (start + i) % partitions;
+            // 空分区只读一次长度，不争抢分区锁
+            if (0 == redisService.journalSize(Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_KEY + partition)) continue;
+            RLock lock = redisService.getLock(Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_LOCK + partition);
+            try {
+                if (!lock.tryLock(0, -1, TimeUnit.SECONDS)) continue;
+                while (flush(partition) >= batchSize) {
+                    log.info("抽奖单日志落库，分区积压继续处理 partition: {}", partition);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("抽奖单日志落库失败 partition: {}", partition, e);
+            } finally {
+                if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private int flush(int partition) {
+        String journalKey = Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_KEY + partition;
+        List<String> values = redisService.rangeJournal(journalKey, batchSize);
+        if (values.isEmpty()) return 0;
+
+        // 1. 按分库分组；同一个分库的日志在一个事务内落库
+        Map<String, List<PartakeOrderJournalEntry>> shardEntries = new LinkedHashMap<>();
+        for (String value : values) {
+            PartakeOrderJournalEntry entry = JSON.parseObject(value, PartakeOrderJournalEntry.class);
+            shardEntries.computeIfAbsent(dbKey(entry.getUserId()), key -> new ArrayList<>()).add(entry);
+        }
+        Set<PartakeOrderJournalEntry> deadEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<PartakeOrderJournalEntry> entries : shardEntries.values()) {
+            persist(partition, entries, deadEntries);
+        }
+
+        // 2. 落库成功后移除日志和预留哈希，发送对账消息；头部已不是这一批时说明已被其他节点处理，不再重复移除。
+        // 死信日志移除预留哈希后再标记账本待重建，重建时不再把它当作待对账的扣减
+        if (!redisService.trimJournal(journalKey, values)) {
+            log.warn("抽奖单日志落库，日志已被其他节点移除 partition: {} size: {}", partition, values.size());
+            return 0;
+        }
+        for (List<PartakeOrderJournalEntry> entries : shardEntries.values()) {
+            for (PartakeOrderJournalEntry entry : entries) {
+                redisService.removeJournalReserved(reservedKey(entry.getUserId(), entry.getActivityId()), orderIds(entry));
+                if (deadEntries.contains(entry)) {
+                    markQuotaLedgerDirty(entry);
+                } else {
+                    publish(entry);
+                }
+            }
+        }
+        return values.size();
+    }
+
+    private void persist(int partition, List<PartakeOrderJournalEntry> entries, Set<PartakeOrderJournalEntry> deadEntries) {
+        try {
+            dbRouter.doRouter(entries.get(0).getUserId());
+            transactionTemplate.execute(status -> {
+                // 抽奖单按用户分表，每条日志一次多行写入；任务表不分表，整个分库一次多行写入
+                List<Task> tasks = new ArrayList<>(entries.size());
+                for (PartakeOrderJournalEntry entry : entries) {
+                    dbRouter.doRouter(entry.getUserId());
+                    userRaffleOrderDao.insertBatch(entry.getUserRaffleOrders());
+                    if (null != entry.getTask()) {
+                        tasks.add(entry.getTask());
+                    }
+                }
+                if (!tasks.isEmpty()) {
+                    taskDao.insertBatch(tasks);
+                }
+                return 1;
+            });
+        } catch (DuplicateKeyException e) {
+            // 部分日志已落库「发奖前已落库，或上次落库后未及时移除」，逐条落库并跳过已存在的记录
+            log.warn("抽奖单日志批量落库，唯一索引冲突，逐条落库 size: {}", entries.size());
+            persistEach(partition, entries, deadEntries);
+        } catch (RuntimeException e) {
+            log.warn("抽奖单日志批量落库失败，逐条落库 size: {}", entries.size(), e);
+            persistEach(partition, entries, deadEntries);
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    /**
+     * 逐条落库；其他日志落库成功而自身失败，或数据本身不合法时，判定为该条日志的问题并累加失败次数，达到上限移入死信。
+     * 全部失败时多为数据库不可用，不累加失败次数，抛出异常等待下次重试
+     */
+    private void persistEach(int partition, List<PartakeOrderJournalEntry> entries, Set<PartakeOrderJournalEntry> deadEntries) {
+        Map<PartakeOrderJournalEntry, RuntimeException> failedEntries = new IdentityHashMap<>();
+        for (PartakeOrderJournalEntry entry : entries) {
+            try {
+                dbRouter.doRouter(entry.getUserId());
+                transactionTemplate.execute(status -> {
+                    insertIgnoreDuplicate(entry);
+                    return 1;
+                });
+            } catch (RuntimeException e) {
+                failedEntries.put(entry, e);
+            }
+        }
+        if (failedEntries.isEmpty()) return;
+
+        // 仍有未落库且未移入死信的日志时抛出异常，不移除这一批
+        RuntimeException pendingException = null;
+        boolean partial = failedEntries.size() < entries.size();
+        String failureKey = Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_FAILURE_KEY + partition;
+        for (Map.Entry<PartakeOrderJournalEntry, RuntimeException> failed : failedEntries.entrySet()) {
+            PartakeOrderJournalEntry entry = failed.getKey();
+            RuntimeException e = failed.getValue();
+            if (!partial && !(e instanceof DataIntegrityViolationException)) {
+                pendingException = e;
+                continue;
+            }
+
+            String field = entry.getUserRaffleOrders().get(0).getOrderId();
+            long failures = redisService.incrJournalFailure(failureKey, field, RESERVED_EXPIRE_MILLIS);
+            if (failures < maxFailures) {
+                pendingException = e;
+                continue;
+            }
+
+            log.error("抽奖单日志落库失败次数超限，移入死信 userId: {} orderId: {} failures: {}", entry.getUserId(), field, failures, e);
+            redisService.deadLetterJournal(Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_DEAD_LETTER_KEY, failureKey, field, JSON.toJSONString(entry));
+            deadEntries.add(entry);
+        }
+        if (null != pendingException) throw pendingException;
+    }
+
+    private void insertIgnoreDuplicate(PartakeOrderJournalEntry entry) {
+        for (UserRaffleOrder userRaffleOrder : entry.getUserRaffleOrders()) {
+            try {
+                userRaffleOrderDao.insert(userRaffleOrder);
+            } catch (DuplicateKeyException e) {
+                log.info("抽奖单日志落库，抽奖单已存在 userId: {} orderId: {}", userRaffleOrder.getUserId(), userRaffleOrder.getOrderId());
+            }
+        }
+        Task task = entry.getTask();
+        if (null == task) return;
+        try {
+            taskDao.insert(task);
+        } catch (DuplicateKeyException e) {
+            log.info("抽奖单日志落库，任务已存在 userId: {} messageId: {}", task.getUserId(), task.getMessageId());
+        }
+    }
+
+    private void markQuotaLedgerDirty(PartakeOrderJournalEntry entry) {
+        String ledgerKey = Constants.RedisKey.ACTIVITY_ACCOUNT_QUOTA_LEDGER_KEY + entry.getActivityId() + Constants.UNDERLINE + entry.getUserId();
+        try {
+            redisService.markQuotaLedgerDirty(ledgerKey);
+        } catch (Exception e) {
+            log.error("抽奖单日志移入死信，额度账本标记待重建失败 userId: {} activityId: {}", entry.getUserId(), entry.getActivityId(), e);
+        }
+    }
+
+    private void publish(PartakeOrderJournalEntry entry) {
+        Task task = entry.getTask();
+        if (null == task) return;
+        // 发送消息【落库后执行，如果失败还有任务补偿】
+        taskMessagePublisher.publishAfterCommit(task);
+    }
+
+    /**
+     * 用户所在分库；与 doRouter 使用同一个路由计算
+     */
+    private String dbKey(String userId) {
+        try {
+            dbRouter.doRouter(userId);
+            return DBContextHolder.getDBKey();
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+    private String journalKey(String userId) {
+        int partition = (userId.hashCode() & Integer.MAX_VALUE) % partitions;
+        return Constants.RedisKey.ACTIVITY_PARTAKE_JOURNAL_KEY + partition;
+    }
+
+    private String reservedKey(String userId, Long activityId) {
+        return Constants.RedisKey.ACTIVITY_PARTAKE_RESERVED_KEY + activityId + Constants.UNDERLINE + userId;
+    }
+
+    private List<String> orderIds(PartakeOrderJournalEntry entry) {
+        List<String> orderIds = new ArrayList<>(entry.getUserRaffleOrders().size());
+        for (UserRaffleOrder userRaffleOrder : entry.getUserRaffleOrders()) {
+            orderIds.add(userRaffleOrder.getOrderId());
+        }
+        return orderIds;
+    }
+
+}
@@ -0,0 +1,31 @@
+package cn.bugstack.infrastructure.journal;
+
+import cn.bugstack.infrastructure.dao.po.Task;
+import cn.bugstack.infrastructure.dao.po.UserRaffleOrder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author gzc
+ * @description 抽奖单日志；一次参与活动产生的抽奖单和对账任务，作为一个整体落库
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PartakeOrderJournalEntry {
+
+    /** 用户ID */
+    private String userId;
+    /** 活动ID */
+    private Long activityId;
+    /** 抽奖单；单抽 1 条，十连抽 10 条 */
+    private List<UserRaffleOrder> userRaffleOrders;
+    /** 账户额度对账任务 */
+    private Task task;
+
+}
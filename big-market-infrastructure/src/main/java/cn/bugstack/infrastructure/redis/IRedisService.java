@@ -2,6 +2,8 @@ package cn.bugstack.infrastructure.redis;
 
 import org.redisson.api.*;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,6 +38,48 @@ public interface IRedisService {
      */
     <T> T getValue(String key);
 
+    /**
+     * 获取指定 key 的值「近端缓存」；本地缓存未命中时从 Redis 获取并回填本地。
+     * 只适用于装配后不再变化的配置类数据，返回对象为多个调用方共享，只读使用。
+     *
+     * @param key 键
+     * @return 值
+     */
+    <T> T getNearValue(String key);
+
+    /**
+     * 设置指定 key 的值「近端缓存」；同时写入 Redis 和本地缓存
+     *
+     * @param key   键
+     * @param value 值
+     */
+    <T> void setNearValue(String key, T value);
+
+    /**
+     * 失效近端缓存；清除本地缓存中以 keyPrefix 开头的 key，并通过 Redis 发布订阅通知其他节点
+     *
+     * @param keyPrefixes 键前缀
+     */
+    void invalidateNearValue(String... keyPrefixes);
+
+    /**
+     * 设置二进制值「不经过 JSON 编解码」
+     *
+     * @param key   键
+     * @param value 值
+     */
+    void setBinaryValue(String key, byte[] value);
+
+    /**
+     * 按偏移量读取二进制值的片段「GETRANGE」
+     *
+     * @param key    键
+     * @param offset 偏移量
+     * @param length 读取长度
+     * @return 片段，key 不存在或长度不足时返回 null
+     */
+    byte[] getBinaryRange(String key, long offset, int length);
+
     /**
      * 获取队列
      *
@@ -94,6 +138,23 @@ public interface IRedisService {
      */
     long incrBy(String key, long delta);
 
+    /**
+     * 设置新值并返回旧值「GETSET」；用于原子取走计数
+     *
+     * @param key   键
+     * @param value 新值
+     * @return 旧值，不存在时为 0
+     */
+    long getAndSetAtomicLong(String key, long value);
+
+    /**
+     * 批量获取计数「MGET」；一次往返读取多个 key
+     *
+     * @param keys 键
+     * @return 与 keys 顺序一致的值，不存在时为 0
+     */
+    List<Long> getAtomicLongs(List<String> keys);
+
     /**
      * 自减 Key 的值；1、2、3、4
      *
@@ -111,6 +172,205 @@ public interface IRedisService {
     long decrBy(String key, long delta);
 
 
+    /**
+     * 库存扣减「Lua 脚本，EVALSHA 一次往返」；有界扣减 + 库存槽位锁 + 已消耗计数累加原子完成。
+     * 槽位锁使用位图，扣减后的剩余值作为 offset，一个库存一个 bit，不再每个槽位一个 key。
+     *
+     * @param stockKey         库存 key
+     * @param slotLockKey      槽位锁位图 key
+     * @param lockExpireMillis 槽位锁过期时间，小于等于 0 不过期
+     * @param consumedKey      已消耗计数 key，为 null 时不计数
+     * @return 扣减后的剩余库存；-1 库存不足，-2 槽位已被锁定
+     */
+    long subtractionStock(String stockKey, String slotLockKey, long lockExpireMillis, String consumedKey);
+
+    /**
+     * 库存批量扣减「Lua 脚本」；一次扣减至多 count 个库存并锁定对应槽位，扣减成功的数量同时累加到已消耗计数。用于连抽一次预占多个库存
+     *
+     * @param stockKey         库存 key
+     * @param slotLockKey      槽位锁位图 key
+     * @param lockExpireMillis 槽位锁过期时间，小于等于 0 不过期
+     * @param count            扣减数量
+     * @param consumedKey      已消耗计数 key
+     * @return 实际扣减的库存数量，库存不足为 0
+     */
+    long subtractionStockBatch(String stockKey, String slotLockKey, long lockExpireMillis, long count, String consumedKey);
+
+    /**
+     * 库存租约「Lua 脚本」；一次租用至多 leaseCount 个库存，先从归还池租用，不足的部分扣减库存并锁定对应槽位，同时把 consumedCount 累加到已消耗计数
+     *
+     * @param stockKey         库存 key
+     * @param slotLockKey      槽位锁位图 key
+     * @param returnedKey      归还池 key
+     * @param lockExpireMillis 槽位锁过期时间，小于等于 0 不过期
+     * @param leaseCount       租约数量
+     * @param consumedKey      已消耗计数 key
+     * @param consumedCount    上一租约已消耗的数量
+     * @return 实际租到的库存数量，库存不足为 0
+     */
+    long leaseStock(String stockKey, String slotLockKey, String returnedKey, long lockExpireMillis, long leaseCount, String consumedKey, long consumedCount);
+
+    /**
+     * 库存归还「Lua 脚本」；未使用的租约库存放入归还池，由下一次租约优先租用，槽位保持加锁，同时把 consumedCount 累加到已消耗计数
+     *
+     * @param returnedKey   归还池 key
+     * @param returnCount   归还数量
+     * @param consumedKey   已消耗计数 key
+     * @param consumedCount 租约已消耗的数量
+     * @return 归还数量
+     */
+    long returnStock(String returnedKey, long returnCount, String consumedKey, long consumedCount);
+
+    /**
+     * 初始化额度账本「Lua 脚本」；账本为 hash，已存在时不覆盖，已标记待重建时整体覆盖
+     *
+     * @param ledgerKey     账本 key
+     * @param totalSurplus  总剩余额度
+     * @param month         月份
+     * @param monthSurplus  月剩余额度
+     * @param monthMirror   总账户中的月镜像额度，进入新月份时作为月剩余额度
+     * @param day           日期
+     * @param daySurplus    日剩余额度
+     * @param dayMirror     总账户中的日镜像额度，进入新日期时作为日剩余额度
+     * @param expireAtMillis 账本过期时间戳，小于等于 0 不过期
+     * @return true 初始化成功，false 账本已存在且无需重建
+     */
+    boolean initQuotaLedger(String ledgerKey, long totalSurplus, String month, long monthSurplus, long monthMirror, String day, long daySurplus, long dayMirror, long expireAtMillis);
+
+    /**
+     * 额度账本扣减「Lua 脚本，EVALSHA 一次往返」；总、月、日额度同时校验并扣减，月份或日期变化时按镜像额度重置
+     *
+     * @param ledgerKey 账本 key
+     * @param month     当前月份
+     * @param day       当前日期
+     * @param count     扣减数量
+     * @return 扣减后的总剩余额度；-1 总额度不足，-2 月额度不足，-3 日额度不足，-4 账本未初始化或待重建
+     */
+    long subtractionQuotaLedger(String ledgerKey, String month, String day, long count);
+
+    /**
+     * 额度账本增加「Lua 脚本」；充值入账或扣减回滚时调用，账本不存在或待重建时不处理「下次使用时从数据库初始化」
+     *
+     * @param ledgerKey  账本 key
+     * @param totalCount 总额度增加数量
+     * @param month      当前月份
+     * @param monthCount 月额度增加数量
+     * @param day        当前日期
+     * @param dayCount   日额度增加数量
+     * @return 1 已增加，0 账本不存在或待重建
+     */
+    long addQuotaLedger(String ledgerKey, long totalCount, String month, long monthCount, String day, long dayCount);
+
+    /**
+     * 标记额度账本待重建「Lua 脚本」；账本保留，扣减时视为未初始化，由调用方加账户锁后从数据库重建
+     *
+     * @param ledgerKey 账本 key
+     * @return true 已标记，false 账本不存在
+     */
+    boolean markQuotaLedgerDirty(String ledgerKey);
+
+    /**
+     * 写入日志「Lua 脚本，一次往返」；日志追加到列表尾部，同时按字段写入预留哈希，供落库前读取
+     *
+     * @param journalKey           日志列表 key
+     * @param reservedKey          预留哈希 key
+     * @param reservedFields       预留哈希字段
+     * @param entry                日志内容
+     * @param reservedExpireMillis 预留哈希有效期
+     * @return 写入后的日志长度
+     */
+    long appendJournal(String journalKey, String reservedKey, List<String> reservedFields, String entry, long reservedExpireMillis);
+
+    /**
+     * 读取日志列表头部的 count 条
+     */
+    List<String> rangeJournal(String journalKey, int count);
+
+    /**
+     * 日志长度；落库前判断分区是否有待落库的日志，空分区不再争抢分区锁
+     */
+    long journalSize(String journalKey);
+
+    /**
+     * 移除日志列表头部读取到的这一批「Lua 脚本」；日志落库后调用，头部已不是这一批「已被其他节点移除」时不移除
+     *
+     * @param journalKey 日志 key
+     * @param values     rangeJournal 读取到的日志
+     * @return true = 已移除
+     */
+    boolean trimJournal(String journalKey, List<String> values);
+
+    /**
+     * 累加日志落库失败次数「Lua 脚本」
+     *
+     * @param failureKey   失败计数哈希 key
+     * @param field        日志标识
+     * @param expireMillis 失败计数有效期
+     * @return 累加后的失败次数
+     */
+    long incrJournalFailure(String failureKey, String field, long expireMillis);
+
+    /**
+     * 日志移入死信列表并清除失败计数「Lua 脚本」
+     *
+     * @param deadLetterKey 死信列表 key
+     * @param failureKey    失败计数哈希 key
+     * @param field         日志标识
+     * @param entry         日志内容
+     */
+    void deadLetterJournal(String deadLetterKey, String failureKey, String field, String entry);
+
+    /**
+     * 读取预留哈希中的日志
+     */
+    String getJournalReserved(String reservedKey, String field);
+
+    /**
+     * 读取预留哈希中的全部日志
+     */
+    Collection<String> getJournalReservedValues(String reservedKey);
+
+    /**
+     * 移除预留哈希字段；日志落库后调用
+     */
+    void removeJournalReserved(String reservedKey, List<String> fields);
+
+    /**
+     * 获取租约「SET NX PX」
+     *
+     * @param leaseKey     租约 key
+     * @param owner        持有者标识
+     * @param expireMillis 有效期
+     * @return true = 获取成功
+     */
+    boolean acquireLease(String leaseKey, String owner, long expireMillis);
+
+    /**
+     * 续期租约；只有持有者可以续期
+     *
+     * @return false = 租约已过期或被其他持有者获取
+     */
+    boolean renewLease(String leaseKey, String owner, long expireMillis);
+
+    /**
+     * 释放租约；只有持有者可以释放
+     */
+    void releaseLease(String leaseKey, String owner);
+
+    /**
+     * 限流令牌获取「GCRA」；时间取 Redis 服务端时间，多个节点共享同一个限流速率。被限流时累加黑名单计数
+     *
+     * @param limiterKey            限流 key
+     * @param blacklistKey          黑名单计数 key；集群模式下需与限流 key 在同一个槽位
+     * @param intervalMicros        每个令牌的间隔
+     * @param burstMicros           允许突发的时长
+     * @param requestCount          获取的令牌数量
+     * @param blacklistCount        限流超过该次数后进入黑名单，0 为不启用
+     * @param blacklistExpireMillis 黑名单有效期
+     * @return 获取到的令牌数量，0 = 被限流，-1 = 黑名单
+     */
+    long acquireRateLimit(String limiterKey, String blacklistKey, long intervalMicros, long burstMicros, long requestCount, double blacklistCount, long blacklistExpireMillis);
+
     /**
      * 移除指定 key 的值
      *
@@ -1,10 +1,29 @@
 package cn.bugstack.infrastructure.redis;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.redisson.api.*;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -15,9 +34,247 @@ import java.util.concurrent.TimeUnit;
 @Service("redissonService")
 public class RedissonService implements IRedisService {
 
+    // 近端缓存失效通知
+    private static final String NEAR_CACHE_INVALIDATE_TOPIC = "big_market_near_cache_invalidate_topic";
+
     @Resource
     private RedissonClient redissonClient;
 
+    @Value("${redis.near-cache.maximum-size:10000}")
+    private long nearCacheMaximumSize;
+
+    // 兜底过期时间，防止失效通知丢失时本地长期读取旧值
+    @Value("${redis.near-cache.expire-after-write-seconds:600}")
+    private long nearCacheExpireAfterWriteSeconds;
+
+    private Cache<String, Object> nearCache;
+
+    // 库存扣减脚本；KEYS[1] 库存、KEYS[2] 槽位锁位图、KEYS[3] 已消耗计数「可选」，ARGV[1] 锁过期毫秒
+    private static final String SUBTRACTION_STOCK_SCRIPT =
+            "local surplus = redis.call('decr', KEYS[1]) " +
+            "if surplus < 0 then " +
+            "  redis.call('set', KEYS[1], 0) " +
+            "  return -1 " +
+            "end " +
+            "if redis.call('setbit', KEYS[2], surplus, 1) == 1 then " +
+            "  return -2 " +
+            "end " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "  redis.call('pexpire', KEYS[2], ARGV[1]) " +
+            "end " +
+            "if #KEYS > 2 then " +
+            "  redis.call('incr', KEYS[3]) " +
+            "end " +
+            "return surplus";
+
+    // 库存批量扣减脚本；按剩余库存扣减至多 ARGV[2] 个并锁定槽位，锁定成功的数量累加到已消耗计数
+    private static final String SUBTRACTION_STOCK_BATCH_SCRIPT =
+            "local surplus = tonumber(redis.call('get', KEYS[1]) or '0') " +
+            "local size = math.min(tonumber(ARGV[2]), surplus) " +
+            "if size <= 0 then " +
+            "  return 0 " +
+            "end " +
+            "local low = redis.call('decrby', KEYS[1], size) " +
+            "local granted = 0 " +
+            "for slot = low, low + size - 1 do " +
+            "  if redis.call('setbit', KEYS[2], slot, 1) == 0 then " +
+            "    granted = granted + 1 " +
+            "  end " +
+            "end " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "  redis.call('pexpire', KEYS[2], ARGV[1]) " +
+            "end " +
+            "if granted > 0 then " +
+            "  redis.call('incrby', KEYS[3], granted) " +
+            "end " +
+            "return granted";
+
+    // 库存租约脚本；先从归还池租用，不足的部分按剩余库存批量扣减并锁定槽位，同时把上一租约已消耗的数量累加到已消耗计数。
+    // KEYS[4] 归还池，ARGV[2] 租约数量、ARGV[3] 已消耗数量
+    private static final String LEASE_STOCK_SCRIPT =
+            "if tonumber(ARGV[3]) > 0 then " +
+            "  redis.call('incrby', KEYS[3], ARGV[3]) " +
+            "end " +
+            "local size = tonumber(ARGV[2]) " +
+            "local granted = math.min(size, tonumber(redis.call('get', KEYS[4]) or '0')) " +
+            "if granted > 0 then " +
+            "  redis.call('decrby', KEYS[4], granted) " +
+            "  size = size - granted " +
+            "end " +
+            "size = math.min(size, tonumber(redis.call('get', KEYS[1]) or '0')) " +
+            "if size <= 0 then " +
+            "  return granted " +
+            "end " +
+            "local low = redis.call('decrby', KEYS[1], size) " +
+            "for slot = low, low + size - 1 do " +
+            "  if redis.call('setbit', KEYS[2], slot, 1) == 0 then " +
+            "    granted = granted + 1 " +
+            "  end " +
+            "end " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "  redis.call('pexpire', KEYS[2], ARGV[1]) " +
+            "end " +
+            "return granted";
+
+    // 库存归还脚本；未使用的库存放入归还池，槽位保持加锁，同时把已消耗的数量累加到已消耗计数。
+    // 归还的库存不加回库存 key，库存 key 之下的槽位可能正被其他节点的租约持有，加回后会扣到已加锁的槽位。KEYS[1] 归还池，ARGV[1] 归还数量、ARGV[2] 已消耗数量
+    private static final String RETURN_STOCK_SCRIPT =
+            "if tonumber(ARGV[2]) > 0 then " +
+            "  redis.call('incrby', KEYS[2], ARGV[2]) " +
+            "end " +
+            "local count = tonumber(ARGV[1]) " +
+            "if count <= 0 then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('incrby', KEYS[1], count) " +
+            "return count";
+
+    // 额度账本初始化脚本；ARGV 依次为总剩余、月份、月剩余、月镜像、日期、日剩余、日镜像、过期时间戳。已标记待重建的账本整体覆盖
+    private static final String INIT_QUOTA_LEDGER_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 and redis.call('hget', KEYS[1], 'dirty') ~= '1' then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('hmset', KEYS[1], 'total_surplus', ARGV[1], 'month', ARGV[2], 'month_surplus', ARGV[3], 'month_mirror', ARGV[4], " +
+            "  'day', ARGV[5], 'day_surplus', ARGV[6], 'day_mirror', ARGV[7]) " +
+            "if tonumber(ARGV[8]) > 0 then " +
+            "  redis.call('pexpireat', KEYS[1], ARGV[8]) " +
+            "end " +
+            "return 1";
+
+    // 额度账本扣减脚本；ARGV[1] 当前月份、ARGV[2] 当前日期、ARGV[3] 扣减数量。月份、日期变化时以镜像额度作为新的剩余额度，待重建的账本视为未初始化
+    private static final String SUBTRACTION_QUOTA_LEDGER_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('hget', KEYS[1], 'dirty') == '1' then " +
+            "  return -4 " +
+            "end " +
+            "local count = tonumber(ARGV[3]) " +
+            "local v = redis.call('hmget', KEYS[1], 'total_surplus', 'month', 'month_surplus', 'month_mirror', 'day', 'day_surplus', 'day_mirror') " +
+            "local total = tonumber(v[1]) " +
+            "local monthMirror = tonumber(v[4]) " +
+            "local monthSurplus = tonumber(v[3]) " +
+            "if v[2] ~= ARGV[1] then monthSurplus = monthMirror end " +
+            "local dayMirror = tonumber(v[7]) " +
+            "local daySurplus = tonumber(v[6]) " +
+            "if v[5] ~= ARGV[2] then daySurplus = dayMirror end " +
+            "if total < count then return -1 end " +
+            "if monthSurplus < count then return -2 end " +
+            "if daySurplus < count then return -3 end " +
+            "redis.call('hmset', KEYS[1], 'total_surplus', total - count, 'month', ARGV[1], 'month_surplus', monthSurplus - count, 'month_mirror', monthMirror - count, " +
+            "  'day', ARGV[2], 'day_surplus', daySurplus - count, 'day_mirror', dayMirror - count) " +
+            "return total - count";
+
+    // 额度账本增加脚本；ARGV 依次为总增加、当前月份、月增加、当前日期、日增加。账本月份、日期不是当前值时只增加镜像额度，下次扣减时以镜像额度重置。
+    // 待重建的账本不增加，重建时从数据库读取
+    private static final String ADD_QUOTA_LEDGER_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('hget', KEYS[1], 'dirty') == '1' then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('hincrby', KEYS[1], 'total_surplus', ARGV[1]) " +
+            "redis.call('hincrby', KEYS[1], 'month_mirror', ARGV[3]) " +
+            "redis.call('hincrby', KEYS[1], 'day_mirror', ARGV[5]) " +
+            "if redis.call('hget', KEYS[1], 'month') == ARGV[2] then " +
+            "  redis.call('hincrby', KEYS[1], 'month_surplus', ARGV[3]) " +
+            "end " +
+            "if redis.call('hget', KEYS[1], 'day') == ARGV[4] then " +
+            "  redis.call('hincrby', KEYS[1], 'day_surplus', ARGV[5]) " +
+            "end " +
+            "return 1";
+
+    // 额度账本标记待重建脚本；账本不存在时不处理
+    private static final String MARK_QUOTA_LEDGER_DIRTY_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('hset', KEYS[1], 'dirty', '1') " +
+            "return 1";
+
+    // 日志写入脚本；ARGV[1] 日志内容、ARGV[2] 预留哈希有效期、ARGV[3..] 预留哈希字段
+    private static final String APPEND_JOURNAL_SCRIPT =
+            "local length = redis.call('rpush', KEYS[1], ARGV[1]) " +
+            "for i = 3, #ARGV do " +
+            "  redis.call('hset', KEYS[2], ARGV[i], ARGV[1]) " +
+            "end " +
+            "redis.call('pexpire', KEYS[2], ARGV[2]) " +
+            "return length";
+
+    // 日志移除脚本；列表头部仍是读取到的这一批「首条、末条一致」时才移除，ARGV[1] 首条、ARGV[2] 末条、ARGV[3] 数量
+    private static final String TRIM_JOURNAL_SCRIPT =
+            "local count = tonumber(ARGV[3]) " +
+            "if redis.call('lindex', KEYS[1], 0) ~= ARGV[1] or redis.call('lindex', KEYS[1], count - 1) ~= ARGV[2] then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('ltrim', KEYS[1], count, -1) " +
+            "return 1";
+
+    // 日志落库失败计数脚本；KEYS[1] 失败计数哈希，ARGV[1] 字段、ARGV[2] 有效期
+    private static final String INCR_JOURNAL_FAILURE_SCRIPT =
+            "local failures = redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+            "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "return failures";
+
+    // 日志移入死信脚本；KEYS[1] 死信列表、KEYS[2] 失败计数哈希，ARGV[1] 日志内容、ARGV[2] 失败计数字段
+    private static final String DEAD_LETTER_JOURNAL_SCRIPT =
+            "redis.call('rpush', KEYS[1], ARGV[1]) " +
+            "redis.call('hdel', KEYS[2], ARGV[2]) " +
+            "return 1";
+
+    // 租约获取脚本；ARGV[1] 持有者、ARGV[2] 有效期
+    private static final String ACQUIRE_LEASE_SCRIPT =
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "  return 1 " +
+            "end " +
+            "return 0";
+
+    // 租约续期脚本；只有持有者可以续期，租约已过期或被其他节点获取时返回 0
+    private static final String RENEW_LEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "  return 1 " +
+            "end " +
+            "return 0";
+
+    // 租约释放脚本；只有持有者可以释放
+    private static final String RELEASE_LEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('del', KEYS[1]) " +
+            "end " +
+            "return 0";
+
+    // 限流脚本「GCRA」；KEYS[1] 理论到达时间（微秒），KEYS[2] 黑名单计数
+    // ARGV[1] 令牌间隔、ARGV[2] 突发时长、ARGV[3] 获取数量、ARGV[4] 黑名单次数、ARGV[5] 黑名单有效期
+    private static final String ACQUIRE_RATE_LIMIT_SCRIPT =
+            "local blacklistCount = tonumber(ARGV[4]) " +
+            "if blacklistCount > 0 and tonumber(redis.call('get', KEYS[2]) or '0') > blacklistCount then " +
+            "  return -1 " +
+            "end " +
+            "local time = redis.call('time') " +
+            "local now = tonumber(time[1]) * 1000000 + tonumber(time[2]) " +
+            "local interval = tonumber(ARGV[1]) " +
+            "local tat = math.max(tonumber(redis.call('get', KEYS[1]) or '0'), now) " +
+            "local granted = math.min(math.floor((now + tonumber(ARGV[2]) - tat) / interval), tonumber(ARGV[3])) " +
+            "if granted <= 0 then " +
+            "  if blacklistCount > 0 and redis.call('incr', KEYS[2]) == 1 then " +
+            "    redis.call('pexpire', KEYS[2], ARGV[5]) " +
+            "  end " +
+            "  return 0 " +
+            "end " +
+            "tat = tat + granted * interval " +
+            "redis.call('set', KEYS[1], string.format('%.0f', tat), 'PX', math.ceil((tat - now) / 1000) + 1) " +
+            "return granted";
+
+    // 脚本 -> SHA1，SCRIPT LOAD 一次后使用 EVALSHA
+    private final Map<String, String> scriptShaMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initNearCache() {
+        nearCache = CacheBuilder.newBuilder()
+                .maximumSize(nearCacheMaximumSize)
+                .expireAfterWrite(nearCacheExpireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+        redissonClient.getTopic(NEAR_CACHE_INVALIDATE_TOPIC, StringCodec.INSTANCE)
+                .addListener(String.class, (channel, keyPrefix) -> evictNearValue(keyPrefix));
+    }
+
     public <T> void setValue(String key, T value) {
         redissonClient.<T>getBucket(key).set(value);
     }
@@ -32,6 +289,199 @@ public class RedissonService implements IRedisService {
         return redissonClient.<T>getBucket(key).get();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getNearValue(String key) {
+        T value = (T) nearCache.getIfPresent(key);
+        if (null != value) return value;
+        value = getValue(key);
+        if (null != value) nearCache.put(key, value);
+        return value;
+    }
+
+    @Override
+    public <T> void setNearValue(String key, T value) {
+        setValue(key, value);
+        nearCache.put(key, value);
+    }
+
+    @Override
+    public void invalidateNearValue(String... keyPrefixes) {
+        RTopic topic = redissonClient.getTopic(NEAR_CACHE_INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        for (String keyPrefix : keyPrefixes) {
+            evictNearValue(keyPrefix);
+            topic.publish(keyPrefix);
+        }
+    }
+
+    private void evictNearValue(String keyPrefix) {
+        nearCache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    @Override
+    public long subtractionStock(String stockKey, String slotLockKey, long lockExpireMillis, String consumedKey) {
+        List<Object> keys = null == consumedKey ? Arrays.<Object>asList(stockKey, slotLockKey) : Arrays.<Object>asList(stockKey, slotLockKey, consumedKey);
+        return evalScript(SUBTRACTION_STOCK_SCRIPT, keys, toBytes(lockExpireMillis));
+    }
+
+    @Override
+    public long subtractionStockBatch(String stockKey, String slotLockKey, long lockExpireMillis, long count, String consumedKey) {
+        return evalScript(SUBTRACTION_STOCK_BATCH_SCRIPT, Arrays.<Object>asList(stockKey, slotLockKey, consumedKey),
+                toBytes(lockExpireMillis), toBytes(count));
+    }
+
+    @Override
+    public long leaseStock(String stockKey, String slotLockKey, String returnedKey, long lockExpireMillis, long leaseCount, String consumedKey, long consumedCount) {
+        return evalScript(LEASE_STOCK_SCRIPT, Arrays.<Object>asList(stockKey, slotLockKey, consumedKey, returnedKey),
+                toBytes(lockExpireMillis), toBytes(leaseCount), toBytes(consumedCount));
+    }
+
+    @Override
+    public long returnStock(String returnedKey, long returnCount, String consumedKey, long consumedCount) {
+        return evalScript(RETURN_STOCK_SCRIPT, Arrays.<Object>asList(returnedKey, consumedKey),
+                toBytes(returnCount), toBytes(consumedCount));
+    }
+
+    @Override
+    public boolean initQuotaLedger(String ledgerKey, long totalSurplus, String month, long monthSurplus, long monthMirror, String day, long daySurplus, long dayMirror, long expireAtMillis) {
+        return 1 == evalScript(INIT_QUOTA_LEDGER_SCRIPT, Collections.<Object>singletonList(ledgerKey),
+                toBytes(totalSurplus), toBytes(month), toBytes(monthSurplus), toBytes(monthMirror),
+                toBytes(day), toBytes(daySurplus), toBytes(dayMirror), toBytes(expireAtMillis));
+    }
+
+    @Override
+    public long subtractionQuotaLedger(String ledgerKey, String month, String day, long count) {
+        return evalScript(SUBTRACTION_QUOTA_LEDGER_SCRIPT, Collections.<Object>singletonList(ledgerKey),
+                toBytes(month), toBytes(day), toBytes(count));
+    }
+
+    @Override
+    public long addQuotaLedger(String ledgerKey, long totalCount, String month, long monthCount, String day, long dayCount) {
+        return evalScript(ADD_QUOTA_LEDGER_SCRIPT, Collections.<Object>singletonList(ledgerKey),
+                toBytes(totalCount), toBytes(month), toBytes(monthCount), toBytes(day), toBytes(dayCount));
+    }
+
+    @Override
+    public boolean markQuotaLedgerDirty(String ledgerKey) {
+        return 1 == evalScript(MARK_QUOTA_LEDGER_DIRTY_SCRIPT, Collections.<Object>singletonList(ledgerKey));
+    }
+
+    @Override
+    public long appendJournal(String journalKey, String reservedKey, List<String> reservedFields, String entry, long reservedExpireMillis) {
+        Object[] values = new Object[2 + reservedFields.size()];
+        values[0] = toBytes(entry);
+        values[1] = toBytes(reservedExpireMillis);
+        for (int i = 0; i < reservedFields.size(); i++) {
+            values[2 + i] = toBytes(reservedFields.get(i));
+        }
+        return evalScript(APPEND_JOURNAL_SCRIPT, Arrays.<Object>asList(journalKey, reservedKey), values);
+    }
+
+    @Override
+    public List<String> rangeJournal(String journalKey, int count) {
+        return redissonClient.<String>getList(journalKey, StringCodec.INSTANCE).range(0, count - 1);
+    }
+
+    @Override
+    public long journalSize(String journalKey) {
+        return redissonClient.getList(journalKey, StringCodec.INSTANCE).size();
+    }
+
+    @Override
+    public boolean trimJournal(String journalKey, List<String> values) {
+        return 1 == evalScript(TRIM_JOURNAL_SCRIPT, Collections.<Object>singletonList(journalKey),
+                toBytes(values.get(0)), toBytes(values.get(values.size() - 1)), toBytes(values.size()));
+    }
+
+    @Override
+    public long incrJournalFailure(String failureKey, String field, long expireMillis) {
+        return evalScript(INCR_JOURNAL_FAILURE_SCRIPT, Collections.<Object>singletonList(failureKey), toBytes(field), toBytes(expireMillis));
+    }
+
+    @Override
+    public void deadLetterJournal(String deadLetterKey, String failureKey, String field, String entry) {
+        evalScript(DEAD_LETTER_JOURNAL_SCRIPT, Arrays.<Object>asList(deadLetterKey, failureKey), toBytes(entry), toBytes(field));
+    }
+
+    @Override
+    public String getJournalReserved(String reservedKey, String field) {
+        return redissonClient.<String, String>getMap(reservedKey, StringCodec.INSTANCE).get(field);
+    }
+
+    @Override
+    public Collection<String> getJournalReservedValues(String reservedKey) {
+        return redissonClient.<String, String>getMap(reservedKey, StringCodec.INSTANCE).readAllValues();
+    }
+
+    @Override
+    public void removeJournalReserved(String reservedKey, List<String> fields) {
+        redissonClient.<String, String>getMap(reservedKey, StringCodec.INSTANCE).fastRemove(fields.toArray(new String[0]));
+    }
+
+    @Override
+    public boolean acquireLease(String leaseKey, String owner, long expireMillis) {
+        return 1 == evalScript(ACQUIRE_LEASE_SCRIPT, Collections.<Object>singletonList(leaseKey), toBytes(owner), toBytes(expireMillis));
+    }
+
+    @Override
+    public boolean renewLease(String leaseKey, String owner, long expireMillis) {
+        return 1 == evalScript(RENEW_LEASE_SCRIPT, Collections.<Object>singletonList(leaseKey), toBytes(owner), toBytes(expireMillis));
+    }
+
+    @Override
+    public void releaseLease(String leaseKey, String owner) {
+        evalScript(RELEASE_LEASE_SCRIPT, Collections.<Object>singletonList(leaseKey), toBytes(owner));
+    }
+
+    @Override
+    public long acquireRateLimit(String limiterKey, String blacklistKey, long intervalMicros, long burstMicros, long requestCount, double blacklistCount, long blacklistExpireMillis) {
+        return evalScript(ACQUIRE_RATE_LIMIT_SCRIPT, Arrays.<Object>asList(limiterKey, blacklistKey),
+                toBytes(intervalMicros), toBytes(burstMicros), toBytes(requestCount), toBytes(String.valueOf(blacklistCount)), toBytes(blacklistExpireMillis));
+    }
+
+    private long evalScript(String scriptBody, List<Object> keys, Object... values) {
+        RScript script = redissonClient.getScript(ByteArrayCodec.INSTANCE);
+        String sha = scriptShaMap.computeIfAbsent(scriptBody, script::scriptLoad);
+        try {
+            Long result = script.evalSha(RScript.Mode.READ_WRITE, sha, RScript.ReturnType.INTEGER, keys, values);
+            return result;
+        } catch (RedisException e) {
+            // Redis 重启或主从切换后脚本缓存丢失，重新加载一次
+            if (null == e.getMessage() || !e.getMessage().startsWith("NOSCRIPT")) throw e;
+            sha = script.scriptLoad(scriptBody);
+            scriptShaMap.put(scriptBody, sha);
+            Long result = script.evalSha(RScript.Mode.READ_WRITE, sha, RScript.ReturnType.INTEGER, keys, values);
+            return result;
+        }
+    }
+
+    private byte[] toBytes(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void setBinaryValue(String key, byte[] value) {
+        redissonClient.getBinaryStream(key).set(value);
+    }
+
+    @Override
+    public byte[] getBinaryRange(String key, long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (SeekableByteChannel channel = redissonClient.getBinaryStream(key).getChannel()) {
+            channel.position(offset);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) <= 0) return null;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("redis binary range read error, key:" + key, e);
+        }
+        return buffer.array();
+    }
+
     @Override
     public <T> RQueue<T> getQueue(String key) {
         return redissonClient.getQueue(key);
@@ -67,6 +517,22 @@ public class RedissonService implements IRedisService {
         return redissonClient.getAtomicLong(key).addAndGet(delta);
     }
 
+    @Override
+    public long getAndSetAtomicLong(String key, long value) {
+        return redissonClient.getAtomicLong(key).getAndSet(value);
+    }
+
+    @Override
+    public List<Long> getAtomicLongs(List<String> keys) {
+        Map<String, Long> values = redissonClient.getBuckets(LongCodec.INSTANCE).get(keys.toArray(new String[0]));
+        List<Long> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Long value = values.get(key);
+            result.add(null == value ? 0L : value);
+        }
+        return result;
+    }
+
     @Override
     public long decr(String key) {
         return redissonClient.getAtomicLong(key).decrementAndGet();
@@ -26,15 +26,15 @@ import cn.bugstack.trigger.api.IRaffleActivityService;
 import cn.bugstack.trigger.api.dto.*;
 import cn.bugstack.trigger.api.response.Response;
 import cn.bugstack.types.annotations.DCCValue;
+import cn.bugstack.types.annotations.BulkheadAccessInterceptor;
 import cn.bugstack.types.annotations.RateLimiterAccessInterceptor;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
-import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
-import com.netflix.hystrix.contrib.javanica.annotation.HystrixProperty;
+import cn.bugstack.types.id.IOrderIdGenerator;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.dubbo.config.annotation.DubboService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -76,6 +76,13 @@ public class RaffleActivityController implements IRaffleActivityService {
     private IBehaviorRebateService behaviorRebateService;
     @Resource
     private ICreditAdjustService creditAdjustService;
+    // 兑换单的外部业务单号，与活动订单同一雪花算法，多节点不重复
+    @Resource
+    private IOrderIdGenerator orderIdGenerator;
+
+    // 最大连抽次数
+    @Value("${activity.partake.batch-max-count:50}")
+    private int batchMaxCount;
 
     // dcc 统一配置中心动态配置降级开关
     @DCCValue("degradeSwitch:close")
@@ -140,10 +147,12 @@ public class RaffleActivityController implements IRaffleActivityService {
      * blacklistCount：超过多少次都被限制了，还访问的，扔到黑名单里24小时
      *
      * 熔断配置
-     * Hystrix组件
+     * BulkheadAccessInterceptor
+     * 信号量隔离，在请求线程中执行；并发限制按抽奖耗时自适应调整，超出并发限制或执行异常时调用 fallbackMethod
+     * timeoutMillis：超过该耗时视为过载，收缩并发限制
      */
     @RateLimiterAccessInterceptor(key = "userId", fallbackMethod = "drawRateLimiterError", permitsPerSecond = 2.0d, blacklistCount = 5)
-    @HystrixCommand(commandProperties = {@HystrixProperty(name = "execution.isolation.thread.timeoutInMilliseconds", value = "1500")}, fallbackMethod = "drawHystrixError")
+    @BulkheadAccessInterceptor(fallbackMethod = "drawHystrixError", timeoutMillis = 1500)
     @RequestMapping(value = "draw", method = RequestMethod.POST)
     @Override
     public Response<ActivityDrawResponseDTO> draw(@RequestBody ActivityDrawRequestDTO request) {
@@ -230,6 +239,40 @@ public class RaffleActivityController implements IRaffleActivityService {
     @RequestMapping(value = "drawTen", method = RequestMethod.POST)
     @Override
     public Response<List<ActivityDrawResponseDTO>> drawTen(@RequestBody ActivityDrawRequestDTO request) {
+        return doDrawBatch(request, 10);
+    }
+
+    /**
+     * 连抽接口
+     *
+     * @param request 请求对象
+     * @param count   抽奖次数
+     * @return 抽奖结果
+     * <p>
+     * 接口：<a href="http://localhost:8091/api/v1/raffle/activity/draw_batch">/api/v1/raffle/activity/draw_batch</a>
+     * <p>
+     * curl --request POST \
+     * --url 'http://localhost:8091/api/v1/raffle/activity/draw_batch?count=50' \
+     * --header 'content-type: application/json' \
+     * --data '{"userId":"xiaofuge","activityId":100301}'
+     */
+    @RequestMapping(value = "draw_batch", method = RequestMethod.POST)
+    @Override
+    public Response<List<ActivityDrawResponseDTO>> drawBatch(@RequestBody ActivityDrawRequestDTO request, @RequestParam Integer count) {
+        if (null == count || count <= 0 || count > batchMaxCount) {
+            log.warn("活动连抽次数不合法 userId:{} activityId:{} count:{} maxCount:{}", request.getUserId(), request.getActivityId(), count, batchMaxCount);
+            return Response.<List<ActivityDrawResponseDTO>>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                    .build();
+        }
+        return doDrawBatch(request, count);
+    }
+
+    /**
+     * 连抽；一次扣减 count 个账户额度、一次计算 count 次抽奖、一个事务写入全部中奖记录
+     */
+    private Response<List<ActivityDrawResponseDTO>> doDrawBatch(ActivityDrawRequestDTO request, int count) {
         try {
             // 0. 参数校验
             if (StringUtils.isBlank(request.getUserId()) || null == request.getActivityId()) {
@@ -245,14 +288,18 @@ public class RaffleActivityController implements IRaffleActivityService {
             }
 
             // 3. 参与活动 - 创建参与记录订单
-            UserTenRaffleOrderEntity tenRaffleOrderEntity = raffleActivityPartakeService.createTenOrders(request.getUserId(), request.getActivityId());
-
-            // 4. 抽奖策略 - 并发执行抽奖
-            List<RaffleAwardEntity> raffleAwardEntities = raffleStrategy.performRaffleTen(tenRaffleOrderEntity);
-
-            // 5. 异步保存中奖订单
-            List<UserAwardRecordEntity> userAwardRecordEntityList = new ArrayList<>(10);
-            for (int index = 0; index < 10; index++) {
+            UserTenRaffleOrderEntity tenRaffleOrderEntity = raffleActivityPartakeService.createBatchOrders(request.getUserId(), request.getActivityId(), count);
+
+            // 4. 抽奖策略 - 一次计算全部抽奖
+            List<RaffleAwardEntity> raffleAwardEntities = raffleStrategy.performRaffleBatch(RaffleFactorEntity.builder()
+                    .userId(tenRaffleOrderEntity.getUserId())
+                    .strategyId(tenRaffleOrderEntity.getStrategyId())
+                    .endDateTime(tenRaffleOrderEntity.getEndDateTime())
+                    .build(), count);
+
+            // 5. 批量保存中奖订单「一个事务，多行写入」
+            List<UserAwardRecordEntity> userAwardRecordEntityList = new ArrayList<>(count);
+            for (int index = 0; index < count; index++) {
                 RaffleAwardEntity raffleAwardEntity = raffleAwardEntities.get(index);
 
                 UserAwardRecordEntity userAwardRecord = UserAwardRecordEntity.builder()
@@ -272,7 +319,7 @@ public class RaffleActivityController implements IRaffleActivityService {
             awardService.saveUserAwardRecordsTen(userAwardRecordEntityList);
 
             // 组装结果
-            List<ActivityDrawResponseDTO> res = new ArrayList<>();
+            List<ActivityDrawResponseDTO> res = new ArrayList<>(count);
             for (RaffleAwardEntity raffleAwardEntity : raffleAwardEntities) {
                 ActivityDrawResponseDTO ele = ActivityDrawResponseDTO.builder()
                         .awardId(raffleAwardEntity.getAwardId())
@@ -287,13 +334,13 @@ public class RaffleActivityController implements IRaffleActivityService {
                     .data(res)
                     .build();
         } catch (AppException e) {
-            log.error("活动抽奖失败 userId:{} activityId:{}", request.getUserId(), request.getActivityId());
+            log.error("活动连抽失败 userId:{} activityId:{} count:{}", request.getUserId(), request.getActivityId(), count);
             return Response.<List<ActivityDrawResponseDTO>>builder()
                     .code(e.getCode())
                     .info(e.getInfo())
                     .build();
         } catch (Exception e) {
-            log.error("活动抽奖失败 userId:{} activityId:{}", request.getUserId(), request.getActivityId(), e);
+            log.error("活动连抽失败 userId:{} activityId:{} count:{}", request.getUserId(), request.getActivityId(), count, e);
             return Response.<List<ActivityDrawResponseDTO>>builder()
                     .code(ResponseCode.UN_ERROR.getCode())
                     .info(ResponseCode.UN_ERROR.getInfo())
@@ -521,7 +568,7 @@ public class RaffleActivityController implements IRaffleActivityService {
             UnpaidActivityOrderEntity unpaidActivityOrder = raffleActivityAccountQuotaService.createOrder(SkuRechargeEntity.builder()
                     .userId(request.getUserId())
                     .sku(request.getSku())
-                    .outBusinessNo(RandomStringUtils.randomNumeric(12))
+                    .outBusinessNo(orderIdGenerator.nextOrderId(request.getUserId()))
                     .orderTradeType(OrderTradeTypeVO.credit_pay_trade)
                     .build());
 
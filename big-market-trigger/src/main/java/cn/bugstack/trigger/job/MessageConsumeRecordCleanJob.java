@@ -0,0 +1,72 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.task.service.ITaskService;
+import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gzc
+ * @description 清理消息消费记录任务；按 db-router 配置的分库数量逐库删除超过保留天数的记录。
+ * 保留天数需大于消息可能重新投递的时间窗口，每批按 LIMIT 删除，避免一次删除过多记录长时间持有锁
+ */
+@Slf4j
+@Component()
+public class MessageConsumeRecordCleanJob {
+
+    @Resource
+    private ITaskService taskService;
+    @Resource
+    private IDBRouterStrategy dbRouter;
+
+    @Value("${mini-db-router.jdbc.datasource.dbCount}")
+    private int dbCount;
+
+    // 消费记录保留天数
+    @Value("${message.consume-record.retention-days:7}")
+    private int retentionDays;
+
+    // 每批删除的数量
+    @Value("${message.consume-record.clean-batch-size:1000}")
+    private int batchSize;
+
+    // 每次执行每个分库最多删除的批数
+    @Value("${message.consume-record.clean-max-batches:100}")
+    private int maxBatches;
+
+    @Timed(value = "MessageConsumeRecordCleanJob", description = "清理消息消费记录任务")
+    @XxlJob("MessageConsumeRecordCleanJob")
+    public void exec() {
+        Date expireTime = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            clean(dbIdx, expireTime);
+        }
+    }
+
+    private void clean(int dbIdx, Date expireTime) {
+        try {
+            // 设置库表
+            dbRouter.setDBKey(dbIdx);
+            dbRouter.setTBKey(0);
+            long total = 0;
+            for (int batch = 0; batch < maxBatches; batch++) {
+                int count = taskService.deleteExpiredMessageConsumeRecord(expireTime, batchSize);
+                total += count;
+                if (count < batchSize) break;
+            }
+            log.info("定时任务，清理消息消费记录完成 db: {} count: {}", dbIdx, total);
+        } catch (Exception e) {
+            log.error("定时任务，清理消息消费记录失败 db: {}", dbIdx, e);
+        } finally {
+            dbRouter.clear();
+        }
+    }
+
+}
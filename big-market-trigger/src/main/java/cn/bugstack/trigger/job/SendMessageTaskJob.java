@@ -1,19 +1,31 @@
 package cn.bugstack.trigger.job;
 
+import cn.bugstack.domain.task.model.entity.TaskBacklogEntity;
 import cn.bugstack.domain.task.model.entity.TaskEntity;
 import cn.bugstack.domain.task.service.ITaskService;
 import cn.bugstack.middleware.db.router.strategy.IDBRouterStrategy;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author gzc
- * @description 发送MQ消息任务队列
+ * @description 发送MQ消息任务队列；按 db-router 配置的分库数量逐库投递。
+ * 1. 每批用 FOR UPDATE SKIP LOCKED 认领任务并更新为投递中，多个节点同时执行时互不阻塞、不重复投递
+ * 2. 一批消息全部发出后统一等待 Broker 确认，已确认和失败的任务各用一条 UPDATE 批量更新
+ * 3. 每个分库的未完成任务数、最早未完成任务的等待时长作为 task_relay_backlog、task_relay_lag_seconds 指标
  */
 @Slf4j
 @Component()
@@ -23,56 +35,86 @@ public class SendMessageTaskJob {
     private ITaskService taskService;
     @Resource
     private IDBRouterStrategy dbRouter;
+    @Resource
+    private MeterRegistry meterRegistry;
 
-    @Timed(value = "SendMessageTaskJob_DB1", description = "发送MQ消息任务队列1")
-    @XxlJob("SendMessageTaskJob_DB1")
-    public void exec_db01() {
-        try {
-            // 设置库表
-            dbRouter.setDBKey(1);
-            dbRouter.setTBKey(0);
-            // 查询未发送的任务
-            List<TaskEntity> taskEntities = taskService.queryNoSendMessageTaskList();
-            if (taskEntities.isEmpty()) return;
-            // 发送MQ消息
-            for (TaskEntity taskEntity : taskEntities) {
-                try {
-                    taskService.sendMessage(taskEntity);
-                    taskService.updateTaskSendMessageCompleted(taskEntity.getUserId(), taskEntity.getMessageId());
-                } catch (Exception e) {
-                    log.error("定时任务，发送MQ消息失败 userId: {} topic: {}", taskEntity.getUserId(), taskEntity.getTopic());
-                    taskService.updateTaskSendMessageFail(taskEntity.getUserId(), taskEntity.getMessageId());
-                }
-            }
-        } catch (Exception e) {
-            log.error("定时任务，扫描MQ任务表发送消息失败。", e);
-        } finally {
-            dbRouter.clear();
+    @Value("${mini-db-router.jdbc.datasource.dbCount}")
+    private int dbCount;
+
+    // 每批认领的任务数量
+    @Value("${task.relay.batch-size:200}")
+    private int batchSize;
+
+    // 每次执行每个分库最多投递的批数
+    @Value("${task.relay.max-batches:50}")
+    private int maxBatches;
+
+    // 创建、失败、投递中的任务更新时间距今超过该秒数才可认领
+    @Value("${task.relay.claim-delay-seconds:60}")
+    private long claimDelaySeconds;
+
+    // 一批消息等待 Broker 确认的超时时间
+    @Value("${task.relay.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+
+    private final List<AtomicLong> backlogGauges = new ArrayList<>();
+    private final List<AtomicLong> lagGauges = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            String db = String.format("db%02d", dbIdx);
+            AtomicLong backlog = new AtomicLong();
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("task_relay_backlog", backlog, AtomicLong::get).tag("db", db).description("未完成的MQ任务数").register(meterRegistry);
+            Gauge.builder("task_relay_lag_seconds", lag, AtomicLong::get).tag("db", db).description("最早未完成的MQ任务等待秒数").register(meterRegistry);
+            backlogGauges.add(backlog);
+            lagGauges.add(lag);
         }
     }
 
-    @Timed(value = "SendMessageTaskJob_DB2", description = "发送MQ消息任务队列2")
-    @XxlJob("SendMessageTaskJob_DB2")
-    public void exec_db02() {
+    @Timed(value = "SendMessageTaskJob", description = "发送MQ消息任务队列")
+    @XxlJob("SendMessageTaskJob")
+    public void exec() {
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            relay(dbIdx);
+        }
+    }
+
+    private void relay(int dbIdx) {
         try {
             // 设置库表
-            dbRouter.setDBKey(2);
+            dbRouter.setDBKey(dbIdx);
             dbRouter.setTBKey(0);
-            // 查询未发送的任务
-            List<TaskEntity> taskEntities = taskService.queryNoSendMessageTaskList();
-            if (taskEntities.isEmpty()) return;
-            // 发送MQ消息
-            for (TaskEntity taskEntity : taskEntities) {
-                try {
-                    taskService.sendMessage(taskEntity);
-                    taskService.updateTaskSendMessageCompleted(taskEntity.getUserId(), taskEntity.getMessageId());
-                } catch (Exception e) {
-                    log.error("定时任务，发送MQ消息失败 userId: {} topic: {}", taskEntity.getUserId(), taskEntity.getTopic());
-                    taskService.updateTaskSendMessageFail(taskEntity.getUserId(), taskEntity.getMessageId());
+            for (int batch = 0; batch < maxBatches; batch++) {
+                // 认领未发送的任务
+                List<TaskEntity> taskEntities = taskService.claimNoSendMessageTaskList(batchSize, claimDelaySeconds);
+                if (taskEntities.isEmpty()) break;
+
+                // 批量发送MQ消息，统一等待确认
+                Set<String> confirmedMessageIds = new HashSet<>(taskService.sendMessageBatch(taskEntities, confirmTimeoutMillis));
+                List<String> failMessageIds = new ArrayList<>();
+                for (TaskEntity taskEntity : taskEntities) {
+                    if (!confirmedMessageIds.contains(taskEntity.getMessageId())) {
+                        failMessageIds.add(taskEntity.getMessageId());
+                    }
+                }
+                if (!confirmedMessageIds.isEmpty()) {
+                    taskService.updateTaskSendMessageCompletedBatch(new ArrayList<>(confirmedMessageIds));
                 }
+                if (!failMessageIds.isEmpty()) {
+                    log.error("定时任务，发送MQ消息失败 db: {} count: {}", dbIdx, failMessageIds.size());
+                    taskService.updateTaskSendMessageFailBatch(failMessageIds);
+                }
+                if (taskEntities.size() < batchSize) break;
             }
+
+            // 更新积压指标
+            TaskBacklogEntity taskBacklogEntity = taskService.queryTaskBacklog();
+            backlogGauges.get(dbIdx - 1).set(taskBacklogEntity.getCount());
+            lagGauges.get(dbIdx - 1).set(taskBacklogEntity.getLagSeconds());
         } catch (Exception e) {
-            log.error("定时任务，扫描MQ任务表发送消息失败。", e);
+            log.error("定时任务，扫描MQ任务表发送消息失败 db: {}", dbIdx, e);
         } finally {
             dbRouter.clear();
         }
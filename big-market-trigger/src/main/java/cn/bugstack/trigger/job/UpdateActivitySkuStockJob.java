@@ -1,6 +1,5 @@
 package cn.bugstack.trigger.job;
 
-import cn.bugstack.domain.activity.model.valobj.ActivitySkuStockKeyVO;
 import cn.bugstack.domain.activity.service.IRaffleActivitySkuStockService;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import io.micrometer.core.annotation.Timed;
@@ -9,11 +8,12 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * @author gzc
- * @description 更新活动sku库存任务
+ * @description 更新活动sku库存任务；GETSET 取走 Redis 已消耗计数，一条 UPDATE 同步数据库库存。使用库存同步线程池，队列满时跳过，计数保留到下次同步
  */
 @Slf4j
 @Component()
@@ -21,7 +21,7 @@ public class UpdateActivitySkuStockJob {
 
     @Resource
     private IRaffleActivitySkuStockService skuStock;
-    @Resource
+    @Resource(name = "stockSyncExecutor")
     private ThreadPoolExecutor executor;
 
     @Timed(value = "UpdateActivitySkuStockJob", description = "更新活动sku库存任务")
@@ -30,16 +30,17 @@ public class UpdateActivitySkuStockJob {
         try {
             List<Long> skus = skuStock.querySkuList();
             for (Long sku : skus) {
-                executor.execute(() -> {
-                    ActivitySkuStockKeyVO activitySkuStockKeyVO = null;
-                    try {
-                        activitySkuStockKeyVO = skuStock.takeQueueValue(sku);
-                    } catch (InterruptedException e) {
-                        log.error("定时任务，更新活动sku库存失败 sku: {}", sku);
-                    }
-                    if (null == activitySkuStockKeyVO) return;
-                    skuStock.updateActivitySkuStock(activitySkuStockKeyVO.getSku());
-                });
+                try {
+                    executor.execute(() -> {
+                        try {
+                            skuStock.syncActivitySkuStock(sku);
+                        } catch (Exception e) {
+                            log.error("定时任务，更新活动sku库存失败 sku: {}", sku, e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("定时任务，更新活动sku库存线程池已满 sku: {}", sku);
+                }
             }
         } catch (Exception e) {
             log.error("定时任务，更新活动sku库存失败", e);
@@ -3,18 +3,40 @@ package cn.bugstack.trigger.job;
 import cn.bugstack.domain.strategy.model.valobj.StrategyAwardStockKeyVO;
 import cn.bugstack.domain.strategy.service.IRaffleAward;
 import cn.bugstack.domain.strategy.service.IRaffleStock;
+import cn.bugstack.types.common.Constants;
+import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author gzc
- * @description 更新奖品库存任务；为了不让更新库存的压力打到数据库中，这里采用了redis更新缓存库存，异步队列更新数据库，数据库表最终一致即可。
+ * @description 更新奖品库存任务；为了不让更新库存的压力打到数据库中，这里采用了redis更新缓存库存，定时同步数据库，数据库表最终一致即可。
+ * 1. 扣减库存时累加 Redis 已消耗计数，任务 GETSET 取走计数后一条 UPDATE 扣减，积压多少都一次追平
+ * 2. 调度使用分片广播，各节点按分片序号分担奖品；开放奖品列表本地缓存，定期刷新
+ * 3. 一次 MGET 读取本分片奖品的待同步数量，只同步有消耗的奖品，使用库存同步线程池 stockSyncExecutor，不占用其他业务的线程池
+ * 4. 每个奖品的待同步数量、距上次追平的秒数作为 award_stock_sync_pending、award_stock_sync_lag_seconds 指标
  */
 @Slf4j
 @Component()
@@ -25,34 +47,153 @@ public class UpdateAwardStockJob {
     @Resource
     private IRaffleAward raffleAward;
     @Resource
+    private MeterRegistry meterRegistry;
+    @Resource(name = "stockSyncExecutor")
     private ThreadPoolExecutor executor;
 
+    // 开放奖品列表缓存刷新间隔
+    @Value("${strategy.stock-sync.award-list-refresh-seconds:60}")
+    private long awardListRefreshSeconds;
+
+    // 单次执行等待同步完成的时间，需小于调度间隔
+    @Value("${strategy.stock-sync.timeout-millis:4000}")
+    private long timeoutMillis;
+
+    private volatile List<StrategyAwardStockKeyVO> openAwards = Collections.emptyList();
+    private volatile long openAwardsExpireTime;
+
+    // strategyId_awardId -> 同步指标；只保留本节点当前分片的奖品
+    private final Map<String, AwardSyncMetrics> awardSyncMetricsMap = new ConcurrentHashMap<>();
+
     @Timed(value = "updateAwardStockJob", description = "更新奖品库存任务")
     @XxlJob("updateAwardStockJob")
     public void exec() {
         try {
-            // 拿到所有open活动 的 所有奖品
-            List<StrategyAwardStockKeyVO> awards = raffleAward.queryOpenActivityStrategyAwardList();
-            if (null == awards)
-                return;
-
-            // 更新各个奖品的库存值
-            for (StrategyAwardStockKeyVO strategyAwardStockKeyVO : awards) {
-                executor.execute(() -> {
-                    try {
-                        List<StrategyAwardStockKeyVO> strategyAwardStockKeyVOS = raffleStock.takeQueueValueBatch(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId());
-                        if (null == strategyAwardStockKeyVOS)
-                            return;
-
-                        int totalCount = strategyAwardStockKeyVOS.size();
-                        raffleStock.updateStrategyAwardStockBatch(strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId(), totalCount);
-                    } catch (InterruptedException e) {
-                        log.error("定时任务，更新奖品消耗库存失败 strategyId:{} awardId:{}", strategyAwardStockKeyVO.getStrategyId(), strategyAwardStockKeyVO.getAwardId());
-                    }
-                });
+            // 1. 本分片负责的开放奖品
+            List<StrategyAwardStockKeyVO> awards = shardAwards(queryOpenAwards(), XxlJobHelper.getShardIndex(), XxlJobHelper.getShardTotal());
+            retainAwardSyncMetrics(awards);
+            if (awards.isEmpty()) return;
+
+            // 2. 一次读取待同步数量，跳过没有消耗的奖品
+            List<Long> consumedCounts = raffleStock.queryStrategyAwardStockConsumedCount(awards);
+            long now = System.currentTimeMillis();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < awards.size(); i++) {
+                StrategyAwardStockKeyVO award = awards.get(i);
+                AwardSyncMetrics awardSyncMetrics = awardSyncMetrics(award);
+                long consumedCount = consumedCounts.get(i);
+                awardSyncMetrics.pending.set(consumedCount);
+                if (consumedCount <= 0) {
+                    awardSyncMetrics.syncTime = now;
+                    continue;
+                }
+                try {
+                    futures.add(executor.submit(() -> sync(award, awardSyncMetrics)));
+                } catch (RejectedExecutionException e) {
+                    // 线程池已满，计数保留到下次同步
+                    log.warn("定时任务，更新奖品消耗库存线程池已满 strategyId:{} awardId:{}", award.getStrategyId(), award.getAwardId());
+                }
+            }
+
+            // 3. 等待本次同步完成，避免与下一次调度重叠
+            long deadline = now + timeoutMillis;
+            for (Future<?> future : futures) {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
             }
+        } catch (TimeoutException e) {
+            log.warn("定时任务，更新奖品消耗库存未在 {}ms 内完成，剩余奖品继续同步", timeoutMillis);
         } catch (Exception e) {
             log.error("定时任务，更新奖品消耗库存失败", e);
         }
     }
+
+    private void sync(StrategyAwardStockKeyVO award, AwardSyncMetrics awardSyncMetrics) {
+        try {
+            raffleStock.syncStrategyAwardStock(award.getStrategyId(), award.getAwardId());
+            awardSyncMetrics.pending.set(0);
+            awardSyncMetrics.syncTime = System.currentTimeMillis();
+        } catch (Exception e) {
+            log.error("定时任务，更新奖品消耗库存失败 strategyId:{} awardId:{}", award.getStrategyId(), award.getAwardId(), e);
+        }
+    }
+
+    /**
+     * 开放奖品列表；按刷新间隔重新查询，查询失败时继续使用上一次的列表
+     */
+    private List<StrategyAwardStockKeyVO> queryOpenAwards() {
+        long now = System.currentTimeMillis();
+        if (now < openAwardsExpireTime) return openAwards;
+        try {
+            List<StrategyAwardStockKeyVO> awards = raffleAward.queryOpenActivityStrategyAwardList();
+            openAwards = null == awards ? Collections.<StrategyAwardStockKeyVO>emptyList() : awards;
+            openAwardsExpireTime = now + TimeUnit.SECONDS.toMillis(awardListRefreshSeconds);
+        } catch (Exception e) {
+            log.error("定时任务，查询开放奖品列表失败，使用缓存列表 size:{}", openAwards.size(), e);
+        }
+        return openAwards;
+    }
+
+    /**
+     * 按分片序号取本节点负责的奖品；非分片广播调度时分片总数为 1，负责全部奖品
+     */
+    private List<StrategyAwardStockKeyVO> shardAwards(List<StrategyAwardStockKeyVO> awards, int shardIndex, int shardTotal) {
+        if (shardTotal <= 1) return awards;
+        List<StrategyAwardStockKeyVO> shardAwards = new ArrayList<>(awards.size() / shardTotal + 1);
+        for (StrategyAwardStockKeyVO award : awards) {
+            if (Math.floorMod(Objects.hash(award.getStrategyId(), award.getAwardId()), shardTotal) == shardIndex) {
+                shardAwards.add(award);
+            }
+        }
+        return shardAwards;
+    }
+
+    private AwardSyncMetrics awardSyncMetrics(StrategyAwardStockKeyVO award) {
+        return awardSyncMetricsMap.computeIfAbsent(awardKey(award), key -> {
+            AwardSyncMetrics awardSyncMetrics = new AwardSyncMetrics();
+            String strategyId = String.valueOf(award.getStrategyId());
+            String awardId = String.valueOf(award.getAwardId());
+            awardSyncMetrics.gauges.add(Gauge.builder("award_stock_sync_pending", awardSyncMetrics, m -> m.pending.get())
+                    .tag("strategyId", strategyId).tag("awardId", awardId)
+                    .description("奖品库存待同步数量").register(meterRegistry));
+            awardSyncMetrics.gauges.add(Gauge.builder("award_stock_sync_lag_seconds", awardSyncMetrics, AwardSyncMetrics::lagSeconds)
+                    .tag("strategyId", strategyId).tag("awardId", awardId)
+                    .description("奖品库存距上次追平的秒数").register(meterRegistry));
+            return awardSyncMetrics;
+        });
+    }
+
+    /**
+     * 移除不再由本节点负责的奖品指标；分片变化或活动关闭后不再上报
+     */
+    private void retainAwardSyncMetrics(List<StrategyAwardStockKeyVO> awards) {
+        Set<String> awardKeys = new HashSet<>();
+        for (StrategyAwardStockKeyVO award : awards) {
+            awardKeys.add(awardKey(award));
+        }
+        Iterator<Map.Entry<String, AwardSyncMetrics>> iterator = awardSyncMetricsMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AwardSyncMetrics> entry = iterator.next();
+            if (awardKeys.contains(entry.getKey())) continue;
+            for (Gauge gauge : entry.getValue().gauges) {
+                meterRegistry.remove(gauge);
+            }
+            iterator.remove();
+        }
+    }
+
+    private String awardKey(StrategyAwardStockKeyVO award) {
+        return award.getStrategyId() + Constants.UNDERLINE + award.getAwardId();
+    }
+
+    private static class AwardSyncMetrics {
+        private final AtomicLong pending = new AtomicLong();
+        // 最近一次待同步数量为 0 或同步成功的时间
+        private volatile long syncTime = System.currentTimeMillis();
+        private final List<Gauge> gauges = new ArrayList<>(2);
+
+        private double lagSeconds() {
+            return pending.get() > 0 ? (System.currentTimeMillis() - syncTime) / 1000.0 : 0;
+        }
+    }
+
 }
@@ -0,0 +1,56 @@
+package cn.bugstack.trigger.listener;
+
+import cn.bugstack.domain.activity.event.ActivityAccountQuotaMessageEvent;
+import cn.bugstack.domain.activity.service.IRaffleActivityAccountQuotaService;
+import cn.bugstack.types.event.BaseEvent;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.TypeReference;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gzc
+ * @description 活动账户额度对账消息消费者；额度账本模式下把 Redis 中已扣减的额度同步到数据库账户。
+ * 一批消息按用户分库分组，每个分库一个事务合并更新，并批量写入消息消费记录防重
+ */
+@Slf4j
+@Component
+public class ActivityAccountQuotaCustomer {
+
+    private static final Type MESSAGE_TYPE = new TypeReference<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>>() {
+    }.getType();
+
+    @Value("${spring.rabbitmq.topic.activity_account_quota}")
+    private String topic;
+
+    @Resource
+    private IRaffleActivityAccountQuotaService raffleActivityAccountQuotaService;
+
+    @Timed(value = "ActivityAccountQuotaCustomer", description = "活动账户额度对账消息消费者")
+    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.activity_account_quota}"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listener(List<String> messages) {
+        try {
+            log.info("监听活动账户额度对账消息 topic: {} count: {}", topic, messages.size());
+            List<BaseEvent.EventMessage<ActivityAccountQuotaMessageEvent.ActivityAccountQuotaMessage>> eventMessages = new ArrayList<>(messages.size());
+            for (String message : messages) {
+                eventMessages.add(JSON.parseObject(message, MESSAGE_TYPE));
+            }
+
+            // 同步账户额度
+            raffleActivityAccountQuotaService.reconcileActivityAccountQuota(eventMessages);
+        } catch (Exception e) {
+            log.error("监听活动账户额度对账消息，消费失败 topic: {} messages: {}", topic, messages, e);
+            throw e;
+        }
+    }
+
+}
@@ -12,15 +12,22 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author gzc
- * @description 活动sku库存耗尽
+ * @description 活动sku库存耗尽；批量接收，同一 sku 的多条消息只处理一次
  */
 @Slf4j
 @Component
 public class ActivitySkuStockZeroCustomer {
 
+    private static final Type MESSAGE_TYPE = new TypeReference<BaseEvent.EventMessage<Long>>() {
+    }.getType();
+
     @Value("${spring.rabbitmq.topic.activity_sku_stock_zero}")
     private String topic;
 
@@ -28,19 +35,23 @@ public class ActivitySkuStockZeroCustomer {
     private IRaffleActivitySkuStockService skuStock;
 
     @Timed(value = "ActivitySkuStockZeroCustomer", description = "活动库存为0消费者")
-    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.activity_sku_stock_zero}"))
-    public void listener(String message) {
+    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.activity_sku_stock_zero}"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listener(List<String> messages) {
         try {
-            // 转换对象
-            BaseEvent.EventMessage<Long> eventMessage = JSON.parseObject(message, new TypeReference<BaseEvent.EventMessage<Long>>() {
-            }.getType());
-            Long sku = eventMessage.getData();
-            // 更新库存
-            skuStock.clearActivitySkuStock(sku);
-            // 清空队列
-            skuStock.clearQueueValue(sku);
+            // 转换对象，合并重复的 sku
+            Set<Long> skus = new LinkedHashSet<>();
+            for (String message : messages) {
+                BaseEvent.EventMessage<Long> eventMessage = JSON.parseObject(message, MESSAGE_TYPE);
+                skus.add(eventMessage.getData());
+            }
+            for (Long sku : skus) {
+                // 更新库存
+                skuStock.clearActivitySkuStock(sku);
+                // 清空已消耗计数
+                skuStock.clearActivitySkuStockConsumed(sku);
+            }
         } catch (Exception e) {
-            log.error("监听活动sku库存消耗为0消息，消费失败 topic: {} message: {}", topic, message);
+            log.error("监听活动sku库存消耗为0消息，消费失败 topic: {} messages: {}", topic, messages);
             throw e;
         }
     }
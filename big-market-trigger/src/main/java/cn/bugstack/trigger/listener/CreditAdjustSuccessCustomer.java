@@ -3,10 +3,7 @@ package cn.bugstack.trigger.listener;
 import cn.bugstack.domain.activity.model.entity.DeliveryOrderEntity;
 import cn.bugstack.domain.activity.service.IRaffleActivityAccountQuotaService;
 import cn.bugstack.domain.credit.event.CreditAdjustSuccessMessageEvent;
-import cn.bugstack.domain.task.service.ITaskService;
-import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.BaseEvent;
-import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.TypeReference;
 import io.micrometer.core.annotation.Timed;
@@ -17,46 +14,47 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author gzc
- * @description 积分调整成功消息
+ * @description 积分调整成功消息；一批消息按用户分库分组，每个分库一个事务出货，并批量写入消息消费记录防重
  */
 @Slf4j
 @Component
 public class CreditAdjustSuccessCustomer {
 
+    private static final Type MESSAGE_TYPE = new TypeReference<BaseEvent.EventMessage<CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage>>() {
+    }.getType();
+
     @Value("${spring.rabbitmq.topic.credit_adjust_success}")
     private String topic;
     @Resource
     private IRaffleActivityAccountQuotaService raffleActivityAccountQuotaService;
-    @Resource
-    private ITaskService taskService;
 
     @Timed(value = "CreditAdjustSuccessCustomer", description = "积分调整服务消费者")
-    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.credit_adjust_success}"))
-    public void listener(String message) {
+    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.credit_adjust_success}"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listener(List<String> messages) {
         try {
-            BaseEvent.EventMessage<CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage> eventMessage = JSON.parseObject(message, new TypeReference<BaseEvent.EventMessage<CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage>>() {
-            }.getType());
-            CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage creditAdjustSuccessMessage = eventMessage.getData();
-
-            // 积分发货
-            DeliveryOrderEntity deliveryOrderEntity = new DeliveryOrderEntity();
-            deliveryOrderEntity.setUserId(creditAdjustSuccessMessage.getUserId());
-            deliveryOrderEntity.setOutBusinessNo(creditAdjustSuccessMessage.getOutBusinessNo());
-            raffleActivityAccountQuotaService.updateOrder(deliveryOrderEntity);
-
-            // 更新数据库记录，task 任务表
-            taskService.updateTaskSendMessageCompleted(deliveryOrderEntity.getUserId(), eventMessage.getId());
-        } catch (AppException e) {
-            if (ResponseCode.INDEX_DUP.getCode().equals(e.getCode())) {
-                log.warn("监听积分账户调整成功消息，进行交易商品发货，消费重复 topic: {} message: {}", topic, message, e);
-                return;
+            log.info("监听积分账户调整成功消息，进行交易商品发货 topic: {} count: {}", topic, messages.size());
+            List<DeliveryOrderEntity> deliveryOrderEntities = new ArrayList<>(messages.size());
+            for (String message : messages) {
+                BaseEvent.EventMessage<CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage> eventMessage = JSON.parseObject(message, MESSAGE_TYPE);
+                CreditAdjustSuccessMessageEvent.CreditAdjustSuccessMessage creditAdjustSuccessMessage = eventMessage.getData();
+
+                DeliveryOrderEntity deliveryOrderEntity = new DeliveryOrderEntity();
+                deliveryOrderEntity.setUserId(creditAdjustSuccessMessage.getUserId());
+                deliveryOrderEntity.setOutBusinessNo(creditAdjustSuccessMessage.getOutBusinessNo());
+                deliveryOrderEntity.setMessageId(eventMessage.getId());
+                deliveryOrderEntities.add(deliveryOrderEntity);
             }
-            throw e;
+
+            // 积分发货；已提交的分库写入了消费记录，整批重新投递时跳过
+            raffleActivityAccountQuotaService.updateOrders(topic, deliveryOrderEntities);
         } catch (Exception e) {
-            log.error("监听积分账户调整成功消息，进行交易商品发货失败 topic: {} message: {}", topic, message, e);
+            log.error("监听积分账户调整成功消息，进行交易商品发货失败 topic: {} messages: {}", topic, messages, e);
             throw e;
         }
     }
@@ -8,7 +8,6 @@ import cn.bugstack.domain.credit.model.valobj.TradeNameVO;
 import cn.bugstack.domain.credit.model.valobj.TradeTypeVO;
 import cn.bugstack.domain.credit.service.ICreditAdjustService;
 import cn.bugstack.domain.rebate.event.SendRebateMessageEvent;
-import cn.bugstack.domain.task.service.ITaskService;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.BaseEvent;
 import cn.bugstack.types.exception.AppException;
@@ -22,67 +21,89 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author gzc
- * @description 监听；行为返利消息
+ * @description 监听；行为返利消息，批量接收。积分返利按用户分库批量入账、按消息ID防重，sku 返利逐条入账、按外部单号唯一索引防重
  */
 @Slf4j
 @Component
 public class RebateMessageCustomer {
 
+    private static final Type MESSAGE_TYPE = new TypeReference<BaseEvent.EventMessage<SendRebateMessageEvent.RebateMessage>>() {
+    }.getType();
+
     @Value("${spring.rabbitmq.topic.send_rebate}")
     private String topic;
     @Resource
     private IRaffleActivityAccountQuotaService raffleActivityAccountQuotaService;
     @Resource
     private ICreditAdjustService creditAdjustService;
-    @Resource
-    private ITaskService taskService;
 
     @Timed(value = "RebateMessageCustomer", description = "返利消息消费者")
-    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.send_rebate}"))
-    public void listener(String message) {
-        try {
-            // 1. 转换消息
-            BaseEvent.EventMessage<SendRebateMessageEvent.RebateMessage> eventMessage = JSON.parseObject(message, new TypeReference<BaseEvent.EventMessage<SendRebateMessageEvent.RebateMessage>>() {
-            }.getType());
-            SendRebateMessageEvent.RebateMessage rebateMessage = eventMessage.getData();
+    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.send_rebate}"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listener(List<String> messages) {
+        Exception failure = null;
+        int failCount = 0;
+        List<TradeEntity> tradeEntities = new ArrayList<>();
+        for (String message : messages) {
+            try {
+                // 1. 转换消息
+                BaseEvent.EventMessage<SendRebateMessageEvent.RebateMessage> eventMessage = JSON.parseObject(message, MESSAGE_TYPE);
+                SendRebateMessageEvent.RebateMessage rebateMessage = eventMessage.getData();
 
-            // 2. 入账奖励
-            switch (rebateMessage.getRebateType()) {
-                case "sku":
-                    SkuRechargeEntity skuRechargeEntity = new SkuRechargeEntity();
-                    skuRechargeEntity.setUserId(rebateMessage.getUserId());
-                    skuRechargeEntity.setSku(Long.valueOf(rebateMessage.getRebateConfig()));
-                    skuRechargeEntity.setOutBusinessNo(rebateMessage.getBizId());
-                    skuRechargeEntity.setOrderTradeType(OrderTradeTypeVO.rebate_no_pay_trade);
-                    raffleActivityAccountQuotaService.createOrder(skuRechargeEntity);
-                    break;
-                case "integral":
-                    TradeEntity tradeEntity = new TradeEntity();
-                    tradeEntity.setUserId(rebateMessage.getUserId());
-                    tradeEntity.setTradeName(TradeNameVO.REBATE);
-                    tradeEntity.setTradeType(TradeTypeVO.FORWARD);
-                    tradeEntity.setAmount(new BigDecimal(rebateMessage.getRebateConfig()));
-                    tradeEntity.setOutBusinessNo(rebateMessage.getBizId());
-                    creditAdjustService.createOrder(tradeEntity);
-                    break;
+                // 2. 入账奖励；积分返利汇总后批量入账，sku 返利需要逐条扣减 sku 库存
+                switch (rebateMessage.getRebateType()) {
+                    case "sku":
+                        SkuRechargeEntity skuRechargeEntity = new SkuRechargeEntity();
+                        skuRechargeEntity.setUserId(rebateMessage.getUserId());
+                        skuRechargeEntity.setSku(Long.valueOf(rebateMessage.getRebateConfig()));
+                        skuRechargeEntity.setOutBusinessNo(rebateMessage.getBizId());
+                        skuRechargeEntity.setOrderTradeType(OrderTradeTypeVO.rebate_no_pay_trade);
+                        raffleActivityAccountQuotaService.createOrder(skuRechargeEntity);
+                        break;
+                    case "integral":
+                        TradeEntity tradeEntity = new TradeEntity();
+                        tradeEntity.setUserId(rebateMessage.getUserId());
+                        tradeEntity.setTradeName(TradeNameVO.REBATE);
+                        tradeEntity.setTradeType(TradeTypeVO.FORWARD);
+                        tradeEntity.setAmount(new BigDecimal(rebateMessage.getRebateConfig()));
+                        tradeEntity.setOutBusinessNo(rebateMessage.getBizId());
+                        tradeEntity.setMessageId(eventMessage.getId());
+                        tradeEntities.add(tradeEntity);
+                        break;
+                }
+            } catch (AppException e) {
+                if (ResponseCode.INDEX_DUP.getCode().equals(e.getCode())) {
+                    log.warn("监听用户行为返利消息，消费重复 topic: {} message: {}", topic, message, e);
+                    continue;
+                }
+                log.error("监听用户行为返利消息，消费失败 topic: {} message: {}", topic, message, e);
+                if (null == failure) failure = e;
+                failCount++;
+            } catch (Exception e) {
+                log.error("监听用户行为返利消息，消费失败 topic: {} message: {}", topic, message, e);
+                if (null == failure) failure = e;
+                failCount++;
             }
+        }
 
-            // 更新数据库记录，task 任务表
-            taskService.updateTaskSendMessageCompleted(rebateMessage.getUserId(), eventMessage.getId());
-
-        } catch (AppException e) {
-            if (ResponseCode.INDEX_DUP.getCode().equals(e.getCode())) {
-                log.warn("监听用户行为返利消息，消费重复 topic: {} message: {}", topic, message, e);
-                return;
-            }
-            throw e;
+        // 3. 积分返利按用户分库分组，每个分库一个事务入账，并批量写入消息消费记录防重
+        try {
+            creditAdjustService.createOrders(topic, tradeEntities);
         } catch (Exception e) {
-            log.error("监听用户行为返利消息，消费失败 topic: {} message: {}", topic, message, e);
-            throw e;
+            log.error("监听用户行为返利消息，积分批量入账失败 topic: {} count: {}", topic, tradeEntities.size(), e);
+            if (null == failure) failure = e;
+            failCount += tradeEntities.size();
+        }
+
+        // 有失败时整批重新投递；已入账的 sku 返利按唯一索引拦截，已提交分库的积分返利按消息消费记录跳过
+        if (null != failure) {
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), "监听用户行为返利消息，批量消费失败 count: " + failCount, failure);
         }
     }
 
@@ -3,8 +3,9 @@ package cn.bugstack.trigger.listener;
 import cn.bugstack.domain.award.event.SendAwardMessageEvent;
 import cn.bugstack.domain.award.model.entity.DistributeAwardEntity;
 import cn.bugstack.domain.award.service.IAwardService;
-import cn.bugstack.domain.task.service.ITaskService;
+import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.BaseEvent;
+import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.TypeReference;
 import io.micrometer.core.annotation.Timed;
@@ -15,48 +16,54 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.List;
 
 /**
  * @author gzc
- * @description 用户奖品记录消息消费者
+ * @description 用户奖品记录消息消费者；批量接收，逐条发奖，发奖记录按状态更新防重
  */
 @Slf4j
 @Component
 public class SendAwardCustomer {
 
+    private static final Type MESSAGE_TYPE = new TypeReference<BaseEvent.EventMessage<SendAwardMessageEvent.SendAwardMessage>>() {
+    }.getType();
+
     @Value("${spring.rabbitmq.topic.send_award}")
     private String topic;
 
     @Resource
     private IAwardService awardService;
 
-    @Resource
-    private ITaskService taskService;
-
     @Timed(value = "SendAwardCustomer", description = "用户奖品记录消息消费者")
-    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.send_award}"))
-    public void listener(String message) {
-        try {
-            BaseEvent.EventMessage<SendAwardMessageEvent.SendAwardMessage> eventMessage = JSON.parseObject(message, new TypeReference<BaseEvent.EventMessage<SendAwardMessageEvent.SendAwardMessage>>() {
-            }.getType());
-            SendAwardMessageEvent.SendAwardMessage sendAwardMessage = eventMessage.getData();
-            Integer awardId = sendAwardMessage.getAwardId();
-            String messageId = eventMessage.getId();
-            String userId = sendAwardMessage.getUserId();
-            if (awardId == 101){
-                // 发放奖品
-                DistributeAwardEntity distributeAwardEntity = new DistributeAwardEntity();
-                distributeAwardEntity.setUserId(sendAwardMessage.getUserId());
-                distributeAwardEntity.setOrderId(sendAwardMessage.getOrderId());
-                distributeAwardEntity.setAwardId(sendAwardMessage.getAwardId());
-                distributeAwardEntity.setAwardConfig(sendAwardMessage.getAwardConfig());
-                awardService.distributeAward(distributeAwardEntity);
+    @RabbitListener(queuesToDeclare = @Queue(value = "${spring.rabbitmq.topic.send_award}"), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listener(List<String> messages) {
+        Exception failure = null;
+        int failCount = 0;
+        for (String message : messages) {
+            try {
+                BaseEvent.EventMessage<SendAwardMessageEvent.SendAwardMessage> eventMessage = JSON.parseObject(message, MESSAGE_TYPE);
+                SendAwardMessageEvent.SendAwardMessage sendAwardMessage = eventMessage.getData();
+                Integer awardId = sendAwardMessage.getAwardId();
+                if (awardId == 101){
+                    // 发放奖品
+                    DistributeAwardEntity distributeAwardEntity = new DistributeAwardEntity();
+                    distributeAwardEntity.setUserId(sendAwardMessage.getUserId());
+                    distributeAwardEntity.setOrderId(sendAwardMessage.getOrderId());
+                    distributeAwardEntity.setAwardId(sendAwardMessage.getAwardId());
+                    distributeAwardEntity.setAwardConfig(sendAwardMessage.getAwardConfig());
+                    awardService.distributeAward(distributeAwardEntity);
+                }
+            } catch (Exception e) {
+                log.error("监听用户奖品发送消息，消费失败 topic: {} message: {}", topic, message, e);
+                if (null == failure) failure = e;
+                failCount++;
             }
-            // 更新数据库记录，task 任务表
-            taskService.updateTaskSendMessageCompleted(userId, messageId);
-        } catch (Exception e) {
-            log.error("监听用户奖品发送消息，消费失败 topic: {} message: {}", topic, message);
-            throw e;
+        }
+        // 有失败时整批重新投递，已发奖的消息重复消费时不会重复更新
+        if (null != failure) {
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), "监听用户奖品发送消息，批量消费失败 count: " + failCount, failure);
         }
     }
 
@@ -0,0 +1,31 @@
+package cn.bugstack.types.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * 并发隔离；信号量隔离 + 自适应并发限制，在请求线程中执行，超出并发限制或执行异常时调用 fallbackMethod
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+@Documented
+public @interface BulkheadAccessInterceptor {
+
+    /** 隔离名称，作为指标的 endpoint 标签；未配置则使用方法名 */
+    String name() default "";
+
+    /** 初始并发限制 */
+    int initialLimit() default 50;
+
+    /** 最小并发限制 */
+    int minLimit() default 10;
+
+    /** 最大并发限制；不应超过 Tomcat 工作线程数 */
+    int maxLimit() default 200;
+
+    /** 超时时间（毫秒）；超时的请求视为过载，收缩并发限制 */
+    long timeoutMillis() default 1000;
+
+    /** 拦截后的执行方法 */
+    String fallbackMethod();
+
+}
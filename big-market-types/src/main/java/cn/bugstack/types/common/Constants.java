@@ -17,24 +17,38 @@ public class Constants {
         public static String STRATEGY_KEY = "big_market_strategy_key_";
         public static String STRATEGY_AWARD_KEY = "big_market_strategy_award_key_";
         public static String STRATEGY_AWARD_LIST_KEY = "big_market_strategy_award_list_key_";
-        public static String STRATEGY_RATE_TABLE_KEY = "big_market_strategy_rate_table_key_";
-        public static String STRATEGY_RATE_RANGE_KEY = "big_market_strategy_rate_range_key_";
+        public static String STRATEGY_RATE_SEARCH_TABLE_KEY = "big_market_strategy_rate_search_table_key_";
+        public static String STRATEGY_CONFIG_VERSION_KEY = "big_market_strategy_config_version_key_";
+        public static String STRATEGY_RULE_GROUP_KEY = "big_market_strategy_rule_group_key_";
         public static String RULE_TREE_VO_KEY = "rule_tree_vo_key_";
         public static String STRATEGY_AWARD_COUNT_KEY = "strategy_award_count_key_";
-        public static String STRATEGY_AWARD_COUNT_QUERY_KEY = "strategy_award_count_query_key";
+        public static String STRATEGY_AWARD_COUNT_SEGMENT_SUFFIX = "_segment_";
+        public static String STRATEGY_AWARD_COUNT_SEGMENT_COUNT_SUFFIX = "_segment_count";
+        // 奖品库存上次同步数据库后已消耗的数量；strategyId_awardId
+        public static String STRATEGY_AWARD_STOCK_CONSUMED_KEY = "strategy_award_stock_consumed_key_";
         public static String STRATEGY_RULE_WEIGHT_KEY = "strategy_rule_weight_key_";
-        public static String ACTIVITY_SKU_COUNT_QUERY_KEY = "activity_sku_count_query_key";
+        // 活动sku库存上次同步数据库后已消耗的数量；sku
+        public static String ACTIVITY_SKU_STOCK_CONSUMED_KEY = "activity_sku_stock_consumed_key_";
         public static String ACTIVITY_SKU_STOCK_COUNT_KEY = "activity_sku_stock_count_key_";
         public static String ACTIVITY_SKU_COUNT_CLEAR_KEY = "activity_sku_count_clear_key_";
         public static String ACTIVITY_ACCOUNT_LOCK = "activity_account_lock_";
         public static String ACTIVITY_ACCOUNT_UPDATE_LOCK = "activity_account_update_lock_";
+        public static String ACTIVITY_ACCOUNT_QUOTA_LEDGER_KEY = "activity_account_quota_ledger_key_";
+        public static String ACTIVITY_PARTAKE_JOURNAL_KEY = "activity_partake_journal_key_";
+        public static String ACTIVITY_PARTAKE_JOURNAL_LOCK = "activity_partake_journal_lock_";
+        public static String ACTIVITY_PARTAKE_JOURNAL_FAILURE_KEY = "activity_partake_journal_failure_key_";
+        public static String ACTIVITY_PARTAKE_JOURNAL_DEAD_LETTER_KEY = "activity_partake_journal_dead_letter_key";
+        public static String ACTIVITY_PARTAKE_RESERVED_KEY = "activity_partake_reserved_key_";
         public static String USER_CREDIT_ACCOUNT_LOCK = "user_credit_account_lock_";
+        public static String ORDER_ID_WORKER_LEASE_KEY = "order_id_worker_lease_key_";
+        // 限流 key 以 {方法_标识} 结尾，集群模式下限流和黑名单计数在同一个槽位
+        public static String RATE_LIMITER_KEY = "rate_limiter_key_";
+        public static String RATE_LIMITER_BLACKLIST_KEY = "rate_limiter_blacklist_key_";
 
         public static String INIT_USER_ACCOUNT_LOCK = "init_user_account_lock:";
 
 
         // custom
-        public static String STRATEGY_RULE_KEY_ACTIVITY = "strategy_rule:activity:";
         public static String STRATEGY_2_ACTIVITY = "strategy2activity:";
 
     }
@@ -27,6 +27,10 @@ public enum ResponseCode {
     ACCOUNT_MONTH_QUOTA_10_ERROR("ERR_BIZ_007", "账户月额度不足十次"),
     ACCOUNT_DAY_QUOTA_ERROR("ERR_BIZ_008", "账户日额度不足"),
     ACCOUNT_DAY_QUOTA_10_ERROR("ERR_BIZ_108", "账户日额度不足十次"),
+    ACCOUNT_QUOTA_BATCH_ERROR("ERR_BIZ_206", "账户总额度不足连抽次数"),
+    ACCOUNT_MONTH_QUOTA_BATCH_ERROR("ERR_BIZ_207", "账户月额度不足连抽次数"),
+    ACCOUNT_DAY_QUOTA_BATCH_ERROR("ERR_BIZ_208", "账户日额度不足连抽次数"),
+    ORDER_ID_WORKER_ERROR("ERR_BIZ_209", "订单号生成节点未分配，请稍后重试"),
     ACTIVITY_ORDER_ERROR("ERR_BIZ_009", "用户抽奖单已使用过，不可重复抽奖"),
     AWARD_CONFIG_ERROR("ERR_CONFIG_001", "award_config 配置不是一个范围值，如 1,100"),
     USER_CREDIT_ACCOUNT_NO_AVAILABLE_AMOUNT("ERR_CREDIT_001", "用户积分账户额度不足"),
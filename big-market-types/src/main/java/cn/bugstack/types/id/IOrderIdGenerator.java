@@ -0,0 +1,17 @@
+package cn.bugstack.types.id;
+
+/**
+ * @author gzc
+ * @description 订单号生成接口；抽奖单、活动单、返利单、积分单等 build*Order 方法统一从这里取订单号
+ */
+public interface IOrderIdGenerator {
+
+    /**
+     * 生成订单号；订单号携带 userId 的路由位，可以只凭订单号计算所在库表
+     *
+     * @param userId 用户ID
+     * @return 订单号
+     */
+    String nextOrderId(String userId);
+
+}
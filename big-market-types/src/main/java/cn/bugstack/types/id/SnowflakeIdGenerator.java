@@ -0,0 +1,86 @@
+package cn.bugstack.types.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gzc
+ * @description 雪花算法订单号；63 位 = 41 位毫秒时间戳 | 8 位节点ID | 8 位序列号 | 6 位路由位
+ * 1. 时间戳和序列号合并在一个 AtomicLong 中 CAS 递增，无锁，同一节点生成的订单号严格递增；
+ * 同一毫秒序列号用完或时钟回拨时直接借用下一毫秒，不自旋等待时钟
+ * 2. 路由位取 userId 的路由哈希，和 db-router 的计算方式一致；库数量 * 表数量不超过 64 时，只凭订单号即可计算所在库表
+ */
+public class SnowflakeIdGenerator {
+
+    // 起始时间 2024-01-01 00:00:00 UTC，41 位时间戳可以使用到 2093 年
+    public static final long EPOCH_MILLIS = 1704067200000L;
+
+    public static final int WORKER_ID_BITS = 8;
+    public static final int SEQUENCE_BITS = 8;
+    public static final int ROUTE_BITS = 6;
+
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+    public static final int MAX_ROUTE_SIZE = 1 << ROUTE_BITS;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int ROUTE_MASK = MAX_ROUTE_SIZE - 1;
+
+    private static final int SEQUENCE_SHIFT = ROUTE_BITS;
+    private static final int WORKER_ID_SHIFT = SEQUENCE_SHIFT + SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_SHIFT + WORKER_ID_BITS;
+
+    // 时间戳 << SEQUENCE_BITS | 序列号；加 1 时序列号溢出自然进位到下一毫秒
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 生成订单号
+     *
+     * @param workerId 节点ID「0 ~ MAX_WORKER_ID」
+     * @param route    路由位，取低 ROUTE_BITS 位
+     * @return 订单号
+     */
+    public long nextId(int workerId, int route) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId out of range: " + workerId);
+        }
+        long next;
+        for (; ; ) {
+            long current = state.get();
+            next = Math.max(current + 1, (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS);
+            if (state.compareAndSet(current, next)) break;
+        }
+        return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+                | (long) workerId << WORKER_ID_SHIFT
+                | (next & SEQUENCE_MASK) << SEQUENCE_SHIFT
+                | route & ROUTE_MASK;
+    }
+
+    /**
+     * 用户路由位；与 db-router 的 (size - 1) & (hashCode ^ hashCode >>> 16) 一致，size 为 2 的次幂且不超过 MAX_ROUTE_SIZE
+     */
+    public static int routeBits(String userId) {
+        int hashCode = userId.hashCode();
+        return (hashCode ^ (hashCode >>> 16)) & ROUTE_MASK;
+    }
+
+    /**
+     * 订单号所在的路由下标；等同于 db-router 按 userId 计算的 idx
+     *
+     * @param orderId 订单号
+     * @param size    库数量 * 表数量
+     * @return 路由下标「0 ~ size - 1」
+     */
+    public static int routeIndex(String orderId, int size) {
+        if (size > MAX_ROUTE_SIZE || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("route size must be a power of two no greater than " + MAX_ROUTE_SIZE + ": " + size);
+        }
+        return (int) (Long.parseLong(orderId) & (size - 1));
+    }
+
+    /**
+     * 订单号的生成时间
+     */
+    public static long timestampMillis(String orderId) {
+        return (Long.parseLong(orderId) >>> TIMESTAMP_SHIFT) + EPOCH_MILLIS;
+    }
+
+}
@@ -22,6 +22,23 @@ SET NAMES utf8mb4;
 CREATE database if NOT EXISTS `big_market_01` default character set utf8mb4;
 use `big_market_01`;
 
+# 转储表 message_consume_record
+# ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `message_consume_record`;
+
+CREATE TABLE `message_consume_record` (
+  `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
+  `user_id` varchar(32) NOT NULL COMMENT '用户ID',
+  `topic` varchar(32) NOT NULL COMMENT '消息主题',
+  `message_id` varchar(32) NOT NULL COMMENT '消息编号',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_topic_message_id` (`topic`,`message_id`),
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='消息消费记录表，批量消费防重';
+
+
 # 转储表 raffle_activity_account
 # ------------------------------------------------------------
 
@@ -146,7 +163,7 @@ CREATE TABLE `raffle_activity_order_000` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -176,7 +193,7 @@ CREATE TABLE `raffle_activity_order_001` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -247,7 +264,7 @@ CREATE TABLE `raffle_activity_order_002` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -287,7 +304,7 @@ CREATE TABLE `raffle_activity_order_003` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -323,15 +340,16 @@ CREATE TABLE `task` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `topic` varchar(32) NOT NULL COMMENT '消息主题',
-  `message_id` varchar(11) DEFAULT NULL COMMENT '消息编号',
+  `message_id` varchar(32) DEFAULT NULL COMMENT '消息编号',
   `message` varchar(512) NOT NULL COMMENT '消息主体',
-  `state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '任务状态；create-创建、completed-完成、fail-失败',
+  `state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '任务状态；create-创建、sending-投递中、completed-完成、fail-失败',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uq_message_id` (`message_id`),
-  KEY `idx_state` (`state`),
-  KEY `idx_create_time` (`update_time`)
+  KEY `idx_state_update_time` (`state`,`update_time`),
+  KEY `idx_create_time` (`update_time`),
+  KEY `idx_user_id_topic` (`user_id`,`topic`,`create_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='任务表，发送MQ';
 
 LOCK TABLES `task` WRITE;
@@ -656,7 +674,7 @@ CREATE TABLE `user_award_record_000` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -682,7 +700,7 @@ CREATE TABLE `user_award_record_001` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -909,7 +927,7 @@ CREATE TABLE `user_award_record_002` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -959,7 +977,7 @@ CREATE TABLE `user_award_record_003` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -983,7 +1001,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_000`;
 CREATE TABLE `user_behavior_rebate_order_000` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -1008,7 +1026,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_001`;
 CREATE TABLE `user_behavior_rebate_order_001` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -1054,7 +1072,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_002`;
 CREATE TABLE `user_behavior_rebate_order_002` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -1091,7 +1109,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_003`;
 CREATE TABLE `user_behavior_rebate_order_003` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -1155,7 +1173,7 @@ DROP TABLE IF EXISTS `user_credit_order_000`;
 CREATE TABLE `user_credit_order_000` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -1178,7 +1196,7 @@ DROP TABLE IF EXISTS `user_credit_order_001`;
 CREATE TABLE `user_credit_order_001` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -1233,7 +1251,7 @@ DROP TABLE IF EXISTS `user_credit_order_002`;
 CREATE TABLE `user_credit_order_002` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -1256,7 +1274,7 @@ DROP TABLE IF EXISTS `user_credit_order_003`;
 CREATE TABLE `user_credit_order_003` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -1291,7 +1309,7 @@ CREATE TABLE `user_raffle_order_000` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -1314,7 +1332,7 @@ CREATE TABLE `user_raffle_order_001` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -1503,7 +1521,7 @@ CREATE TABLE `user_raffle_order_002` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -1550,7 +1568,7 @@ CREATE TABLE `user_raffle_order_003` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
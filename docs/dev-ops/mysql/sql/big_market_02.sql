@@ -22,6 +22,23 @@ SET NAMES utf8mb4;
 CREATE database if NOT EXISTS `big_market_02` default character set utf8mb4;
 use `big_market_02`;
 
+# 转储表 message_consume_record
+# ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `message_consume_record`;
+
+CREATE TABLE `message_consume_record` (
+  `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
+  `user_id` varchar(32) NOT NULL COMMENT '用户ID',
+  `topic` varchar(32) NOT NULL COMMENT '消息主题',
+  `message_id` varchar(32) NOT NULL COMMENT '消息编号',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_topic_message_id` (`topic`,`message_id`),
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='消息消费记录表，批量消费防重';
+
+
 # 转储表 raffle_activity_account
 # ------------------------------------------------------------
 
@@ -148,7 +165,7 @@ CREATE TABLE `raffle_activity_order_000` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -190,7 +207,7 @@ CREATE TABLE `raffle_activity_order_001` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -240,7 +257,7 @@ CREATE TABLE `raffle_activity_order_002` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -283,7 +300,7 @@ CREATE TABLE `raffle_activity_order_003` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `total_count` int(8) NOT NULL COMMENT '总次数',
   `day_count` int(8) NOT NULL COMMENT '日次数',
@@ -320,15 +337,16 @@ CREATE TABLE `task` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `topic` varchar(32) NOT NULL COMMENT '消息主题',
-  `message_id` varchar(11) DEFAULT NULL COMMENT '消息编号',
+  `message_id` varchar(32) DEFAULT NULL COMMENT '消息编号',
   `message` varchar(512) NOT NULL COMMENT '消息主体',
-  `state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '任务状态；create-创建、completed-完成、fail-失败',
+  `state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '任务状态；create-创建、sending-投递中、completed-完成、fail-失败',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uq_message_id` (`message_id`),
-  KEY `idx_state` (`state`),
-  KEY `idx_create_time` (`update_time`)
+  KEY `idx_state_update_time` (`state`,`update_time`),
+  KEY `idx_create_time` (`update_time`),
+  KEY `idx_user_id_topic` (`user_id`,`topic`,`create_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='任务表，发送MQ';
 
 LOCK TABLES `task` WRITE;
@@ -443,7 +461,7 @@ CREATE TABLE `user_award_record_000` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -493,7 +511,7 @@ CREATE TABLE `user_award_record_001` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -545,7 +563,7 @@ CREATE TABLE `user_award_record_002` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -582,7 +600,7 @@ CREATE TABLE `user_award_record_003` (
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
+  `order_id` varchar(20) NOT NULL COMMENT '抽奖订单ID【作为幂等使用】',
   `award_id` int(11) NOT NULL COMMENT '奖品ID',
   `award_title` varchar(128) NOT NULL COMMENT '奖品标题（名称）',
   `award_time` datetime NOT NULL COMMENT '中奖时间',
@@ -629,7 +647,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_000`;
 CREATE TABLE `user_behavior_rebate_order_000` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -668,7 +686,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_001`;
 CREATE TABLE `user_behavior_rebate_order_001` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -709,7 +727,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_002`;
 CREATE TABLE `user_behavior_rebate_order_002` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -746,7 +764,7 @@ DROP TABLE IF EXISTS `user_behavior_rebate_order_003`;
 CREATE TABLE `user_behavior_rebate_order_003` (
   `id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `behavior_type` varchar(16) NOT NULL COMMENT '行为类型（sign 签到、openai_pay 支付）',
   `rebate_desc` varchar(128) NOT NULL COMMENT '返利描述',
   `rebate_type` varchar(16) NOT NULL COMMENT '返利类型（sku 活动库存充值商品、integral 用户活动积分）',
@@ -815,7 +833,7 @@ DROP TABLE IF EXISTS `user_credit_order_000`;
 CREATE TABLE `user_credit_order_000` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -848,7 +866,7 @@ DROP TABLE IF EXISTS `user_credit_order_001`;
 CREATE TABLE `user_credit_order_001` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -888,7 +906,7 @@ DROP TABLE IF EXISTS `user_credit_order_002`;
 CREATE TABLE `user_credit_order_002` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -924,7 +942,7 @@ DROP TABLE IF EXISTS `user_credit_order_003`;
 CREATE TABLE `user_credit_order_003` (
   `id` bigint(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(32) NOT NULL COMMENT '用户ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `trade_name` varchar(32) NOT NULL COMMENT '交易名称',
   `trade_type` varchar(8) NOT NULL DEFAULT 'forward' COMMENT '交易类型；forward-正向、reverse-逆向',
   `trade_amount` decimal(10,2) NOT NULL COMMENT '交易金额',
@@ -950,7 +968,7 @@ CREATE TABLE `user_raffle_order_000` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -997,7 +1015,7 @@ CREATE TABLE `user_raffle_order_001` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -1046,7 +1064,7 @@ CREATE TABLE `user_raffle_order_002` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -1080,7 +1098,7 @@ CREATE TABLE `user_raffle_order_003` (
   `activity_id` bigint(12) NOT NULL COMMENT '活动ID',
   `activity_name` varchar(64) NOT NULL COMMENT '活动名称',
   `strategy_id` bigint(8) NOT NULL COMMENT '抽奖策略ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `order_id` varchar(20) NOT NULL COMMENT '订单ID',
   `order_time` datetime NOT NULL COMMENT '下单时间',
   `order_state` varchar(16) NOT NULL DEFAULT 'create' COMMENT '订单状态；create-创建、used-已使用、cancel-已作废',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',